@@ -0,0 +1,79 @@
+package bench;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import server.AdmissionController;
+import server.GameImpl;
+import server.LatencyRecorder;
+import server.ServerConfig;
+
+// Sends more joins than the server accepts and reports how fast admitted and
+// refused joins return, then checks that the live counters add up while the
+// players are in and drop back to zero once they have all left.
+// Usage: java bench.AdmissionBench [capacity] [joins] [joinThreads]
+public class AdmissionBench {
+
+    public static void main(String[] args) throws Exception {
+        int capacity = BenchSupport.intArg(args, 0, 20000);
+        int joins = BenchSupport.intArg(args, 1, capacity + capacity / 2);
+        int joinThreads = BenchSupport.intArg(args, 2, 16);
+        BenchSupport.silenceServerLogs();
+
+        GameImpl game = new GameImpl(ServerConfig.fromSystemProperties().setMaxPlayers(capacity));
+        AdmissionController admission = game.getAdmissionController();
+        List<StubPlayer> stubs = new ArrayList<>(joins);
+        for (int i = 0; i < joins; i++) {
+            stubs.add(new StubPlayer("player-" + i));
+        }
+
+        LatencyRecorder acceptedLatency = new LatencyRecorder("accepted joinGame");
+        LatencyRecorder refusedLatency = new LatencyRecorder("refused joinGame");
+        List<StubPlayer> admitted = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService joiners = Executors.newFixedThreadPool(joinThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (StubPlayer stub : stubs) {
+            joiners.execute(() -> {
+                try {
+                    start.await();
+                    long t0 = System.nanoTime();
+                    boolean joined = game.joinGame(stub, stub.getName());
+                    (joined ? acceptedLatency : refusedLatency).recordNanos(System.nanoTime() - t0);
+                    if (joined) {
+                        admitted.add(stub);
+                    }
+                } catch (Exception e) {
+                    BenchSupport.report("join failed: " + e);
+                }
+            });
+        }
+        start.countDown();
+        joiners.shutdown();
+        joiners.awaitTermination(5, TimeUnit.MINUTES);
+
+        // Let the matchmaker pair everyone it can
+        long deadline = System.currentTimeMillis() + 60000;
+        while (admission.getWaitingCount() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        BenchSupport.report("capacity=" + capacity + " joins=" + joins + " joinThreads=" + joinThreads);
+        BenchSupport.report(acceptedLatency.toString());
+        BenchSupport.report(refusedLatency.toString());
+        BenchSupport.report("after joins: " + admission);
+        boolean consistent = admission.getWaitingCount() + admission.getPlayingCount() == admission.getPlayerCount()
+                && admission.getPlayerCount() == admitted.size();
+        BenchSupport.report("waiting + playing == admitted: " + consistent);
+
+        for (StubPlayer stub : admitted) {
+            game.leaveGame(stub);
+        }
+        BenchSupport.report("after leaving: " + admission);
+        UnicastRemoteObject.unexportObject(game, true);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,44 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// Small helpers shared by the benchmark mains
+public final class BenchSupport {
+    private static final PrintStream REAL_OUT = System.out;
+
+    private BenchSupport() {
+    }
+
+    // Keeps the server's join, departure and error logs out of the results. Moves log
+    // nothing, so the scaling benchmarks (MoveThroughputBench) run with logs on.
+    public static void silenceServerLogs() {
+        PrintStream quiet = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }) {
+            @Override
+            public void println(String x) {
+            }
+
+            @Override
+            public void println(Object x) {
+            }
+
+            @Override
+            public void print(String s) {
+            }
+        };
+        System.setOut(quiet);
+        System.setErr(quiet);
+    }
+
+    public static void report(String line) {
+        REAL_OUT.println(line);
+    }
+
+    public static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+}
@@ -0,0 +1,198 @@
+package bench;
+
+import common.GameState;
+import common.GameVariant;
+import common.TurnUpdate;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import server.CallbackDispatcher;
+import server.GameSession;
+import server.SessionListener;
+
+// Cost of a move as the board grows, from 3x3 to 64x64: GameState.makeMove
+// with the win check through the last move and the draw check, the same
+// with a win check that rescans every line of the board, and
+// GameSession.makeMove with its TurnUpdate. Then the memory a board takes
+// and the serialized size of an update.
+// Usage: java bench.BoardSizeBench
+public class BoardSizeBench {
+    private static final GameVariant[] VARIANTS = {
+        GameVariant.CLASSIC, GameVariant.of(15, 5), GameVariant.of(19, 5), GameVariant.of(32, 5),
+        GameVariant.of(64, 5)
+    };
+    private static final int[][] DIRECTIONS = { {0, 1}, {1, 0}, {1, 1}, {1, -1} };
+
+    public static void main(String[] args) throws Exception {
+        BenchSupport.silenceServerLogs();
+        MicroHarness harness = new MicroHarness(1000, 3000);
+        BenchSupport.report(MicroHarness.header());
+        for (GameVariant variant : VARIANTS) {
+            String suffix = " " + variant.getSize() + "x" + variant.getSize() + "/" + variant.getWinLength();
+            BenchSupport.report(harness.run("move + win check" + suffix, 1,
+                    t -> new RandomGame(variant, t, false)::play));
+            BenchSupport.report(harness.run("move + rescan" + suffix, 1,
+                    t -> new RandomGame(variant, t, true)::play));
+        }
+        CallbackDispatcher dispatcher = new CallbackDispatcher(4);
+        for (GameVariant variant : VARIANTS) {
+            String suffix = " " + variant.getSize() + "x" + variant.getSize() + "/" + variant.getWinLength();
+            BenchSupport.report(harness.run("GameSession.makeMove" + suffix, 1, t -> {
+                StubPlayer p1 = new QuietPlayer("b" + t + "-a");
+                StubPlayer p2 = new QuietPlayer("b" + t + "-b");
+                dispatcher.open(p1, p1.getName());
+                dispatcher.open(p2, p2.getName());
+                GameSession session = new GameSession(t, p1, p2, p1.getName(), p2.getName(), "X", "O", dispatcher,
+                        SessionListener.NONE, variant);
+                return new SessionGame(session, t)::play;
+            }));
+        }
+        dispatcher.shutdown();
+
+        BenchSupport.report("");
+        BenchSupport.report(String.format("%-10s %12s %14s", "board", "board bytes", "update bytes"));
+        for (GameVariant variant : VARIANTS) {
+            RandomGame game = new RandomGame(variant, 1, false);
+            // Half full, to show that the update size does not depend on the moves played
+            for (int i = 0; i < variant.getCellCount() / 2 && !game.state.isGameOver(); i++) {
+                game.play();
+            }
+            int boardBytes = 2 * 8 * ((variant.getCellCount() + 63) / 64);
+            BenchSupport.report(String.format("%-10s %12d %14d", variant.getSize() + "x" + variant.getSize(),
+                    boardBytes, serializedSize(TurnUpdate.of(game.state, new String[0], 1, -1, -1))));
+        }
+        System.exit(0);
+    }
+
+    private static int serializedSize(Object value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.size();
+    }
+
+    // Plays random games on a GameState, one move per call
+    private static final class RandomGame {
+        final GameState state;
+        private final int size;
+        private final int winLength;
+        private final boolean rescan;
+        private final int[] order;
+        private final Random random;
+        private int next;
+        private int side;
+
+        RandomGame(GameVariant variant, int seed, boolean rescan) {
+            this.state = new GameState(variant);
+            this.size = variant.getSize();
+            this.winLength = variant.getWinLength();
+            this.rescan = rescan;
+            this.order = new int[variant.getCellCount()];
+            this.random = new Random(seed);
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            restart();
+        }
+
+        long play() {
+            int cell = order[next++];
+            state.makeMove(cell / size, cell % size, side);
+            boolean won = rescan ? rescanWin(side) : state.checkWin(side);
+            if (won || state.isBoardFull()) {
+                restart();
+            } else {
+                side ^= 1;
+            }
+            return cell;
+        }
+
+        // Every line of the board, as a check without the last move would have to
+        private boolean rescanWin(int side) {
+            long[] cells = state.getCells(side);
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    for (int[] direction : DIRECTIONS) {
+                        int count = 0;
+                        int r = row;
+                        int c = col;
+                        while (count < winLength && r >= 0 && r < size && c >= 0 && c < size
+                                && (cells[(r * size + c) >> 6] & (1L << (r * size + c))) != 0) {
+                            count++;
+                            r += direction[0];
+                            c += direction[1];
+                        }
+                        if (count == winLength) return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void restart() {
+            state.resetGame();
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swapped = order[i];
+                order[i] = order[j];
+                order[j] = swapped;
+            }
+            next = 0;
+            side = GameState.SIDE_X;
+        }
+    }
+
+    // Drops the updates: building the String[][] view of a large board is the client's cost, not the server's
+    private static final class QuietPlayer extends StubPlayer {
+        QuietPlayer(String name) {
+            super(name);
+        }
+
+        @Override
+        public void updateTurnState(TurnUpdate update) {
+        }
+    }
+
+    // Plays random games through GameSession.makeMove
+    private static final class SessionGame {
+        private final GameSession session;
+        private final int size;
+        private final int[] order;
+        private final Random random;
+        private int next;
+
+        SessionGame(GameSession session, int seed) throws Exception {
+            this.session = session;
+            this.size = session.getVariant().getSize();
+            this.order = new int[session.getVariant().getCellCount()];
+            this.random = new Random(seed);
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            restart();
+        }
+
+        long play() throws Exception {
+            int cell = order[next++];
+            if (!session.makeMove(cell / size, cell % size, GameState.sideOf(session.getCurrentPlayer()))) {
+                throw new IllegalStateException("move refused at cell " + cell);
+            }
+            if (session.isGameOver()) {
+                restart();
+            }
+            return cell;
+        }
+
+        private void restart() throws Exception {
+            session.restartGame();
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swapped = order[i];
+                order[i] = order[j];
+                order[j] = swapped;
+            }
+            next = 0;
+        }
+    }
+}
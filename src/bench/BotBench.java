@@ -0,0 +1,124 @@
+package bench;
+
+import common.GameState;
+import common.TurnUpdate;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import server.BotPlayer;
+import server.GameImpl;
+import server.LatencyRecorder;
+import server.PositionTable;
+import server.ServerConfig;
+
+// The server bot: building its PositionTable, choosing a move, how each level
+// fares against perfect play, and how long a lone player waits for its first
+// move when the bot steps in, through GameImpl called in-process.
+// Usage: java bench.BotBench [gamesPerLevel] [lonePlayers]
+public class BotBench {
+
+    public static void main(String[] args) throws Exception {
+        int gamesPerLevel = BenchSupport.intArg(args, 0, 20000);
+        int lonePlayers = BenchSupport.intArg(args, 1, 20);
+        BenchSupport.silenceServerLogs();
+
+        long start = System.nanoTime();
+        int entries = PositionTable.getEntryCount();
+        BenchSupport.report(String.format("position table: %d reachable positions, %d entries, built in %.1f ms",
+                PositionTable.getReachableCount(), entries, (System.nanoTime() - start) / 1e6));
+
+        // Positions met in random games, to choose moves from
+        List<int[]> positions = new ArrayList<>();
+        Random random = new Random(5);
+        while (positions.size() < 4096) {
+            int own = 0;
+            int other = 0;
+            while (PositionTable.chooseMove(own, other, 0, random) >= 0) {
+                positions.add(new int[] {own, other});
+                int move = PositionTable.chooseMove(own, other, 1, random);
+                int swapped = own | 1 << move;
+                own = other;
+                other = swapped;
+            }
+        }
+        MicroHarness harness = new MicroHarness(1000, 3000);
+        BenchSupport.report(MicroHarness.header());
+        BenchSupport.report(harness.run("chooseMove", 1, t -> () -> {
+            ThreadLocalRandom local = ThreadLocalRandom.current();
+            int[] position = positions.get(local.nextInt(positions.size()));
+            return PositionTable.chooseMove(position[0], position[1], 0.25, local);
+        }));
+
+        BenchSupport.report("");
+        BenchSupport.report(String.format("%-8s %-8s %8s %8s %8s", "level", "against", "wins", "draws", "losses"));
+        for (BotPlayer.Level level : BotPlayer.Level.values()) {
+            int[] results = new int[3];
+            for (int game = 0; game < gamesPerLevel; game++) {
+                results[play(level.getMistakeRate(), game % 2 == 0, random)]++;
+            }
+            BenchSupport.report(String.format("%-8s %-8s %7.1f%% %7.1f%% %7.1f%%", level.name().toLowerCase(),
+                    "perfect", 100.0 * results[0] / gamesPerLevel, 100.0 * results[1] / gamesPerLevel,
+                    100.0 * results[2] / gamesPerLevel));
+        }
+
+        BenchSupport.report("");
+        for (long waitMillis : new long[] {0, 50, 1000}) {
+            GameImpl game = new GameImpl(ServerConfig.fromSystemProperties().setMaxPlayers(lonePlayers + 2)
+                    .setBotWaitMillis(waitMillis));
+            LatencyRecorder firstMove = new LatencyRecorder("lone player, botWaitMs=" + waitMillis
+                    + ", join to first turn");
+            for (int i = 0; i < lonePlayers; i++) {
+                LonePlayer player = new LonePlayer("lone-" + i);
+                long t0 = System.nanoTime();
+                game.joinGame(player, player.getName());
+                while (player.firstTurnNanos == 0) {
+                    Thread.sleep(1);
+                }
+                firstMove.recordNanos(player.firstTurnNanos - t0);
+                game.leaveGame(player);
+            }
+            BenchSupport.report(firstMove.toString());
+            UnicastRemoteObject.unexportObject(game, true);
+        }
+        System.exit(0);
+    }
+
+    // One game of the level (0: win, 1: draw, 2: loss for it) against perfect play
+    private static int play(double mistakeRate, boolean levelStarts, Random random) {
+        int own = 0;
+        int other = 0;
+        boolean levelToPlay = levelStarts;
+        while (true) {
+            int move = PositionTable.chooseMove(own, other, levelToPlay ? mistakeRate : 0, random);
+            if (move < 0) {
+                if (!GameState.isWinningMask(other)) return 1;
+                // The side that just played won
+                return levelToPlay ? 2 : 0;
+            }
+            int swapped = own | 1 << move;
+            own = other;
+            other = swapped;
+            levelToPlay = !levelToPlay;
+        }
+    }
+
+    // Notes when it may first play, the bot having moved or let it start
+    private static final class LonePlayer extends StubPlayer {
+        volatile long firstTurnNanos;
+
+        LonePlayer(String name) {
+            super(name);
+        }
+
+        @Override
+        public void updateTurnState(TurnUpdate update) throws RemoteException {
+            super.updateTurnState(update);
+            if (firstTurnNanos == 0 && isMyTurn()) {
+                firstTurnNanos = System.nanoTime();
+            }
+        }
+    }
+}
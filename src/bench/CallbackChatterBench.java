@@ -0,0 +1,88 @@
+package bench;
+
+import java.rmi.RemoteException;
+import server.CallbackDispatcher;
+import server.GameSession;
+import server.PlayerMailbox;
+
+// Counts the remote callbacks and full-board payloads GameSession sends to the
+// two players, per mid-game move and per complete game including its restart.
+// Usage: java bench.CallbackChatterBench [games]
+public class CallbackChatterBench {
+
+    public static void main(String[] args) throws Exception {
+        int games = BenchSupport.intArg(args, 0, 1000);
+        BenchSupport.silenceServerLogs();
+        CallbackDispatcher dispatcher = new CallbackDispatcher(1);
+        StubPlayer player1 = new StubPlayer("a");
+        StubPlayer player2 = new StubPlayer("b");
+        dispatcher.open(player1, "a");
+        dispatcher.open(player2, "b");
+        player1.assignSymbol("X");
+        player2.assignSymbol("O");
+        GameSession session = new GameSession(1L, player1, player2, "X", "O", dispatcher);
+        session.notifyCurrentPlayer();
+        awaitDelivery(dispatcher);
+
+        // A single move that neither wins nor fills the board
+        long callsBefore = totalCalls(player1, player2);
+        long boardsBefore = totalBoards(player1, player2);
+        playMove(session);
+        awaitDelivery(dispatcher);
+        long moveCalls = totalCalls(player1, player2) - callsBefore;
+        long moveBoards = totalBoards(player1, player2) - boardsBefore;
+
+        // Whole games, each followed by a restart
+        session.restartGame();
+        awaitDelivery(dispatcher);
+        callsBefore = totalCalls(player1, player2);
+        boardsBefore = totalBoards(player1, player2);
+        long moves = 0;
+        for (int g = 0; g < games; g++) {
+            while (!session.isGameOver()) {
+                playMove(session);
+                moves++;
+            }
+            session.restartGame();
+        }
+        awaitDelivery(dispatcher);
+        long gameCalls = totalCalls(player1, player2) - callsBefore;
+        long gameBoards = totalBoards(player1, player2) - boardsBefore;
+
+        BenchSupport.report("mid-game move: remote calls=" + moveCalls + " board payloads=" + moveBoards);
+        BenchSupport.report(String.format("%d games, %d moves: remote calls/move=%.2f board payloads/move=%.2f",
+                games, moves, (double) gameCalls / moves, (double) gameBoards / moves));
+        dispatcher.shutdown();
+    }
+
+    private static void playMove(GameSession session) throws RemoteException {
+        String[][] board = session.getBoardState();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                if (board[i][j].isEmpty()) {
+                    session.makeMove(i, j, session.getCurrentPlayer());
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void awaitDelivery(CallbackDispatcher dispatcher) throws InterruptedException {
+        boolean pending = true;
+        while (pending) {
+            pending = false;
+            for (PlayerMailbox mailbox : dispatcher.getMailboxes()) {
+                pending |= mailbox.getDepth() > 0;
+            }
+            Thread.sleep(pending ? 1 : 20);
+        }
+    }
+
+    private static long totalCalls(StubPlayer a, StubPlayer b) {
+        return a.getCalls() + b.getCalls();
+    }
+
+    private static long totalBoards(StubPlayer a, StubPlayer b) {
+        return a.getBoardPayloads() + b.getBoardPayloads();
+    }
+}
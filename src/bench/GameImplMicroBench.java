@@ -0,0 +1,53 @@
+package bench;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import server.GameImpl;
+
+// GameImpl entry points called in-process (no RMI transport): joinGame and
+// leaveGame on fresh players, and makeMove on already running sessions.
+public final class GameImplMicroBench {
+    private static final int SESSIONS_PER_THREAD = 16;
+
+    private GameImplMicroBench() {
+    }
+
+    public static void run(MicroHarness harness, int[] threadCounts, List<String> results) throws Exception {
+        for (int threads : threadCounts) {
+            GameImpl game = new GameImpl(Integer.MAX_VALUE);
+            // Each call alternates: join a new player, then make it leave again
+            results.add(harness.run("GameImpl.joinGame/leaveGame", threads, t -> {
+                long[] next = {0};
+                StubPlayer[] current = {null};
+                return () -> {
+                    if (current[0] == null) {
+                        current[0] = new StubPlayer("j" + t + "-" + next[0]++);
+                        return game.joinGame(current[0], current[0].getName()) ? 1 : 0;
+                    }
+                    game.leaveGame(current[0]);
+                    current[0] = null;
+                    return 0;
+                };
+            }));
+            UnicastRemoteObject.unexportObject(game, true);
+
+            GameImpl moves = new GameImpl(threads * SESSIONS_PER_THREAD * 2 + 2);
+            results.add(harness.run("GameImpl.makeMove", threads, t -> {
+                List<MoveThroughputBench.SessionDriver> drivers = new ArrayList<>();
+                for (int s = 0; s < SESSIONS_PER_THREAD; s++) {
+                    StubPlayer p1 = new StubPlayer("m" + t + "-" + s + "-a");
+                    StubPlayer p2 = new StubPlayer("m" + t + "-" + s + "-b");
+                    moves.joinGame(p1, p1.getName());
+                    moves.joinGame(p2, p2.getName());
+                    MoveThroughputBench.SessionDriver driver = new MoveThroughputBench.SessionDriver(moves, p1, p2);
+                    driver.awaitStart();
+                    drivers.add(driver);
+                }
+                int[] next = {0};
+                return () -> drivers.get(next[0]++ % SESSIONS_PER_THREAD).playOnce() ? 1 : 0;
+            }));
+            UnicastRemoteObject.unexportObject(moves, true);
+        }
+    }
+}
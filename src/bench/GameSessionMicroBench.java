@@ -0,0 +1,60 @@
+package bench;
+
+import common.BoardSnapshot;
+import java.util.List;
+import server.CallbackDispatcher;
+import server.GameSession;
+
+// GameSession.makeMove with in-process stub callbacks: validation, win/draw
+// checks and building the TurnUpdate posted to both players' mailboxes.
+public final class GameSessionMicroBench {
+
+    private GameSessionMicroBench() {
+    }
+
+    public static void run(MicroHarness harness, int[] threadCounts, List<String> results) throws Exception {
+        CallbackDispatcher dispatcher = new CallbackDispatcher(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        for (int threads : threadCounts) {
+            results.add(harness.run("GameSession.makeMove", threads, t -> {
+                StubPlayer p1 = new StubPlayer("s" + t + "-a");
+                StubPlayer p2 = new StubPlayer("s" + t + "-b");
+                dispatcher.open(p1, p1.getName());
+                dispatcher.open(p2, p2.getName());
+                GameSession session = new GameSession(t, p1, p2, "X", "O", dispatcher);
+                return new SessionPlayer(session)::playOnce;
+            }));
+        }
+        dispatcher.shutdown();
+    }
+
+    // Plays cells in order with the side to move, restarting once the game is over
+    private static final class SessionPlayer {
+        private final GameSession session;
+        private int cell;
+        private int side;
+
+        SessionPlayer(GameSession session) throws Exception {
+            this.session = session;
+            restart();
+        }
+
+        long playOnce() throws Exception {
+            if (!session.makeMove(cell / 3, cell % 3, side)) {
+                throw new IllegalStateException("move refused at cell " + cell);
+            }
+            cell++;
+            side ^= 1;
+            if (session.isGameOver()) {
+                restart();
+            }
+            return cell;
+        }
+
+        private void restart() throws Exception {
+            session.restartGame();
+            BoardSnapshot snapshot = session.snapshot();
+            side = snapshot.getCurrentSide();
+            cell = 0;
+        }
+    }
+}
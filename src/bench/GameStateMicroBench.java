@@ -0,0 +1,62 @@
+package bench;
+
+import common.GameState;
+import java.util.List;
+import java.util.Random;
+
+// GameState hot paths: checkWin, isBoardFull and makeMove on the bitboard
+public final class GameStateMicroBench {
+    private static final int POSITIONS = 64;
+
+    private GameStateMicroBench() {
+    }
+
+    public static void run(MicroHarness harness, int[] threadCounts, List<String> results) throws Exception {
+        for (int threads : threadCounts) {
+            results.add(harness.run("GameState.checkWin", threads, t -> {
+                GameState[] states = randomPositions(t);
+                int[] next = {0};
+                return () -> {
+                    GameState state = states[next[0]++ & (POSITIONS - 1)];
+                    return state.checkWin(next[0] & 1) ? 1 : 0;
+                };
+            }));
+            results.add(harness.run("GameState.isBoardFull", threads, t -> {
+                GameState[] states = randomPositions(t);
+                int[] next = {0};
+                return () -> states[next[0]++ & (POSITIONS - 1)].isBoardFull() ? 1 : 0;
+            }));
+            results.add(harness.run("GameState.makeMove", threads, t -> {
+                GameState state = new GameState();
+                int[] cell = {0};
+                return () -> {
+                    // Fill the board cell by cell, alternating sides, then start over
+                    int c = cell[0];
+                    state.makeMove(c / 3, c % 3, c & 1);
+                    if (++cell[0] == 9) {
+                        cell[0] = 0;
+                        state.resetGame();
+                    }
+                    return state.getMask(c & 1);
+                };
+            }));
+        }
+    }
+
+    private static GameState[] randomPositions(int seed) {
+        Random random = new Random(seed);
+        GameState[] states = new GameState[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            GameState state = new GameState();
+            int moves = random.nextInt(10);
+            for (int m = 0; m < moves; m++) {
+                int cell = random.nextInt(9);
+                if (state.isCellEmpty(cell / 3, cell % 3)) {
+                    state.makeMove(cell / 3, cell % 3, m & 1);
+                }
+            }
+            states[i] = state;
+        }
+        return states;
+    }
+}
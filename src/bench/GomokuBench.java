@@ -0,0 +1,150 @@
+package bench;
+
+import common.GameState;
+import common.GameVariant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import server.GomokuEngine;
+
+// The GomokuEngine on 15x15 positions taken from games between quick bots:
+// nodes searched per second and time to reach each depth with 1..N threads
+// in its pool, then the depth it gets to with the time a server gives a
+// move, and how far a game's CPU budget goes.
+// Usage: java bench.GomokuBench [positions] [depth] [threadsMax]
+public class GomokuBench {
+    private static final GameVariant VARIANT = GameVariant.of(15, 5);
+
+    public static void main(String[] args) {
+        int positionCount = BenchSupport.intArg(args, 0, 20);
+        int depth = BenchSupport.intArg(args, 1, 6);
+        int maxThreads = BenchSupport.intArg(args, 2, Runtime.getRuntime().availableProcessors());
+        BenchSupport.silenceServerLogs();
+        List<long[][]> positions = positions(positionCount, new Random(7));
+
+        BenchSupport.report(String.format("%d positions, %s, depth %d, %d cores", positions.size(), VARIANT, depth,
+                Runtime.getRuntime().availableProcessors()));
+        StringBuilder header = new StringBuilder(String.format("%-8s %12s", "threads", "nodes/s"));
+        for (int d = 1; d <= depth; d++) {
+            header.append(String.format(" %9s", "d" + d + "(ms)"));
+        }
+        BenchSupport.report(header.toString());
+        // Warm-up for the JIT, on an engine of its own
+        GomokuEngine warmup = new GomokuEngine(1, 0, 0);
+        for (long[][] position : positions) {
+            warmup.search(VARIANT, position[0], position[1], sideToPlay(position), depth, Long.MAX_VALUE);
+        }
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // A new engine each time, so that no run starts with the table of another
+            GomokuEngine engine = new GomokuEngine(threads, 0, 0);
+            long nodes = 0;
+            long nanos = 0;
+            long[] depthNanos = new long[depth + 1];
+            for (long[][] position : positions) {
+                GomokuEngine.Result result = engine.search(VARIANT, position[0], position[1], sideToPlay(position),
+                        depth, Long.MAX_VALUE);
+                nodes += result.getNodes();
+                nanos += result.getElapsedNanos();
+                for (int d = 1; d <= depth; d++) {
+                    // A decided position stops early; its last depth stands for the deeper ones
+                    depthNanos[d] += result.getDepthNanos(Math.min(d, result.getDepth()));
+                }
+            }
+            StringBuilder line = new StringBuilder(String.format("%-8d %12.0f", threads, nodes * 1e9 / nanos));
+            for (int d = 1; d <= depth; d++) {
+                line.append(String.format(" %9.2f", depthNanos[d] / 1e6 / positions.size()));
+            }
+            BenchSupport.report(line.toString());
+        }
+
+        BenchSupport.report("");
+        BenchSupport.report(String.format("%-10s %8s %10s %10s %10s", "move time", "threads", "depth p50", "depth min",
+                "ms p99"));
+        for (long moveMillis : new long[] {50, 200, 500}) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                GomokuEngine engine = new GomokuEngine(threads, moveMillis, 0);
+                List<Integer> depths = new ArrayList<>();
+                List<Long> times = new ArrayList<>();
+                for (long[][] position : positions) {
+                    GomokuEngine.Result result = engine.search(VARIANT, position[0], position[1],
+                            sideToPlay(position), GomokuEngine.MAX_DEPTH, moveMillis * 1_000_000L);
+                    // A decided position needs no more depth, it says nothing of the time
+                    if (!result.isDecided()) depths.add(result.getDepth());
+                    times.add(result.getElapsedNanos());
+                }
+                depths.sort(null);
+                times.sort(null);
+                BenchSupport.report(String.format("%-10s %8d %10d %10d %10.1f", moveMillis + "ms", threads,
+                        depths.isEmpty() ? 0 : depths.get(depths.size() / 2), depths.isEmpty() ? 0 : depths.get(0),
+                        times.get(times.size() * 99 / 100) / 1e6));
+            }
+        }
+
+        BenchSupport.report("");
+        // One game with the default budget: how many moves get the full move time
+        GomokuEngine engine = new GomokuEngine(1, 500, 30_000);
+        GameState state = new GameState(VARIANT);
+        long cpuLeft = engine.getGameCpuNanos();
+        int side = GameState.SIDE_X;
+        int moves = 0;
+        int fullTime = 0;
+        long cpuUsed = 0;
+        while (!state.isGameOver() && !state.isBoardFull()) {
+            long budget = engine.moveBudgetNanos(cpuLeft);
+            GomokuEngine.Result result = engine.search(VARIANT, state.getCells(GameState.SIDE_X),
+                    state.getCells(GameState.SIDE_O), side, GomokuEngine.MAX_DEPTH, budget);
+            cpuLeft -= result.getCpuNanos();
+            cpuUsed += result.getCpuNanos();
+            moves++;
+            if (budget == 500_000_000L) fullTime++;
+            state.makeMove(result.getCell() / VARIANT.getSize(), result.getCell() % VARIANT.getSize(), side);
+            if (state.checkWin(side)) state.setGameOver(true);
+            side ^= 1;
+        }
+        BenchSupport.report(String.format("self-play with a 30 s budget, 500 ms/move: %d moves, %d with the full "
+                + "move time, %.1f s of CPU", moves, fullTime, cpuUsed / 1e9));
+        System.exit(0);
+    }
+
+    private static int sideToPlay(long[][] position) {
+        return count(position[0]) > count(position[1]) ? GameState.SIDE_O : GameState.SIDE_X;
+    }
+
+    private static int count(long[] cells) {
+        int count = 0;
+        for (long word : cells) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Middle-game positions: a few random moves near the center, then quick searches until 10 to 30 stones are down
+    private static List<long[][]> positions(int count, Random random) {
+        GomokuEngine quick = new GomokuEngine(1, 0, 0);
+        List<long[][]> positions = new ArrayList<>();
+        int size = VARIANT.getSize();
+        while (positions.size() < count) {
+            GameState state = new GameState(VARIANT);
+            int stones = 10 + random.nextInt(21);
+            int side = GameState.SIDE_X;
+            for (int i = 0; i < stones && !state.isGameOver(); i++) {
+                int cell;
+                if (i < 4) {
+                    do {
+                        cell = (size / 2 - 3 + random.nextInt(7)) * size + size / 2 - 3 + random.nextInt(7);
+                    } while (!state.isCellEmpty(cell / size, cell % size));
+                } else {
+                    cell = quick.search(VARIANT, state.getCells(GameState.SIDE_X), state.getCells(GameState.SIDE_O),
+                            side, 1 + random.nextInt(2), 0).getCell();
+                }
+                state.makeMove(cell / size, cell % size, side);
+                if (state.checkWin(side)) state.setGameOver(true);
+                side ^= 1;
+            }
+            if (!state.isGameOver()) {
+                positions.add(new long[][] {state.getCells(GameState.SIDE_X), state.getCells(GameState.SIDE_O)});
+            }
+        }
+        return positions;
+    }
+}
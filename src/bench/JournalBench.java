@@ -0,0 +1,224 @@
+package bench;
+
+import common.BoardSnapshot;
+import common.GameState;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import server.CallbackDispatcher;
+import server.GameSession;
+import server.MoveJournal;
+import server.ServerConfig;
+import server.SessionImage;
+import server.SessionListener;
+import server.SessionTable;
+
+// Cost of journaling every move and time to recover from the journal. The
+// same number of moves is played on in-process sessions without a journal,
+// then with a MoveJournal, then the journal is recovered as after a crash:
+// once from the records alone, once from a snapshot plus the records after it.
+// The recovered sessions are compared with the live ones.
+// Usage: java bench.JournalBench [moves] [sessions] [threads] [syncMs]
+public class JournalBench {
+
+    public static void main(String[] args) throws Exception {
+        int moves = BenchSupport.intArg(args, 0, 1000000);
+        int sessionCount = BenchSupport.intArg(args, 1, 10000);
+        int threads = BenchSupport.intArg(args, 2, 4);
+        int syncMillis = BenchSupport.intArg(args, 3, 10);
+        BenchSupport.silenceServerLogs();
+        Path directory = Files.createTempDirectory("morpion-journal");
+        ServerConfig config = ServerConfig.fromSystemProperties().setJournalSyncMillis(syncMillis);
+        CallbackDispatcher dispatcher = new CallbackDispatcher(1);
+        BenchSupport.report("moves=" + moves + ", sessions=" + sessionCount + ", threads=" + threads
+                + ", sync every " + syncMillis + " ms, journal in " + directory);
+
+        // Append alone, into a scratch journal
+        Path scratch = Files.createTempDirectory("morpion-journal-append");
+        MoveJournal appendOnly = new MoveJournal(scratch, config);
+        List<GameSession> targets = createSessions(threads, dispatcher, SessionListener.NONE);
+        double appendRate = append(appendOnly, targets, moves / 10, threads);
+        appendRate = append(appendOnly, targets, moves, threads);
+        appendOnly.close();
+        delete(scratch);
+
+        // Same sessions and moves, without and with the journal (after a warm-up round)
+        List<GameSession> plain = createSessions(sessionCount, dispatcher, SessionListener.NONE);
+        play(plain, moves / 10, threads);
+        double plainRate = play(plain, moves, threads);
+        MoveJournal journal = new MoveJournal(directory, config);
+        JournalSwitch events = new JournalSwitch(journal);
+        List<GameSession> journaled = createSessions(sessionCount, dispatcher, events);
+        for (GameSession session : journaled) {
+            journal.sessionStarted(session);
+        }
+        double journaledRate = play(journaled, moves, threads);
+        journal.close();
+        BenchSupport.report(String.format("%-28s %12s %10s", "", "moves/s", "ns/move"));
+        BenchSupport.report(String.format("%-28s %12.0f %10.0f", "journal append only", appendRate,
+                1e9 / appendRate));
+        BenchSupport.report(String.format("%-28s %12.0f %10.0f", "in memory", plainRate, 1e9 / plainRate));
+        BenchSupport.report(String.format("%-28s %12.0f %10.0f", "journaled", journaledRate, 1e9 / journaledRate));
+        BenchSupport.report("journal: " + journal + ", " + directorySize(directory) / (1024 * 1024)
+                + " MB on disk, " + journal.getAppendedBytes() / journal.getAppendedRecords() + " bytes/record");
+
+        // Crash recovery from the records alone
+        MoveJournal.Recovery full = MoveJournal.recover(directory);
+        BenchSupport.report("recovery, journal only:     " + full + " -> "
+                + Math.round(full.getRecords() / Math.max(1, full.getMillis()) / 1000.0) + " M records/s");
+        BenchSupport.report("  sessions matching live state: " + matching(full.getSessions(), journaled) + "/"
+                + sessionCount);
+
+        // Reopened as after a restart: snapshot, 10% more moves, then recovery from both
+        MoveJournal reopened = new MoveJournal(directory, config);
+        events.journal = reopened;
+        long snapshotStart = System.nanoTime();
+        reopened.snapshot(() -> journaled.stream().map(GameSession::image).collect(Collectors.toList()));
+        long snapshotMillis = (System.nanoTime() - snapshotStart) / 1000000;
+        play(journaled, moves / 10, threads);
+        reopened.close();
+        MoveJournal.Recovery withSnapshot = MoveJournal.recover(directory);
+        BenchSupport.report("snapshot of " + sessionCount + " sessions: " + snapshotMillis + " ms");
+        BenchSupport.report("recovery, snapshot + tail:  " + withSnapshot);
+        BenchSupport.report("  sessions matching live state: " + matching(withSnapshot.getSessions(), journaled)
+                + "/" + sessionCount);
+
+        delete(directory);
+        dispatcher.shutdown();
+        System.exit(0);
+    }
+
+    private static List<GameSession> createSessions(int count, CallbackDispatcher dispatcher,
+                                                    SessionListener listener) throws Exception {
+        SessionTable table = new SessionTable(count);
+        List<GameSession> sessions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StubPlayer player1 = new StubPlayer("bench-" + i + "-a");
+            StubPlayer player2 = new StubPlayer("bench-" + i + "-b");
+            sessions.add(new GameSession(table.allocate(), player1, player2, player1.getName(), player2.getName(),
+                    "X", "O", dispatcher, listener));
+        }
+        return sessions;
+    }
+
+    // Move records only, each thread on its own session
+    private static double append(MoveJournal journal, List<GameSession> sessions, int records, int threads)
+            throws Exception {
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            GameSession session = sessions.get(t);
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < records / threads; i++) {
+                    journal.moveApplied(session, i % 9, i & 1, i);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (double) (records / threads * threads) * 1e9 / (System.nanoTime() - start);
+    }
+
+    // Each thread plays random legal moves on its share of the sessions, restarting finished games
+    private static double play(List<GameSession> sessions, int moves, int threads) throws Exception {
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            int quota = moves / threads;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int played = 0;
+                try {
+                    for (int i = first; played < quota; i += threads) {
+                        if (i >= sessions.size()) i = first;
+                        GameSession session = sessions.get(i);
+                        if (session.isGameOver()) {
+                            session.restartGame();
+                            continue;
+                        }
+                        // One of the free cells, so that no move is refused
+                        BoardSnapshot board = session.snapshot();
+                        int free = ~(board.getMask(GameState.SIDE_X) | board.getMask(GameState.SIDE_O)) & 0x1FF;
+                        for (int skip = random.nextInt(Integer.bitCount(free)); skip > 0; skip--) {
+                            free &= free - 1;
+                        }
+                        int cell = Integer.numberOfTrailingZeros(free);
+                        if (session.makeMove(cell / 3, cell % 3, board.getCurrentSide())) {
+                            played++;
+                        }
+                    }
+                } catch (Exception e) {
+                    BenchSupport.report("driver failed: " + e);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (double) (moves / threads * threads) * 1e9 / (System.nanoTime() - start);
+    }
+
+    private static int matching(List<SessionImage> recovered, List<GameSession> live) {
+        Map<Long, SessionImage> byHandle = recovered.stream()
+                .collect(Collectors.toMap(SessionImage::getHandle, Function.identity()));
+        int matching = 0;
+        for (GameSession session : live) {
+            SessionImage expected = session.image();
+            SessionImage actual = byHandle.get(session.getHandle());
+            if (actual != null && Arrays.equals(actual.getCells(GameState.SIDE_X), expected.getCells(GameState.SIDE_X))
+                    && Arrays.equals(actual.getCells(GameState.SIDE_O), expected.getCells(GameState.SIDE_O))
+                    && actual.getSequence() == expected.getSequence()
+                    && actual.getPlayer1Name().equals(expected.getPlayer1Name())
+                    && (GameState.sideOf(session.getCurrentPlayer()) == actual.getCurrentSide()
+                        || session.isGameOver())) {
+                matching++;
+            }
+        }
+        return matching;
+    }
+
+    // Lets the sessions move from the first journal to the reopened one
+    private static final class JournalSwitch implements SessionListener {
+        private volatile MoveJournal journal;
+
+        JournalSwitch(MoveJournal journal) {
+            this.journal = journal;
+        }
+
+        @Override
+        public void moveApplied(GameSession session, int cell, int side, int sequence) {
+            journal.moveApplied(session, cell, side, sequence);
+        }
+
+        @Override
+        public void sessionRestarted(GameSession session, int startingSide, int sequence) {
+            journal.sessionRestarted(session, startingSide, sequence);
+        }
+    }
+
+    private static void delete(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static long directorySize(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
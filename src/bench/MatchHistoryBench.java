@@ -0,0 +1,162 @@
+package bench;
+
+import common.GameState;
+import common.MatchRecord;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import server.MatchHistory;
+
+// Cost of storing finished matches and of querying them as the store grows.
+// Random games between random players are appended to a MatchHistory in a
+// temporary directory; the queries are timed once 1M matches are stored and
+// again at the full size, to show they do not depend on it. The store is then
+// closed and reopened, as at a server restart.
+// Usage: java bench.MatchHistoryBench [matches] [players] [pageSize] [threads]
+public class MatchHistoryBench {
+    private static final int SEGMENT_MATCHES = 1 << 20;
+    // Matches end 100 ms apart
+    private static final long MATCH_INTERVAL_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int matches = BenchSupport.intArg(args, 0, 10000000);
+        int playerCount = BenchSupport.intArg(args, 1, 100000);
+        int pageSize = BenchSupport.intArg(args, 2, 20);
+        int threads = BenchSupport.intArg(args, 3, 1);
+        BenchSupport.silenceServerLogs();
+        Path directory = Files.createTempDirectory("morpion-history");
+        BenchSupport.report("matches=" + matches + ", players=" + playerCount + ", page=" + pageSize
+                + ", threads=" + threads + ", store in " + directory);
+
+        String[] players = new String[playerCount];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = "player-" + i;
+        }
+        long[] games = randomGames(4096, new Random(42));
+        long baseMillis = System.currentTimeMillis() - matches * MATCH_INTERVAL_MILLIS;
+        MatchHistory history = new MatchHistory(directory, SEGMENT_MATCHES);
+        Random random = new Random(7);
+        MicroHarness harness = new MicroHarness(1000, 3000);
+
+        int checkpoint = Math.min(1000000, matches);
+        long appendNanos = append(history, players, games, baseMillis, 0, checkpoint, random);
+        BenchSupport.report("");
+        BenchSupport.report(MicroHarness.header());
+        query(harness, history, players, baseMillis, pageSize, threads);
+        appendNanos += append(history, players, games, baseMillis, checkpoint, matches, random);
+        if (matches > checkpoint) {
+            query(harness, history, players, baseMillis, pageSize, threads);
+        }
+        BenchSupport.report("");
+        BenchSupport.report(String.format("append: %.0f matches/s, %.0f ns/match", matches * 1e9 / appendNanos,
+                (double) appendNanos / matches));
+        long bytes = directorySize(directory);
+        BenchSupport.report("store: " + history + ", " + bytes / (1024 * 1024) + " MB on disk, "
+                + String.format("%.1f", (double) bytes / matches) + " bytes/match (segments are preallocated)");
+        history.close();
+
+        long reopenStart = System.nanoTime();
+        MatchHistory reopened = new MatchHistory(directory, SEGMENT_MATCHES);
+        long reopenMillis = (System.nanoTime() - reopenStart) / 1000000;
+        String sample = players[random.nextInt(playerCount)];
+        BenchSupport.report("reopen: " + reopened + " in " + reopenMillis + " ms, " + sample + " has "
+                + reopened.matchCount(sample) + " matches (" + history.matchCount(sample) + " before)");
+        reopened.close();
+
+        delete(directory);
+        System.exit(0);
+    }
+
+    private static long append(MatchHistory history, String[] players, long[] games, long baseMillis,
+                               int from, int to, Random random) throws Exception {
+        long start = System.nanoTime();
+        for (int i = from; i < to; i++) {
+            int player1 = random.nextInt(players.length);
+            int player2 = random.nextInt(players.length - 1);
+            if (player2 >= player1) player2++;
+            history.append(players[player1], players[player2], games[i & (games.length - 1)],
+                    baseMillis + i * MATCH_INTERVAL_MILLIS);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void query(MicroHarness harness, MatchHistory history, String[] players, long baseMillis,
+                              int pageSize, int threads) throws Exception {
+        long size = history.size();
+        String suffix = " @" + size / 1000000 + "M";
+        long lastMillis = baseMillis + size * MATCH_INTERVAL_MILLIS;
+        BenchSupport.report(harness.run("history newest page" + suffix, threads, t -> () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return history.history(players[random.nextInt(players.length)], 0, pageSize).size();
+        }));
+        // Paging on: the cursor is one of the player's matches, as returned by the previous page
+        BenchSupport.report(harness.run("history next page" + suffix, threads, t -> () -> {
+            MatchRecord cursor = history.get(ThreadLocalRandom.current().nextLong(size));
+            return history.history(cursor.getPlayer1Name(), cursor.getMatchId(), pageSize).size();
+        }));
+        // Any id: walks the player's history from the newest match down to it
+        BenchSupport.report(harness.run("history page before id" + suffix, threads, t -> () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return history.history(players[random.nextInt(players.length)], random.nextLong(size), pageSize)
+                    .size();
+        }));
+        BenchSupport.report(harness.run("history page before time" + suffix, threads, t -> () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return history.historyBefore(players[random.nextInt(players.length)],
+                    baseMillis + random.nextLong(lastMillis - baseMillis), pageSize).size();
+        }));
+        BenchSupport.report(harness.run("get match" + suffix, threads, t -> () -> {
+            MatchRecord match = history.get(ThreadLocalRandom.current().nextLong(size));
+            return match.getMoveCount();
+        }));
+        BenchSupport.report(harness.run("first match at time" + suffix, threads, t -> () ->
+                history.firstMatchAt(baseMillis + ThreadLocalRandom.current().nextLong(lastMillis - baseMillis))));
+    }
+
+    // Random legal games played to their end, in packed form
+    private static long[] randomGames(int count, Random random) {
+        long[] games = new long[count];
+        for (int g = 0; g < count; g++) {
+            int side = random.nextInt(2);
+            long game = MatchRecord.start(side, random.nextInt(2));
+            GameState state = new GameState();
+            while (true) {
+                int cell = random.nextInt(9);
+                if (!state.isCellEmpty(cell / 3, cell % 3)) continue;
+                state.makeMove(cell / 3, cell % 3, side);
+                game = MatchRecord.addMove(game, cell);
+                if (state.checkWin(side)) {
+                    game = MatchRecord.finish(game, side == GameState.SIDE_X ? MatchRecord.X_WON : MatchRecord.O_WON);
+                    break;
+                }
+                if (state.isBoardFull()) {
+                    game = MatchRecord.finish(game, MatchRecord.DRAW);
+                    break;
+                }
+                side ^= 1;
+            }
+            games[g] = game;
+        }
+        return games;
+    }
+
+    private static void delete(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> all = files.collect(Collectors.toList());
+            for (Path file : all) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static long directorySize(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import server.GameImpl;
+import server.LatencyRecorder;
+
+// Fires a burst of simultaneous joins at GameImpl and reports how long joinGame
+// takes to return and how long players wait until the matchmaker pairs them.
+// Usage: java bench.MatchmakingBurstBench [players] [joinThreads] [pingDelayMs]
+public class MatchmakingBurstBench {
+
+    public static void main(String[] args) throws Exception {
+        int players = BenchSupport.intArg(args, 0, 5000);
+        int joinThreads = BenchSupport.intArg(args, 1, 64);
+        int pingDelayMillis = BenchSupport.intArg(args, 2, 1);
+        BenchSupport.silenceServerLogs();
+
+        GameImpl game = new GameImpl(players + 2);
+        List<StubPlayer> stubs = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            StubPlayer stub = new StubPlayer("player-" + i);
+            stub.setPingDelayMillis(pingDelayMillis);
+            stubs.add(stub);
+        }
+
+        LatencyRecorder joinLatency = new LatencyRecorder("joinGame");
+        ExecutorService joiners = Executors.newFixedThreadPool(joinThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        long burstStart = System.nanoTime();
+        for (StubPlayer stub : stubs) {
+            joiners.execute(() -> {
+                try {
+                    start.await();
+                    long t0 = System.nanoTime();
+                    game.joinGame(stub, stub.getName());
+                    joinLatency.recordNanos(System.nanoTime() - t0);
+                } catch (Exception e) {
+                    BenchSupport.report("join failed: " + e);
+                }
+            });
+        }
+        start.countDown();
+        joiners.shutdown();
+        joiners.awaitTermination(5, TimeUnit.MINUTES);
+
+        // Every player has been paired once its session id has been delivered
+        for (StubPlayer stub : stubs) {
+            while (stub.getGameSessionId() == null) {
+                Thread.sleep(1);
+            }
+        }
+        long elapsedMillis = (System.nanoTime() - burstStart) / 1_000_000L;
+
+        BenchSupport.report("players=" + players + " joinThreads=" + joinThreads + " pingDelayMs=" + pingDelayMillis
+                + " allMatchedAfterMs=" + elapsedMillis);
+        BenchSupport.report(joinLatency.toString());
+        BenchSupport.report(game.getMatchmaker().getTimeToMatch().toString());
+        UnicastRemoteObject.unexportObject(game, true);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,60 @@
+package bench;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs the GameState, GameSession and GameImpl micro-benchmarks and prints one
+// table; with an output file the table is also written there (bench/results/).
+// Usage: java bench.MicroBenchSuite [warmupMs] [measureMs] [threads,...] [outputFile]
+public class MicroBenchSuite {
+
+    public static void main(String[] args) throws Exception {
+        int warmupMillis = BenchSupport.intArg(args, 0, 1000);
+        int measureMillis = BenchSupport.intArg(args, 1, 3000);
+        int[] threadCounts = parseThreads(args.length > 2 ? args[2] : "1,4,16");
+        String outputFile = args.length > 3 ? args[3] : null;
+        BenchSupport.silenceServerLogs();
+
+        MicroHarness harness = new MicroHarness(warmupMillis, measureMillis);
+        List<String> results = new ArrayList<>();
+        results.add(MicroHarness.header());
+        BenchSupport.report(results.get(0));
+        int reported = 1;
+        GameStateMicroBench.run(harness, threadCounts, results);
+        reported = flush(results, reported);
+        GameSessionMicroBench.run(harness, threadCounts, results);
+        reported = flush(results, reported);
+        GameImplMicroBench.run(harness, threadCounts, results);
+        flush(results, reported);
+
+        if (outputFile != null) {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(outputFile))) {
+                writer.println("# java " + System.getProperty("java.version") + ", "
+                        + Runtime.getRuntime().availableProcessors() + " cores, warmup " + warmupMillis
+                        + " ms, measure " + measureMillis + " ms");
+                for (String line : results) {
+                    writer.println(line);
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    private static int flush(List<String> results, int reported) {
+        for (int i = reported; i < results.size(); i++) {
+            BenchSupport.report(results.get(i));
+        }
+        return results.size();
+    }
+
+    private static int[] parseThreads(String list) {
+        String[] parts = list.split(",");
+        int[] threads = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            threads[i] = Integer.parseInt(parts[i].trim());
+        }
+        return threads;
+    }
+}
@@ -0,0 +1,151 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import server.LatencyRecorder;
+
+// Minimal stand-in for JMH, since the project has no build file to pull it in:
+// runs an operation on N threads for a warm-up then a measured period, and
+// reports throughput, time per operation, sampled latency percentiles and
+// bytes allocated per operation by every thread of the JVM (so work handed to
+// the callback dispatcher is included). Operations return a value that is
+// folded into a sink, so the JIT cannot drop them as dead code.
+public final class MicroHarness {
+    // Latency is sampled on one call out of 2^LATENCY_SAMPLE_SHIFT to keep nanoTime out of the hot loop
+    private static final int LATENCY_SAMPLE_SHIFT = 4;
+
+    private final long warmupMillis;
+    private final long measureMillis;
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private long sink;
+
+    public MicroHarness(long warmupMillis, long measureMillis) {
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            ((com.sun.management.ThreadMXBean) threadBean).setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    public interface Operation {
+        long run() throws Exception;
+    }
+
+    // Builds the per-thread state of a benchmark; called once per thread before timing starts
+    public interface Setup {
+        Operation create(int threadIndex) throws Exception;
+    }
+
+    public static String header() {
+        return String.format("%-32s %7s %14s %10s %10s %10s %10s", "Benchmark", "Threads", "ops/s", "ns/op", "B/op", "p50(us)", "p99(us)");
+    }
+
+    public String run(String name, int threads, Setup setup) throws Exception {
+        Operation[] operations = new Operation[threads];
+        for (int t = 0; t < threads; t++) {
+            operations[t] = setup.create(t);
+        }
+
+        AtomicBoolean measuring = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        long[] measuredOps = new long[threads];
+        LatencyRecorder latency = new LatencyRecorder(name);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread worker = new Thread(() -> {
+                Operation operation = operations[index];
+                long local = 0;
+                long ops = 0;
+                boolean counting = false;
+                try {
+                    start.await();
+                    while (running.get()) {
+                        if (!counting && measuring.get()) {
+                            counting = true;
+                            ops = 0;
+                        }
+                        if ((ops & ((1 << LATENCY_SAMPLE_SHIFT) - 1)) == 0 && counting) {
+                            long t0 = System.nanoTime();
+                            local += operation.run();
+                            latency.recordNanos(System.nanoTime() - t0);
+                        } else {
+                            local += operation.run();
+                        }
+                        ops++;
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    measuredOps[index] = counting ? ops : 0;
+                    consume(local);
+                    done.countDown();
+                }
+            }, "bench-" + name + "-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        start.countDown();
+        Thread.sleep(warmupMillis);
+        Map<Long, Long> allocatedBefore = allocatedBytes();
+        long startNanos = System.nanoTime();
+        measuring.set(true);
+        Thread.sleep(measureMillis);
+        // Sampled while the workers are still alive, a finished thread no longer reports its bytes
+        long allocated = allocatedSince(allocatedBefore);
+        running.set(false);
+        long elapsed = System.nanoTime() - startNanos;
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        long total = 0;
+        for (long ops : measuredOps) {
+            total += ops;
+        }
+        double opsPerSecond = total * 1e9 / elapsed;
+        return String.format("%-32s %7d %14.0f %10.1f %10.1f %10d %10d", name, threads, opsPerSecond,
+                threads * (double) elapsed / Math.max(1, total), (double) allocated / Math.max(1, total),
+                latency.getPercentileMicros(50), latency.getPercentileMicros(99));
+    }
+
+    private synchronized void consume(long value) {
+        sink += value;
+    }
+
+    // Bytes allocated so far by every live thread, by thread id
+    private Map<Long, Long> allocatedBytes() {
+        Map<Long, Long> byThread = new HashMap<>();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) return byThread;
+        long[] ids = threadBean.getAllThreadIds();
+        long[] allocated = ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (allocated[i] >= 0) {
+                byThread.put(ids[i], allocated[i]);
+            }
+        }
+        return byThread;
+    }
+
+    // Threads that ended in between are left out rather than counted negatively
+    private long allocatedSince(Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : allocatedBytes().entrySet()) {
+            total += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+        }
+        return total;
+    }
+
+    public synchronized long getSink() {
+        return sink;
+    }
+}
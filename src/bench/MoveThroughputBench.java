@@ -0,0 +1,160 @@
+package bench;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import server.GameImpl;
+
+// Measures accepted moves per second through GameImpl.makeMove while 1..N threads
+// each drive their own set of independent sessions.
+// Usage: java bench.MoveThroughputBench [sessionsPerThread] [secondsPerRun] [maxThreads]
+public class MoveThroughputBench {
+
+    public static void main(String[] args) throws Exception {
+        int sessionsPerThread = BenchSupport.intArg(args, 0, 16);
+        int seconds = BenchSupport.intArg(args, 1, 5);
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = BenchSupport.intArg(args, 2, Math.max(cores, 4));
+        // Server logs stay on: moves must not pay for a shared console lock, so it shows if they do
+
+        BenchSupport.report("cores=" + cores + " sessionsPerThread=" + sessionsPerThread + " seconds=" + seconds);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double movesPerSecond = run(threads, sessionsPerThread, seconds);
+            BenchSupport.report(String.format("threads=%d moves/s=%.0f", threads, movesPerSecond));
+        }
+        System.exit(0);
+    }
+
+    private static double run(int threads, int sessionsPerThread, int seconds) throws Exception {
+        GameImpl game = new GameImpl(threads * sessionsPerThread * 2 + 2);
+        List<List<SessionDriver>> sessionsByThread = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<SessionDriver> sessions = new ArrayList<>();
+            for (int s = 0; s < sessionsPerThread; s++) {
+                StubPlayer p1 = new StubPlayer("t" + t + "-s" + s + "-a");
+                StubPlayer p2 = new StubPlayer("t" + t + "-s" + s + "-b");
+                game.joinGame(p1, p1.getName());
+                game.joinGame(p2, p2.getName());
+                sessions.add(new SessionDriver(game, p1, p2));
+            }
+            sessionsByThread.add(sessions);
+        }
+        for (List<SessionDriver> sessions : sessionsByThread) {
+            for (SessionDriver session : sessions) {
+                session.awaitStart();
+            }
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder moves = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (List<SessionDriver> sessions : sessionsByThread) {
+            Thread driver = new Thread(() -> {
+                try {
+                    start.await();
+                    while (running.get()) {
+                        for (SessionDriver session : sessions) {
+                            if (session.playOnce()) {
+                                moves.increment();
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    BenchSupport.report("driver failed: " + e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            driver.setDaemon(true);
+            driver.start();
+        }
+
+        // Warm up for one second, then measure
+        start.countDown();
+        Thread.sleep(1000);
+        long before = moves.sum();
+        long startNanos = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long measured = moves.sum() - before;
+        long elapsed = System.nanoTime() - startNanos;
+        running.set(false);
+        done.await();
+        UnicastRemoteObject.unexportObject(game, true);
+        return measured * 1e9 / elapsed;
+    }
+
+    // Plays a session from the driver thread. Callbacks reach the stubs
+    // asynchronously, so the driver mirrors the board itself instead of waiting
+    // for them: it learns who starts from the first accepted move, then alternates.
+    static final class SessionDriver {
+        private static final int[][] LINES = {
+            {0, 1, 2}, {3, 4, 5}, {6, 7, 8}, {0, 3, 6}, {1, 4, 7}, {2, 5, 8}, {0, 4, 8}, {2, 4, 6}
+        };
+
+        private final GameImpl game;
+        private final StubPlayer[] players;
+        private final int[] cells = new int[9];
+        private String sessionId;
+        private String[] symbols;
+        private int moves;
+        private int turn = -1;
+
+        SessionDriver(GameImpl game, StubPlayer player1, StubPlayer player2) {
+            this.game = game;
+            this.players = new StubPlayer[] { player1, player2 };
+        }
+
+        // Waits until the session id and final symbols have been delivered
+        void awaitStart() throws Exception {
+            while (players[0].getGameSessionId() == null || players[1].getGameSessionId() == null) {
+                Thread.sleep(1);
+            }
+            sessionId = players[0].getGameSessionId();
+            symbols = new String[] { players[0].getPlayerSymbol(), players[1].getPlayerSymbol() };
+        }
+
+        boolean playOnce() throws RemoteException {
+            int cell = 0;
+            while (cells[cell] != 0) cell++;
+            int mover = turn < 0 ? 0 : turn;
+            boolean accepted = game.makeMove(cell / 3, cell % 3, symbols[mover], sessionId);
+            if (!accepted && turn < 0) {
+                mover = 1;
+                accepted = game.makeMove(cell / 3, cell % 3, symbols[mover], sessionId);
+            }
+            if (!accepted) {
+                restart();
+                return false;
+            }
+            cells[cell] = mover + 1;
+            moves++;
+            turn = 1 - mover;
+            if (moves == 9 || wins(mover + 1)) {
+                restart();
+            }
+            return true;
+        }
+
+        private boolean wins(int side) {
+            for (int[] line : LINES) {
+                if (cells[line[0]] == side && cells[line[1]] == side && cells[line[2]] == side) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void restart() throws RemoteException {
+            game.restartGame(sessionId);
+            Arrays.fill(cells, 0);
+            moves = 0;
+            turn = -1;
+        }
+    }
+}
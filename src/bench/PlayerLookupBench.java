@@ -0,0 +1,72 @@
+package bench;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import server.GameImpl;
+
+// Checks that the cost of a move does not depend on how many players are
+// connected: fills the server with N paired players, then drives a fixed
+// number of sessions from one thread and reports the mean makeMove time.
+// Usage: java bench.PlayerLookupBench [maxPlayers] [drivenSessions] [secondsPerRun]
+public class PlayerLookupBench {
+
+    public static void main(String[] args) throws Exception {
+        int maxPlayers = BenchSupport.intArg(args, 0, 50000);
+        int drivenSessions = BenchSupport.intArg(args, 1, 16);
+        int seconds = BenchSupport.intArg(args, 2, 3);
+        BenchSupport.silenceServerLogs();
+
+        for (int players = 100; players < maxPlayers; players *= 10) {
+            run(players, drivenSessions, seconds);
+        }
+        run(maxPlayers, drivenSessions, seconds);
+        System.exit(0);
+    }
+
+    private static void run(int players, int drivenSessions, int seconds) throws Exception {
+        GameImpl game = new GameImpl(players + 2);
+        List<MoveThroughputBench.SessionDriver> driven = new ArrayList<>();
+        List<StubPlayer> stubs = new ArrayList<>(players);
+        for (int i = 0; i < players; i += 2) {
+            StubPlayer p1 = new StubPlayer("p" + i);
+            StubPlayer p2 = new StubPlayer("p" + (i + 1));
+            game.joinGame(p1, p1.getName());
+            game.joinGame(p2, p2.getName());
+            stubs.add(p1);
+            stubs.add(p2);
+            if (driven.size() < drivenSessions) {
+                driven.add(new MoveThroughputBench.SessionDriver(game, p1, p2));
+            }
+        }
+        for (StubPlayer stub : stubs) {
+            while (stub.getGameSessionId() == null) {
+                Thread.sleep(1);
+            }
+        }
+        for (MoveThroughputBench.SessionDriver session : driven) {
+            session.awaitStart();
+        }
+
+        // Warm up, then measure
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            for (MoveThroughputBench.SessionDriver session : driven) {
+                session.playOnce();
+            }
+        }
+        long calls = 0;
+        long start = System.nanoTime();
+        deadline = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            for (MoveThroughputBench.SessionDriver session : driven) {
+                session.playOnce();
+                calls++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        BenchSupport.report(String.format("players=%d sessions=%d makeMove mean=%.2fus",
+                players, players / 2, elapsed / 1000.0 / calls));
+        UnicastRemoteObject.unexportObject(game, true);
+    }
+}
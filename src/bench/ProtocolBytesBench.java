@@ -0,0 +1,168 @@
+package bench;
+
+import common.BoardSnapshot;
+import common.PlayerCallbackV2;
+import common.TurnUpdate;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.rmi.RemoteException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import server.CallbackDispatcher;
+import server.GameSession;
+import server.PlayerMailbox;
+import server.V2CallbackAdapter;
+
+// Serialized bytes per accepted move for protocol v1 and v2: the move request
+// plus the callbacks sent to both players. Arguments are marshalled the way RMI
+// does it, into a fresh object stream per call.
+// Usage: java bench.ProtocolBytesBench [games]
+public class ProtocolBytesBench {
+
+    public static void main(String[] args) throws Exception {
+        int games = BenchSupport.intArg(args, 0, 200);
+        BenchSupport.silenceServerLogs();
+        CallbackDispatcher dispatcher = new CallbackDispatcher(1);
+
+        // Player 1 speaks v1, player 2 speaks v2 through the server-side adapter
+        V1Recorder v1 = new V1Recorder();
+        V2Recorder v2 = new V2Recorder();
+        V2CallbackAdapter adapter = new V2CallbackAdapter(v2);
+        dispatcher.open(v1, "v1");
+        dispatcher.open(adapter, "v2");
+        GameSession session = new GameSession(1L, v1, adapter, "X", "O", dispatcher);
+        session.notifyCurrentPlayer();
+
+        String sessionId = "game-" + UUID.randomUUID();
+        long v1Requests = 0;
+        long v2Requests = 0;
+        long moves = 0;
+        for (int g = 0; g < games; g++) {
+            while (!session.isGameOver()) {
+                int cell = firstEmptyCell(session);
+                String symbol = session.getCurrentPlayer();
+                v1Requests += callSize(out -> {
+                    out.writeInt(cell / 3);
+                    out.writeInt(cell % 3);
+                    out.writeObject(symbol);
+                    out.writeObject(sessionId);
+                });
+                v2Requests += callSize(out -> {
+                    out.writeLong(1L);
+                    out.writeByte(cell);
+                    out.writeByte(symbol.equals("X") ? 0 : 1);
+                });
+                session.makeMove(cell / 3, cell % 3, symbol);
+                moves++;
+            }
+            session.restartGame();
+        }
+        awaitDelivery(dispatcher);
+
+        // Callback bytes are per recipient; both players receive every move
+        double v1PerMove = (double) v1Requests / moves + 2.0 * v1.moveBytes.get() / v1.moves.get();
+        double v2PerMove = (double) v2Requests / moves + 2.0 * v2.moveBytes.get() / v2.moves.get();
+        BenchSupport.report(String.format("moves=%d", moves));
+        BenchSupport.report(String.format("v1: request=%.1f B, update=%.1f B/player, total=%.1f B/move",
+                (double) v1Requests / moves, (double) v1.moveBytes.get() / v1.moves.get(), v1PerMove));
+        BenchSupport.report(String.format("v2: request=%.1f B, delta=%.1f B/player, total=%.1f B/move (snapshots: %d, %.1f B each)",
+                (double) v2Requests / moves, (double) v2.moveBytes.get() / v2.moves.get(), v2PerMove,
+                v2.snapshots.get(), (double) v2.snapshotBytes.get() / Math.max(1, v2.snapshots.get())));
+        dispatcher.shutdown();
+    }
+
+    interface Marshaller {
+        void write(ObjectOutputStream out) throws IOException;
+    }
+
+    static int callSize(Marshaller marshaller) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            marshaller.write(out);
+            out.flush();
+            return bytes.size();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int firstEmptyCell(GameSession session) {
+        String[][] board = session.getBoardState();
+        for (int cell = 0; cell < 9; cell++) {
+            if (board[cell / 3][cell % 3].isEmpty()) return cell;
+        }
+        return -1;
+    }
+
+    private static void awaitDelivery(CallbackDispatcher dispatcher) throws InterruptedException {
+        boolean pending = true;
+        while (pending) {
+            pending = false;
+            for (PlayerMailbox mailbox : dispatcher.getMailboxes()) {
+                pending |= mailbox.getDepth() > 0;
+            }
+            Thread.sleep(pending ? 1 : 20);
+        }
+    }
+
+    static final class V1Recorder extends StubPlayer {
+        final AtomicLong moves = new AtomicLong();
+        final AtomicLong moveBytes = new AtomicLong();
+
+        V1Recorder() {
+            super("v1");
+        }
+
+        @Override
+        public void updateTurnState(TurnUpdate update) throws RemoteException {
+            super.updateTurnState(update);
+            if (update.getLastCell() >= 0) {
+                moves.incrementAndGet();
+                moveBytes.addAndGet(callSize(out -> out.writeObject(update)));
+            }
+        }
+    }
+
+    static final class V2Recorder implements PlayerCallbackV2 {
+        final AtomicLong moves = new AtomicLong();
+        final AtomicLong moveBytes = new AtomicLong();
+        final AtomicLong snapshots = new AtomicLong();
+        final AtomicLong snapshotBytes = new AtomicLong();
+
+        @Override
+        public void moveApplied(byte cell, byte side, int sequence, byte status) {
+            moves.incrementAndGet();
+            moveBytes.addAndGet(callSize(out -> {
+                out.writeByte(cell);
+                out.writeByte(side);
+                out.writeInt(sequence);
+                out.writeByte(status);
+            }));
+        }
+
+        @Override
+        public void boardSnapshot(BoardSnapshot snapshot) {
+            snapshots.incrementAndGet();
+            snapshotBytes.addAndGet(callSize(out -> out.writeObject(snapshot)));
+        }
+
+        @Override
+        public void sessionStarted(long sessionHandle, byte side, String opponentName) {
+        }
+
+        @Override
+        public void showMessage(String message) {
+        }
+
+        @Override
+        public void opponentLeft() {
+        }
+
+        @Override
+        public boolean ping() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package bench;
+
+import common.GameState;
+import common.MatchRecord;
+import common.PlayerCallback;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import server.LatencyRecorder;
+import server.Matchmaker;
+import server.RatingTable;
+
+// Match quality and time to match of the rating-indexed Matchmaker under a
+// steady arrival rate, against first-come pairing (an unlimited window).
+// Players arrive with ratings drawn around 1500 and leave once paired; for
+// each pair, the Elo chance of the favourite tells how even the game is
+// (0.5 is a coin toss). Then the cost of rating a game and of reading the
+// leaderboard with many rated players.
+// Usage: java bench.RatedMatchmakingBench [arrivalsPerSecond] [seconds] [ratingSpread] [ratedPlayers]
+public class RatedMatchmakingBench {
+
+    public static void main(String[] args) throws Exception {
+        int arrivalsPerSecond = BenchSupport.intArg(args, 0, 2000);
+        int seconds = BenchSupport.intArg(args, 1, 10);
+        int spread = BenchSupport.intArg(args, 2, 300);
+        int ratedPlayers = BenchSupport.intArg(args, 3, 100000);
+        BenchSupport.silenceServerLogs();
+        BenchSupport.report("arrivals=" + arrivalsPerSecond + "/s for " + seconds + " s, ratings 1500 +- " + spread
+                + " (normal), " + ratedPlayers + " rated players");
+        BenchSupport.report(String.format("%-22s %7s %9s %9s %9s %8s %8s %8s %10s", "matchmaking", "pairs",
+                "wait p50", "wait p99", "wait max", "gap p50", "gap p90", "gap p99", "favourite"));
+        run("first come", Integer.MAX_VALUE, 0, arrivalsPerSecond, seconds, spread);
+        run("window 200 +100/s", 200, 100, arrivalsPerSecond, seconds, spread);
+        run("window 50 +25/s", 50, 25, arrivalsPerSecond, seconds, spread);
+
+        // Rating updates and leaderboard reads
+        RatingTable ratings = new RatingTable();
+        String[] names = new String[ratedPlayers];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "player-" + i;
+        }
+        Random random = new Random(3);
+        for (int i = 0; i < ratedPlayers * 5; i++) {
+            ratings.record(names[random.nextInt(ratedPlayers)], names[random.nextInt(ratedPlayers)],
+                    finished(random.nextInt(3)));
+        }
+        MicroHarness harness = new MicroHarness(1000, 3000);
+        BenchSupport.report("");
+        BenchSupport.report(MicroHarness.header());
+        for (int threads : new int[] {1, 4}) {
+            BenchSupport.report(harness.run("rate a game", threads, t -> () -> {
+                ThreadLocalRandom local = ThreadLocalRandom.current();
+                ratings.record(names[local.nextInt(names.length)], names[local.nextInt(names.length)],
+                        finished(local.nextInt(3)));
+                return 1;
+            }));
+        }
+        BenchSupport.report(harness.run("leaderboard top 100", 1, t -> () -> ratings.getLeaderboard(100).size()));
+        BenchSupport.report(harness.run("rating lookup", 1, t -> () ->
+                ratings.ratingOf(names[ThreadLocalRandom.current().nextInt(names.length)])));
+        BenchSupport.report(ratings.toString());
+        System.exit(0);
+    }
+
+    private static void run(String name, int window, int growth, int arrivalsPerSecond, int seconds, int spread)
+            throws Exception {
+        Map<PlayerCallback, Integer> ratingOf = new ConcurrentHashMap<>();
+        AtomicInteger pairs = new AtomicInteger();
+        DoubleAdder favourite = new DoubleAdder();
+        Matchmaker matchmaker = new Matchmaker(window, growth, (first, second) -> {
+            double expected = 1 / (1 + Math.pow(10, (ratingOf.get(second) - ratingOf.get(first)) / 400.0));
+            favourite.add(Math.max(expected, 1 - expected));
+            pairs.incrementAndGet();
+        }, player -> { });
+
+        // Arrivals spread over each millisecond
+        Random random = new Random(11);
+        long start = System.nanoTime();
+        int total = arrivalsPerSecond * seconds;
+        for (int i = 0; i < total; i++) {
+            long due = start + (long) i * 1000000000L / arrivalsPerSecond;
+            long wait = due - System.nanoTime();
+            if (wait > 1000000) {
+                Thread.sleep(wait / 1000000);
+            }
+            StubPlayer player = new StubPlayer("player-" + i);
+            int rating = (int) Math.round(1500 + random.nextGaussian() * spread);
+            ratingOf.put(player, rating);
+            matchmaker.enqueue(player, rating);
+        }
+        // The last ones wait for their window to widen; at most 30 s more
+        long deadline = System.nanoTime() + 30000000000L;
+        while (matchmaker.getWaitingCount() > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        LatencyRecorder wait = matchmaker.getTimeToMatch();
+        LatencyRecorder gap = matchmaker.getRatingGap();
+        BenchSupport.report(String.format("%-22s %7d %7dms %7dms %7dms %8d %8d %8d %9.1f%%", name, pairs.get(),
+                wait.getPercentileMicros(50) / 1000, wait.getPercentileMicros(99) / 1000,
+                wait.getMaxMicros() / 1000, gap.getPercentileMicros(50), gap.getPercentileMicros(90),
+                gap.getPercentileMicros(99), 100 * favourite.sum() / Math.max(1, pairs.get())));
+        matchmaker.shutdown();
+    }
+
+    // A finished game in packed form: 0 player 1 won, 1 player 2 won, 2 draw
+    private static long finished(int result) {
+        long game = MatchRecord.start(GameState.SIDE_X, GameState.SIDE_X);
+        return MatchRecord.finish(game, result == 2 ? MatchRecord.DRAW : result == 0 ? MatchRecord.X_WON
+                : MatchRecord.O_WON);
+    }
+}
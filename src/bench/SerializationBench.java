@@ -0,0 +1,143 @@
+package bench;
+
+import common.BoardCodec;
+import common.BoardSnapshot;
+import common.GameState;
+import common.PlayerCallbackV2;
+import common.TurnUpdate;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+// Serialized size and encode/decode time of the objects sent on every callback,
+// in their compact form (BoardCodec, Externalizable) and in the previous default
+// Java serialization form, kept here as Legacy* copies of the old classes. Each
+// object is written to a fresh object stream, as RMI does for every call.
+// Usage: java bench.SerializationBench [warmupMs] [measureMs]
+public class SerializationBench {
+
+    public static void main(String[] args) throws Exception {
+        int warmupMillis = BenchSupport.intArg(args, 0, 1000);
+        int measureMillis = BenchSupport.intArg(args, 1, 2000);
+        BenchSupport.silenceServerLogs();
+
+        // A position in the middle of a game, with the message a move produces
+        GameState state = new GameState();
+        state.makeMove(0, 0, GameState.SIDE_X);
+        state.makeMove(1, 1, GameState.SIDE_O);
+        state.makeMove(2, 1, GameState.SIDE_X);
+        state.switchPlayer();
+        String[] messages = { "Player 1 played at position (3,2)" };
+        TurnUpdate update = new TurnUpdate(state.getBoardCode(), state.getCurrentSide(), false, GameState.NO_SIDE,
+                messages, 4, 7, GameState.SIDE_X);
+        BoardSnapshot snapshot = new BoardSnapshot(42L, 4, state.getMask(GameState.SIDE_X),
+                state.getMask(GameState.SIDE_O), state.getCurrentSide(), PlayerCallbackV2.STATUS_PLAYING,
+                GameState.NO_SIDE);
+
+        Object[][] cases = {
+            { "board String[][]", state.getBoard() },
+            { "GameState legacy", new LegacyGameState(state) },
+            { "GameState", state },
+            { "TurnUpdate legacy", new LegacyTurnUpdate(update) },
+            { "TurnUpdate", update },
+            { "BoardSnapshot legacy", new LegacyBoardSnapshot(snapshot) },
+            { "BoardSnapshot", snapshot },
+        };
+
+        BenchSupport.report(String.format("%-24s %8s", "Serialized form", "bytes"));
+        for (Object[] c : cases) {
+            BenchSupport.report(String.format("%-24s %8d", c[0], encode(c[1]).length));
+        }
+
+        MicroHarness harness = new MicroHarness(warmupMillis, measureMillis);
+        BenchSupport.report(MicroHarness.header());
+        for (Object[] c : cases) {
+            Object value = c[1];
+            byte[] bytes = encode(value);
+            BenchSupport.report(harness.run("encode " + c[0], 1, t -> () -> encode(value).length));
+            BenchSupport.report(harness.run("decode " + c[0], 1, t -> () -> decode(bytes).hashCode()));
+        }
+        if (!(decode(encode(update)) instanceof TurnUpdate)
+                || BoardCodec.encode(((TurnUpdate) decode(encode(update))).getBoard()) != update.getBoardCode()) {
+            BenchSupport.report("TurnUpdate did not survive a round trip");
+        }
+        System.exit(0);
+    }
+
+    static byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Object decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+    }
+
+    // The classes as they were serialized before BoardCodec
+
+    static final class LegacyGameState implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int[] masks = new int[2];
+        private final int currentSide;
+        private final int winnerSide;
+        private final boolean gameOver;
+
+        LegacyGameState(GameState state) {
+            masks[0] = state.getMask(GameState.SIDE_X);
+            masks[1] = state.getMask(GameState.SIDE_O);
+            currentSide = state.getCurrentSide();
+            winnerSide = state.getWinnerSide();
+            gameOver = state.isGameOver();
+        }
+    }
+
+    static final class LegacyTurnUpdate implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String[][] board;
+        private final String currentPlayer;
+        private final boolean gameOver;
+        private final String winner;
+        private final String[] messages;
+        private final int sequence;
+        private final int lastCell;
+        private final int lastSide;
+
+        LegacyTurnUpdate(TurnUpdate update) {
+            board = update.getBoard();
+            currentPlayer = update.getCurrentPlayer();
+            gameOver = update.isGameOver();
+            winner = update.getWinner();
+            messages = update.getMessages();
+            sequence = update.getSequence();
+            lastCell = update.getLastCell();
+            lastSide = update.getLastSide();
+        }
+    }
+
+    static final class LegacyBoardSnapshot implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final long sessionHandle;
+        private final int sequence;
+        private final short xMask;
+        private final short oMask;
+        private final byte currentSide;
+        private final byte status;
+        private final byte winnerSide;
+
+        LegacyBoardSnapshot(BoardSnapshot snapshot) {
+            sessionHandle = snapshot.getSessionHandle();
+            sequence = snapshot.getSequence();
+            xMask = (short) snapshot.getMask(GameState.SIDE_X);
+            oMask = (short) snapshot.getMask(GameState.SIDE_O);
+            currentSide = (byte) snapshot.getCurrentSide();
+            status = snapshot.getStatus();
+            winnerSide = (byte) snapshot.getWinnerSide();
+        }
+    }
+}
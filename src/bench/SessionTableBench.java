@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import server.CallbackDispatcher;
+import server.GameSession;
+import server.SessionTable;
+
+// Cost of creating a session ID and of resolving one on every move: the former
+// UUID strings in a ConcurrentHashMap against SessionTable handles, looked up
+// by number (protocol v2) and by their "game-<hex>" string (protocol v1).
+// Usage: java bench.SessionTableBench [sessions] [warmupMs] [measureMs] [threads]
+public class SessionTableBench {
+
+    public static void main(String[] args) throws Exception {
+        int sessionCount = BenchSupport.intArg(args, 0, 50000);
+        int warmupMillis = BenchSupport.intArg(args, 1, 1000);
+        int measureMillis = BenchSupport.intArg(args, 2, 2000);
+        int threads = BenchSupport.intArg(args, 3, 4);
+        BenchSupport.silenceServerLogs();
+
+        CallbackDispatcher dispatcher = new CallbackDispatcher(1);
+        StubPlayer player1 = new StubPlayer("p1");
+        StubPlayer player2 = new StubPlayer("p2");
+        SessionTable table = new SessionTable(16);
+        Map<String, GameSession> uuidMap = new ConcurrentHashMap<>();
+        long[] handles = new long[sessionCount];
+        String[] handleIds = new String[sessionCount];
+        String[] uuidIds = new String[sessionCount];
+        for (int i = 0; i < sessionCount; i++) {
+            handles[i] = table.allocate();
+            GameSession session = new GameSession(handles[i], player1, player2, "X", "O", dispatcher);
+            table.put(session);
+            handleIds[i] = SessionTable.idOf(handles[i]);
+            uuidIds[i] = "game-" + UUID.randomUUID().toString();
+            uuidMap.put(uuidIds[i], session);
+        }
+
+        MicroHarness harness = new MicroHarness(warmupMillis, measureMillis);
+        BenchSupport.report("sessions=" + sessionCount + ", v1 id: " + uuidIds[0].length() + " chars before, "
+                + handleIds[0].length() + " chars now");
+        BenchSupport.report(MicroHarness.header());
+        BenchSupport.report(harness.run("new id UUID.randomUUID", 1,
+                t -> () -> ("game-" + UUID.randomUUID().toString()).length()));
+        BenchSupport.report(harness.run("new id SessionTable.allocate", 1, t -> {
+            SessionTable scratch = new SessionTable(16);
+            return () -> {
+                long handle = scratch.allocate();
+                scratch.release(handle);
+                return handle;
+            };
+        }));
+        BenchSupport.report(harness.run("lookup UUID string", threads, t -> {
+            int[] next = { t * 7919 };
+            return () -> uuidMap.get(uuidIds[Math.floorMod(next[0]++, sessionCount)]).getHandle();
+        }));
+        BenchSupport.report(harness.run("lookup v1 handle string", threads, t -> {
+            int[] next = { t * 7919 };
+            return () -> table.get(handleIds[Math.floorMod(next[0]++, sessionCount)]).getHandle();
+        }));
+        BenchSupport.report(harness.run("lookup v2 handle", threads, t -> {
+            int[] next = { t * 7919 };
+            return () -> table.get(handles[Math.floorMod(next[0]++, sessionCount)]).getHandle();
+        }));
+
+        // A guessed handle (right slot, wrong nonce) must not resolve
+        int misses = 0;
+        for (long handle : handles) {
+            if (table.get(handle ^ 1L << 40) == null) misses++;
+        }
+        BenchSupport.report("forged handles rejected: " + misses + "/" + sessionCount);
+        dispatcher.shutdown();
+        System.exit(0);
+    }
+}
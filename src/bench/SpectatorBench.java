@@ -0,0 +1,185 @@
+package bench;
+
+import common.BinaryProtocol;
+import common.GameState;
+import common.TurnUpdate;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import server.CallbackDispatcher;
+import server.GameSession;
+import server.LatencyRecorder;
+import server.SessionListener;
+import server.SpectatorFeed;
+
+// Fan-out of a session's updates to 1, 100 and 10,000 spectators, in process:
+// the spectators sit on a few threads standing for the transport's event
+// loops and copy each frame out as a socket write would. Per move: the CPU
+// time of GameSession.makeMove (the players' cost, which should not grow with
+// the spectators), the time until every spectator has the update, and the
+// time encoding the update once per spectator would take instead. Then the
+// same with 1% of the spectators slow to drain, which should get snapshots
+// while the others keep pace.
+// Usage: java bench.SpectatorBench [moves] [loops]
+public class SpectatorBench {
+
+    public static void main(String[] args) throws Exception {
+        int moves = BenchSupport.intArg(args, 0, 2000);
+        int loopCount = BenchSupport.intArg(args, 1, 4);
+        BenchSupport.silenceServerLogs();
+        ExecutorService[] loops = new ExecutorService[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = Executors.newSingleThreadExecutor();
+        }
+        CallbackDispatcher dispatcher = new CallbackDispatcher(2);
+
+        BenchSupport.report(String.format("%-12s %6s %14s %14s %16s %16s %16s %10s", "spectators", "slow",
+                "join all(ms)", "move cpu(us)", "fanout p50(us)", "fanout p99(us)", "encode each(us)", "catch-ups"));
+        for (int spectators : new int[] {1, 100, 10000}) {
+            run(spectators, 0, moves, loops, dispatcher);
+        }
+        run(10000, 100, moves, loops, dispatcher);
+
+        for (ExecutorService loop : loops) {
+            loop.shutdown();
+            loop.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        dispatcher.shutdown();
+        System.exit(0);
+    }
+
+    private static void run(int count, int slow, int moves, ExecutorService[] loops, CallbackDispatcher dispatcher)
+            throws Exception {
+        StubPlayer p1 = new QuietPlayer("a");
+        StubPlayer p2 = new QuietPlayer("b");
+        dispatcher.open(p1, p1.getName());
+        dispatcher.open(p2, p2.getName());
+        GameSession session = new GameSession(1, p1, p2, p1.getName(), p2.getName(), "X", "O", dispatcher,
+                SessionListener.NONE);
+        List<BenchSpectator> spectators = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            spectators.add(new BenchSpectator(loops[i % loops.length], i < slow));
+        }
+        int fast = count - slow;
+        BenchSpectator.arrivals = new CountDownLatch(fast);
+        long joinStart = System.nanoTime();
+        for (BenchSpectator spectator : spectators) {
+            session.watch(spectator);
+        }
+        // Everyone has the snapshot
+        BenchSpectator.arrivals.await();
+        long joinNanos = System.nanoTime() - joinStart;
+
+        LatencyRecorder fanout = new LatencyRecorder("fanout");
+        long encodeNanos = 0;
+        Random random = new Random(3);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long moveCpu = 0;
+        for (int i = 0; i < moves; i++) {
+            BenchSpectator.arrivals = new CountDownLatch(fast);
+            long cpu = threads.getCurrentThreadCpuTime();
+            long start = System.nanoTime();
+            playRandomMove(session, random);
+            moveCpu += threads.getCurrentThreadCpuTime() - cpu;
+            BenchSpectator.arrivals.await();
+            long arrived = System.nanoTime();
+            fanout.recordNanos(arrived - start);
+            if (i % 10 == 0) {
+                // The alternative: one encoding per spectator
+                TurnUpdate update = TurnUpdate.of(new GameState(), new String[] {"Player 1 played at position (1,1)"},
+                        i, 0, GameState.SIDE_X);
+                long t0 = System.nanoTime();
+                for (int s = 0; s < count; s++) {
+                    BenchSpectator.sink += BinaryProtocol.turnUpdateFrame(update).remaining();
+                }
+                encodeNanos += System.nanoTime() - t0;
+            }
+        }
+        BenchSupport.report(String.format("%-12d %6d %14.1f %14.1f %16d %16d %16.1f %10d", count, slow,
+                joinNanos / 1e6, moveCpu / 1e3 / moves, fanout.getPercentileMicros(50),
+                fanout.getPercentileMicros(99), encodeNanos / 1e3 / ((moves + 9) / 10),
+                session.getSpectatorSnapshots() - count));
+        session.closeSpectators();
+    }
+
+    private static void playRandomMove(GameSession session, Random random) throws Exception {
+        if (session.isGameOver()) {
+            session.restartGame();
+            return;
+        }
+        int side = GameState.sideOf(session.getCurrentPlayer());
+        while (!session.makeMove(random.nextInt(3), random.nextInt(3), side)) {
+            // Taken cell, try another
+        }
+    }
+
+    // Drops the players' updates: only the spectators are measured
+    private static final class QuietPlayer extends StubPlayer {
+        QuietPlayer(String name) {
+            super(name);
+        }
+
+        @Override
+        public void updateTurnState(TurnUpdate update) {
+        }
+
+        @Override
+        public void showMessage(String message) {
+        }
+    }
+
+    // Copies each frame out like a socket write; a slow one then takes SLOW_DRAIN to drain
+    private static final class BenchSpectator implements SpectatorFeed.Spectator {
+        static volatile CountDownLatch arrivals;
+        static volatile long sink;
+        private static final long SLOW_DRAIN = 20_000_000L;
+        // One scratch buffer per loop thread, the kernel's socket buffer of this stand-in
+        private static final ThreadLocal<ByteBuffer> SOCKET = ThreadLocal.withInitial(
+                () -> ByteBuffer.allocateDirect(BinaryProtocol.MAX_FRAME_SIZE));
+
+        private final ExecutorService loop;
+        private final boolean slow;
+        private volatile long drainedAt;
+
+        BenchSpectator(ExecutorService loop, boolean slow) {
+            this.loop = loop;
+            this.slow = slow;
+        }
+
+        @Override
+        public ExecutorService executor() {
+            return loop;
+        }
+
+        @Override
+        public boolean isBacklogged() {
+            return slow && System.nanoTime() < drainedAt;
+        }
+
+        @Override
+        public void deliver(ByteBuffer frame) {
+            ByteBuffer socket = SOCKET.get();
+            socket.clear();
+            socket.put(frame.duplicate());
+            if (slow) drainedAt = System.nanoTime() + SLOW_DRAIN;
+        }
+
+        @Override
+        public void delivered() {
+            if (!slow) {
+                arrivals.countDown();
+            }
+        }
+
+        @Override
+        public void feedEnded() {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package bench;
+
+import common.PlayerCallback;
+import common.PlayerCallbackTurnState;
+import common.TurnUpdate;
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process PlayerCallback used by the benchmarks: no RMI export, it only
+// remembers what the server told it so a driver thread can play its moves.
+public class StubPlayer implements PlayerCallbackTurnState {
+    private final String name;
+    private volatile String symbol;
+    private volatile String sessionId;
+    private volatile boolean myTurn;
+    private volatile boolean gameOver;
+    private volatile String[][] board;
+    // Remote calls received and how many of them carried a full board
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong boardPayloads = new AtomicLong();
+    // Simulated network round-trip for ping()
+    private volatile long pingDelayMillis;
+
+    public StubPlayer(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isMyTurn() {
+        return myTurn;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    public void setPingDelayMillis(long pingDelayMillis) {
+        this.pingDelayMillis = pingDelayMillis;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getBoardPayloads() {
+        return boardPayloads.get();
+    }
+
+    @Override
+    public void showMessage(String message) throws RemoteException {
+        calls.incrementAndGet();
+    }
+
+    @Override
+    public void assignSymbol(String symbol) throws RemoteException {
+        calls.incrementAndGet();
+        this.symbol = symbol;
+    }
+
+    @Override
+    public void notifyTurn(String symbol) throws RemoteException {
+        calls.incrementAndGet();
+        this.myTurn = symbol.equals(this.symbol);
+    }
+
+    @Override
+    public void updateBoard(String[][] board) throws RemoteException {
+        calls.incrementAndGet();
+        boardPayloads.incrementAndGet();
+        this.board = board;
+    }
+
+    @Override
+    public void updateTurnState(TurnUpdate update) throws RemoteException {
+        calls.incrementAndGet();
+        boardPayloads.incrementAndGet();
+        this.board = update.getBoard();
+        this.gameOver = update.isGameOver();
+        this.myTurn = update.isTurnOf(symbol);
+    }
+
+    @Override
+    public void gameOver(String winner) throws RemoteException {
+        calls.incrementAndGet();
+        this.gameOver = true;
+        this.myTurn = false;
+    }
+
+    @Override
+    public void promptForRestart() throws RemoteException {
+        calls.incrementAndGet();
+    }
+
+    @Override
+    public boolean wantsToPlayAgain() throws RemoteException {
+        calls.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public String getPlayerSymbol() throws RemoteException {
+        calls.incrementAndGet();
+        return symbol;
+    }
+
+    @Override
+    public void promptForNewOpponent() throws RemoteException {
+        calls.incrementAndGet();
+        this.myTurn = false;
+    }
+
+    @Override
+    public boolean ping() throws RemoteException {
+        calls.incrementAndGet();
+        if (pingDelayMillis > 0) {
+            try {
+                Thread.sleep(pingDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void setGameSession(String sessionId) throws RemoteException {
+        calls.incrementAndGet();
+        this.sessionId = sessionId;
+        this.gameOver = false;
+    }
+
+    @Override
+    public void setOpponentInfo(String opponentName) throws RemoteException {
+        calls.incrementAndGet();
+    }
+
+    @Override
+    public String getGameSessionId() throws RemoteException {
+        calls.incrementAndGet();
+        return sessionId;
+    }
+}
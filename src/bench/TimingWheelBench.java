@@ -0,0 +1,100 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import server.LatencyRecorder;
+import server.TimingWheel;
+
+// Tracks a large population of players in the expiry timing wheel on a simulated
+// clock: most players touch regularly, a small share goes silent. Reports the
+// cost of a touch and of a wheel tick, compared with one full scan of a
+// lastSeen table of the same size, and how late the silent players expire.
+// Usage: java bench.TimingWheelBench [players] [simulatedSeconds]
+public class TimingWheelBench {
+    private static final long TIMEOUT_MS = 60000;
+    private static final long TICK_MS = 100;
+    // Each player touches about every 10 simulated seconds, 1% never touch again
+    private static final long TOUCH_PERIOD_MS = 10000;
+    private static final int SILENT_PERCENT = 1;
+
+    public static void main(String[] args) {
+        int players = BenchSupport.intArg(args, 0, 100000);
+        int simulatedSeconds = BenchSupport.intArg(args, 1, 180);
+        Random random = new Random(42);
+
+        long[] clock = {0};
+        long[] maxLateness = {0};
+        int[] expiredCount = {0};
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK_MS, 1024, 0, timeout -> {
+            maxLateness[0] = Math.max(maxLateness[0], clock[0] - timeout.getDeadline());
+            expiredCount[0]++;
+        });
+
+        List<TimingWheel<Integer>.Timeout> timeouts = new ArrayList<>(players);
+        Map<Integer, Long> lastSeen = new ConcurrentHashMap<>();
+        long[] nextTouch = new long[players];
+        boolean[] silent = new boolean[players];
+        for (int i = 0; i < players; i++) {
+            timeouts.add(wheel.schedule(i, TIMEOUT_MS));
+            lastSeen.put(i, 0L);
+            nextTouch[i] = random.nextInt((int) TOUCH_PERIOD_MS);
+            silent[i] = random.nextInt(100) < SILENT_PERCENT;
+        }
+
+        LatencyRecorder tickCost = new LatencyRecorder("tick");
+        int[] due = new int[players];
+        long touches = 0;
+        long touchNanos = 0;
+        for (long now = TICK_MS; now <= simulatedSeconds * 1000L; now += TICK_MS) {
+            clock[0] = now;
+            int dueCount = 0;
+            for (int i = 0; i < players; i++) {
+                if (!silent[i] && nextTouch[i] <= now) {
+                    due[dueCount++] = i;
+                    nextTouch[i] = now + TOUCH_PERIOD_MS;
+                }
+            }
+            long t0 = System.nanoTime();
+            for (int k = 0; k < dueCount; k++) {
+                timeouts.get(due[k]).extend(now + TIMEOUT_MS);
+            }
+            touchNanos += System.nanoTime() - t0;
+            touches += dueCount;
+            t0 = System.nanoTime();
+            wheel.advance(now);
+            tickCost.recordNanos(System.nanoTime() - t0);
+        }
+
+        // The approach the wheel replaces: every sweep walks the whole table
+        LatencyRecorder scanCost = new LatencyRecorder("full scan");
+        for (int round = 0; round < 50; round++) {
+            long t0 = System.nanoTime();
+            int overdue = 0;
+            long now = simulatedSeconds * 1000L;
+            for (Map.Entry<Integer, Long> entry : lastSeen.entrySet()) {
+                if (now - entry.getValue() > TIMEOUT_MS) {
+                    overdue++;
+                }
+            }
+            scanCost.recordNanos(System.nanoTime() - t0);
+            if (overdue < 0) {
+                BenchSupport.report("unreachable");
+            }
+        }
+
+        int silentCount = 0;
+        for (boolean s : silent) {
+            if (s) silentCount++;
+        }
+        BenchSupport.report("players=" + players + " simulated=" + simulatedSeconds + "s tick=" + TICK_MS + "ms timeout=" + TIMEOUT_MS + "ms");
+        BenchSupport.report(String.format("touches: %d, %.1f ns/touch", touches,
+                (double) touchNanos / Math.max(1, touches)));
+        BenchSupport.report("wheel tick: " + tickCost);
+        BenchSupport.report("full scan of " + players + " players: " + scanCost);
+        BenchSupport.report("silent players=" + silentCount + " expired=" + expiredCount[0]
+                + " still tracked=" + wheel.size() + " max lateness=" + maxLateness[0] + "ms");
+    }
+}
@@ -0,0 +1,90 @@
+package bench;
+
+import common.GameState;
+import common.TurnUpdate;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import server.GameImpl;
+import server.PositionTable;
+import server.ServerConfig;
+import server.Tournament;
+
+// A tournament of bots through GameImpl called in-process, in each format:
+// the time each round takes from its pairing to its last game, the part of
+// it spent pairing and opening the sessions, and the whole tournament. The
+// bots answer each update at once with a move from the position table, with
+// some mistakes so that games are not all drawn.
+// Usage: java bench.TournamentBench [players] [mistakeRate%]
+public class TournamentBench {
+
+    public static void main(String[] args) throws Exception {
+        int playerCount = BenchSupport.intArg(args, 0, 1024);
+        double mistakeRate = BenchSupport.intArg(args, 1, 20) / 100.0;
+        BenchSupport.silenceServerLogs();
+
+        // Warm-up for the JIT, unreported
+        for (Tournament.Format format : Tournament.Format.values()) {
+            run(format, playerCount, mistakeRate);
+        }
+        for (Tournament.Format format : Tournament.Format.values()) {
+            long start = System.nanoTime();
+            Tournament tournament = run(format, playerCount, mistakeRate);
+            long nanos = System.nanoTime() - start;
+            BenchSupport.report(String.format("%s, %d players, %d rounds, %.0f ms from the first join to the end",
+                    format.name().toLowerCase(), playerCount, tournament.getRoundCount(), nanos / 1e6));
+            BenchSupport.report(String.format("%-6s %12s %12s", "round", "round(ms)", "pairing(ms)"));
+            List<Long> rounds = tournament.getRoundNanos();
+            List<Long> pairings = tournament.getPairingNanos();
+            for (int r = 0; r < rounds.size(); r++) {
+                BenchSupport.report(String.format("%-6d %12.1f %12.1f", r + 1, rounds.get(r) / 1e6,
+                        pairings.get(r) / 1e6));
+            }
+            List<Tournament.Standing> standings = tournament.getStandings();
+            BenchSupport.report("podium: " + standings.subList(0, Math.min(3, standings.size())));
+            BenchSupport.report("");
+        }
+        System.exit(0);
+    }
+
+    // One tournament on a server of its own, returned once it is over
+    private static Tournament run(Tournament.Format format, int playerCount, double mistakeRate) throws Exception {
+        ServerConfig config = new ServerConfig().setMaxPlayers(2 * playerCount).setBotWaitMillis(-1)
+                .setTournament(format.name()).setTournamentPlayers(playerCount);
+        GameImpl game = new GameImpl(config);
+        Tournament tournament = game.getTournament();
+        for (int i = 0; i < playerCount; i++) {
+            BotEntrant bot = new BotEntrant("player" + i, game, mistakeRate);
+            game.joinGame(bot, bot.getName());
+        }
+        while (tournament.getFinishedCount() == 0) {
+            Thread.sleep(5);
+        }
+        game.getMatchmaker().shutdown();
+        return tournament;
+    }
+
+    // Plays as soon as it is its turn, on the thread delivering the update
+    private static final class BotEntrant extends StubPlayer {
+        private final GameImpl game;
+        private final double mistakeRate;
+
+        BotEntrant(String name, GameImpl game, double mistakeRate) {
+            super(name);
+            this.game = game;
+            this.mistakeRate = mistakeRate;
+        }
+
+        @Override
+        public void updateTurnState(TurnUpdate update) throws RemoteException {
+            super.updateTurnState(update);
+            String symbol = getPlayerSymbol();
+            if (update.isGameOver() || !update.isTurnOf(symbol)) return;
+            int side = GameState.sideOf(symbol);
+            int own = (int) update.getCells(side)[0];
+            int other = (int) update.getCells(side ^ 1)[0];
+            int cell = PositionTable.chooseMove(own, other, mistakeRate, ThreadLocalRandom.current());
+            game.makeMove(cell / 3, cell % 3, symbol, getGameSessionId());
+        }
+    }
+}
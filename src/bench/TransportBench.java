@@ -0,0 +1,314 @@
+package bench;
+
+import client.GameClient;
+import client.NioGameClient;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import server.GameImpl;
+import server.LatencyRecorder;
+import server.NioGameServer;
+import server.ServerConfig;
+
+// Serves the same number of players over the binary TCP transport and over RMI
+// and compares what the server pays for them: sockets, threads and heap, scaled
+// to 10 000 players, plus the move round trip seen by the players. The players
+// run in a child JVM so that only the server is measured in this one.
+// Usage: java bench.TransportBench [players] [seconds] [thinkMs]
+public class TransportBench {
+    private static final int RMI_PORT = 1099;
+    private static final int TCP_PORT = 1100;
+    private static final String SERVICE_NAME = "GameService";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("client")) {
+            runPlayers(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+        int players = BenchSupport.intArg(args, 0, 2000);
+        int seconds = BenchSupport.intArg(args, 1, 20);
+        int thinkMillis = BenchSupport.intArg(args, 2, 1000);
+        BenchSupport.silenceServerLogs();
+        Registry registry = LocateRegistry.createRegistry(RMI_PORT);
+
+        BenchSupport.report("players=" + players + ", " + seconds + " s, think time " + thinkMillis + " ms, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        // TCP first: the RMI connection threads of the other run would linger in this JVM
+        Sample tcp = measure("tcp", registry, players, seconds, thinkMillis);
+        Sample rmi = measure("rmi", registry, players, seconds, thinkMillis);
+        BenchSupport.report(String.format("%-5s %8s %8s %10s %10s %9s %9s %9s %10s", "", "sockets", "threads",
+                "heap MB", "join p50", "move p50", "move p99", "moves/s", "errors"));
+        BenchSupport.report("per 10k players:");
+        for (Sample sample : new Sample[] { tcp, rmi }) {
+            BenchSupport.report(sample.format(players));
+        }
+        // RMI shares its connections between all the remote objects of a JVM
+        BenchSupport.report("note: all players share one client JVM here, so RMI reuses a few pooled sockets;"
+                + " real RMI clients each open their own, in both directions");
+        System.exit(0);
+    }
+
+    private static Sample measure(String transport, Registry registry, int players, int seconds, int thinkMillis)
+            throws Exception {
+        ServerConfig config = ServerConfig.fromSystemProperties().setMaxPlayers(players).setNioPort(0);
+        GameImpl game = new GameImpl(config);
+        NioGameServer tcpServer = null;
+        if (transport.equals("tcp")) {
+            tcpServer = new NioGameServer(game, TCP_PORT, config.getNioLoops());
+            tcpServer.start();
+        } else {
+            registry.rebind(SERVICE_NAME, game);
+        }
+        Sample sample = new Sample(transport);
+        System.gc();
+        int baseThreads = threadCount();
+        int baseSockets = socketCount();
+        long baseHeap = usedHeap();
+
+        Process child = startPlayers(transport, players, seconds, thinkMillis);
+        BufferedReader fromChild = new BufferedReader(new InputStreamReader(child.getInputStream()));
+        PrintWriter toChild = new PrintWriter(child.getOutputStream(), true);
+        String line;
+        while ((line = fromChild.readLine()) != null) {
+            if (line.startsWith("CONNECTED")) {
+                sample.joinLine = line.substring("CONNECTED ".length());
+                // Let the server settle (matchmaking, first callbacks) before sampling it
+                Thread.sleep(2000);
+                System.gc();
+                sample.sockets = socketCount() - baseSockets;
+                sample.threads = threadCount() - baseThreads;
+                sample.heapBytes = usedHeap() - baseHeap;
+                toChild.println("GO");
+            } else if (line.startsWith("RESULT")) {
+                sample.resultLine = line.substring("RESULT ".length());
+            } else {
+                BenchSupport.report("[" + transport + " players] " + line);
+            }
+        }
+        child.waitFor();
+
+        if (tcpServer != null) {
+            tcpServer.shutdown();
+        } else {
+            registry.unbind(SERVICE_NAME);
+        }
+        UnicastRemoteObject.unexportObject(game, true);
+        game.getHeartbeatMonitor().shutdown();
+        return sample;
+    }
+
+    private static Process startPlayers(String transport, int players, int seconds, int thinkMillis)
+            throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-Xss256k");
+        command.add("-Dthink.ms=" + thinkMillis);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TransportBench.class.getName());
+        command.add("client");
+        command.add(transport);
+        command.add(String.valueOf(players));
+        command.add(String.valueOf(seconds));
+        command.add(String.valueOf(transport.equals("tcp") ? TCP_PORT : RMI_PORT));
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    private static int threadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // Open sockets of this JVM (Linux only, -1 elsewhere)
+    private static int socketCount() {
+        Path fds = Paths.get("/proc/self/fd");
+        if (!Files.isDirectory(fds)) return -1;
+        try (Stream<Path> entries = Files.list(fds)) {
+            return (int) entries.filter(fd -> {
+                try {
+                    return Files.readSymbolicLink(fd).toString().startsWith("socket:");
+                } catch (Exception e) {
+                    return false;
+                }
+            }).count();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static final class Sample {
+        private final String transport;
+        private int sockets;
+        private int threads;
+        private long heapBytes;
+        private String joinLine = "-";
+        private String resultLine = "- - - -";
+
+        Sample(String transport) {
+            this.transport = transport;
+        }
+
+        String format(int players) {
+            double scale = 10000.0 / players;
+            String[] result = resultLine.split(" ");
+            return String.format("%-5s %8d %8d %10.1f %10s %9s %9s %9s %10s", transport, Math.round(sockets * scale),
+                    Math.round(threads * scale), heapBytes * scale / (1024 * 1024), joinLine,
+                    result[0], result[1], result[2], result[3]);
+        }
+    }
+
+    // Child JVM: connects the players, waits for GO, then plays for the given time
+
+    private static final LatencyRecorder moveLatency = new LatencyRecorder("makeMove");
+    private static final LongAdder moves = new LongAdder();
+    private static final LongAdder errors = new LongAdder();
+    private static volatile boolean running = true;
+
+    private static void runPlayers(String transport, int players, int seconds, int port) throws Exception {
+        int thinkMillis = Integer.getInteger("think.ms", 1000);
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(8, runnable -> {
+            Thread thread = new Thread(runnable, "bench-bot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LatencyRecorder joinLatency = new LatencyRecorder("join");
+        List<Player> connected = new ArrayList<>();
+        ExecutorService connectors = Executors.newFixedThreadPool(16);
+        List<Future<Player>> pending = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            String name = transport + "-bot-" + i;
+            pending.add(connectors.submit(() -> {
+                long t0 = System.nanoTime();
+                Player player = new Player(transport, port, name, scheduler, thinkMillis);
+                joinLatency.recordNanos(System.nanoTime() - t0);
+                return player;
+            }));
+        }
+        for (Future<Player> future : pending) {
+            try {
+                connected.add(future.get());
+            } catch (Exception e) {
+                errors.increment();
+            }
+        }
+        connectors.shutdown();
+        System.out.println("CONNECTED " + (joinLatency.getPercentileMicros(50) / 1000) + "ms");
+
+        BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
+        while (!"GO".equals(stdin.readLine())) {
+            Thread.sleep(10);
+        }
+        // Players already waiting on their turn start now
+        for (Player player : connected) {
+            player.schedule(player::play);
+        }
+        moveLatency.reset();
+        moves.reset();
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        running = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.println("RESULT " + (moveLatency.getPercentileMicros(50) / 1000.0) + "ms "
+                + (moveLatency.getPercentileMicros(99) / 1000.0) + "ms "
+                + Math.round(moves.sum() / elapsed) + " " + errors.sum());
+        System.out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    // One bot on either transport; both clients expose the same callbacks
+    private static final class Player {
+        private final ScheduledExecutorService scheduler;
+        private final int thinkMillis;
+        private final GameClient rmi;
+        private final NioGameClient tcp;
+        private volatile String[][] board;
+
+        Player(String transport, int port, String name, ScheduledExecutorService scheduler, int thinkMillis)
+                throws Exception {
+            this.scheduler = scheduler;
+            this.thinkMillis = thinkMillis;
+            if (transport.equals("tcp")) {
+                tcp = new NioGameClient("localhost", port, name, scheduler);
+                rmi = null;
+                tcp.setBoardUpdateCallback(update -> board = update);
+                tcp.setTurnCallback(() -> schedule(this::play));
+                tcp.setGameOverCallback(result -> schedule(this::restart));
+            } else {
+                rmi = new GameClient("localhost", name, scheduler);
+                tcp = null;
+                rmi.setBoardUpdateCallback(update -> board = update);
+                rmi.setTurnCallback(() -> schedule(this::play));
+                rmi.setGameOverCallback(result -> schedule(this::restart));
+            }
+        }
+
+        void schedule(Runnable action) {
+            if (running) {
+                // Spread the think time so the players do not move in lockstep
+                int delay = thinkMillis / 2 + ThreadLocalRandom.current().nextInt(thinkMillis + 1);
+                scheduler.schedule(action, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private boolean isMyTurn() {
+            return tcp != null ? tcp.isMyTurn() : rmi.isMyTurn();
+        }
+
+        void play() {
+            String[][] current = board;
+            if (!running || current == null || !isMyTurn()) return;
+            int[] free = new int[9];
+            int count = 0;
+            for (int cell = 0; cell < 9; cell++) {
+                if (current[cell / 3][cell % 3].isEmpty()) free[count++] = cell;
+            }
+            if (count == 0) return;
+            int cell = free[ThreadLocalRandom.current().nextInt(count)];
+            long t0 = System.nanoTime();
+            try {
+                boolean applied = tcp != null ? tcp.makeMove(cell / 3, cell % 3) : rmi.makeMove(cell / 3, cell % 3);
+                if (applied) {
+                    moveLatency.recordNanos(System.nanoTime() - t0);
+                    moves.increment();
+                }
+            } catch (Exception e) {
+                errors.increment();
+            }
+        }
+
+        // The X player of a finished game starts the next one
+        void restart() {
+            try {
+                if (tcp != null) {
+                    if ("X".equals(tcp.getPlayerSymbol())) tcp.requestNewGame();
+                } else if ("X".equals(rmi.getPlayerSymbol())) {
+                    rmi.requestNewGame();
+                }
+            } catch (Exception e) {
+                errors.increment();
+            }
+        }
+    }
+}
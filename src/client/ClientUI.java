@@ -9,7 +9,9 @@ import javax.swing.*;
 public class ClientUI extends JFrame {
 
     private final GameClient gameClient;
-    private final JButton[][] buttons = new JButton[3][3];
+    // Rebuilt when the server's board turns out to be another size
+    private volatile JButton[][] buttons = new JButton[0][0];
+    private final JPanel gamePanel = new JPanel();
     private final JLabel statusLabel = new JLabel("Waiting for connection...");
     private final JLabel playerInfoLabel = new JLabel();
 
@@ -31,17 +33,8 @@ public class ClientUI extends JFrame {
 
         infoPanel.add(playerInfoLabel);
 
-        // Game board panel
-        JPanel gamePanel = new JPanel(new GridLayout(3, 3));
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                buttons[i][j] = new JButton("");
-                buttons[i][j].setFont(new Font("Arial", Font.BOLD, 60));
-                final int x = i, y = j;
-                buttons[i][j].addActionListener(e -> makeMove(x, y));
-                gamePanel.add(buttons[i][j]);
-            }
-        }
+        // Game board panel, 3x3 until the first update says otherwise
+        buildBoard(3);
 
         // Control panel
         JPanel controlPanel = new JPanel(new BorderLayout());
@@ -74,6 +67,30 @@ public class ClientUI extends JFrame {
         setVisible(true);
     }
 
+    // Called on the event dispatch thread
+    private void buildBoard(int size) {
+        gamePanel.removeAll();
+        gamePanel.setLayout(new GridLayout(size, size));
+        buttons = new JButton[size][size];
+        // Smaller marks on bigger boards, so that they still fit the window
+        Font font = new Font("Arial", Font.BOLD, Math.max(10, 180 / size));
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                buttons[i][j] = new JButton("");
+                buttons[i][j].setFont(font);
+                buttons[i][j].setMargin(new Insets(0, 0, 0, 0));
+                final int x = i, y = j;
+                buttons[i][j].addActionListener(e -> makeMove(x, y));
+                gamePanel.add(buttons[i][j]);
+            }
+        }
+        if (size > 3) {
+            setSize(Math.max(400, Math.min(900, size * 40)), Math.max(500, Math.min(1000, size * 40 + 100)));
+        }
+        gamePanel.revalidate();
+        gamePanel.repaint();
+    }
+
     private void setupCallbacks() {
         gameClient.setBoardUpdateCallback(this::updateBoard);
         gameClient.setStatusCallback(this::setStatus);
@@ -115,9 +132,11 @@ public class ClientUI extends JFrame {
     }
 
     public void setBoardEnabled(boolean enabled) {
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                buttons[i][j].setEnabled(enabled && buttons[i][j].getText().isEmpty());
+        // Also called from RMI threads
+        JButton[][] current = buttons;
+        for (int i = 0; i < current.length; i++) {
+            for (int j = 0; j < current.length; j++) {
+                current[i][j].setEnabled(enabled && current[i][j].getText().isEmpty());
             }
         }
     }
@@ -145,8 +164,11 @@ public class ClientUI extends JFrame {
 
     public void updateBoard(String[][] board) {
         SwingUtilities.invokeLater(() -> {
-            for (int i = 0; i < 3; i++) {
-                for (int j = 0; j < 3; j++) {
+            if (board.length != buttons.length) {
+                buildBoard(board.length);
+            }
+            for (int i = 0; i < buttons.length; i++) {
+                for (int j = 0; j < buttons.length; j++) {
                     buttons[i][j].setText(board[i][j] == null || board[i][j].isEmpty() ? "" : board[i][j]);
                     buttons[i][j].setEnabled(gameClient.isMyTurn() && (board[i][j] == null || board[i][j].isEmpty()));
                 }
@@ -167,8 +189,8 @@ public class ClientUI extends JFrame {
     }
 
     private void resetBoard() {
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
+        for (int i = 0; i < buttons.length; i++) {
+            for (int j = 0; j < buttons.length; j++) {
                 buttons[i][j].setText("");
                 buttons[i][j].setEnabled(true);
             }
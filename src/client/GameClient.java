@@ -1,16 +1,25 @@
 package client;
 
 import common.GameInterface;
+import common.LobbyInterface;
 import common.PlayerCallback;
+import common.PlayerCallbackTurnState;
+import common.TurnUpdate;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
-public class GameClient implements PlayerCallback {
-    private GameInterface game;
+public class GameClient implements PlayerCallbackTurnState {
+    private volatile GameInterface game;
+    private final String host;
     private String playerSymbol;
     private final String playerName;
     private boolean myTurn = false;
@@ -18,6 +27,17 @@ public class GameClient implements PlayerCallback {
     private boolean gameInProgress = false;
     private String gameSessionId = null;
     private String opponentName = null;
+    // Side of the server's board, learnt from the updates
+    private volatile int boardSize = 3;
+    private PlayerCallback callbackStub;
+    private final ScheduledExecutorService heartbeatScheduler;
+    // False when the scheduler is shared with other clients (load generator)
+    private final boolean ownsHeartbeatScheduler;
+    private final ScheduledFuture<?> heartbeatTask;
+    private volatile boolean consoleLogging = true;
+    
+    // Interval between heartbeats, well below the server's inactivity timeout
+    private static final long HEARTBEAT_INTERVAL_S = 15;
     
     // Callbacks for the UI
     private Consumer<String[][]> boardUpdateCallback;
@@ -28,8 +48,55 @@ public class GameClient implements PlayerCallback {
     private Supplier<Boolean> restartGameCallback;
 
     public GameClient(String host, String playerName) throws RemoteException {
+        this(host, playerName, null);
+    }
+
+    // With a shared scheduler many clients can run in one JVM without a thread each
+    public GameClient(String host, String playerName, ScheduledExecutorService sharedScheduler) throws RemoteException {
+        this.host = host;
         this.playerName = playerName;
+        // Clients sharing a scheduler are headless bots, they do not echo to the console
+        this.consoleLogging = sharedScheduler == null;
         this.game = connectToServer(host);
+        this.ownsHeartbeatScheduler = sharedScheduler == null;
+        this.heartbeatScheduler = sharedScheduler != null ? sharedScheduler
+                : Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "heartbeat-" + playerName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.heartbeatTask = this.heartbeatScheduler.scheduleWithFixedDelay(this::sendHeartbeat,
+                HEARTBEAT_INTERVAL_S, HEARTBEAT_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    private void sendHeartbeat() {
+        try {
+            if (game != null && callbackStub != null) {
+                game.heartbeat(callbackStub);
+            }
+        } catch (RemoteException e) {
+            System.err.println("Heartbeat failed: " + e.getMessage());
+            // The server may have restarted: reconnect, back into the same game if it was recovered
+            try {
+                this.game = connectToServer(host);
+                notifyStatus("Reconnected to server");
+            } catch (RemoteException ex) {
+                System.err.println("Reconnect failed, will retry: " + ex.getMessage());
+            }
+        }
+    }
+
+    // A sharded deployment binds a lobby that picks the game server; otherwise the single GameService
+    private GameInterface lookupGame(Registry registry) throws Exception {
+        if (Arrays.asList(registry.list()).contains("Lobby")) {
+            LobbyInterface lobby = (LobbyInterface) registry.lookup("Lobby");
+            GameInterface shard = lobby.findShard(playerName);
+            if (shard == null) {
+                throw new RemoteException("All game servers are full");
+            }
+            return shard;
+        }
+        return (GameInterface) registry.lookup("GameService");
     }
 
     private GameInterface connectToServer(String host) throws RemoteException {
@@ -37,8 +104,20 @@ public class GameClient implements PlayerCallback {
         while (retries > 0) {
             try {
                 Registry registry = LocateRegistry.getRegistry(host);
-                GameInterface serverGame = (GameInterface) registry.lookup("GameService");
-                PlayerCallback callbackStub = (PlayerCallback) UnicastRemoteObject.exportObject(this, 0);
+                GameInterface serverGame = lookupGame(registry);
+                if (callbackStub == null) {
+                    callbackStub = (PlayerCallback) UnicastRemoteObject.exportObject(this, 0);
+                }
+                
+                // After a server restart the game may have been recovered from its journal
+                if (gameSessionId != null) {
+                    if (serverGame.rejoinGame(callbackStub, playerName, gameSessionId)) {
+                        return serverGame;
+                    }
+                    gameSessionId = null;
+                    gameInProgress = false;
+                    myTurn = false;
+                }
                 
                 if (serverGame.joinGame(callbackStub, playerName)) {
                     return serverGame;
@@ -63,11 +142,31 @@ public class GameClient implements PlayerCallback {
     // RMI Callback methods
     @Override
     public void updateBoard(String[][] board) throws RemoteException {
+        boardSize = board.length;
         if (boardUpdateCallback != null) {
             boardUpdateCallback.accept(board);
         }
     }
 
+    @Override
+    public void updateTurnState(TurnUpdate update) throws RemoteException {
+        for (String message : update.getMessages()) {
+            notifyStatus(message);
+        }
+        
+        if (update.isGameOver()) {
+            updateBoard(update.getBoard());
+            gameOver(update.getWinner());
+            promptForRestart();
+        } else {
+            // The game is live again after a restart, and the turn must be known before the board is redrawn
+            this.gameInProgress = true;
+            this.myTurn = update.isTurnOf(playerSymbol);
+            updateBoard(update.getBoard());
+            notifyTurn(update.getCurrentPlayer());
+        }
+    }
+
     @Override
     public void notifyTurn(String playerSymbol) throws RemoteException {
         this.myTurn = playerSymbol.equals(this.playerSymbol);
@@ -181,7 +280,7 @@ public class GameClient implements PlayerCallback {
                 return false;
             }
             
-            if (x < 0 || x > 2 || y < 0 || y > 2) {
+            if (x < 0 || x >= boardSize || y < 0 || y >= boardSize) {
                 notifyStatus("Invalid position!");
                 return false;
             }
@@ -201,7 +300,7 @@ public class GameClient implements PlayerCallback {
             notifyStatus("Connection error: " + e.getMessage());
             // Attempt to reconnect
             try {
-                this.game = connectToServer("localhost"); // or server IP
+                this.game = connectToServer(host);
                 notifyStatus("Reconnected to server");
             } catch (Exception ex) {
                 notifyStatus("Failed to reconnect: " + ex.getMessage());
@@ -213,6 +312,10 @@ public class GameClient implements PlayerCallback {
     public void disconnect() {
         try {
             if (game != null) {
+                heartbeatTask.cancel(false);
+                if (ownsHeartbeatScheduler) {
+                    heartbeatScheduler.shutdownNow();
+                }
                 game.leaveGame(this);
                 UnicastRemoteObject.unexportObject(this, true);
                 this.gameInProgress = false;
@@ -259,6 +362,11 @@ public class GameClient implements PlayerCallback {
         this.restartGameCallback = callback;
     }
 
+    // Status messages are echoed on the console unless disabled (headless bots)
+    public void setConsoleLogging(boolean consoleLogging) {
+        this.consoleLogging = consoleLogging;
+    }
+
     // Getters
     public String getPlayerName() {
         return playerName;
@@ -277,7 +385,9 @@ public class GameClient implements PlayerCallback {
         if (statusCallback != null) {
             statusCallback.accept(message);
         }
-        System.out.println("[Client] " + message);
+        if (consoleLogging) {
+            System.out.println("[Client] " + message);
+        }
     }
     
     // Method to leave the game cleanly
@@ -0,0 +1,239 @@
+package client;
+
+import common.BoardSnapshot;
+import common.GameInterface;
+import common.GameInterfaceV2;
+import common.GameState;
+import common.LobbyInterface;
+import common.PlayerCallbackV2;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Client for protocol v2. It keeps its own copy of the board as two side
+// masks, applies the (cell, side, sequence) deltas sent by the server and only
+// asks for a full snapshot when a sequence number is skipped.
+public class GameClientV2 implements PlayerCallbackV2 {
+    private final GameInterfaceV2 game;
+    private final String playerName;
+    private final ScheduledExecutorService heartbeatScheduler;
+    private final int[] masks = new int[2];
+    private volatile long sessionHandle;
+    private volatile byte side = GameState.NO_SIDE;
+    private volatile int currentSide = GameState.NO_SIDE;
+    private volatile boolean gameInProgress;
+    private int sequence;
+    private long snapshotRequests;
+
+    // Interval between heartbeats, well below the server's inactivity timeout
+    private static final long HEARTBEAT_INTERVAL_S = 15;
+
+    // Callbacks for the UI
+    private Consumer<String[][]> boardUpdateCallback;
+    private Consumer<String> statusCallback;
+    private Consumer<String> gameOverCallback;
+    private Runnable turnCallback;
+
+    public GameClientV2(String host, String playerName) throws RemoteException {
+        this.playerName = playerName;
+        try {
+            Registry registry = LocateRegistry.getRegistry(host);
+            this.game = lookupGame(registry);
+            PlayerCallbackV2 callbackStub = (PlayerCallbackV2) UnicastRemoteObject.exportObject(this, 0);
+            if (!game.joinGameV2(callbackStub, playerName)) {
+                throw new RemoteException("Game is full");
+            }
+        } catch (RemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RemoteException("Connection failed", e);
+        }
+        this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat-" + playerName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeatScheduler.scheduleWithFixedDelay(this::sendHeartbeat,
+                HEARTBEAT_INTERVAL_S, HEARTBEAT_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    // Shards serve both protocols, so the lobby's answer is also a GameInterfaceV2
+    private GameInterfaceV2 lookupGame(Registry registry) throws Exception {
+        if (Arrays.asList(registry.list()).contains("Lobby")) {
+            GameInterface shard = ((LobbyInterface) registry.lookup("Lobby")).findShard(playerName);
+            if (shard == null) {
+                throw new RemoteException("All game servers are full");
+            }
+            return (GameInterfaceV2) shard;
+        }
+        return (GameInterfaceV2) registry.lookup("GameService");
+    }
+
+    private void sendHeartbeat() {
+        try {
+            game.heartbeatV2(this);
+        } catch (RemoteException e) {
+            System.err.println("Heartbeat failed: " + e.getMessage());
+        }
+    }
+
+    // RMI Callback methods
+    @Override
+    public synchronized void sessionStarted(long sessionHandle, byte side, String opponentName) throws RemoteException {
+        this.sessionHandle = sessionHandle;
+        this.side = side;
+        this.sequence = 0;
+        notifyStatus("Playing against " + opponentName + " as " + GameState.symbolOf(side));
+    }
+
+    @Override
+    public synchronized void moveApplied(byte cell, byte side, int sequence, byte status) throws RemoteException {
+        if (sequence != this.sequence + 1) {
+            // Missed an update: the delta cannot be applied on top of our board
+            resync();
+            return;
+        }
+        this.sequence = sequence;
+        masks[side] |= 1 << cell;
+        applyStatus(status, side ^ 1, side);
+    }
+
+    @Override
+    public synchronized void boardSnapshot(BoardSnapshot snapshot) throws RemoteException {
+        if (snapshot == null || snapshot.getSequence() < sequence) return;
+        this.sequence = snapshot.getSequence();
+        masks[GameState.SIDE_X] = snapshot.getMask(GameState.SIDE_X);
+        masks[GameState.SIDE_O] = snapshot.getMask(GameState.SIDE_O);
+        applyStatus(snapshot.getStatus(), snapshot.getCurrentSide(), snapshot.getWinnerSide());
+    }
+
+    private void resync() throws RemoteException {
+        snapshotRequests++;
+        boardSnapshot(game.getSnapshot(sessionHandle));
+    }
+
+    private void applyStatus(byte status, int nextSide, int winnerSide) {
+        if (boardUpdateCallback != null) {
+            boardUpdateCallback.accept(getBoard());
+        }
+        if (status == STATUS_PLAYING) {
+            gameInProgress = true;
+            currentSide = nextSide;
+            if (isMyTurn()) {
+                notifyStatus("It's your turn! (" + GameState.symbolOf(side) + ")");
+                if (turnCallback != null) {
+                    turnCallback.run();
+                }
+            } else {
+                notifyStatus("Waiting for opponent's move...");
+            }
+            return;
+        }
+        gameInProgress = false;
+        currentSide = GameState.NO_SIDE;
+        String message = status == STATUS_DRAW ? "It's a draw!" : winnerSide == side ? "You won!" : "You lost!";
+        if (gameOverCallback != null) {
+            gameOverCallback.accept(message);
+        }
+        notifyStatus(message);
+    }
+
+    @Override
+    public void showMessage(String message) throws RemoteException {
+        notifyStatus(message);
+    }
+
+    @Override
+    public void opponentLeft() throws RemoteException {
+        gameInProgress = false;
+        currentSide = GameState.NO_SIDE;
+        notifyStatus("Your opponent disconnected. Waiting for a new opponent...");
+    }
+
+    @Override
+    public boolean ping() throws RemoteException {
+        return true;
+    }
+
+    // Server interaction methods
+    public boolean makeMove(int x, int y) throws RemoteException {
+        if (!isMyTurn()) {
+            notifyStatus("It's not your turn!");
+            return false;
+        }
+        if (x < 0 || x > 2 || y < 0 || y > 2) {
+            notifyStatus("Invalid position!");
+            return false;
+        }
+        return game.makeMoveV2(sessionHandle, (byte) (x * 3 + y), side);
+    }
+
+    public void requestNewGame() throws RemoteException {
+        game.restartGameV2(sessionHandle);
+    }
+
+    public void leaveGame() throws RemoteException {
+        heartbeatScheduler.shutdownNow();
+        game.leaveGameV2(this);
+        gameInProgress = false;
+    }
+
+    public synchronized String[][] getBoard() {
+        String[][] board = new String[3][3];
+        for (int cell = 0; cell < 9; cell++) {
+            String symbol = (masks[GameState.SIDE_X] & (1 << cell)) != 0 ? "X"
+                    : (masks[GameState.SIDE_O] & (1 << cell)) != 0 ? "O" : "";
+            board[cell / 3][cell % 3] = symbol;
+        }
+        return board;
+    }
+
+    // UI callback registration methods
+    public void setBoardUpdateCallback(Consumer<String[][]> callback) {
+        this.boardUpdateCallback = callback;
+    }
+
+    public void setStatusCallback(Consumer<String> callback) {
+        this.statusCallback = callback;
+    }
+
+    public void setGameOverCallback(Consumer<String> callback) {
+        this.gameOverCallback = callback;
+    }
+
+    public void setTurnCallback(Runnable callback) {
+        this.turnCallback = callback;
+    }
+
+    // Getters
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public boolean isMyTurn() {
+        return gameInProgress && side != GameState.NO_SIDE && currentSide == side;
+    }
+
+    public boolean isGameInProgress() {
+        return gameInProgress;
+    }
+
+    // Snapshots fetched because of a sequence gap
+    public synchronized long getSnapshotRequests() {
+        return snapshotRequests;
+    }
+
+    // Utility method for notifications
+    private void notifyStatus(String message) {
+        if (statusCallback != null) {
+            statusCallback.accept(message);
+        }
+        System.out.println("[Client v2] " + message);
+    }
+}
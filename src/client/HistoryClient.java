@@ -0,0 +1,84 @@
+package client;
+
+import common.LeaderboardInterface;
+import common.MatchHistoryInterface;
+import common.MatchRecord;
+import common.PlayerRating;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+// Console access to the match history of a server started with -Dgame.historyDir:
+// lists a player's matches page by page, or replays one match move by move.
+// Also prints the server's leaderboard, history or not.
+// Usage: java client.HistoryClient <host> <player> [pageSize] [beforeMatchId]
+//        java client.HistoryClient <host> --replay <matchId>
+//        java client.HistoryClient <host> --top [count]
+public class HistoryClient {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java client.HistoryClient <host> <player> [pageSize] [beforeMatchId]");
+            System.out.println("       java client.HistoryClient <host> --replay <matchId>");
+            System.out.println("       java client.HistoryClient <host> --top [count]");
+            return;
+        }
+        Registry registry = LocateRegistry.getRegistry(args[0]);
+        if (args[1].equals("--top")) {
+            leaderboard((LeaderboardInterface) registry.lookup("Leaderboard"),
+                    args.length > 2 ? Integer.parseInt(args[2]) : 10);
+            return;
+        }
+        MatchHistoryInterface history = (MatchHistoryInterface) registry.lookup("MatchHistory");
+        if (args[1].equals("--replay")) {
+            replay(history, Long.parseLong(args[2]));
+        } else {
+            int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+            long before = args.length > 3 ? Long.parseLong(args[3]) : 0;
+            list(history, args[1], pageSize, before);
+        }
+    }
+
+    private static void leaderboard(LeaderboardInterface leaderboard, int count) throws Exception {
+        PlayerRating[] top = leaderboard.getTopPlayers(count);
+        System.out.println(leaderboard.getRatedPlayerCount() + " rated players");
+        for (int rank = 1; rank <= top.length; rank++) {
+            System.out.println(String.format("%3d. %s", rank, top[rank - 1]));
+        }
+    }
+
+    private static void list(MatchHistoryInterface history, String player, int pageSize, long before)
+            throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        MatchRecord[] page = history.getPlayerHistory(player, before, pageSize);
+        System.out.println(player + ": " + history.getPlayerMatchCount(player) + " matches, "
+                + history.getMatchCount() + " on the server");
+        for (MatchRecord match : page) {
+            System.out.println(format.format(new Date(match.getEndMillis())) + "  " + match);
+        }
+        if (page.length == pageSize) {
+            System.out.println("Next page: beforeMatchId=" + page[page.length - 1].getMatchId());
+        }
+    }
+
+    private static void replay(MatchHistoryInterface history, long matchId) throws Exception {
+        MatchRecord match = history.getMatch(matchId);
+        if (match == null) {
+            System.out.println("No match " + matchId);
+            return;
+        }
+        System.out.println(match + ", " + match.getStartingSymbol() + " starts");
+        for (int move = 1; move <= match.getMoveCount(); move++) {
+            int cell = match.getMove(move - 1);
+            System.out.println("Move " + move + ": (" + (cell / 3 + 1) + "," + (cell % 3 + 1) + ")");
+            for (String[] row : match.getBoardAfter(move)) {
+                StringBuilder line = new StringBuilder("  ");
+                for (String symbol : row) {
+                    line.append(symbol.isEmpty() ? "." : symbol).append(' ');
+                }
+                System.out.println(line);
+            }
+        }
+    }
+}
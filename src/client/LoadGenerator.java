@@ -0,0 +1,226 @@
+package client;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import server.LatencyRecorder;
+
+// Headless load generator: runs N bot players, each a real GameClient talking
+// RMI to a GameServer. Bots join at a given rate, play legal moves after a
+// think time, and when a game ends either leave (and are replaced by a new
+// bot) or ask for a rematch. Prints joins/s, moves/s, move latency
+// percentiles and error counts every few seconds and a summary at the end.
+// Usage: java client.LoadGenerator [host] [bots] [seconds] [joinsPerSecond] [thinkMs] [leavePercent] [random|scripted]
+public class LoadGenerator {
+    private static final long REPORT_INTERVAL_S = 5;
+    // Cell preference of the scripted strategy: centre, corners, edges
+    private static final int[] SCRIPTED_ORDER = { 4, 0, 2, 6, 8, 1, 3, 5, 7 };
+
+    private final String host;
+    private final int bots;
+    private final int joinsPerSecond;
+    private final long thinkMillis;
+    private final int leavePercent;
+    private final boolean scripted;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger nextBotId = new AtomicInteger();
+    private final ConcurrentHashMap<Bot, Boolean> connected = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder joinErrors = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder refusedMoves = new LongAdder();
+    private final LongAdder moveErrors = new LongAdder();
+    private final LongAdder gamesOver = new LongAdder();
+    private final LongAdder rematches = new LongAdder();
+    private final LongAdder leaves = new LongAdder();
+    private final LatencyRecorder joinLatency = new LatencyRecorder("join");
+    private final LatencyRecorder moveLatency = new LatencyRecorder("move");
+
+    public LoadGenerator(String host, int bots, int joinsPerSecond, long thinkMillis, int leavePercent, boolean scripted) {
+        this.host = host;
+        this.bots = bots;
+        this.joinsPerSecond = Math.max(1, joinsPerSecond);
+        this.thinkMillis = thinkMillis;
+        this.leavePercent = leavePercent;
+        this.scripted = scripted;
+        AtomicInteger counter = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), runnable -> {
+            Thread thread = new Thread(runnable, "load-bot-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int bots = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int joinsPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        long thinkMillis = args.length > 4 ? Long.parseLong(args[4]) : 100;
+        int leavePercent = args.length > 5 ? Integer.parseInt(args[5]) : 20;
+        boolean scripted = args.length > 6 && args[6].equals("scripted");
+
+        LoadGenerator generator = new LoadGenerator(host, bots, joinsPerSecond, thinkMillis, leavePercent, scripted);
+        System.out.println("Load generator: " + bots + " bots against " + host + " for " + seconds + "s, "
+                + joinsPerSecond + " joins/s, think " + thinkMillis + "ms, leave " + leavePercent + "%, "
+                + (scripted ? "scripted" : "random") + " moves");
+        generator.run(seconds);
+        System.exit(0);
+    }
+
+    public void run(int seconds) throws InterruptedException {
+        long intervalMicros = 1_000_000L / joinsPerSecond;
+        for (int i = 0; i < bots; i++) {
+            scheduler.schedule(this::spawnBot, i * intervalMicros, TimeUnit.MICROSECONDS);
+        }
+
+        long start = System.nanoTime();
+        long lastJoins = 0;
+        long lastMoves = 0;
+        long lastReport = start;
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(REPORT_INTERVAL_S),
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+            long now = System.nanoTime();
+            double elapsed = (now - lastReport) / 1e9;
+            long totalJoins = joins.sum();
+            long totalMoves = moves.sum();
+            System.out.println(String.format("[%3ds] bots=%d joins/s=%.1f moves/s=%.1f %s errors(join=%d, move=%d) refused=%d",
+                    TimeUnit.NANOSECONDS.toSeconds(now - start), connected.size(),
+                    (totalJoins - lastJoins) / elapsed, (totalMoves - lastMoves) / elapsed,
+                    moveLatency, joinErrors.sum(), moveErrors.sum(), refusedMoves.sum()));
+            lastJoins = totalJoins;
+            lastMoves = totalMoves;
+            lastReport = now;
+        }
+        running = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long leftDuringRun = leaves.sum();
+
+        for (Bot bot : connected.keySet()) {
+            bot.leave();
+        }
+        scheduler.shutdownNow();
+
+        System.out.println("==== Summary (" + String.format("%.0f", elapsed) + "s) ====");
+        // Both players of a game see it end
+        System.out.println(String.format("joins=%d (%.1f/s) moves=%d (%.1f/s) games over=%d rematches=%d leaves=%d",
+                joins.sum(), joins.sum() / elapsed, moves.sum(), moves.sum() / elapsed,
+                gamesOver.sum() / 2, rematches.sum(), leftDuringRun));
+        System.out.println(joinLatency);
+        System.out.println(moveLatency);
+        System.out.println("errors: join=" + joinErrors.sum() + " move=" + moveErrors.sum()
+                + " refused moves=" + refusedMoves.sum());
+    }
+
+    private void spawnBot() {
+        if (!running) return;
+        Bot bot = new Bot("bot-" + nextBotId.incrementAndGet());
+        long t0 = System.nanoTime();
+        try {
+            bot.start();
+            joinLatency.recordNanos(System.nanoTime() - t0);
+            joins.increment();
+            connected.put(bot, Boolean.TRUE);
+        } catch (RemoteException e) {
+            joinErrors.increment();
+            // Try again later with a fresh bot, the server may be full or busy
+            scheduler.schedule(this::spawnBot, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private final class Bot {
+        private final String name;
+        private GameClient client;
+        private volatile String[][] board;
+
+        Bot(String name) {
+            this.name = name;
+        }
+
+        void start() throws RemoteException {
+            client = new GameClient(host, name, scheduler);
+            client.setBoardUpdateCallback(update -> board = update);
+            client.setTurnCallback(() -> schedule(this::play));
+            client.setGameOverCallback(result -> schedule(this::afterGame));
+            client.setRestartGameCallback(() -> true);
+        }
+
+        private void schedule(Runnable action) {
+            if (running) {
+                scheduler.schedule(action, thinkMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void play() {
+            String[][] current = board;
+            if (!running || current == null || !client.isMyTurn()) return;
+            int cell = chooseCell(current);
+            if (cell < 0) return;
+            long t0 = System.nanoTime();
+            try {
+                if (client.makeMove(cell / current.length, cell % current.length)) {
+                    moveLatency.recordNanos(System.nanoTime() - t0);
+                    moves.increment();
+                } else {
+                    refusedMoves.increment();
+                }
+            } catch (RemoteException e) {
+                moveErrors.increment();
+            }
+        }
+
+        // Cell row * size + col, -1 if none is free
+        private int chooseCell(String[][] current) {
+            int size = current.length;
+            if (scripted) {
+                // In the top left corner of larger boards, then at random
+                for (int cell : SCRIPTED_ORDER) {
+                    if (current[cell / 3][cell % 3].isEmpty()) return cell / 3 * size + cell % 3;
+                }
+                if (size == 3) return -1;
+            }
+            int[] free = new int[size * size];
+            int count = 0;
+            for (int cell = 0; cell < free.length; cell++) {
+                if (current[cell / size][cell % size].isEmpty()) free[count++] = cell;
+            }
+            return count == 0 ? -1 : free[ThreadLocalRandom.current().nextInt(count)];
+        }
+
+        private void afterGame() {
+            if (!running) return;
+            gamesOver.increment();
+            if (ThreadLocalRandom.current().nextInt(100) < leavePercent) {
+                leave();
+                // Keep the population steady: a new player takes the slot
+                scheduler.execute(LoadGenerator.this::spawnBot);
+                return;
+            }
+            try {
+                // Only one side asks, so a finished game is restarted once
+                if ("X".equals(client.getPlayerSymbol())) {
+                    client.requestNewGame();
+                    rematches.increment();
+                }
+            } catch (RemoteException e) {
+                moveErrors.increment();
+            }
+        }
+
+        void leave() {
+            if (connected.remove(this) != null) {
+                leaves.increment();
+                client.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package client;
+
+import common.BinaryProtocol;
+import common.TurnUpdate;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Client of the binary TCP transport (server.NioGameServer). Same API as
+// GameClient, but the player keeps a single connection it opened itself, so it
+// works behind NAT and firewalls that block the RMI callbacks. A reader thread
+// decodes the server's frames and drives the same UI callbacks.
+public class NioGameClient {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long REPLY_TIMEOUT_S = 10;
+    // Interval between heartbeats, well below the server's inactivity timeout
+    private static final long HEARTBEAT_INTERVAL_S = 15;
+
+    private final String playerName;
+    private final boolean spectator;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Thread reader;
+    // Replies to JOIN and MOVE, handed from the reader thread to the waiting caller
+    private final BlockingQueue<Boolean> replies = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService heartbeatScheduler;
+    private final boolean ownsHeartbeatScheduler;
+    private final ScheduledFuture<?> heartbeatTask;
+    private volatile String playerSymbol;
+    private volatile boolean myTurn = false;
+    private volatile boolean gameInProgress = false;
+    private volatile String gameSessionId = null;
+    private volatile String opponentName = null;
+    private volatile boolean connected = true;
+    private volatile boolean consoleLogging = true;
+
+    // Callbacks for the UI
+    private Consumer<String[][]> boardUpdateCallback;
+    private Consumer<String> statusCallback;
+    private Consumer<String> gameOverCallback;
+    private Runnable turnCallback;
+    private Runnable newOpponentCallback;
+    private Supplier<Boolean> restartGameCallback;
+
+    public NioGameClient(String host, int port, String playerName) throws IOException {
+        this(host, port, playerName, null);
+    }
+
+    // With a shared scheduler many clients can run in one JVM without a heartbeat thread each
+    public NioGameClient(String host, int port, String playerName, ScheduledExecutorService sharedScheduler)
+            throws IOException {
+        this(host, port, playerName, sharedScheduler, false);
+    }
+
+    // A spectator of the session with this id, or of the one the named player is in: it gets the board
+    // and the messages of that game, but cannot play
+    public static NioGameClient watch(String host, int port, String target,
+            ScheduledExecutorService sharedScheduler) throws IOException {
+        return new NioGameClient(host, port, target, sharedScheduler, true);
+    }
+
+    private NioGameClient(String host, int port, String playerName, ScheduledExecutorService sharedScheduler,
+            boolean spectator) throws IOException {
+        this.playerName = playerName;
+        this.spectator = spectator;
+        this.consoleLogging = sharedScheduler == null;
+        this.socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.reader = new Thread(this::readFrames, "tcp-client-" + playerName);
+        this.reader.setDaemon(true);
+        this.reader.start();
+
+        send(BinaryProtocol.frame(spectator ? BinaryProtocol.WATCH : BinaryProtocol.JOIN, playerName));
+        if (!awaitReply()) {
+            close();
+            throw new IOException(spectator ? "No game to watch for " + playerName : "Game is full");
+        }
+
+        this.ownsHeartbeatScheduler = sharedScheduler == null;
+        this.heartbeatScheduler = sharedScheduler != null ? sharedScheduler
+                : Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "heartbeat-" + playerName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.heartbeatTask = this.heartbeatScheduler.scheduleWithFixedDelay(this::sendHeartbeat,
+                HEARTBEAT_INTERVAL_S, HEARTBEAT_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    private void sendHeartbeat() {
+        try {
+            send(BinaryProtocol.frame(BinaryProtocol.HEARTBEAT));
+        } catch (IOException e) {
+            System.err.println("Heartbeat failed: " + e.getMessage());
+        }
+    }
+
+    private synchronized void send(ByteBuffer frame) throws IOException {
+        if (!connected) {
+            throw new IOException("Not connected");
+        }
+        out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        out.flush();
+    }
+
+    private boolean awaitReply() throws IOException {
+        try {
+            Boolean reply = replies.poll(REPLY_TIMEOUT_S, TimeUnit.SECONDS);
+            if (reply == null) {
+                throw new IOException("No reply from server");
+            }
+            return reply;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the server", e);
+        }
+    }
+
+    private void readFrames() {
+        try {
+            while (connected) {
+                int length = in.readInt();
+                if (length < 1 || length > BinaryProtocol.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                byte type = in.readByte();
+                byte[] payload = new byte[length - 1];
+                in.readFully(payload);
+                handle(type, ByteBuffer.wrap(payload));
+            }
+        } catch (EOFException e) {
+            if (connected) notifyStatus("Server closed the connection");
+        } catch (IOException e) {
+            if (connected) notifyStatus("Connection error: " + e.getMessage());
+        } finally {
+            connected = false;
+            gameInProgress = false;
+            myTurn = false;
+        }
+    }
+
+    private void handle(byte type, ByteBuffer payload) throws IOException {
+        switch (type) {
+            case BinaryProtocol.JOIN_RESULT:
+            case BinaryProtocol.MOVE_RESULT:
+            case BinaryProtocol.WATCH_RESULT:
+                replies.add(payload.get() != 0);
+                break;
+            case BinaryProtocol.MESSAGE:
+                notifyStatus(BinaryProtocol.getString(payload));
+                break;
+            case BinaryProtocol.ASSIGN_SYMBOL:
+                playerSymbol = BinaryProtocol.getString(payload);
+                break;
+            case BinaryProtocol.NOTIFY_TURN:
+                notifyTurn(BinaryProtocol.getString(payload));
+                break;
+            case BinaryProtocol.UPDATE_BOARD:
+                updateBoard(BinaryProtocol.getBoard(payload));
+                break;
+            case BinaryProtocol.GAME_OVER:
+                gameOver(BinaryProtocol.getString(payload));
+                break;
+            case BinaryProtocol.PROMPT_RESTART:
+                notifyStatus("Game over. Do you want to play again?");
+                break;
+            case BinaryProtocol.NEW_OPPONENT:
+                promptForNewOpponent();
+                break;
+            case BinaryProtocol.PING:
+                send(BinaryProtocol.frame(BinaryProtocol.PONG));
+                break;
+            case BinaryProtocol.SESSION:
+                gameSessionId = BinaryProtocol.getString(payload);
+                gameInProgress = true;
+                notifyStatus("Joined game session: " + gameSessionId);
+                break;
+            case BinaryProtocol.OPPONENT:
+                opponentName = BinaryProtocol.getString(payload);
+                notifyStatus("Playing against: " + opponentName);
+                break;
+            case BinaryProtocol.TURN_UPDATE:
+                updateTurnState(BinaryProtocol.getTurnUpdate(payload));
+                break;
+            case BinaryProtocol.WATCH_END:
+                gameInProgress = false;
+                notifyStatus("The game you were watching is over");
+                break;
+            default:
+                System.err.println("Unknown frame type from server: " + type);
+        }
+    }
+
+    private void updateTurnState(TurnUpdate update) {
+        for (String message : update.getMessages()) {
+            notifyStatus(message);
+        }
+        if (update.isGameOver()) {
+            updateBoard(update.getBoard());
+            gameOver(update.getWinner());
+            if (!spectator) {
+                notifyStatus("Game over. Do you want to play again?");
+            }
+        } else {
+            // The game is live again after a restart, and the turn must be known before the board is redrawn
+            gameInProgress = true;
+            myTurn = update.isTurnOf(playerSymbol);
+            updateBoard(update.getBoard());
+            notifyTurn(update.getCurrentPlayer());
+        }
+    }
+
+    private void updateBoard(String[][] board) {
+        if (boardUpdateCallback != null) {
+            boardUpdateCallback.accept(board);
+        }
+    }
+
+    private void notifyTurn(String symbol) {
+        myTurn = symbol != null && symbol.equals(playerSymbol);
+        if (spectator) {
+            if (gameInProgress) notifyStatus(symbol + " to play");
+        } else if (myTurn && gameInProgress) {
+            notifyStatus("It's your turn! (" + playerSymbol + ")");
+            if (turnCallback != null) {
+                turnCallback.run();
+            }
+        } else if (gameInProgress) {
+            notifyStatus("Waiting for opponent's move...");
+        }
+    }
+
+    private void gameOver(String winner) {
+        myTurn = false;
+        gameInProgress = false;
+        String message = winner == null ? "It's a draw!" : spectator ? winner + " won!"
+                : winner.equals(playerSymbol) ? "You won!" : "You lost!";
+        if (gameOverCallback != null) {
+            gameOverCallback.accept(message);
+        }
+    }
+
+    private void promptForNewOpponent() {
+        gameInProgress = false;
+        myTurn = false;
+        gameSessionId = null;
+        if (statusCallback != null) {
+            statusCallback.accept("Your opponent disconnected. Waiting for a new opponent...");
+        }
+        if (newOpponentCallback != null) {
+            newOpponentCallback.run();
+        }
+    }
+
+    // Server interaction methods. The reply is read by the reader thread, so this
+    // must not be called from one of the UI callbacks, which run on that thread.
+    public boolean makeMove(int x, int y) {
+        if (!gameInProgress) {
+            notifyStatus("No active game in progress!");
+            return false;
+        }
+        if (!myTurn) {
+            notifyStatus("It's not your turn!");
+            return false;
+        }
+        if (x < 0 || x > 2 || y < 0 || y > 2) {
+            notifyStatus("Invalid position!");
+            return false;
+        }
+        try {
+            // Drop the reply of a move that timed out earlier
+            replies.clear();
+            send(BinaryProtocol.frame(BinaryProtocol.MOVE, (byte) (x * 3 + y)));
+            if (awaitReply()) {
+                myTurn = false;
+                return true;
+            }
+            notifyStatus("Invalid move - try again");
+            return false;
+        } catch (IOException e) {
+            notifyStatus("Connection error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public void requestNewGame() throws IOException {
+        if (restartGameCallback != null && !restartGameCallback.get()) {
+            return;
+        }
+        if (gameSessionId != null) {
+            send(BinaryProtocol.frame(BinaryProtocol.RESTART));
+            notifyStatus("Game restart requested...");
+        } else {
+            notifyStatus("No active game session to restart");
+        }
+    }
+
+    // Method to leave the game cleanly; the connection stays open
+    public void leaveGame() throws IOException {
+        send(BinaryProtocol.frame(BinaryProtocol.LEAVE));
+        gameInProgress = false;
+    }
+
+    public void disconnect() {
+        heartbeatTask.cancel(false);
+        if (ownsHeartbeatScheduler) {
+            heartbeatScheduler.shutdownNow();
+        }
+        try {
+            send(BinaryProtocol.frame(BinaryProtocol.LEAVE));
+        } catch (IOException e) {
+            System.err.println("Error during disconnect: " + e.getMessage());
+        }
+        close();
+    }
+
+    private void close() {
+        connected = false;
+        gameInProgress = false;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    // UI callback registration methods
+    public void setBoardUpdateCallback(Consumer<String[][]> callback) {
+        this.boardUpdateCallback = callback;
+    }
+
+    public void setStatusCallback(Consumer<String> callback) {
+        this.statusCallback = callback;
+    }
+
+    public void setGameOverCallback(Consumer<String> callback) {
+        this.gameOverCallback = callback;
+    }
+
+    public void setTurnCallback(Runnable callback) {
+        this.turnCallback = callback;
+    }
+
+    public void setNewOpponentCallback(Runnable callback) {
+        this.newOpponentCallback = callback;
+    }
+
+    public void setRestartGameCallback(Supplier<Boolean> callback) {
+        this.restartGameCallback = callback;
+    }
+
+    // Status messages are echoed on the console unless disabled (headless bots)
+    public void setConsoleLogging(boolean consoleLogging) {
+        this.consoleLogging = consoleLogging;
+    }
+
+    // Getters
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public String getPlayerSymbol() {
+        return playerSymbol;
+    }
+
+    public boolean isMyTurn() {
+        return myTurn;
+    }
+
+    public boolean isGameInProgress() {
+        return gameInProgress;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isSpectator() {
+        return spectator;
+    }
+
+    // Utility method for notifications
+    private void notifyStatus(String message) {
+        if (statusCallback != null) {
+            statusCallback.accept(message);
+        }
+        if (consoleLogging) {
+            System.out.println("[Client] " + message);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package common;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Frame format of the binary TCP transport (the alternative to RMI):
+//   int length | byte type | payload      (length counts type + payload)
+// Strings are a short byte count followed by UTF-8 bytes (-1 for null). A
+// board travels as its two-byte BoardCodec code. Requests and events
+// mirror GameInterface and PlayerCallback, so both transports drive the same
+// server logic. A connection that sends WATCH instead of JOIN is a spectator:
+// it receives the TURN_UPDATE frames of the session it watches.
+public final class BinaryProtocol {
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_FRAME_SIZE = 16 * 1024;
+
+    // Client -> server
+    public static final byte JOIN = 1;           // name
+    public static final byte MOVE = 2;           // cell
+    public static final byte RESTART = 3;
+    public static final byte LEAVE = 4;
+    public static final byte HEARTBEAT = 5;
+    public static final byte PONG = 6;
+    public static final byte WATCH = 7;          // session id or player name
+
+    // Server -> client
+    public static final byte JOIN_RESULT = 20;   // accepted
+    public static final byte MOVE_RESULT = 21;   // accepted
+    public static final byte MESSAGE = 22;       // text
+    public static final byte ASSIGN_SYMBOL = 23; // symbol
+    public static final byte NOTIFY_TURN = 24;   // symbol
+    public static final byte UPDATE_BOARD = 25;  // board code
+    public static final byte GAME_OVER = 26;     // winner or null
+    public static final byte PROMPT_RESTART = 27;
+    public static final byte NEW_OPPONENT = 28;
+    public static final byte PING = 29;
+    public static final byte SESSION = 30;       // session id
+    public static final byte OPPONENT = 31;      // opponent name
+    public static final byte TURN_UPDATE = 32;   // see putTurnUpdate
+    public static final byte WATCH_RESULT = 33;  // accepted
+    public static final byte WATCH_END = 34;     // the watched session is over
+
+    private BinaryProtocol() {
+    }
+
+    // A frame with no payload
+    public static ByteBuffer frame(byte type) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 1);
+        frame.putInt(1).put(type).flip();
+        return frame;
+    }
+
+    public static ByteBuffer frame(byte type, boolean value) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 2);
+        frame.putInt(2).put(type).put((byte) (value ? 1 : 0)).flip();
+        return frame;
+    }
+
+    public static ByteBuffer frame(byte type, byte value) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 2);
+        frame.putInt(2).put(type).put(value).flip();
+        return frame;
+    }
+
+    public static ByteBuffer frame(byte type, String value) {
+        byte[] bytes = utf8(value);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 1 + stringSize(bytes));
+        frame.putInt(frame.capacity() - HEADER_SIZE).put(type);
+        putString(frame, bytes);
+        frame.flip();
+        return frame;
+    }
+
+    public static ByteBuffer boardFrame(String[][] board) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 3);
+        frame.putInt(3).put(UPDATE_BOARD).putShort((short) BoardCodec.encode(board)).flip();
+        return frame;
+    }
+
+    public static String[][] getBoard(ByteBuffer payload) {
+        return BoardCodec.toBoard(getBoardCode(payload));
+    }
+
+    private static int getBoardCode(ByteBuffer payload) {
+        int code = payload.getShort() & 0xFFFF;
+        if (code >= BoardCodec.BOARD_COUNT) {
+            throw new IllegalArgumentException("Invalid board code: " + code);
+        }
+        return code;
+    }
+
+    // sequence int, board code, current side, game over, winner side, last cell,
+    // last side, message count, messages
+    public static ByteBuffer turnUpdateFrame(TurnUpdate update) {
+        String[] messages = update.getMessages();
+        int count = Math.min(messages.length, 255);
+        byte[][] encoded = new byte[count][];
+        int size = 1 + 4 + 2 + 5 + 1;
+        for (int i = 0; i < count; i++) {
+            encoded[i] = utf8(messages[i]);
+            size += stringSize(encoded[i]);
+        }
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + size);
+        frame.putInt(size).put(TURN_UPDATE)
+                .putInt(update.getSequence())
+                .putShort((short) update.getBoardCode())
+                .put((byte) update.getCurrentSide())
+                .put((byte) (update.isGameOver() ? 1 : 0))
+                .put((byte) update.getWinnerSide())
+                .put((byte) update.getLastCell())
+                .put((byte) update.getLastSide())
+                .put((byte) count);
+        for (byte[] message : encoded) {
+            putString(frame, message);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    // Reads the payload of a TURN_UPDATE frame (after the type byte)
+    public static TurnUpdate getTurnUpdate(ByteBuffer payload) {
+        int sequence = payload.getInt();
+        int boardCode = getBoardCode(payload);
+        int currentSide = payload.get();
+        boolean gameOver = payload.get() != 0;
+        int winnerSide = payload.get();
+        int lastCell = payload.get();
+        int lastSide = payload.get();
+        String[] messages = new String[payload.get() & 0xFF];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = getString(payload);
+        }
+        return new TurnUpdate(boardCode, currentSide, gameOver, winnerSide, messages, sequence, lastCell, lastSide);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) return null;
+        if (length > buffer.remaining()) {
+            // A length the frame does not hold: malformed, never read past the payload
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static byte[] utf8(String value) {
+        if (value == null) return null;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String too long for a frame: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return 2 + (bytes != null ? bytes.length : 0);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+    }
+}
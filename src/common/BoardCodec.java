@@ -0,0 +1,135 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Compact form of a 3x3 board for the wire: one base-3 digit per cell
+// (0 empty, 1 X, 2 O; cell row * 3 + col has weight 3^(row * 3 + col)), so any
+// board is a number below 3^9 = 19683 and fits in two bytes. Conversions to and from
+// the per-side bit masks used by GameState go through lookup tables.
+// Larger boards (see GameVariant) travel as one bit set per side instead, a
+// bit per cell rounded up to whole bytes: 29 bytes per side on a 15x15 board.
+public final class BoardCodec {
+    public static final int BOARD_COUNT = 19683;
+    private static final int FULL_BOARD = 0x1FF;
+
+    // TERNARY[mask] is the code of the cells in mask, each with digit 1
+    private static final int[] TERNARY = new int[FULL_BOARD + 1];
+    // MASKS[code] holds the X mask in its low 9 bits and the O mask in the next 9
+    private static final int[] MASKS = new int[BOARD_COUNT];
+
+    static {
+        for (int mask = 0; mask <= FULL_BOARD; mask++) {
+            int code = 0;
+            for (int cell = 8; cell >= 0; cell--) {
+                code = code * 3 + ((mask >> cell) & 1);
+            }
+            TERNARY[mask] = code;
+        }
+        for (int code = 0; code < BOARD_COUNT; code++) {
+            int xMask = 0;
+            int oMask = 0;
+            int rest = code;
+            for (int cell = 0; cell < 9; cell++) {
+                int digit = rest % 3;
+                rest /= 3;
+                if (digit == 1) xMask |= 1 << cell;
+                if (digit == 2) oMask |= 1 << cell;
+            }
+            MASKS[code] = xMask | oMask << 9;
+        }
+    }
+
+    private BoardCodec() {
+    }
+
+    // Masks must not overlap
+    public static int encode(int xMask, int oMask) {
+        return TERNARY[xMask & FULL_BOARD] + 2 * TERNARY[oMask & FULL_BOARD];
+    }
+
+    public static int encode(String[][] board) {
+        return encode(maskOf(board, GameState.SIDE_X), maskOf(board, GameState.SIDE_O));
+    }
+
+    public static int xMask(int code) {
+        return MASKS[code] & FULL_BOARD;
+    }
+
+    public static int oMask(int code) {
+        return MASKS[code] >>> 9;
+    }
+
+    public static int mask(int code, int side) {
+        return side == GameState.SIDE_X ? xMask(code) : oMask(code);
+    }
+
+    // Cells holding the given side's symbol, bit row * 3 + col
+    public static int maskOf(String[][] board, int side) {
+        String symbol = GameState.symbolOf(side);
+        int mask = 0;
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                if (symbol.equals(board[i][j])) {
+                    mask |= 1 << (i * 3 + j);
+                }
+            }
+        }
+        return mask;
+    }
+
+    public static String[][] toBoard(int code) {
+        int masks = MASKS[code];
+        String[][] board = new String[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                int bit = 1 << (i * 3 + j);
+                board[i][j] = (masks & bit) != 0 ? "X" : (masks & bit << 9) != 0 ? "O" : "";
+            }
+        }
+        return board;
+    }
+
+    public static void write(DataOutput out, int code) throws IOException {
+        out.writeShort(code);
+    }
+
+    public static int read(DataInput in) throws IOException {
+        int code = in.readUnsignedShort();
+        if (code >= BOARD_COUNT) {
+            throw new IOException("Invalid board code: " + code);
+        }
+        return code;
+    }
+
+    // One side's cells of a larger board, bit row * size + col of a long[] bit set
+    public static void writeCells(DataOutput out, long[] cells, int cellCount) throws IOException {
+        for (int i = 0; i < (cellCount + 7) / 8; i++) {
+            out.writeByte((int) (cells[i >> 3] >>> ((i & 7) * 8)));
+        }
+    }
+
+    public static long[] readCells(DataInput in, int cellCount) throws IOException {
+        long[] cells = new long[(cellCount + 63) / 64];
+        for (int i = 0; i < (cellCount + 7) / 8; i++) {
+            cells[i >> 3] |= (long) in.readUnsignedByte() << ((i & 7) * 8);
+        }
+        if (cellCount % 64 != 0 && cells[cells.length - 1] >>> (cellCount % 64) != 0) {
+            throw new IOException("Cell beyond a board of " + cellCount + " cells");
+        }
+        return cells;
+    }
+
+    public static String[][] toBoard(int size, long[] xCells, long[] oCells) {
+        String[][] board = new String[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int cell = i * size + j;
+                long bit = 1L << cell;
+                board[i][j] = (xCells[cell >> 6] & bit) != 0 ? "X" : (oCells[cell >> 6] & bit) != 0 ? "O" : "";
+            }
+        }
+        return board;
+    }
+}
@@ -0,0 +1,82 @@
+package common;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+// Full state of a session for protocol v2: one 9-bit mask per side plus the
+// sequence number of the last state change it includes. The masks travel as a
+// single BoardCodec code.
+public class BoardSnapshot implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    private long sessionHandle;
+    private int sequence;
+    private short xMask;
+    private short oMask;
+    private byte currentSide;
+    private byte status;
+    private byte winnerSide;
+
+    public BoardSnapshot(long sessionHandle, int sequence, int xMask, int oMask,
+                         int currentSide, byte status, int winnerSide) {
+        this.sessionHandle = sessionHandle;
+        this.sequence = sequence;
+        this.xMask = (short) xMask;
+        this.oMask = (short) oMask;
+        this.currentSide = (byte) currentSide;
+        this.status = status;
+        this.winnerSide = (byte) winnerSide;
+    }
+
+    // Required by Externalizable
+    public BoardSnapshot() {
+    }
+
+    public long getSessionHandle() {
+        return sessionHandle;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getMask(int side) {
+        return side == GameState.SIDE_X ? xMask : oMask;
+    }
+
+    public int getCurrentSide() {
+        return currentSide;
+    }
+
+    public byte getStatus() {
+        return status;
+    }
+
+    public int getWinnerSide() {
+        return winnerSide;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeLong(sessionHandle);
+        out.writeInt(sequence);
+        BoardCodec.write(out, BoardCodec.encode(xMask, oMask));
+        out.writeByte(currentSide);
+        out.writeByte(status);
+        out.writeByte(winnerSide);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        sessionHandle = in.readLong();
+        sequence = in.readInt();
+        int code = BoardCodec.read(in);
+        xMask = (short) BoardCodec.xMask(code);
+        oMask = (short) BoardCodec.oMask(code);
+        currentSide = in.readByte();
+        status = in.readByte();
+        winnerSide = in.readByte();
+    }
+}
@@ -10,4 +10,6 @@ public interface GameInterface extends Remote {
     String getCurrentPlayer() throws RemoteException; // Kept for backward compatibility
     void restartGame(String sessionId) throws RemoteException;
     void leaveGame(PlayerCallback player) throws RemoteException;
+    void heartbeat(PlayerCallback player) throws RemoteException; // Keeps an idle player from being probed
+    boolean rejoinGame(PlayerCallback callback, String playerName, String sessionId) throws RemoteException; // Takes back a place in a game recovered after a server restart
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package common;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// Protocol v2: moves travel as (session handle, cell, side) instead of
+// coordinates, symbol strings and session id strings. Cells are row * 3 + col
+// and sides are GameState.SIDE_X / GameState.SIDE_O.
+public interface GameInterfaceV2 extends Remote {
+    int PROTOCOL_VERSION = 2;
+
+    boolean joinGameV2(PlayerCallbackV2 callback, String playerName) throws RemoteException;
+    boolean makeMoveV2(long sessionHandle, byte cell, byte side) throws RemoteException;
+    BoardSnapshot getSnapshot(long sessionHandle) throws RemoteException; // Used after a sequence gap
+    void restartGameV2(long sessionHandle) throws RemoteException;
+    void leaveGameV2(PlayerCallbackV2 callback) throws RemoteException;
+    void heartbeatV2(PlayerCallbackV2 callback) throws RemoteException;
+}
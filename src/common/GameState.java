@@ -1,54 +1,157 @@
 package common;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
 
-public class GameState implements Serializable {
-    private String[][] board;
-    private String currentPlayer;
-    private String winner;
+// The board is stored as one bit set per side (bit row * size + col, a long
+// per 64 cells), so a 15x15 board takes 64 bytes. Only the lines through the
+// last move are checked for a win, at most winLength - 1 cells each way in
+// four directions, and the stones are counted for the draw: a move costs the
+// same whatever the board size. The 3x3 board fits in one long and keeps its
+// lookup table of winning masks. getBoard() still builds the String[][] view
+// used by the callbacks.
+// On the wire a 3x3 state is three bytes: one byte of flags and the BoardCodec
+// code of the board; larger boards send their variant and bit sets instead.
+public class GameState implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int SIDE_X = 0;
+    public static final int SIDE_O = 1;
+    public static final int NO_SIDE = -1;
+    private static final String[] SYMBOLS = { "X", "O" };
+
+    private static final int FULL_BOARD = 0x1FF;
+    // Les 8 alignements gagnants : 3 lignes, 3 colonnes, 2 diagonales
+    private static final int[] WIN_MASKS = {
+        0x007, 0x038, 0x1C0, // lignes
+        0x049, 0x092, 0x124, // colonnes
+        0x111, 0x054         // diagonales
+    };
+    // WINNING[mask] is true when the cells in mask contain a complete line
+    private static final boolean[] WINNING = new boolean[FULL_BOARD + 1];
+
+    static {
+        for (int mask = 0; mask <= FULL_BOARD; mask++) {
+            for (int line : WIN_MASKS) {
+                if ((mask & line) == line) {
+                    WINNING[mask] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    // The four directions a line can take from a cell: row, column, both diagonals
+    private static final int[][] DIRECTIONS = { {0, 1}, {1, 0}, {1, 1}, {1, -1} };
+
+    private GameVariant variant;
+    private int size;
+    // cells[side][cell >> 6] holds bit cell & 63
+    private long[][] cells;
+    private int stones;
+    // Cell of the last move, -1 when the board was loaded rather than played
+    private int lastCell;
+    private int currentSide;
+    private int winnerSide;
     private boolean gameOver;
 
     // Constructeur
     public GameState() {
-        this.board = new String[3][3];
-        this.currentPlayer = "X"; // X commence toujours
-        this.winner = null;
+        this(GameVariant.CLASSIC);
+    }
+
+    public GameState(GameVariant variant) {
+        setVariant(variant);
+        this.currentSide = SIDE_X; // X commence toujours
+        this.winnerSide = NO_SIDE;
         this.gameOver = false;
-        initializeBoard();
     }
 
-    // Initialise la grille avec des cases vides
-    private void initializeBoard() {
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                board[i][j] = "";
-            }
-        }
+    private void setVariant(GameVariant variant) {
+        this.variant = variant;
+        this.size = variant.getSize();
+        this.cells = new long[2][(variant.getCellCount() + 63) / 64];
+        this.stones = 0;
+        this.lastCell = -1;
+    }
+
+    // Side index of a symbol ("X" -> SIDE_X, "O" -> SIDE_O), NO_SIDE for anything else
+    public static int sideOf(String symbol) {
+        if (symbol == null || symbol.length() != 1) return NO_SIDE;
+        char c = symbol.charAt(0);
+        return c == 'X' ? SIDE_X : c == 'O' ? SIDE_O : NO_SIDE;
+    }
+
+    public static String symbolOf(int side) {
+        return side == NO_SIDE ? null : SYMBOLS[side];
+    }
+
+    public GameVariant getVariant() {
+        return variant;
     }
 
     // Getters et Setters
     public String[][] getBoard() {
-        return board;
+        return BoardCodec.toBoard(size, cells[SIDE_X], cells[SIDE_O]);
     }
 
     public void setBoard(String[][] board) {
-        this.board = board;
+        clearCells();
+        for (int i = 0; i < Math.min(size, board.length); i++) {
+            for (int j = 0; j < Math.min(size, board[i].length); j++) {
+                int side = sideOf(board[i][j]);
+                if (side != NO_SIDE) {
+                    place(i * size + j, side);
+                }
+            }
+        }
+        lastCell = -1;
+    }
+
+    // Cells occupied by one side of a 3x3 board, bit row * 3 + col
+    public int getMask(int side) {
+        return (int) cells[side][0];
+    }
+
+    // Cells occupied by one side, bit row * size + col; a copy
+    public long[] getCells(int side) {
+        return cells[side].clone();
+    }
+
+    // The board in BoardCodec form; 3x3 boards only
+    public int getBoardCode() {
+        return BoardCodec.encode(getMask(SIDE_X), getMask(SIDE_O));
     }
 
     public String getCurrentPlayer() {
-        return currentPlayer;
+        return SYMBOLS[currentSide];
     }
 
     public void setCurrentPlayer(String currentPlayer) {
-        this.currentPlayer = currentPlayer;
+        this.currentSide = sideOf(currentPlayer);
+    }
+
+    public int getCurrentSide() {
+        return currentSide;
     }
 
     public String getWinner() {
-        return winner;
+        return symbolOf(winnerSide);
     }
 
     public void setWinner(String winner) {
-        this.winner = winner;
+        this.winnerSide = sideOf(winner);
+    }
+
+    public int getWinnerSide() {
+        return winnerSide;
+    }
+
+    public void setWinnerSide(int winnerSide) {
+        this.winnerSide = winnerSide;
     }
 
     public boolean isGameOver() {
@@ -61,83 +164,189 @@ public class GameState implements Serializable {
 
     // Méthode pour changer de joueur
     public void switchPlayer() {
-        this.currentPlayer = (this.currentPlayer.equals("X")) ? "O" : "X";
+        this.currentSide ^= 1;
     }
 
     // Méthode pour vérifier si une case est vide
     public boolean isCellEmpty(int row, int col) {
-        return board[row][col].isEmpty();
+        int cell = row * size + col;
+        return ((cells[SIDE_X][cell >> 6] | cells[SIDE_O][cell >> 6]) & (1L << cell)) == 0;
     }
 
     // Méthode pour placer un symbole sur la grille
     public void makeMove(int row, int col, String symbol) {
-        if (row >= 0 && row < 3 && col >= 0 && col < 3) {
-            board[row][col] = symbol;
+        int side = sideOf(symbol);
+        if (side != NO_SIDE) {
+            makeMove(row, col, side);
+        }
+    }
+
+    public void makeMove(int row, int col, int side) {
+        if (variant.contains(row, col) && isCellEmpty(row, col)) {
+            place(row * size + col, side);
+            lastCell = row * size + col;
         }
     }
 
+    private void place(int cell, int side) {
+        cells[side][cell >> 6] |= 1L << cell;
+        stones++;
+    }
+
+    private boolean owns(int side, int row, int col) {
+        int cell = row * size + col;
+        return (cells[side][cell >> 6] & (1L << cell)) != 0;
+    }
+
     // Méthode pour vérifier s'il y a un gagnant
     public boolean checkWin() {
-        // Vérification des lignes et colonnes
-        for (int i = 0; i < 3; i++) {
-            // Lignes
-            if (!board[i][0].isEmpty() && board[i][0].equals(board[i][1]) && board[i][0].equals(board[i][2])) {
-                this.winner = board[i][0];
-                return true;
-            }
-            // Colonnes
-            if (!board[0][i].isEmpty() && board[0][i].equals(board[1][i]) && board[0][i].equals(board[2][i])) {
-                this.winner = board[0][i];
-                return true;
-            }
+        return hasLine(SIDE_X) || hasLine(SIDE_O);
+    }
+
+    // Only the side that just moved can have completed a line, and only through its last move
+    public boolean checkWin(int side) {
+        boolean won;
+        if (variant.isClassic()) {
+            won = WINNING[getMask(side)];
+        } else {
+            won = lastCell >= 0 && owns(side, lastCell / size, lastCell % size) && lineThrough(lastCell, side);
         }
-        
-        // Diagonales
-        if (!board[0][0].isEmpty() && board[0][0].equals(board[1][1]) && board[0][0].equals(board[2][2])) {
-            this.winner = board[0][0];
-            return true;
+        if (won) {
+            this.winnerSide = side;
         }
-        if (!board[0][2].isEmpty() && board[0][2].equals(board[1][1]) && board[0][2].equals(board[2][0])) {
-            this.winner = board[0][2];
-            return true;
+        return won;
+    }
+
+    // Looks at most winLength - 1 cells each way along the four directions
+    private boolean lineThrough(int cell, int side) {
+        int winLength = variant.getWinLength();
+        int row = cell / size;
+        int col = cell % size;
+        for (int[] direction : DIRECTIONS) {
+            int count = 1;
+            for (int sign = -1; sign <= 1; sign += 2) {
+                int r = row + sign * direction[0];
+                int c = col + sign * direction[1];
+                while (count < winLength && r >= 0 && r < size && c >= 0 && c < size && owns(side, r, c)) {
+                    count++;
+                    r += sign * direction[0];
+                    c += sign * direction[1];
+                }
+            }
+            if (count >= winLength) return true;
         }
-        
         return false;
     }
 
-    // Méthode pour vérifier si la grille est pleine (match nul)
-    public boolean isBoardFull() {
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                if (board[i][j].isEmpty()) {
-                    return false;
+    // Whole-board check, for positions that were loaded rather than played
+    private boolean hasLine(int side) {
+        if (variant.isClassic()) return checkWin(side);
+        for (int word = 0; word < cells[side].length; word++) {
+            for (long bits = cells[side][word]; bits != 0; bits &= bits - 1) {
+                if (lineThrough(word * 64 + Long.numberOfTrailingZeros(bits), side)) {
+                    this.winnerSide = side;
+                    return true;
                 }
             }
         }
-        return true;
+        return false;
+    }
+
+    // True when the cells of mask (bit row * 3 + col) contain a complete line
+    public static boolean isWinningMask(int mask) {
+        return WINNING[mask & FULL_BOARD];
+    }
+
+    // Méthode pour vérifier si la grille est pleine (match nul)
+    public boolean isBoardFull() {
+        return stones == variant.getCellCount();
+    }
+
+    // Rebuilds a saved 3x3 position; the outcome follows from the board
+    public void restore(int boardCode, int currentSide) {
+        restore(new long[] {BoardCodec.xMask(boardCode)}, new long[] {BoardCodec.oMask(boardCode)}, currentSide);
+    }
+
+    public void restore(long[] xCells, long[] oCells, int currentSide) {
+        clearCells();
+        for (int word = 0; word < cells[SIDE_X].length; word++) {
+            cells[SIDE_X][word] = xCells[word];
+            cells[SIDE_O][word] = oCells[word] & ~xCells[word];
+            stones += Long.bitCount(cells[SIDE_X][word]) + Long.bitCount(cells[SIDE_O][word]);
+        }
+        this.currentSide = currentSide;
+        this.winnerSide = NO_SIDE;
+        this.gameOver = hasLine(SIDE_X) || hasLine(SIDE_O) || isBoardFull();
+    }
+
+    private void clearCells() {
+        Arrays.fill(cells[SIDE_X], 0);
+        Arrays.fill(cells[SIDE_O], 0);
+        stones = 0;
+        lastCell = -1;
     }
 
     // Méthode pour réinitialiser le jeu
     public void resetGame() {
-        initializeBoard();
-        this.currentPlayer = "X";
-        this.winner = null;
+        clearCells();
+        this.currentSide = SIDE_X;
+        this.winnerSide = NO_SIDE;
         this.gameOver = false;
     }
 
+    // flags: current side (bit 0), game over (bit 1), winner side + 1 (bits 2-3), larger board (bit 4);
+    // then the BoardCodec code, or the size, the win length and the two bit sets
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        boolean classic = variant.isClassic();
+        out.writeByte(currentSide | (gameOver ? 2 : 0) | (winnerSide + 1) << 2 | (classic ? 0 : 16));
+        if (classic) {
+            BoardCodec.write(out, getBoardCode());
+        } else {
+            out.writeByte(size);
+            out.writeByte(variant.getWinLength());
+            BoardCodec.writeCells(out, cells[SIDE_X], variant.getCellCount());
+            BoardCodec.writeCells(out, cells[SIDE_O], variant.getCellCount());
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int flags = in.readUnsignedByte();
+        if ((flags & 16) == 0) {
+            setVariant(GameVariant.CLASSIC);
+            int code = BoardCodec.read(in);
+            restore(code, flags & 1);
+        } else {
+            int boardSize = in.readUnsignedByte();
+            int winLength = in.readUnsignedByte();
+            try {
+                setVariant(GameVariant.of(boardSize, winLength));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+            restore(BoardCodec.readCells(in, variant.getCellCount()), BoardCodec.readCells(in,
+                    variant.getCellCount()), flags & 1);
+        }
+        currentSide = flags & 1;
+        gameOver = (flags & 2) != 0;
+        winnerSide = ((flags >> 2) & 3) - 1;
+    }
+
     // Représentation textuelle de l'état du jeu (pour le débogage)
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Current Player: ").append(currentPlayer).append("\n");
-        sb.append("Winner: ").append(winner != null ? winner : "None").append("\n");
+        sb.append("Current Player: ").append(getCurrentPlayer()).append("\n");
+        sb.append("Winner: ").append(winnerSide != NO_SIDE ? getWinner() : "None").append("\n");
         sb.append("Board:\n");
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
+        String[][] board = getBoard();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
                 sb.append(board[i][j].isEmpty() ? "-" : board[i][j]).append(" ");
             }
             sb.append("\n");
         }
         return sb.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package common;
+
+import java.io.Serializable;
+
+// Board size and number of marks in a row that wins: 3x3 with 3 in a row for
+// the classic game, 15x15 with 5 for Gomoku. Cells are numbered
+// row * size + col.
+public final class GameVariant implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int MIN_SIZE = 3;
+    // Cell numbers must fit in a short on the wire and in the journal
+    public static final int MAX_SIZE = 64;
+    public static final GameVariant CLASSIC = new GameVariant(3, 3);
+
+    private final int size;
+    private final int winLength;
+
+    private GameVariant(int size, int winLength) {
+        this.size = size;
+        this.winLength = winLength;
+    }
+
+    public static GameVariant of(int size, int winLength) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be between " + MIN_SIZE + " and " + MAX_SIZE
+                    + ": " + size);
+        }
+        if (winLength < 3 || winLength > size) {
+            throw new IllegalArgumentException("Win length must be between 3 and the board size: " + winLength);
+        }
+        return size == 3 ? CLASSIC : new GameVariant(size, winLength);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getWinLength() {
+        return winLength;
+    }
+
+    public int getCellCount() {
+        return size * size;
+    }
+
+    // The 3x3 game, whose boards also have a BoardCodec code
+    public boolean isClassic() {
+        return size == 3;
+    }
+
+    public int cell(int row, int col) {
+        return row * size + col;
+    }
+
+    public boolean contains(int row, int col) {
+        return row >= 0 && row < size && col >= 0 && col < size;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof GameVariant)) return false;
+        GameVariant variant = (GameVariant) other;
+        return size == variant.size && winLength == variant.winLength;
+    }
+
+    @Override
+    public int hashCode() {
+        return size * 31 + winLength;
+    }
+
+    @Override
+    public String toString() {
+        return size + "x" + size + ", " + winLength + " in a row";
+    }
+}
@@ -0,0 +1,12 @@
+package common;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// Elo ratings of a game server, bound as "Leaderboard" next to "GameService".
+// The leaderboard holds at most 100 players and is refreshed about once a second.
+public interface LeaderboardInterface extends Remote {
+    PlayerRating[] getTopPlayers(int count) throws RemoteException;
+    PlayerRating getRating(String playerName) throws RemoteException; // 1500 and no games for an unknown player
+    int getRatedPlayerCount() throws RemoteException;
+}
@@ -0,0 +1,17 @@
+package common;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// Entry point of a sharded deployment, bound as "Lobby" in the RMI registry.
+// Clients ask it which game server to join and then talk to that shard
+// directly; shards report their load to it periodically.
+public interface LobbyInterface extends Remote {
+    // Least-loaded shard with room for one more player, or null when all are full
+    GameInterface findShard(String playerName) throws RemoteException;
+
+    // Called by every shard; the first report registers it, missing reports retire it
+    void reportLoad(GameInterface shard, ShardLoad load) throws RemoteException;
+
+    ShardLoad[] getShardLoads() throws RemoteException;
+}
@@ -0,0 +1,15 @@
+package common;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// Finished matches of a game server, bound as "MatchHistory" next to "GameService".
+// Pages are newest first and hold at most 100 matches; to get the next page,
+// pass the id of the last match received as beforeMatchId.
+public interface MatchHistoryInterface extends Remote {
+    MatchRecord[] getPlayerHistory(String playerName, long beforeMatchId, int limit) throws RemoteException; // beforeMatchId <= 0 for the newest matches
+    MatchRecord[] getPlayerHistoryBefore(String playerName, long beforeMillis, int limit) throws RemoteException;
+    int getPlayerMatchCount(String playerName) throws RemoteException;
+    MatchRecord getMatch(long matchId) throws RemoteException; // null if there is no such match
+    long getMatchCount() throws RemoteException;
+}
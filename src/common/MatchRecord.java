@@ -0,0 +1,156 @@
+package common;
+
+import java.io.Serializable;
+
+// One finished match as stored in the match history. The game itself is
+// packed in a single long:
+//   bits 0-35   cells played, 4 bits each, in order
+//   bits 36-39  number of moves
+//   bit  40     side that started
+//   bit  41     side of player 1
+//   bits 42-43  outcome
+// The upper 20 bits are left to the store (it keeps the end time there).
+// Only 3x3 games keep their moves; on larger boards the count stays at 0.
+public class MatchRecord implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int X_WON = 0;
+    public static final int O_WON = 1;
+    public static final int DRAW = 2;
+    // A player left before the end
+    public static final int ABANDONED = 3;
+
+    public static final int GAME_BITS = 44;
+    public static final long GAME_MASK = (1L << GAME_BITS) - 1;
+    private static final int COUNT_SHIFT = 36;
+    private static final int STARTER_SHIFT = 40;
+    private static final int PLAYER1_SHIFT = 41;
+    private static final int OUTCOME_SHIFT = 42;
+
+    private final long matchId;
+    private final String player1Name;
+    private final String player2Name;
+    private final long game;
+    private final long endMillis;
+
+    public MatchRecord(long matchId, String player1Name, String player2Name, long game, long endMillis) {
+        this.matchId = matchId;
+        this.player1Name = player1Name;
+        this.player2Name = player2Name;
+        this.game = game & GAME_MASK;
+        this.endMillis = endMillis;
+    }
+
+    // A game with no move yet; the outcome is set by finish()
+    public static long start(int startingSide, int player1Side) {
+        return (long) startingSide << STARTER_SHIFT | (long) player1Side << PLAYER1_SHIFT;
+    }
+
+    public static long addMove(long game, int cell) {
+        int count = moveCount(game);
+        if (count >= 9) return game;
+        return (game | (long) cell << (count * 4)) + (1L << COUNT_SHIFT);
+    }
+
+    public static long finish(long game, int outcome) {
+        return game & ~(3L << OUTCOME_SHIFT) | (long) outcome << OUTCOME_SHIFT;
+    }
+
+    public static int moveCount(long game) {
+        return (int) (game >>> COUNT_SHIFT) & 0xF;
+    }
+
+    public static int moveAt(long game, int index) {
+        return (int) (game >>> (index * 4)) & 0xF;
+    }
+
+    public static int startingSide(long game) {
+        return (int) (game >>> STARTER_SHIFT) & 1;
+    }
+
+    public static int player1Side(long game) {
+        return (int) (game >>> PLAYER1_SHIFT) & 1;
+    }
+
+    public static int outcome(long game) {
+        return (int) (game >>> OUTCOME_SHIFT) & 3;
+    }
+
+    public long getMatchId() {
+        return matchId;
+    }
+
+    public String getPlayer1Name() {
+        return player1Name;
+    }
+
+    public String getPlayer2Name() {
+        return player2Name;
+    }
+
+    public String getPlayer1Symbol() {
+        return GameState.symbolOf(player1Side(game));
+    }
+
+    public String getPlayer2Symbol() {
+        return GameState.symbolOf(player1Side(game) ^ 1);
+    }
+
+    public String getStartingSymbol() {
+        return GameState.symbolOf(startingSide(game));
+    }
+
+    public int getOutcome() {
+        return outcome(game);
+    }
+
+    // Symbol of the winner, null for a draw or an abandoned game
+    public String getWinner() {
+        int outcome = outcome(game);
+        return outcome == X_WON || outcome == O_WON ? GameState.symbolOf(outcome) : null;
+    }
+
+    // Name of the winner, null for a draw or an abandoned game
+    public String getWinnerName() {
+        String winner = getWinner();
+        if (winner == null) return null;
+        return winner.equals(getPlayer1Symbol()) ? player1Name : player2Name;
+    }
+
+    public int getMoveCount() {
+        return moveCount(game);
+    }
+
+    // Cell (row * 3 + col) of the given move
+    public int getMove(int index) {
+        return moveAt(game, index);
+    }
+
+    public long getPackedGame() {
+        return game;
+    }
+
+    public long getEndMillis() {
+        return endMillis;
+    }
+
+    // The board after the first moves of the match, for replaying it move by move
+    public String[][] getBoardAfter(int moves) {
+        GameState state = new GameState();
+        int side = startingSide(game);
+        for (int i = 0; i < Math.min(moves, moveCount(game)); i++) {
+            int cell = moveAt(game, i);
+            state.makeMove(cell / 3, cell % 3, side);
+            side ^= 1;
+        }
+        return state.getBoard();
+    }
+
+    @Override
+    public String toString() {
+        int outcome = outcome(game);
+        String result = outcome == DRAW ? "draw" : outcome == ABANDONED ? "abandoned" : getWinnerName() + " won";
+        return "#" + matchId + " " + player1Name + " (" + getPlayer1Symbol() + ") vs " + player2Name + " ("
+                + getPlayer2Symbol() + "), " + getMoveCount() + " moves, " + result;
+    }
+}
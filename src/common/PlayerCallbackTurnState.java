@@ -0,0 +1,10 @@
+package common;
+
+import java.rmi.RemoteException;
+
+// v1 callback taking the whole state after each change in one call. Clients
+// built before it keep PlayerCallback alone and still get showMessage,
+// updateBoard and notifyTurn.
+public interface PlayerCallbackTurnState extends PlayerCallback {
+    void updateTurnState(TurnUpdate update) throws RemoteException; // Replaces showMessage + updateBoard + notifyTurn after each move
+}
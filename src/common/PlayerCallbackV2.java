@@ -0,0 +1,19 @@
+package common;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// Client side of protocol v2. Each state change carries a sequence number;
+// a client that sees a gap asks GameInterfaceV2.getSnapshot for the full board.
+public interface PlayerCallbackV2 extends Remote {
+    byte STATUS_PLAYING = 0;
+    byte STATUS_WIN = 1; // The side that made the move has won
+    byte STATUS_DRAW = 2;
+
+    void sessionStarted(long sessionHandle, byte side, String opponentName) throws RemoteException;
+    void moveApplied(byte cell, byte side, int sequence, byte status) throws RemoteException;
+    void boardSnapshot(BoardSnapshot snapshot) throws RemoteException;
+    void showMessage(String message) throws RemoteException;
+    void opponentLeft() throws RemoteException;
+    boolean ping() throws RemoteException;
+}
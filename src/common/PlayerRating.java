@@ -0,0 +1,70 @@
+package common;
+
+import java.io.Serializable;
+
+// Elo rating of a player and the games it is based on. Immutable: every
+// rated game replaces the player's PlayerRating with a new one.
+public class PlayerRating implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int INITIAL_RATING = 1500;
+
+    private final String playerName;
+    private final double rating;
+    private final int wins;
+    private final int draws;
+    private final int losses;
+
+    public PlayerRating(String playerName, double rating, int wins, int draws, int losses) {
+        this.playerName = playerName;
+        this.rating = rating;
+        this.wins = wins;
+        this.draws = draws;
+        this.losses = losses;
+    }
+
+    // A player that has not played a rated game yet
+    public static PlayerRating unrated(String playerName) {
+        return new PlayerRating(playerName, INITIAL_RATING, 0, 0, 0);
+    }
+
+    // The rating after one more game; score is 1 for a win, 0.5 for a draw, 0 for a loss
+    public PlayerRating after(double score, double newRating) {
+        return new PlayerRating(playerName, newRating, wins + (score == 1 ? 1 : 0), draws + (score == 0.5 ? 1 : 0),
+                losses + (score == 0 ? 1 : 0));
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public double getRating() {
+        return rating;
+    }
+
+    // Rounded, as shown to the players
+    public int getDisplayRating() {
+        return (int) Math.round(rating);
+    }
+
+    public int getGames() {
+        return wins + draws + losses;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public int getDraws() {
+        return draws;
+    }
+
+    public int getLosses() {
+        return losses;
+    }
+
+    @Override
+    public String toString() {
+        return playerName + " " + getDisplayRating() + " (" + wins + "W " + draws + "D " + losses + "L)";
+    }
+}
@@ -0,0 +1,55 @@
+package common;
+
+import java.io.Serializable;
+
+// Load of one game server process (shard), as reported to the lobby
+public class ShardLoad implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String shardName;
+    private final int capacity;
+    private final int players;
+    private final int waiting;
+    private final int playing;
+    private final int sessions;
+
+    public ShardLoad(String shardName, int capacity, int players, int waiting, int playing, int sessions) {
+        this.shardName = shardName;
+        this.capacity = capacity;
+        this.players = players;
+        this.waiting = waiting;
+        this.playing = playing;
+        this.sessions = sessions;
+    }
+
+    public String getShardName() {
+        return shardName;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Admitted players, waiting or playing
+    public int getPlayers() {
+        return players;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public int getPlaying() {
+        return playing;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    @Override
+    public String toString() {
+        return shardName + " " + players + "/" + capacity + " players (" + waiting + " waiting, "
+                + sessions + " sessions)";
+    }
+}
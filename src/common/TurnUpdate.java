@@ -0,0 +1,196 @@
+package common;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+// Everything a player needs after one server-side state change, sent as a
+// single callback: the board, whose turn it is, the game-over status and the
+// status messages produced by the operation. A 3x3 board travels as a
+// BoardCodec code, a larger one as its variant and one bit set per side; the
+// sides are bytes and the String[][] view is only built on demand.
+public class TurnUpdate implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    private int boardCode;
+    private GameVariant variant = GameVariant.CLASSIC;
+    // Larger boards only, bit row * size + col
+    private long[] xCells;
+    private long[] oCells;
+    private int currentSide;
+    private boolean gameOver;
+    private int winnerSide;
+    private String[] messages;
+    // Position of this change in the session's history, and the move it applied if any
+    private int sequence;
+    private int lastCell;
+    private int lastSide;
+    private transient String[][] board;
+
+    public TurnUpdate(String[][] board, String currentPlayer, boolean gameOver, String winner, String[] messages,
+                      int sequence, int lastCell, int lastSide) {
+        this(BoardCodec.encode(board), GameState.sideOf(currentPlayer), gameOver, GameState.sideOf(winner),
+                messages, sequence, lastCell, lastSide);
+    }
+
+    public TurnUpdate(int boardCode, int currentSide, boolean gameOver, int winnerSide, String[] messages,
+                      int sequence, int lastCell, int lastSide) {
+        this.boardCode = boardCode;
+        this.currentSide = currentSide;
+        this.gameOver = gameOver;
+        this.winnerSide = winnerSide;
+        this.messages = messages;
+        this.sequence = sequence;
+        this.lastCell = lastCell;
+        this.lastSide = lastSide;
+    }
+
+    // A board of any size; the cell arrays must not change afterwards
+    public TurnUpdate(GameVariant variant, long[] xCells, long[] oCells, int currentSide, boolean gameOver,
+                      int winnerSide, String[] messages, int sequence, int lastCell, int lastSide) {
+        this(variant.isClassic() ? BoardCodec.encode((int) xCells[0], (int) oCells[0]) : -1, currentSide, gameOver,
+                winnerSide, messages, sequence, lastCell, lastSide);
+        if (!variant.isClassic()) {
+            this.variant = variant;
+            this.xCells = xCells;
+            this.oCells = oCells;
+        }
+    }
+
+    // Required by Externalizable
+    public TurnUpdate() {
+    }
+
+    // The current state of a game
+    public static TurnUpdate of(GameState state, String[] messages, int sequence, int lastCell, int lastSide) {
+        if (state.getVariant().isClassic()) {
+            return new TurnUpdate(state.getBoardCode(), state.getCurrentSide(), state.isGameOver(),
+                    state.getWinnerSide(), messages, sequence, lastCell, lastSide);
+        }
+        return new TurnUpdate(state.getVariant(), state.getCells(GameState.SIDE_X), state.getCells(GameState.SIDE_O),
+                state.getCurrentSide(), state.isGameOver(), state.getWinnerSide(), messages, sequence, lastCell,
+                lastSide);
+    }
+
+    public String[][] getBoard() {
+        if (board == null) {
+            board = variant.isClassic() ? BoardCodec.toBoard(boardCode)
+                    : BoardCodec.toBoard(variant.getSize(), xCells, oCells);
+        }
+        return board;
+    }
+
+    // The board in BoardCodec form, -1 for boards larger than 3x3
+    public int getBoardCode() {
+        return boardCode;
+    }
+
+    public GameVariant getVariant() {
+        return variant;
+    }
+
+    // Cells held by one side, bit row * size + col; not a copy
+    public long[] getCells(int side) {
+        if (variant.isClassic()) {
+            return new long[] {BoardCodec.mask(boardCode, side)};
+        }
+        return side == GameState.SIDE_X ? xCells : oCells;
+    }
+
+    // Symbol of the player who has to move next
+    public String getCurrentPlayer() {
+        return GameState.symbolOf(currentSide);
+    }
+
+    public int getCurrentSide() {
+        return currentSide;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    // Winning symbol, or null for a draw or a game still in progress
+    public String getWinner() {
+        return GameState.symbolOf(winnerSide);
+    }
+
+    public int getWinnerSide() {
+        return winnerSide;
+    }
+
+    public String[] getMessages() {
+        return messages;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    // Cell (row * size + col) played by this change, or -1 when it was not a move (start, restart)
+    public int getLastCell() {
+        return lastCell;
+    }
+
+    public int getLastSide() {
+        return lastSide;
+    }
+
+    public boolean isTurnOf(String symbol) {
+        return !gameOver && currentSide != GameState.NO_SIDE && currentSide == GameState.sideOf(symbol);
+    }
+
+    // flags: current side + 1 (bits 0-1), game over (bit 2), winner side + 1 (bits 3-4),
+    // last side + 1 (bits 5-6), larger board (bit 7); + 1 so that NO_SIDE fits. Then the
+    // BoardCodec code, or the size, the win length and the two bit sets
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        boolean classic = variant.isClassic();
+        out.writeByte((currentSide + 1) | (gameOver ? 4 : 0) | (winnerSide + 1) << 3 | (lastSide + 1) << 5
+                | (classic ? 0 : 128));
+        if (classic) {
+            BoardCodec.write(out, boardCode);
+        } else {
+            out.writeByte(variant.getSize());
+            out.writeByte(variant.getWinLength());
+            BoardCodec.writeCells(out, xCells, variant.getCellCount());
+            BoardCodec.writeCells(out, oCells, variant.getCellCount());
+        }
+        out.writeInt(sequence);
+        out.writeShort(lastCell);
+        out.writeShort(messages.length);
+        for (String message : messages) {
+            out.writeUTF(message);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int flags = in.readUnsignedByte();
+        currentSide = (flags & 3) - 1;
+        gameOver = (flags & 4) != 0;
+        winnerSide = ((flags >> 3) & 3) - 1;
+        lastSide = ((flags >> 5) & 3) - 1;
+        if ((flags & 128) == 0) {
+            boardCode = BoardCodec.read(in);
+        } else {
+            boardCode = -1;
+            int size = in.readUnsignedByte();
+            int winLength = in.readUnsignedByte();
+            try {
+                variant = GameVariant.of(size, winLength);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+            xCells = BoardCodec.readCells(in, variant.getCellCount());
+            oCells = BoardCodec.readCells(in, variant.getCellCount());
+        }
+        sequence = in.readInt();
+        lastCell = in.readShort();
+        messages = new String[in.readUnsignedShort()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = in.readUTF();
+        }
+    }
+}
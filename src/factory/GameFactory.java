@@ -2,6 +2,7 @@ package factory;
 
 import common.GameInterface;
 import server.GameImpl;
+import server.ServerConfig;
 
 public class GameFactory {
     public static GameInterface createGame(int maxPlayers) {
@@ -11,4 +12,12 @@ public class GameFactory {
             throw new RuntimeException("Erreur lors de la création du jeu", e);
         }
     }
+
+    public static GameInterface createGame(ServerConfig config) {
+        try {
+            return new GameImpl(config);
+        } catch (Exception e) {
+            throw new RuntimeException("Erreur lors de la création du jeu", e);
+        }
+    }
 }
@@ -0,0 +1,156 @@
+package server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+// Decides whether a join is accepted, in constant time. Joins in progress hold
+// one of a bounded number of backlog permits and are turned away immediately
+// when none is left; admitted players are counted against the capacity and
+// against the limit of their source host until they leave. The live counters
+// are maintained incrementally as players join, get matched and leave.
+public class AdmissionController {
+    private final int capacity;
+    private final int maxPerSource;
+    private final Semaphore backlog;
+    private final AtomicInteger connecting = new AtomicInteger();
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger playing = new AtomicInteger();
+    private final IntSupplier waiting;
+    // Admitted players per source host; an entry is removed, atomically, when its count drops to 0
+    private final Map<String, Integer> perSource = new ConcurrentHashMap<>();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejectedFull = new LongAdder();
+    private final LongAdder rejectedBacklog = new LongAdder();
+    private final LongAdder rejectedSource = new LongAdder();
+    private final LatencyRecorder joinTime = new LatencyRecorder("joinTime");
+
+    public AdmissionController(ServerConfig config, IntSupplier waiting) {
+        this.capacity = config.getMaxPlayers();
+        this.maxPerSource = config.getMaxPlayersPerSource();
+        this.backlog = new Semaphore(config.getJoinBacklog());
+        this.waiting = waiting;
+    }
+
+    // Starts handling a join; returns null when admitted, or the reason it was refused.
+    // An admitted join must be ended with endJoin(), and the player later released.
+    public String beginJoin(String source) {
+        if (!backlog.tryAcquire()) {
+            rejectedBacklog.increment();
+            return "Server busy, please try again later";
+        }
+        connecting.incrementAndGet();
+        String refusal = reserve(source);
+        if (refusal != null) {
+            connecting.decrementAndGet();
+            backlog.release();
+        }
+        return refusal;
+    }
+
+    private String reserve(String source) {
+        int current;
+        do {
+            current = admitted.get();
+            if (current >= capacity) {
+                rejectedFull.increment();
+                return "Game is full (maximum " + capacity + " players)";
+            }
+        } while (!admitted.compareAndSet(current, current + 1));
+
+        if (maxPerSource > 0) {
+            Integer count = perSource.compute(source, (key, sourceCount) -> sourceCount == null ? 1 : sourceCount + 1);
+            if (count > maxPerSource) {
+                releaseSource(source);
+                admitted.decrementAndGet();
+                rejectedSource.increment();
+                return "Too many players from " + source + " (maximum " + maxPerSource + ")";
+            }
+        }
+        accepted.increment();
+        return null;
+    }
+
+    public void endJoin(long startNanos) {
+        joinTime.recordNanos(System.nanoTime() - startNanos);
+        connecting.decrementAndGet();
+        backlog.release();
+    }
+
+    // Gives back the slot of a player that left
+    public void release(String source) {
+        admitted.decrementAndGet();
+        if (maxPerSource > 0) {
+            releaseSource(source);
+        }
+    }
+
+    private void releaseSource(String source) {
+        perSource.compute(source, (key, current) -> current == null || current <= 1 ? null : current - 1);
+    }
+
+    // Only the players holding an admission slot count as playing, not the bots; a player
+    // rejoining a recovered session counts on its own
+    public void sessionStarted(int admittedPlayers) {
+        playing.addAndGet(admittedPlayers);
+    }
+
+    public void sessionEnded(int admittedPlayers) {
+        playing.addAndGet(-admittedPlayers);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getPlayerCount() {
+        return admitted.get();
+    }
+
+    public int getConnectingCount() {
+        return connecting.get();
+    }
+
+    public int getWaitingCount() {
+        return waiting.getAsInt();
+    }
+
+    public int getPlayingCount() {
+        return playing.get();
+    }
+
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedFull.sum() + rejectedBacklog.sum() + rejectedSource.sum();
+    }
+
+    public long getRejectedFullCount() {
+        return rejectedFull.sum();
+    }
+
+    public long getRejectedBacklogCount() {
+        return rejectedBacklog.sum();
+    }
+
+    public long getRejectedSourceCount() {
+        return rejectedSource.sum();
+    }
+
+    public LatencyRecorder getJoinTime() {
+        return joinTime;
+    }
+
+    @Override
+    public String toString() {
+        return "players=" + admitted.get() + "/" + capacity + " connecting=" + connecting.get()
+                + " waiting=" + getWaitingCount() + " playing=" + playing.get()
+                + " accepted=" + accepted.sum() + " rejected(full=" + rejectedFull.sum()
+                + ", backlog=" + rejectedBacklog.sum() + ", source=" + rejectedSource.sum() + ")";
+    }
+}
@@ -0,0 +1,218 @@
+package server;
+
+import common.BoardCodec;
+import common.GameInterface;
+import common.GameState;
+import common.GameVariant;
+import common.PlayerCallback;
+import common.PlayerCallbackTurnState;
+import common.TurnUpdate;
+import java.rmi.RemoteException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Server-hosted opponent for a player who waited alone too long. It lives in
+// the server process: its callbacks are delivered by the CallbackDispatcher
+// like any player's, and when an update gives it the turn it picks its move
+// from the PositionTable and plays it through GameImpl on that same thread,
+// with no RMI call and no socket. The level sets how often it deliberately
+// plays one of the worse moves. On larger boards the move comes from a
+// GomokuEngine search run on the engine's own threads, which plays it when
+// done; there the level sets how deep the bot searches.
+public class BotPlayer implements PlayerCallbackTurnState {
+    // Bot names start with this; players cannot join under such a name and bot games are not rated
+    public static final String NAME_PREFIX = "[bot] ";
+
+    public enum Level {
+        EASY(0.5, 1), MEDIUM(0.25, 2), HARD(0.08, 4), PERFECT(0, GomokuEngine.MAX_DEPTH);
+
+        private final double mistakeRate;
+        private final int searchDepth;
+
+        Level(double mistakeRate, int searchDepth) {
+            this.mistakeRate = mistakeRate;
+            this.searchDepth = searchDepth;
+        }
+
+        public double getMistakeRate() {
+            return mistakeRate;
+        }
+
+        // Deepest search on boards larger than 3x3, the time given to a move permitting
+        public int getSearchDepth() {
+            return searchDepth;
+        }
+
+        // The level matching a player's rating
+        public static Level forRating(int rating) {
+            if (rating < 1400) return EASY;
+            if (rating < 1550) return MEDIUM;
+            if (rating < 1700) return HARD;
+            return PERFECT;
+        }
+    }
+
+    private final GameInterface game;
+    private final Level level;
+    private final String name;
+    // Null on a 3x3 server
+    private final GomokuEngine engine;
+    // What is left of the current game's CPU budget
+    private final AtomicLong cpuLeftNanos = new AtomicLong();
+    // Sequence of the last update a search was started for; only read and written on the callback thread
+    private int searchedSequence = -1;
+    private volatile String symbol;
+    private volatile String sessionId;
+
+    public BotPlayer(GameInterface game, Level level, GomokuEngine engine) {
+        this.game = game;
+        this.level = level;
+        this.name = NAME_PREFIX + level.name().toLowerCase();
+        this.engine = engine;
+        if (engine != null) {
+            cpuLeftNanos.set(engine.getGameCpuNanos());
+        }
+    }
+
+    public static boolean isBotName(String playerName) {
+        return playerName != null && playerName.startsWith(NAME_PREFIX);
+    }
+
+    // The level a bot name stands for, null if it is not a bot name
+    public static Level levelOf(String playerName) {
+        if (!isBotName(playerName)) return null;
+        try {
+            return Level.valueOf(playerName.substring(NAME_PREFIX.length()).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    @Override
+    public void updateTurnState(TurnUpdate update) throws RemoteException {
+        String currentSymbol = symbol;
+        String currentSession = sessionId;
+        if (update.isGameOver() || currentSymbol == null || currentSession == null
+                || !update.isTurnOf(currentSymbol)) return;
+        int side = GameState.sideOf(currentSymbol);
+        if (!update.getVariant().isClassic()) {
+            searchMove(update, side, currentSymbol, currentSession);
+            return;
+        }
+        int code = update.getBoardCode();
+        int cell = PositionTable.chooseMove(BoardCodec.mask(code, side), BoardCodec.mask(code, side ^ 1),
+                level.getMistakeRate(), ThreadLocalRandom.current());
+        if (cell >= 0) {
+            // A stale update only gets the move refused; the next one brings the turn back
+            game.makeMove(cell / 3, cell % 3, currentSymbol, currentSession);
+        }
+    }
+
+    // The callback thread is not held for the search: the engine plays the move when it has it
+    private void searchMove(TurnUpdate update, int side, String currentSymbol, String currentSession) {
+        // A state resent without a move in between must not start a second search
+        if (engine == null || update.getSequence() == searchedSequence) return;
+        searchedSequence = update.getSequence();
+        GameVariant variant = update.getVariant();
+        long[] xCells = update.getCells(GameState.SIDE_X);
+        long[] oCells = update.getCells(GameState.SIDE_O);
+        if (stoneCount(xCells) + stoneCount(oCells) <= 1) {
+            // A new game, with a new budget
+            cpuLeftNanos.set(engine.getGameCpuNanos());
+        }
+        engine.execute(() -> {
+            GomokuEngine.Result result = engine.search(variant, xCells, oCells, side, level.getSearchDepth(),
+                    engine.moveBudgetNanos(cpuLeftNanos.get()));
+            cpuLeftNanos.addAndGet(-result.getCpuNanos());
+            if (result.getCell() < 0) return;
+            try {
+                // Refused like any stale move if the game moved on during the search
+                game.makeMove(result.getCell() / variant.getSize(), result.getCell() % variant.getSize(),
+                        currentSymbol, currentSession);
+            } catch (RemoteException e) {
+                System.err.println(name + " could not play in " + currentSession + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private static int stoneCount(long[] cells) {
+        int count = 0;
+        for (long word : cells) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    @Override
+    public void assignSymbol(String symbol) throws RemoteException {
+        this.symbol = symbol;
+    }
+
+    @Override
+    public void setGameSession(String sessionId) throws RemoteException {
+        this.sessionId = sessionId;
+    }
+
+    @Override
+    public String getGameSessionId() throws RemoteException {
+        return sessionId;
+    }
+
+    @Override
+    public String getPlayerSymbol() throws RemoteException {
+        return symbol;
+    }
+
+    @Override
+    public boolean wantsToPlayAgain() throws RemoteException {
+        return true;
+    }
+
+    @Override
+    public boolean ping() throws RemoteException {
+        return true;
+    }
+
+    // The rest is for human players: the board, turn and restarts all come with updateTurnState
+
+    @Override
+    public void showMessage(String message) throws RemoteException {
+    }
+
+    @Override
+    public void notifyTurn(String symbol) throws RemoteException {
+    }
+
+    @Override
+    public void updateBoard(String[][] board) throws RemoteException {
+    }
+
+    @Override
+    public void gameOver(String winner) throws RemoteException {
+    }
+
+    @Override
+    public void promptForRestart() throws RemoteException {
+    }
+
+    @Override
+    public void promptForNewOpponent() throws RemoteException {
+    }
+
+    @Override
+    public void setOpponentInfo(String opponentName) throws RemoteException {
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,93 @@
+package server;
+
+import common.PlayerCallback;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Owns one PlayerMailbox per connected player and the bounded thread pool that
+// drains them. Remote callbacks never run on the thread that produced them, so
+// a move returns as soon as it is applied, while each player still receives its
+// events in order. A player whose mailbox failed (a remote call failed, or it
+// fell too far behind) goes to the unreachable player handler.
+public class CallbackDispatcher {
+    private final Map<PlayerCallback, PlayerMailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ExecutorService pool;
+    private final ServerMetrics metrics;
+    private final int maxMailboxDepth;
+    private volatile Consumer<PlayerCallback> unreachableHandler = player -> { };
+
+    public CallbackDispatcher(int threads) {
+        this(threads, new ServerMetrics());
+    }
+
+    // Mailboxes are unbounded unless a depth is given
+    public CallbackDispatcher(int threads, ServerMetrics metrics) {
+        this(threads, metrics, Integer.MAX_VALUE);
+    }
+
+    public CallbackDispatcher(int threads, ServerMetrics metrics, int maxMailboxDepth) {
+        this.metrics = metrics;
+        this.maxMailboxDepth = maxMailboxDepth;
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "callback-dispatcher-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Registers a mailbox for a newly connected player; the only way one is created
+    public PlayerMailbox open(PlayerCallback player, String playerName) {
+        return mailboxes.computeIfAbsent(player, p -> new PlayerMailbox(p, playerName, pool, metrics, maxMailboxDepth,
+                unreachable -> unreachableHandler.accept(unreachable)));
+    }
+
+    // Gets the players whose callbacks failed; it should remove them, which closes their mailbox
+    public void setUnreachableHandler(Consumer<PlayerCallback> handler) {
+        this.unreachableHandler = handler;
+    }
+
+    // Events for a player without a mailbox (it left, or never joined) are dropped and counted
+    public void post(PlayerCallback player, String method, CallbackEvent event) {
+        PlayerMailbox mailbox = mailboxes.get(player);
+        if (mailbox == null) {
+            metrics.callbackDropped();
+            return;
+        }
+        mailbox.post(method, event);
+    }
+
+    // Drops the mailbox of a departed player together with its undelivered events
+    public void close(PlayerCallback player) {
+        PlayerMailbox mailbox = mailboxes.remove(player);
+        if (mailbox != null) {
+            mailbox.close();
+        }
+    }
+
+    public Collection<PlayerMailbox> getMailboxes() {
+        return mailboxes.values();
+    }
+
+    // Mailboxes with at least minDepth undelivered events, i.e. clients falling behind
+    public List<PlayerMailbox> getLaggingMailboxes(int minDepth) {
+        List<PlayerMailbox> lagging = new ArrayList<>();
+        for (PlayerMailbox mailbox : mailboxes.values()) {
+            if (mailbox.getDepth() >= minDepth) {
+                lagging.add(mailbox);
+            }
+        }
+        return lagging;
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
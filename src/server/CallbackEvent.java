@@ -0,0 +1,10 @@
+package server;
+
+import common.PlayerCallback;
+import java.rmi.RemoteException;
+
+// One outbound remote call to a player, queued in its PlayerMailbox
+@FunctionalInterface
+public interface CallbackEvent {
+    void deliver(PlayerCallback player) throws RemoteException;
+}
@@ -0,0 +1,85 @@
+package server;
+
+import common.PlayerCallback;
+import common.PlayerCallbackTurnState;
+import common.TurnUpdate;
+
+// Holds the place of a player in a session recovered from the journal until
+// that player rejoins. Whatever the session sends it is dropped; the player
+// gets the full state when it comes back.
+final class DetachedPlayer implements PlayerCallbackTurnState {
+    private final String name;
+
+    DetachedPlayer(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Override
+    public void showMessage(String message) {
+    }
+
+    @Override
+    public void assignSymbol(String symbol) {
+    }
+
+    @Override
+    public void notifyTurn(String symbol) {
+    }
+
+    @Override
+    public void updateBoard(String[][] board) {
+    }
+
+    @Override
+    public void gameOver(String winner) {
+    }
+
+    @Override
+    public void promptForRestart() {
+    }
+
+    @Override
+    public boolean wantsToPlayAgain() {
+        return false;
+    }
+
+    @Override
+    public String getPlayerSymbol() {
+        return null;
+    }
+
+    @Override
+    public void promptForNewOpponent() {
+    }
+
+    @Override
+    public boolean ping() {
+        return false;
+    }
+
+    @Override
+    public void setGameSession(String sessionId) {
+    }
+
+    @Override
+    public void setOpponentInfo(String opponentName) {
+    }
+
+    @Override
+    public String getGameSessionId() {
+        return null;
+    }
+
+    @Override
+    public void updateTurnState(TurnUpdate update) {
+    }
+
+    @Override
+    public String toString() {
+        return name + " (detached)";
+    }
+}
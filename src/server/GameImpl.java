@@ -1,193 +1,602 @@
 package server;
 
+import common.BoardSnapshot;
 import common.GameInterface;
+import common.GameInterfaceV2;
+import common.GameState;
+import common.GameVariant;
 import common.PlayerCallback;
+import common.PlayerCallbackV2;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
 import java.rmi.server.UnicastRemoteObject;
-import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
-public class GameImpl extends UnicastRemoteObject implements GameInterface {
-    private final Map<String, GameSession> gameSessions;
-    private final Map<PlayerCallback, Long> lastActivity;
-    private final List<PlayerCallback> waitingPlayers;
-    private final Map<PlayerCallback, String> playerNames;
-    private final Map<PlayerCallback, String> playerSymbols;
-    private final Map<PlayerCallback, String> playerSessions;
-    private final int maxPlayers;
-    private final SecureRandom random;
+// Concurrency model: there is no global lock. Sessions live in a SessionTable
+// read without locking, the player directory is a concurrent map, waiting
+// players are paired by the Matchmaker thread and each GameSession serializes
+// the moves of its own game.
+// Protocol v1 (GameInterface) and v2 (GameInterfaceV2) are served by the same
+// sessions: v2 callbacks are wrapped in a V2CallbackAdapter and v1 moves are
+// resolved to the same (session, cell, side) form as v2 moves.
+// With game.journalDir set, session events go to a MoveJournal; at startup the
+// sessions it still holds are rebuilt with placeholders that their players
+// replace through rejoinGame(). With game.historyDir set, finished matches
+// go to a MatchHistory. Every won or drawn game updates the players' ratings
+// in a RatingTable, which the Matchmaker uses to pair players of similar
+// strength. A player still alone after game.botWaitMs plays a BotPlayer
+// hosted in this process, which searches its moves with a GomokuEngine on
+// boards larger than 3x3. Every session plays the board set by
+// game.boardSize and game.winLength; protocol v2 and the binary TCP
+// transport only carry 3x3 boards, so their players are refused otherwise.
+// Spectators watch a session over the binary TCP transport, fed by the
+// session's SpectatorFeed. In tournament mode (game.tournament), joining
+// players are entered in a Tournament, which opens the sessions of each round
+// itself instead of the Matchmaker.
+public class GameImpl extends UnicastRemoteObject implements GameInterface, GameInterfaceV2 {
+    private final SessionTable sessions;
+    private final Map<PlayerCallbackV2, V2CallbackAdapter> v2Players;
+    private final HeartbeatMonitor heartbeats;
+    private final Matchmaker matchmaker;
+    private final PlayerDirectory players;
+    private final AdmissionController admission;
     private final ScheduledExecutorService scheduler;
+    private final CallbackDispatcher dispatcher;
+    private final ServerMetrics metrics;
+    private final List<SessionListener> sessionListeners = new CopyOnWriteArrayList<>();
+    private final SessionListener sessionEvents = new SessionEvents();
+    private final MoveJournal journal;
+    private final MatchHistory history;
+    private final RatingTable ratings = new RatingTable();
+    // Level of the bots offered to lone players, null to follow the player's rating
+    private final BotPlayer.Level botLevel;
+    private final GameVariant variant;
+    // Searches the bots' moves on boards larger than 3x3, null otherwise
+    private final GomokuEngine engine;
+    private final int maxSpectators;
+    // Checked before building the line, outside any session lock
+    private final boolean playerLogging;
+    // Set in tournament mode only
+    private final Tournament tournament;
+    private long lastReportedRejections;
+    
+    // Threads draining the players' outbound callback mailboxes
+    private static final int CALLBACK_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    // Mailbox depth from which a client is reported as falling behind
+    private static final int LAGGING_MAILBOX_DEPTH = 16;
+    // Source recorded for the bots in the player directory
+    private static final String BOT_SOURCE = "bot";
     
     public GameImpl(int maxPlayers) throws RemoteException {
+        this(ServerConfig.fromSystemProperties().setMaxPlayers(maxPlayers));
+    }
+
+    public GameImpl(ServerConfig config) throws RemoteException {
         super();
-        this.gameSessions = new ConcurrentHashMap<>();
-        this.lastActivity = new ConcurrentHashMap<>();
-        this.waitingPlayers = new ArrayList<>();
-        this.playerNames = new HashMap<>();
-        this.playerSymbols = new HashMap<>();
-        this.playerSessions = new HashMap<>();
-        this.maxPlayers = maxPlayers;
-        this.random = new SecureRandom();
+        this.sessions = new SessionTable(config.getMaxPlayers() / 2);
+        this.v2Players = new ConcurrentHashMap<>();
+        this.players = new PlayerDirectory();
+        this.metrics = new ServerMetrics();
+        this.dispatcher = new CallbackDispatcher(CALLBACK_THREADS, metrics, config.getMailboxMaxDepth());
+        this.matchmaker = new Matchmaker(config.getMatchWindow(), config.getMatchWindowGrowth(), this::startSession,
+                this::dropUnreachablePlayer);
+        this.admission = new AdmissionController(config, matchmaker::getWaitingCount);
+        this.botLevel = config.getFixedBotLevel();
+        this.variant = config.getVariant();
+        this.maxSpectators = config.getMaxSpectators();
+        this.playerLogging = config.isPlayerLogging();
+        // The bot's position table only covers the 3x3 board; larger ones need a search
+        this.engine = config.getBotWaitMillis() >= 0 && !variant.isClassic() ? new GomokuEngine(config.getAiThreads(),
+                config.getAiMoveMillis(), config.getAiGameCpuSeconds() * 1000) : null;
+        this.tournament = config.getTournamentFormat() != null ? new Tournament(config.getTournamentFormat(),
+                config.getTournamentPlayers(), config.getTournamentRounds(), new TournamentHost()) : null;
+        // Players of a tournament wait for their round, not for a bot
+        if (config.getBotWaitMillis() >= 0 && tournament == null) {
+            matchmaker.setLonePlayerHandler(config.getBotWaitMillis(), this::startBotSession);
+        }
+        // Inactive players are found by their deadline in a timing wheel, not by a periodic scan
+        this.heartbeats = new HeartbeatMonitor(config, this::evictPlayer);
+        // A player whose callbacks fail leaves the same way, instead of holding dispatcher threads
+        dispatcher.setUnreachableHandler(this::evictPlayer);
         
-        // Start periodic cleanup task
+        // Start periodic report of clients falling behind
         this.scheduler = Executors.newScheduledThreadPool(1);
-        this.scheduler.scheduleAtFixedRate(this::cleanupInactivePlayers, 30, 30, TimeUnit.SECONDS);
+        this.scheduler.scheduleWithFixedDelay(this::reportLaggingClients, config.getReportIntervalSeconds(),
+                config.getReportIntervalSeconds(), TimeUnit.SECONDS);
+        
+        addSessionListener(ratings);
+        if (tournament != null) {
+            addSessionListener(tournament);
+        }
+        this.journal = config.getJournalDir() != null ? openJournal(config) : null;
+        this.history = config.getHistoryDir() != null ? openHistory(config) : null;
+    }
+
+    private MatchHistory openHistory(ServerConfig config) {
+        try {
+            MatchHistory opened = new MatchHistory(Paths.get(config.getHistoryDir()),
+                    config.getHistorySegmentMatches());
+            System.out.println("Match history: " + opened);
+            ratings.replay(opened);
+            addSessionListener(opened);
+            return opened;
+        } catch (IOException e) {
+            System.err.println("Match history disabled, cannot use " + config.getHistoryDir() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Rebuilds the sessions left in the journal, then journals the new events
+    private MoveJournal openJournal(ServerConfig config) {
+        Path directory = Paths.get(config.getJournalDir());
+        try {
+            MoveJournal.Recovery recovery = MoveJournal.recover(directory);
+            System.out.println("Journal recovered: " + recovery);
+            restoreSessions(recovery.getSessions(), config.getRejoinTimeoutSeconds());
+            MoveJournal opened = new MoveJournal(directory, config);
+            addSessionListener(opened);
+            // The recovered sessions become the base, the replayed segments can go
+            opened.snapshot(this::sessionImages);
+            opened.startSnapshots(this::sessionImages, config.getSnapshotIntervalSeconds());
+            return opened;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Journal disabled, cannot use " + directory + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void restoreSessions(List<SessionImage> images, long rejoinTimeoutSeconds) {
+        if (images.isEmpty()) return;
+        List<SessionImage> ordered = new ArrayList<>(images);
+        // SessionTable.restore() wants increasing slots
+        ordered.sort(Comparator.comparingInt(image -> (int) image.getHandle() & Integer.MAX_VALUE));
+        List<Long> handles = new ArrayList<>(ordered.size());
+        for (SessionImage image : ordered) {
+            GameSession session = new GameSession(image, dispatcher, sessionEvents);
+            sessions.restore(session);
+            // Nobody holds a seat yet: each player counts as playing once it rejoins
+            handles.add(image.getHandle());
+            // Bots come back at once, their players through rejoinGame()
+            attachBot(session, image.getPlayer1Name());
+            attachBot(session, image.getPlayer2Name());
+        }
+        System.out.println(handles.size() + " sessions waiting for their players to rejoin within "
+                + rejoinTimeoutSeconds + " s");
+        scheduler.schedule(() -> expireDetachedSessions(handles), rejoinTimeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    private List<SessionImage> sessionImages() {
+        List<SessionImage> images = new ArrayList<>(sessions.size());
+        sessions.forEach(session -> images.add(session.image()));
+        return images;
+    }
+
+    // Receives the start, move, restart and end of every session; add before players join
+    public void addSessionListener(SessionListener listener) {
+        sessionListeners.add(listener);
     }
 
 
     
     @Override
-    public synchronized boolean joinGame(PlayerCallback callback, String playerName) throws RemoteException {
-        System.out.println("Player joined: " + playerName);
-        
-        if (getPlayerCount() >= maxPlayers) {
-            callback.showMessage("Game is full (maximum " + maxPlayers + " players)");
+    public boolean joinGame(PlayerCallback callback, String playerName) throws RemoteException {
+        return joinGame(callback, playerName, clientHost());
+    }
+
+    // Entry point shared by the transports; source is the client host used for admission
+    boolean joinGame(PlayerCallback callback, String playerName, String source) throws RemoteException {
+        if (playerLogging) System.out.println("Player joined: " + playerName);
+        if (BotPlayer.isBotName(playerName)) {
+            callback.showMessage("Names starting with '" + BotPlayer.NAME_PREFIX.trim() + "' are reserved for bots");
+            return false;
+        }
+        if (!carriesBoard(callback, variant)) {
+            callback.showMessage("This server plays " + variant + ", which this client cannot display");
             return false;
         }
         
-        // Store player name and update last activity
-        playerNames.put(callback, playerName);
-        lastActivity.put(callback, System.currentTimeMillis());
+        // A callback joining again first leaves its previous game and gives back its slot
+        if (players.get(callback) != null) {
+            leaveGame(callback);
+        }
         
-        // Add player to waiting list first, don't assign symbol yet
-        waitingPlayers.add(callback);
+        long joinStart = System.nanoTime();
+        String refusal = admission.beginJoin(source);
+        if (refusal != null) {
+            System.out.println("Join refused for " + playerName + ": " + refusal);
+            callback.showMessage(refusal);
+            return false;
+        }
+        try {
+            admitPlayer(callback, playerName, source);
+        } finally {
+            admission.endJoin(joinStart);
+        }
+        return true;
+    }
+    
+    private void admitPlayer(PlayerCallback callback, String playerName, String source) {
+        // Register the player and update last activity
+        PlayerRecord record = players.register(callback, playerName, source);
+        dispatcher.open(callback, playerName);
+        touch(record);
         
-        // Check if we can start a game
-        if (waitingPlayers.size() >= 2) {
-            startNewGame();
-        } else {
-            // Only when waiting, temporarily assign a symbol
-            // Note: This symbol may change when matched with another player
-            String tempSymbol = random.nextBoolean() ? "X" : "O";
-            playerSymbols.put(callback, tempSymbol);
-            callback.assignSymbol(tempSymbol);
-            callback.showMessage("Welcome " + playerName + "! You're playing as " + tempSymbol + " (may change when matched)");
-            callback.showMessage("Waiting for another player to join...");
+        // Temporarily assign a symbol before the player becomes visible to matching
+        // Note: This symbol may change when matched with another player
+        String tempSymbol = ThreadLocalRandom.current().nextBoolean() ? "X" : "O";
+        record.setSymbol(tempSymbol);
+        dispatcher.post(callback, "assignSymbol", p -> p.assignSymbol(tempSymbol));
+        
+        sendMessage(callback, "Welcome " + playerName + "! You're playing as " + tempSymbol + " (may change when matched)");
+        int rating = ratings.ratingOf(playerName);
+        if (tournament != null) {
+            tournament.enter(callback, playerName, rating);
+            return;
         }
+        sendMessage(callback, "Waiting for an opponent near your rating (" + rating + ")...");
         
-        return true;
+        // Hand the player to the matchmaker thread and return right away
+        matchmaker.enqueue(callback, rating);
     }
     
-    private synchronized void startNewGame() throws RemoteException {
-        // Remove any disconnected players first
-        waitingPlayers.removeIf(player -> {
-            try {
-                player.ping();
+    @Override
+    public boolean rejoinGame(PlayerCallback callback, String playerName, String sessionId) throws RemoteException {
+        return rejoinGame(callback, playerName, sessionId, clientHost());
+    }
+
+    // Gives a player back its place in a session recovered from the journal
+    boolean rejoinGame(PlayerCallback callback, String playerName, String sessionId, String source)
+            throws RemoteException {
+        GameSession session = sessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        PlayerRecord existing = players.get(callback);
+        if (existing != null) {
+            // Still connected: only the client's call failed, not the server
+            return existing.getSession() == session;
+        }
+        int side = session.detachedSideOf(playerName);
+        if (side == GameState.NO_SIDE || !carriesBoard(callback, session.getVariant())) {
+            return false;
+        }
+        
+        long joinStart = System.nanoTime();
+        String refusal = admission.beginJoin(source);
+        if (refusal != null) {
+            System.out.println("Rejoin refused for " + playerName + ": " + refusal);
+            callback.showMessage(refusal);
+            return false;
+        }
+        try {
+            PlayerRecord record = players.register(callback, playerName, source);
+            dispatcher.open(callback, playerName);
+            if (!session.attach(side, callback)) {
+                // The same name rejoined from another client first
+                cleanupPlayer(callback);
                 return false;
-            } catch (RemoteException e) {
-                cleanupPlayer(player);
-                return true;
             }
-        });
-    
-        if (waitingPlayers.size() < 2) return;
-    
-        PlayerCallback player1 = waitingPlayers.remove(0);
-        PlayerCallback player2 = waitingPlayers.remove(0);
-    
-        // Verify both players are still connected
-        try {
-            player1.ping();
-            player2.ping();
-        } catch (RemoteException e) {
-            // If either player disconnected, put the remaining one back in queue
-            if (player1 != null) {
-                try { player1.ping(); waitingPlayers.add(0, player1); } catch (RemoteException ex) { cleanupPlayer(player1); }
+            admission.sessionStarted(1);
+            String symbol = GameState.symbolOf(side);
+            String opponentName = session.getPlayerName(session.getPlayerForSide(side ^ 1));
+            record.setSymbol(symbol);
+            record.joinSession(sessionId, session);
+            touch(record);
+            
+            dispatcher.post(callback, "assignSymbol", p -> p.assignSymbol(symbol));
+            dispatcher.post(callback, "setGameSession", p -> p.setGameSession(sessionId));
+            dispatcher.post(callback, "setOpponentInfo", p -> p.setOpponentInfo(opponentName));
+            sendMessage(callback, "Welcome back " + playerName + "! You're playing as " + symbol
+                    + " against " + opponentName);
+            session.resendState(callback);
+        } finally {
+            admission.endJoin(joinStart);
+        }
+        if (playerLogging) System.out.println("Player rejoined: " + playerName + " in " + sessionId);
+        return true;
+    }
+
+    private void attachBot(GameSession session, String playerName) {
+        BotPlayer.Level level = BotPlayer.levelOf(playerName);
+        int side = session.detachedSideOf(playerName);
+        if (level == null || side == GameState.NO_SIDE) return;
+        BotPlayer bot = new BotPlayer(this, level, engine);
+        String sessionId = SessionTable.idOf(session.getHandle());
+        PlayerRecord record = players.register(bot, bot.getName(), BOT_SOURCE);
+        dispatcher.open(bot, bot.getName());
+        session.attach(side, bot);
+        record.setSymbol(GameState.symbolOf(side));
+        record.joinSession(sessionId, session);
+        touch(record);
+        dispatcher.post(bot, "assignSymbol", p -> p.assignSymbol(GameState.symbolOf(side)));
+        dispatcher.post(bot, "setGameSession", p -> p.setGameSession(sessionId));
+        session.resendState(bot);
+    }
+
+    // Ends the recovered sessions a player did not come back to; the other player, if any, waits for a new opponent
+    private void expireDetachedSessions(List<Long> handles) {
+        int expired = 0;
+        for (long handle : handles) {
+            GameSession session = sessions.get(handle);
+            if (session == null || !session.hasDetachedPlayer()) continue;
+            if (removeSession(SessionTable.idOf(handle)) == null) continue;
+            expired++;
+            PlayerCallback player1 = session.getPlayer1();
+            PlayerCallback player2 = session.getPlayer2();
+            // The placeholders' mailboxes go with the session
+            if (player1 instanceof DetachedPlayer) {
+                dispatcher.close(player1);
             }
-            if (player2 != null) {
-                try { player2.ping(); waitingPlayers.add(0, player2); } catch (RemoteException ex) { cleanupPlayer(player2); }
+            if (player2 instanceof DetachedPlayer) {
+                dispatcher.close(player2);
             }
-            return;
+            if (!(player1 instanceof DetachedPlayer)) {
+                returnToQueue(player1, session.getPlayerName(player2));
+            } else if (!(player2 instanceof DetachedPlayer)) {
+                returnToQueue(player2, session.getPlayerName(player1));
+            }
+        }
+        if (expired > 0) {
+            System.out.println(expired + " recovered sessions ended, their players did not rejoin");
+        }
+    }
+
+    // Protocol v2 and the binary TCP transport encode boards as 3x3 only
+    private static boolean carriesBoard(PlayerCallback callback, GameVariant variant) {
+        return variant.isClassic()
+                || !(callback instanceof V2CallbackAdapter || callback instanceof NioPlayerConnection);
+    }
+
+    private static String clientHost() {
+        try {
+            return RemoteServer.getClientHost();
+        } catch (ServerNotActiveException e) {
+            // Called in-process rather than through RMI
+            return "local";
         }
+    }
     
-        String player1Name = playerNames.get(player1);
-        String player2Name = playerNames.get(player2);
+    // Called on the matchmaker thread with two players it has just verified
+    private void startSession(PlayerCallback player1, PlayerCallback player2) {
+        PlayerRecord record1 = players.get(player1);
+        PlayerRecord record2 = players.get(player2);
+        if (record1 == null || record2 == null) {
+            // One of them left while being matched, the other one keeps waiting
+            if (record1 != null) requeue(player1);
+            if (record2 != null) requeue(player2);
+            return;
+        }
+        openSession(player1, record1, player2, record2);
+    }
+
+    // Starts the game of two registered players; null if the session could not be created
+    private GameSession openSession(PlayerCallback player1, PlayerRecord record1, PlayerCallback player2,
+            PlayerRecord record2) {
+        String player1Name = record1.getName();
+        String player2Name = record2.getName();
         
         // Ensure players have complementary symbols
-        String player1Symbol = random.nextBoolean() ? "X" : "O";
+        String player1Symbol = ThreadLocalRandom.current().nextBoolean() ? "X" : "O";
         String player2Symbol = player1Symbol.equals("X") ? "O" : "X";
         
-        // Update the symbols in our map
-        playerSymbols.put(player1, player1Symbol);
-        playerSymbols.put(player2, player2Symbol);
+        // Update the symbols in the player records
+        record1.setSymbol(player1Symbol);
+        record2.setSymbol(player2Symbol);
         
         // Notify players of their final symbol
-        player1.assignSymbol(player1Symbol);
-        player2.assignSymbol(player2Symbol);
+        dispatcher.post(player1, "assignSymbol", p -> p.assignSymbol(player1Symbol));
+        dispatcher.post(player2, "assignSymbol", p -> p.assignSymbol(player2Symbol));
         
-        // Create a new game session with a unique ID
-        String sessionId = "game-" + UUID.randomUUID().toString();
-        GameSession session = new GameSession(player1, player2, player1Symbol, player2Symbol);
-        gameSessions.put(sessionId, session);
+        // Create a new game session; v1 clients get its handle as a string ID
+        long handle = sessions.allocate();
+        String sessionId = SessionTable.idOf(handle);
+        GameSession session;
+        try {
+            session = new GameSession(handle, player1, player2, player1Name, player2Name, player1Symbol,
+                    player2Symbol, dispatcher, sessionEvents, variant);
+        } catch (RemoteException e) {
+            System.err.println("Error creating game session: " + e.getMessage());
+            sessions.release(handle);
+            return null;
+        }
+        sessions.put(session);
+        admission.sessionStarted(admittedPlayers(session));
+        // Journaled before the players learn the session ID and can move
+        sessionEvents.sessionStarted(session);
         
         // Associate players with their session
-        playerSessions.put(player1, sessionId);
-        playerSessions.put(player2, sessionId);
+        record1.joinSession(sessionId, session);
+        record2.joinSession(sessionId, session);
         
         // Set session info for both players
-        player1.setGameSession(sessionId);
-        player2.setGameSession(sessionId);
+        dispatcher.post(player1, "setGameSession", p -> p.setGameSession(sessionId));
+        dispatcher.post(player2, "setGameSession", p -> p.setGameSession(sessionId));
         
         // Set opponent info for both players
-        player1.setOpponentInfo(player2Name);
-        player2.setOpponentInfo(player1Name);
+        dispatcher.post(player1, "setOpponentInfo", p -> p.setOpponentInfo(player2Name));
+        dispatcher.post(player2, "setOpponentInfo", p -> p.setOpponentInfo(player1Name));
         
-        player1.showMessage("Welcome " + player1Name + "! You're playing as " + player1Symbol);
-        player1.showMessage("Game started against " + player2Name);
+        sendMessage(player1, "Welcome " + player1Name + "! You're playing as " + player1Symbol);
+        sendMessage(player1, "Game started against " + player2Name);
         
-        player2.showMessage("Welcome " + player2Name + "! You're playing as " + player2Symbol);
-        player2.showMessage("Game started against " + player1Name);
+        sendMessage(player2, "Welcome " + player2Name + "! You're playing as " + player2Symbol);
+        sendMessage(player2, "Game started against " + player1Name);
         
         // Update activity timestamps
-        lastActivity.put(player1, System.currentTimeMillis());
-        lastActivity.put(player2, System.currentTimeMillis());
+        touch(record1);
+        touch(record2);
         
         // Start the game
-        session.notifyCurrentPlayer();
+        try {
+            session.notifyCurrentPlayer();
+        } catch (RemoteException e) {
+            System.err.println("Error starting game session: " + e.getMessage());
+        }
+        return session;
+    }
+
+    // Called on the matchmaker thread for a player no opponent was found for in time
+    private void startBotSession(PlayerCallback player) {
+        PlayerRecord record = players.get(player);
+        if (record == null) return;
+        BotPlayer bot = new BotPlayer(this, botLevel != null ? botLevel
+                : BotPlayer.Level.forRating(ratings.ratingOf(record.getName())), engine);
+        // Registered like a player, but it takes no admission slot
+        players.register(bot, bot.getName(), BOT_SOURCE);
+        dispatcher.open(bot, bot.getName());
+        System.out.println("No opponent for " + record.getName() + ", starting a game against " + bot);
+        startSession(player, bot);
+        if (players.get(player) == null) {
+            // Left while the session was being set up
+            cleanupPlayer(bot);
+        }
+    }
+
+    // Puts a registered player back in the waiting queue, unless it leaves meanwhile
+    private boolean requeue(PlayerCallback player) {
+        PlayerRecord record = players.get(player);
+        if (record == null || !matchmaker.enqueue(player, ratings.ratingOf(record.getName()))) return false;
+        if (players.get(player) == null) {
+            matchmaker.remove(player);
+            return false;
+        }
+        return true;
+    }
+
+    private void sendMessage(PlayerCallback player, String message) {
+        dispatcher.post(player, "showMessage", p -> p.showMessage(message));
     }
 
     @Override
-    public synchronized boolean makeMove(int x, int y, String playerSymbol, String sessionId) throws RemoteException {
+    public boolean makeMove(int x, int y, String playerSymbol, String sessionId) throws RemoteException {
+        long start = System.nanoTime();
+        return countMove(applyMove(x, y, playerSymbol, sessionId), start);
+    }
+
+    private boolean applyMove(int x, int y, String playerSymbol, String sessionId) throws RemoteException {
         // Validate session ID
-        if (sessionId == null || !gameSessions.containsKey(sessionId)) {
+        GameSession session = sessions.get(sessionId);
+        if (session == null) {
             System.err.println("Invalid session ID: " + sessionId);
             return false;
         }
         
-        PlayerCallback player = findPlayerBySymbol(playerSymbol);
+        // The mover is the session's player holding that symbol
+        int side = GameState.sideOf(playerSymbol);
+        PlayerCallback player = session.getPlayerForSide(side);
         if (player == null) {
             System.err.println("Player not found for symbol: " + playerSymbol);
             return false;
         }
         
         // Update last activity timestamp
-        lastActivity.put(player, System.currentTimeMillis());
+        touch(player);
         
-        // Get the correct session
-        GameSession session = gameSessions.get(sessionId);
-        if (session == null) {
-            System.err.println("Session not found: " + sessionId);
+        return session.makeMove(x, y, side);
+    }
+
+    private boolean countMove(boolean applied, long startNanos) {
+        if (applied) {
+            metrics.moveApplied(startNanos);
+        } else {
+            metrics.moveRefused(startNanos);
+        }
+        return applied;
+    }
+
+    @Override
+    public void heartbeat(PlayerCallback player) throws RemoteException {
+        touch(player);
+    }
+
+    // Protocol v2 entry points
+
+    @Override
+    public boolean joinGameV2(PlayerCallbackV2 callback, String playerName) throws RemoteException {
+        V2CallbackAdapter adapter = v2Players.computeIfAbsent(callback,
+                V2CallbackAdapter::new);
+        boolean joined = joinGame(adapter, playerName);
+        if (joined) {
+            // A rejoin went through leaveGame, which dropped the adapter
+            v2Players.put(callback, adapter);
+        } else {
+            v2Players.remove(callback);
+        }
+        return joined;
+    }
+
+    @Override
+    public boolean makeMoveV2(long sessionHandle, byte cell, byte side) throws RemoteException {
+        long start = System.nanoTime();
+        return countMove(applyMoveV2(sessionHandle, cell, side), start);
+    }
+
+    private boolean applyMoveV2(long sessionHandle, byte cell, byte side) throws RemoteException {
+        GameSession session = sessions.get(sessionHandle);
+        if (session == null || cell < 0 || cell > 8) {
             return false;
         }
         
-        return session.makeMove(x, y, playerSymbol);
+        PlayerCallback player = session.getPlayerForSide(side);
+        if (player == null) {
+            return false;
+        }
+        touch(player);
+        
+        return session.makeMove(cell / 3, cell % 3, side);
+    }
+
+    @Override
+    public BoardSnapshot getSnapshot(long sessionHandle) throws RemoteException {
+        GameSession session = sessions.get(sessionHandle);
+        return session != null ? session.snapshot() : null;
+    }
+
+    @Override
+    public void restartGameV2(long sessionHandle) throws RemoteException {
+        GameSession session = sessions.get(sessionHandle);
+        // Only the tournament replays its games
+        if (session != null && tournament == null) {
+            session.restartGame();
+        }
+    }
+
+    @Override
+    public void heartbeatV2(PlayerCallbackV2 callback) throws RemoteException {
+        V2CallbackAdapter adapter = v2Players.get(callback);
+        if (adapter != null) {
+            touch(adapter);
+        }
+    }
+
+    @Override
+    public void leaveGameV2(PlayerCallbackV2 callback) throws RemoteException {
+        V2CallbackAdapter adapter = v2Players.remove(callback);
+        if (adapter != null) {
+            leaveGame(adapter);
+        }
     }
     
     @Override
-    public synchronized String[][] getBoard() throws RemoteException {
+    public String[][] getBoard() throws RemoteException {
         // This method is now obsolete as each session has its own board
         // Return empty board for backward compatibility
-        String[][] emptyBoard = new String[3][3];
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
+        String[][] emptyBoard = new String[variant.getSize()][variant.getSize()];
+        for (int i = 0; i < variant.getSize(); i++) {
+            for (int j = 0; j < variant.getSize(); j++) {
                 emptyBoard[i][j] = "";
             }
         }
@@ -195,49 +604,44 @@ public class GameImpl extends UnicastRemoteObject implements GameInterface {
     }
     
     @Override
-    public synchronized String getCurrentPlayer() throws RemoteException {
+    public String getCurrentPlayer() throws RemoteException {
         // This method is now obsolete as each session has its current player
         // Return empty string for backward compatibility
         return "";
     }
     
     @Override
-    public synchronized void restartGame(String sessionId) throws RemoteException {
-        GameSession session = gameSessions.get(sessionId);
-        if (session != null) {
+    public void restartGame(String sessionId) throws RemoteException {
+        GameSession session = sessions.get(sessionId);
+        if (tournament != null) {
+            // Only the tournament replays its games
+            System.err.println("Cannot restart - tournament game: " + sessionId);
+        } else if (session != null) {
             session.restartGame();
         } else {
             System.err.println("Cannot restart - session not found: " + sessionId);
         }
     }
     @Override
-    public synchronized void leaveGame(PlayerCallback player) throws RemoteException {
-        System.out.println("Player leaving: " + playerNames.getOrDefault(player, "Unknown"));
-        String sessionId = playerSessions.get(player);
+    public void leaveGame(PlayerCallback player) throws RemoteException {
+        PlayerRecord record = players.get(player);
+        String playerName = record != null ? record.getName() : "Unknown";
+        if (playerLogging) System.out.println("Player leaving: " + playerName);
+        if (record != null) {
+            metrics.playerLeft();
+        }
+        String sessionId = record != null ? record.getSessionId() : null;
         
         if (sessionId != null) {
-            GameSession session = gameSessions.get(sessionId);
-            if (session != null) {
+            // Removing the session first makes sure only one leaving player handles it
+            GameSession session = removeSession(sessionId);
+            // In a tournament the opponent stays entered: withdraw() gives it the game
+            if (session != null && tournament == null) {
                 try {
                     PlayerCallback opponent = session.getOpponent(player);
-                    if (opponent != null) {
-                        // Notify opponent about player leaving
-                        String playerName = playerNames.getOrDefault(player, "Unknown");
-                        opponent.showMessage("Player " + playerName + " has left the game.");
-                        
-                        // Set the opponent back to waiting state
-                        opponent.promptForNewOpponent();
-                        
-                        // Add opponent back to waiting list
-                        if (!waitingPlayers.contains(opponent)) {
-                            waitingPlayers.add(opponent);
-                            
-                            // Update last activity timestamp
-                            lastActivity.put(opponent, System.currentTimeMillis());
-                            
-                            // Keep the existing symbol for now, will be reassigned when matched
-                            opponent.showMessage("Waiting for a new opponent...");
-                        }
+                    // The opponent of a recovered session may not have rejoined yet
+                    if (opponent != null && !(opponent instanceof DetachedPlayer)) {
+                        returnToQueue(opponent, playerName);
                     }
                 } catch (RemoteException e) {
                     System.err.println("Error notifying opponent about player leaving: " + e.getMessage());
@@ -252,140 +656,267 @@ public class GameImpl extends UnicastRemoteObject implements GameInterface {
                         System.err.println("Failed to get opponent: " + ex.getMessage());
                     }
                 }
-                
-                // Remove the game session
-                gameSessions.remove(sessionId);
             }
         }
         
+        if (tournament != null) {
+            tournament.withdraw(player);
+        }
+        
         // Clean up player records
         cleanupPlayer(player);
         
-        // Try to match remaining players
-        if (waitingPlayers.size() >= 2) {
-            try {
-                startNewGame();
-            } catch (Exception e) {
-                System.err.println("Error starting new game after player left: " + e.getMessage());
-            }
+    }
+    
+    // The remaining player of a session whose opponent left goes back to waiting
+    private void returnToQueue(PlayerCallback opponent, String leaverName) {
+        if (opponent instanceof BotPlayer) {
+            // A bot only plays the player it was started for
+            cleanupPlayer(opponent);
+            return;
+        }
+        // Notify opponent about player leaving
+        sendMessage(opponent, "Player " + leaverName + " has left the game.");
+        
+        // Set the opponent back to waiting state
+        dispatcher.post(opponent, "promptForNewOpponent", PlayerCallback::promptForNewOpponent);
+        
+        // Add opponent back to waiting list
+        PlayerRecord opponentRecord = players.get(opponent);
+        if (opponentRecord != null) {
+            opponentRecord.leaveSession();
+        }
+        if (requeue(opponent)) {
+            // Update last activity timestamp
+            touch(opponent);
+            
+            // Keep the existing symbol for now, will be reassigned when matched
+            sendMessage(opponent, "Waiting for a new opponent...");
         }
     }
     
     private void cleanupPlayer(PlayerCallback player) {
-        waitingPlayers.remove(player);
-        playerNames.remove(player);
-        playerSymbols.remove(player);
-        playerSessions.remove(player);
-        lastActivity.remove(player);
+        // The record goes first so that a concurrent requeue() sees the player has left
+        PlayerRecord record = players.remove(player);
+        if (record != null && !(player instanceof BotPlayer)) {
+            admission.release(record.getSource());
+        }
+        matchmaker.remove(player);
+        heartbeats.forget(player);
+        dispatcher.close(player);
+        if (player instanceof V2CallbackAdapter) {
+            v2Players.remove(((V2CallbackAdapter) player).getClient());
+        }
     }
     
-    private PlayerCallback findPlayerBySymbol(String symbol) {
-        for (Map.Entry<PlayerCallback, String> entry : playerSymbols.entrySet()) {
-            if (entry.getValue() != null && entry.getValue().equals(symbol)) {
-                return entry.getKey();
-            }
+    // Records activity from a known player; unknown callbacks are ignored
+    private void touch(PlayerCallback player) {
+        PlayerRecord record = players.get(player);
+        if (record != null) {
+            touch(record);
         }
-        return null;
+    }
+
+    private void touch(PlayerRecord record) {
+        heartbeats.touch(record.getCallback());
     }
     
-    private int getPlayerCount() {
-        return waitingPlayers.size() + getActivePlayers();
+    // Connected players, by callback
+    public PlayerDirectory getPlayerDirectory() {
+        return players;
     }
     
-    private int getActivePlayers() {
-        int count = 0;
-        for (GameSession session : gameSessions.values()) {
-            // Each session has 2 players
-            count += 2;
-        }
-        return count;
+    // Outbound mailboxes of the connected players, with their depth and drain latency
+    public CallbackDispatcher getCallbackDispatcher() {
+        return dispatcher;
+    }
+    
+    // Inactivity deadlines and probes in flight
+    public HeartbeatMonitor getHeartbeatMonitor() {
+        return heartbeats;
+    }
+
+    // Waiting queue, time-to-match and rating gap statistics
+    public Matchmaker getMatchmaker() {
+        return matchmaker;
+    }
+
+    // Elo ratings and leaderboard
+    public RatingTable getRatings() {
+        return ratings;
+    }
+    
+    // Move, disconnect and callback counters and histograms
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Move journal, null when game.journalDir is not set
+    public MoveJournal getJournal() {
+        return journal;
+    }
+
+    // Finished matches, null when game.historyDir is not set
+    public MatchHistory getMatchHistory() {
+        return history;
+    }
+
+    public int getActiveSessionCount() {
+        return sessions.size();
     }
 
-    private void cleanupInactivePlayers() {
-        System.out.println("Running inactive player cleanup...");
-        long now = System.currentTimeMillis();
+    // Tournaments of this server, null unless it runs in tournament mode
+    public Tournament getTournament() {
+        return tournament;
+    }
+
+    // Capacity, live player counters, join rejections and join time
+    public AdmissionController getAdmissionController() {
+        return admission;
+    }
+
+    private void reportLaggingClients() {
+        // Report clients whose outbound callbacks are piling up
+        for (PlayerMailbox mailbox : dispatcher.getLaggingMailboxes(LAGGING_MAILBOX_DEPTH)) {
+            System.out.println("Lagging client mailbox: " + mailbox);
+        }
         
-        // Check waiting players first
-        waitingPlayers.removeIf(player -> {
-            Long lastActive = lastActivity.get(player);
-            if (lastActive == null || now - lastActive > 60000) { // 60 second timeout
-                try {
-                    player.ping(); // Try to ping before removing
-                    lastActivity.put(player, System.currentTimeMillis());
-                    return false;
-                } catch (Exception e) {
-                    System.out.println("Removing inactive waiting player");
-                    cleanupPlayer(player);
-                    return true;
+        // Report admission counters whenever joins were refused since the last report
+        long rejected = admission.getRejectedCount();
+        if (rejected != lastReportedRejections) {
+            lastReportedRejections = rejected;
+            System.out.println("Admission: " + admission + ", time to match " + matchmaker.getTimeToMatch()
+                    + ", rating gap p50=" + matchmaker.getRatingGap().getPercentileMicros(50)
+                    + " p99=" + matchmaker.getRatingGap().getPercentileMicros(99));
+        }
+    }
+
+    // A player that stopped answering is handled as if it had left the game
+    private void evictPlayer(PlayerCallback player) {
+        // Both the heartbeat and a failed mailbox may report a player that already left
+        if (players.get(player) == null) return;
+        System.out.println("Removing unresponsive player: " + players.nameOf(player));
+        metrics.playerEvicted();
+        try {
+            leaveGame(player);
+        } catch (RemoteException e) {
+            System.err.println("Error removing unresponsive player: " + e.getMessage());
+            cleanupPlayer(player);
+        }
+    }
+
+    // Makes a spectator follow a session, given its id or the name of one of its players; null if there is
+    // no such session, it has all the spectators it accepts, or its board has no binary encoding
+    SpectatorFeed.Subscription watch(String target, SpectatorFeed.Spectator spectator) {
+        if (target == null) return null;
+        GameSession session = sessions.get(target);
+        if (session == null) {
+            // Watching is rare next to playing: a scan of the players will do
+            for (PlayerRecord record : players.getRecords()) {
+                if (record.getName().equals(target)) {
+                    session = record.getSession();
+                    break;
                 }
             }
-            return false;
-        });
-        
-        // Check active game sessions for inactive players
-        List<String> sessionsToRemove = new ArrayList<>();
-        
-        for (Map.Entry<String, GameSession> entry : gameSessions.entrySet()) {
-            String sessionId = entry.getKey();
-            GameSession session = entry.getValue();
-            
-            try {
-                PlayerCallback player1 = session.getPlayer1();
-                PlayerCallback player2 = session.getPlayer2();
-                
-                boolean player1Active = isPlayerActive(player1, now);
-                boolean player2Active = isPlayerActive(player2, now);
-                
-                if (!player1Active || !player2Active) {
-                    // Handle inactive players in this session
-                    handleInactiveGameSession(sessionId, session, player1, player2, player1Active, player2Active);
-                    sessionsToRemove.add(sessionId);
+        }
+        if (session == null || session.getSpectatorCount() >= maxSpectators) return null;
+        return session.watch(spectator);
+    }
+
+    // A waiting player that did not answer the matchmaker's ping
+    private void dropUnreachablePlayer(PlayerCallback player) {
+        System.out.println("Dropping unreachable player: " + players.nameOf(player));
+        metrics.playerEvicted();
+        cleanupPlayer(player);
+    }
+
+    private GameSession removeSession(String sessionId) {
+        GameSession session = sessions.remove(sessionId);
+        if (session != null) {
+            session.closeSpectators();
+            admission.sessionEnded(admittedPlayers(session));
+            sessionEvents.sessionEnded(session);
+        }
+        return session;
+    }
+
+    // Players of the session holding an admission slot: bots and the placeholders of a recovered session take none
+    private static int admittedPlayers(GameSession session) {
+        return (isAdmitted(session.getPlayer1()) ? 1 : 0) + (isAdmitted(session.getPlayer2()) ? 1 : 0);
+    }
+
+    private static boolean isAdmitted(PlayerCallback player) {
+        return !(player instanceof BotPlayer || player instanceof DetachedPlayer);
+    }
+
+    // Lets the tournament open and end its sessions without going through the matchmaker
+    private final class TournamentHost implements Tournament.Host {
+        @Override
+        public GameSession startGame(PlayerCallback player1, PlayerCallback player2) {
+            PlayerRecord record1 = players.get(player1);
+            PlayerRecord record2 = players.get(player2);
+            if (record1 == null || record2 == null) return null;
+            return openSession(player1, record1, player2, record2);
+        }
+
+        @Override
+        public void endGame(GameSession session) {
+            // Already gone if a player left
+            removeSession(SessionTable.idOf(session.getHandle()));
+            for (PlayerCallback player : new PlayerCallback[] {session.getPlayer1(), session.getPlayer2()}) {
+                PlayerRecord record = players.get(player);
+                if (record != null && record.getSession() == session) {
+                    record.leaveSession();
                 }
-            } catch (Exception e) {
-                System.err.println("Error checking session " + sessionId + ": " + e.getMessage());
-                sessionsToRemove.add(sessionId);
             }
         }
-        
-        // Remove marked sessions
-        for (String sessionId : sessionsToRemove) {
-            gameSessions.remove(sessionId);
+
+        @Override
+        public boolean isPresent(PlayerCallback player) {
+            return players.get(player) != null;
+        }
+
+        @Override
+        public void tell(PlayerCallback player, String message) {
+            sendMessage(player, message);
         }
     }
-    
-    private boolean isPlayerActive(PlayerCallback player, long now) {
-        Long lastActive = lastActivity.get(player);
-        if (lastActive == null || now - lastActive > 60000) { // 60 second timeout
-            try {
-                player.ping();
-                lastActivity.put(player, now);
-                return true;
-            } catch (Exception e) {
-                return false;
+
+    // Hands the events of every session to the registered listeners
+    private final class SessionEvents implements SessionListener {
+        @Override
+        public void sessionStarted(GameSession session) {
+            for (SessionListener listener : sessionListeners) {
+                listener.sessionStarted(session);
             }
         }
-        return true;
-    }
-    
-    private void handleInactiveGameSession(String sessionId, GameSession session, 
-                                         PlayerCallback player1, PlayerCallback player2,
-                                         boolean player1Active, boolean player2Active) {
-        try {
-            if (player1Active && !player2Active) {
-                player1.promptForNewOpponent();
-                waitingPlayers.add(player1);
-                cleanupPlayer(player2);
-            } else if (!player1Active && player2Active) {
-                player2.promptForNewOpponent();
-                waitingPlayers.add(player2);
-                cleanupPlayer(player1);
-            } else {
-                // Both inactive, clean up both
-                cleanupPlayer(player1);
-                cleanupPlayer(player2);
+
+        @Override
+        public void moveApplied(GameSession session, int cell, int side, int sequence) {
+            for (SessionListener listener : sessionListeners) {
+                listener.moveApplied(session, cell, side, sequence);
+            }
+        }
+
+        @Override
+        public void gameFinished(GameSession session, long game) {
+            for (SessionListener listener : sessionListeners) {
+                listener.gameFinished(session, game);
+            }
+        }
+
+        @Override
+        public void sessionRestarted(GameSession session, int startingSide, int sequence) {
+            for (SessionListener listener : sessionListeners) {
+                listener.sessionRestarted(session, startingSide, sequence);
+            }
+        }
+
+        @Override
+        public void sessionEnded(GameSession session) {
+            for (SessionListener listener : sessionListeners) {
+                listener.sessionEnded(session);
             }
-        } catch (Exception e) {
-            System.err.println("Error handling inactive session: " + e.getMessage());
         }
     }
 }
\ No newline at end of file
@@ -11,10 +11,14 @@ import server.GameImpl;
 public class GameServer {
     private static final int RMI_PORT = 1099;
     private static final String SERVICE_NAME = "GameService";
-    private static final int MAX_PLAYERS = 10;
 
     public static void main(String[] args) {
         try {
+            // Un client mort ne doit pas bloquer indéfiniment un callback ou une sonde de présence
+            if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+                System.setProperty("sun.rmi.transport.tcp.responseTimeout", "10000");
+            }
+
             // Configuration de la sécurité RMI
             if (System.getSecurityManager() == null) {
                 System.setSecurityManager(new SecurityManager());
@@ -26,8 +30,19 @@ public class GameServer {
             System.out.println("RMI Registry created on port " + RMI_PORT);
 
             // Création de l'instance de jeu
-            GameInterface gameServer = GameFactory.createGame(MAX_PLAYERS);
-            System.out.println("Game implementation initialized");
+            // Capacité : premier argument, sinon -Dgame.maxPlayers (10 par défaut)
+            ServerConfig config = ServerConfig.fromSystemProperties();
+            if (args.length > 0) {
+                config.setMaxPlayers(Integer.parseInt(args[0]));
+            }
+            GameInterface gameServer = GameFactory.createGame(config);
+            System.out.println("Game implementation initialized (" + config + ")");
+
+            // Compteurs et histogrammes consultables avec jconsole
+            ServerMonitoring.register(gameServer);
+
+            // Transport TCP binaire à côté de RMI, seulement avec -Dgame.nioPort
+            NioGameServer.start(gameServer, config);
 
             // Exportation de l'objet distant
             GameInterface stub = gameServer;
@@ -37,6 +52,11 @@ public class GameServer {
             registry.rebind(SERVICE_NAME, stub);
             System.out.println("Service '" + SERVICE_NAME + "' registered");
 
+            // Historique des parties terminées (-Dgame.historyDir)
+            MatchHistoryService.bind(registry, gameServer);
+            // Classement Elo des joueurs
+            LeaderboardService.bind(registry, gameServer);
+
             System.out.println("Tic-Tac-Toe RMI Game Server ready!");
             System.out.println("Waiting for client connections...");
 
@@ -0,0 +1,40 @@
+package server;
+
+// Live gauges and counters of a game server, readable from jconsole
+public interface GameServerMXBean {
+    int getCapacity();
+
+    int getConnectedCallbacks();
+
+    int getConnectingPlayers();
+
+    int getWaitingPlayers();
+
+    int getPlayingPlayers();
+
+    int getActiveSessions();
+
+    int getPlayersBeingProbed();
+
+    long getJoins();
+
+    long getRejections();
+
+    long getRejectionsFull();
+
+    long getRejectionsBacklog();
+
+    long getRejectionsPerSource();
+
+    long getMoves();
+
+    long getInvalidMoves();
+
+    long getDisconnects();
+
+    long getEvictions();
+
+    long getCallbackFailures();
+
+    long getDroppedCallbacks();
+}
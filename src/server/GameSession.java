@@ -1,35 +1,102 @@
 package server;
 
+import common.BinaryProtocol;
+import common.BoardSnapshot;
 import common.GameState;
+import common.GameVariant;
+import common.MatchRecord;
+import common.PlayerCallbackV2;
 import common.PlayerCallback;
+import common.PlayerCallbackTurnState;
+import common.TurnUpdate;
 import java.rmi.RemoteException;
-import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class GameSession {
-    private final PlayerCallback player1;
-    private final PlayerCallback player2;
+    private final long handle;
+    // Replaced once when a player rejoins a session recovered from the journal
+    private volatile PlayerCallback player1;
+    private volatile PlayerCallback player2;
+    private final String player1Name;
+    private final String player2Name;
+    private final GameVariant variant;
     private final GameState gameState;
     private final String player1Symbol;
     private final String player2Symbol;
-    private final SecureRandom random;
+    private final int player1Side;
+    private final CallbackDispatcher dispatcher;
+    private final SessionListener listener;
+    // Status messages produced by the current operation, sent with its TurnUpdate
+    private final List<String> pendingMessages = new ArrayList<>();
+    // Incremented on every published state change so clients can detect gaps
+    private int sequence;
+    // Current game in MatchRecord form: who started and the moves so far
+    private long game;
     private boolean player1WantsRestart;
     private boolean player2WantsRestart;
+    // Created by the first spectator
+    private SpectatorFeed spectators;
 
-    public GameSession(PlayerCallback player1, PlayerCallback player2, 
-                      String player1Symbol, String player2Symbol) throws RemoteException {
+    public GameSession(long handle, PlayerCallback player1, PlayerCallback player2, 
+                      String player1Symbol, String player2Symbol,
+                      CallbackDispatcher dispatcher) throws RemoteException {
+        this(handle, player1, player2, "Player 1", "Player 2", player1Symbol, player2Symbol, dispatcher,
+                SessionListener.NONE);
+    }
+
+    public GameSession(long handle, PlayerCallback player1, PlayerCallback player2,
+                      String player1Name, String player2Name, String player1Symbol, String player2Symbol,
+                      CallbackDispatcher dispatcher, SessionListener listener) throws RemoteException {
+        this(handle, player1, player2, player1Name, player2Name, player1Symbol, player2Symbol, dispatcher, listener,
+                GameVariant.CLASSIC);
+    }
+
+    public GameSession(long handle, PlayerCallback player1, PlayerCallback player2,
+                      String player1Name, String player2Name, String player1Symbol, String player2Symbol,
+                      CallbackDispatcher dispatcher, SessionListener listener, GameVariant variant)
+            throws RemoteException {
+        this.handle = handle;
         this.player1 = player1;
         this.player2 = player2;
+        this.player1Name = player1Name;
+        this.player2Name = player2Name;
         this.player1Symbol = player1Symbol;
         this.player2Symbol = player2Symbol;
-        this.gameState = new GameState();
-        this.random = new SecureRandom();
+        this.player1Side = GameState.sideOf(player1Symbol);
+        this.variant = variant;
+        this.gameState = new GameState(variant);
+        this.dispatcher = dispatcher;
+        this.listener = listener;
         resetBoard();
     }
 
+    // Rebuilds a session from its journal image; the players are placeholders until they rejoin
+    GameSession(SessionImage image, CallbackDispatcher dispatcher, SessionListener listener) {
+        this.handle = image.getHandle();
+        this.player1Name = image.getPlayer1Name();
+        this.player2Name = image.getPlayer2Name();
+        this.player1 = new DetachedPlayer(player1Name);
+        this.player2 = new DetachedPlayer(player2Name);
+        this.player1Side = image.getPlayer1Side();
+        this.player1Symbol = GameState.symbolOf(player1Side);
+        this.player2Symbol = GameState.symbolOf(player1Side ^ 1);
+        this.variant = image.getVariant();
+        this.gameState = new GameState(variant);
+        this.gameState.restore(image.getCells(GameState.SIDE_X), image.getCells(GameState.SIDE_O),
+                image.getCurrentSide());
+        this.sequence = image.getSequence();
+        this.game = image.getGame();
+        this.dispatcher = dispatcher;
+        this.listener = listener;
+    }
+
     public void resetBoard() {
         gameState.resetGame();
         // Determine randomly who starts
-        gameState.setCurrentPlayer(random.nextBoolean() ? player1Symbol : player2Symbol);
+        gameState.setCurrentPlayer(ThreadLocalRandom.current().nextBoolean() ? player1Symbol : player2Symbol);
+        this.game = MatchRecord.start(gameState.getCurrentSide(), player1Side);
         this.player1WantsRestart = false;
         this.player2WantsRestart = false;
     }
@@ -44,6 +111,16 @@ public class GameSession {
         return null;
     }
     
+    public long getHandle() {
+        return handle;
+    }
+
+    // Null for anything but SIDE_X or SIDE_O, such as a side byte from a v2 client
+    public PlayerCallback getPlayerForSide(int side) {
+        if (side != GameState.SIDE_X && side != GameState.SIDE_O) return null;
+        return side == player1Side ? player1 : player2;
+    }
+    
     public PlayerCallback getPlayer1() {
         return player1;
     }
@@ -52,152 +129,241 @@ public class GameSession {
         return player2;
     }
 
+    public String getPlayer1Name() {
+        return player1Name;
+    }
+
+    public String getPlayer2Name() {
+        return player2Name;
+    }
+
+    public String getPlayerName(PlayerCallback player) {
+        return player.equals(player1) ? player1Name : player.equals(player2) ? player2Name : null;
+    }
+
+    // Side still held by a placeholder for the named player, NO_SIDE if none
+    public int detachedSideOf(String playerName) {
+        PlayerCallback player = player1;
+        if (player instanceof DetachedPlayer && ((DetachedPlayer) player).getName().equals(playerName)) {
+            return player1Side;
+        }
+        player = player2;
+        if (player instanceof DetachedPlayer && ((DetachedPlayer) player).getName().equals(playerName)) {
+            return player1Side ^ 1;
+        }
+        return GameState.NO_SIDE;
+    }
+
+    public boolean hasDetachedPlayer() {
+        return player1 instanceof DetachedPlayer || player2 instanceof DetachedPlayer;
+    }
+
+    // Puts a rejoining player in place of its placeholder; false if someone else got there first
+    public synchronized boolean attach(int side, PlayerCallback player) {
+        PlayerCallback current = getPlayerForSide(side);
+        if (!(current instanceof DetachedPlayer)) return false;
+        if (side == player1Side) {
+            player1 = player;
+        } else {
+            player2 = player;
+        }
+        dispatcher.close(current);
+        return true;
+    }
+
+    // Sends the current state to one player without changing the sequence
+    public synchronized void resendState(PlayerCallback player) {
+        TurnUpdate update = TurnUpdate.of(gameState, new String[0], sequence, -1, GameState.NO_SIDE);
+        postState(player, update);
+    }
+
+    // Adds a spectator, who gets the current state then every update; null when the board has no binary
+    // encoding or the session is over
+    public synchronized SpectatorFeed.Subscription watch(SpectatorFeed.Spectator spectator) {
+        if (!variant.isClassic()) return null;
+        if (spectators == null) {
+            spectators = new SpectatorFeed();
+            spectators.publish(BinaryProtocol.turnUpdateFrame(
+                    TurnUpdate.of(gameState, new String[0], sequence, -1, GameState.NO_SIDE)));
+        }
+        return spectators.subscribe(spectator);
+    }
+
+    // Tells the spectators the session is over
+    public synchronized void closeSpectators() {
+        if (spectators == null) {
+            // Refuses the spectators that come after
+            spectators = new SpectatorFeed();
+        }
+        spectators.close();
+    }
+
+    public synchronized int getSpectatorCount() {
+        return spectators != null ? spectators.getSpectatorCount() : 0;
+    }
+
+    // Updates that spectators got as a snapshot instead of their deltas
+    public synchronized long getSpectatorSnapshots() {
+        return spectators != null ? spectators.getSnapshotsSent() : 0;
+    }
+
+    // What the journal needs to rebuild this session
+    public synchronized SessionImage image() {
+        return new SessionImage(handle, player1Name, player2Name, player1Side, variant,
+                gameState.getCells(GameState.SIDE_X), gameState.getCells(GameState.SIDE_O),
+                gameState.getCurrentSide(), sequence, game);
+    }
+
+    // The game being played (or just finished) in MatchRecord form
+    public synchronized long currentGame() {
+        return game;
+    }
+
+    public GameVariant getVariant() {
+        return variant;
+    }
+
     public boolean isGameOver() {
         return gameState.isGameOver();
     }
 
-    public synchronized boolean makeMove(int x, int y, String playerSymbol) throws RemoteException {
+    public synchronized String getCurrentPlayer() {
+        return gameState.getCurrentPlayer();
+    }
+
+    public boolean makeMove(int x, int y, String playerSymbol) throws RemoteException {
+        // Work on side indexes so the board checks never compare strings
+        return makeMove(x, y, GameState.sideOf(playerSymbol));
+    }
+
+    public synchronized boolean makeMove(int x, int y, int side) throws RemoteException {
         if (gameState.isGameOver()) {
-            notifyPlayer(playerSymbol, "Game is already over");
+            notifyPlayer(side, "Game is already over");
             return false;
         }
         
-        if (!playerSymbol.equals(gameState.getCurrentPlayer())) {
-            notifyPlayer(playerSymbol, "It's not your turn!");
+        if (side != gameState.getCurrentSide()) {
+            notifyPlayer(side, "It's not your turn!");
             return false;
         }
         
         // Validate move coordinates
-        if (x < 0 || x >= 3 || y < 0 || y >= 3) {
-            notifyPlayer(playerSymbol, "Invalid coordinates!");
+        if (!variant.contains(x, y)) {
+            notifyPlayer(side, "Invalid coordinates!");
             return false;
         }
         
         if (!gameState.isCellEmpty(x, y)) {
-            notifyPlayer(playerSymbol, "That position is already taken!");
+            notifyPlayer(side, "That position is already taken!");
             return false;
         }
         
         // Process move
-        gameState.makeMove(x, y, playerSymbol);
-        String playerName = getPlayerName(playerSymbol);
-        notifyAllPlayers(String.format("%s played at position (%d,%d)", playerName, x+1, y+1));
-        
-        // Check game state
-        if (gameState.checkWin()) {
-            handleWin(playerSymbol);
-            return true;
+        int cell = variant.cell(x, y);
+        gameState.makeMove(x, y, side);
+        if (variant.isClassic()) {
+            // Only 3x3 games fit in the MatchRecord form with their moves
+            game = MatchRecord.addMove(game, cell);
         }
+        String playerName = playerLabel(side);
+        announce(playerName + " played at position (" + (x + 1) + "," + (y + 1) + ")");
         
-        if (gameState.isBoardFull()) {
+        // Check game state
+        if (gameState.checkWin(side)) {
+            handleWin(side);
+        } else if (gameState.isBoardFull()) {
             handleDraw();
-            return true;
+        } else {
+            gameState.switchPlayer();
         }
         
-        switchPlayer();
+        // One update per player for everything this move changed
+        publishState(cell, side);
+        listener.moveApplied(this, cell, side, sequence);
+        if (gameState.isGameOver()) {
+            listener.gameFinished(this, game);
+        }
         return true;
     }
 
-    private String getPlayerName(String symbol) {
-        if (symbol.equals(player1Symbol)) {
-            try {
-                return "Player 1";
-            } catch (Exception e) {
-                return "Player 1";
-            }
-        } else {
-            try {
-                return "Player 2";
-            } catch (Exception e) {
-                return "Player 2";
-            }
-        }
+    private String playerLabel(int side) {
+        return side == player1Side ? "Player 1" : "Player 2";
     }
 
-    private void handleWin(String winnerSymbol) throws RemoteException {
+    private void handleWin(int winnerSide) {
         gameState.setGameOver(true);
-        gameState.setWinner(winnerSymbol);
-        String playerName = getPlayerName(winnerSymbol);
-        notifyAllPlayers(playerName + " (" + winnerSymbol + ") has won!");
-        notifyGameOver();
+        gameState.setWinnerSide(winnerSide);
+        game = MatchRecord.finish(game, winnerSide == GameState.SIDE_X ? MatchRecord.X_WON : MatchRecord.O_WON);
+        String playerName = playerLabel(winnerSide);
+        announce(playerName + " (" + GameState.symbolOf(winnerSide) + ") has won!");
     }
 
-    private void handleDraw() throws RemoteException {
+    private void handleDraw() {
         gameState.setGameOver(true);
-        notifyAllPlayers("It's a draw! The board is full.");
-        notifyGameOver();
+        game = MatchRecord.finish(game, MatchRecord.DRAW);
+        announce("It's a draw! The board is full.");
     }
 
-    private void switchPlayer() throws RemoteException {
-        gameState.switchPlayer();
-        notifyCurrentPlayer();
+    public synchronized void notifyCurrentPlayer() throws RemoteException {
+        publishState(-1, GameState.NO_SIDE);
     }
 
-    public void notifyCurrentPlayer() throws RemoteException {
-        try {
-            player1.notifyTurn(gameState.getCurrentPlayer().equals(player1Symbol) ? player1Symbol : "");
-            player1.updateBoard(getBoardState());
-        } catch (RemoteException e) {
-            System.err.println("Error notifying player 1: " + e.getMessage());
-        }
+    // Queues a message for both players; it is sent with the next TurnUpdate. Not logged:
+    // it runs under the session lock, and System.out is one lock for every session.
+    private void announce(String message) {
+        pendingMessages.add(message);
+    }
+
+    // Sends the current state and the queued messages as a single callback per player.
+    // Delivery is asynchronous; the update captures the board as a BoardCodec code or a copy of its cells.
+    private void publishState(int lastCell, int lastSide) {
+        String[] messages = pendingMessages.toArray(new String[0]);
+        pendingMessages.clear();
+        sequence++;
+        TurnUpdate update = TurnUpdate.of(gameState, messages, sequence, lastCell, lastSide);
         
-        try {
-            player2.notifyTurn(gameState.getCurrentPlayer().equals(player2Symbol) ? player2Symbol : "");
-            player2.updateBoard(getBoardState());
-        } catch (RemoteException e) {
-            System.err.println("Error notifying player 2: " + e.getMessage());
+        postState(player1, update);
+        postState(player2, update);
+        if (spectators != null) {
+            // Encoded once for all of them
+            spectators.publish(BinaryProtocol.turnUpdateFrame(update));
         }
     }
 
-    private void notifyAllPlayers(String message) throws RemoteException {
-        System.out.println("Game message: " + message);
-
-        try {
-            player1.showMessage(message);
-            player1.updateBoard(getBoardState());
-        } catch (RemoteException e) {
-            System.err.println("Error notifying player 1: " + e.getMessage());
-        }
-        
-        try {
-            player2.showMessage(message);
-            player2.updateBoard(getBoardState());
-        } catch (RemoteException e) {
-            System.err.println("Error notifying player 2: " + e.getMessage());
+    // One updateTurnState for the callbacks that take it; v1 clients built before it get the
+    // calls they always got, in the same order
+    private void postState(PlayerCallback player, TurnUpdate update) {
+        if (player instanceof PlayerCallbackTurnState) {
+            dispatcher.post(player, "updateTurnState", p -> ((PlayerCallbackTurnState) p).updateTurnState(update));
+            return;
         }
+        String symbol = player == player1 ? player1Symbol : player2Symbol;
+        dispatcher.post(player, "updateBoard", p -> {
+            for (String message : update.getMessages()) {
+                p.showMessage(message);
+            }
+            if (update.isGameOver()) {
+                p.updateBoard(update.getBoard());
+                p.gameOver(update.getWinner());
+                p.promptForRestart();
+            } else {
+                p.notifyTurn(update.isTurnOf(symbol) ? symbol : "");
+                p.updateBoard(update.getBoard());
+            }
+        });
     }
 
-    private void notifyPlayer(String playerSymbol, String message) throws RemoteException {
+    private void notifyPlayer(int side, String message) throws RemoteException {
         PlayerCallback player = null;
         
-        if (playerSymbol.equals(player1Symbol)) {
+        if (side == player1Side) {
             player = player1;
-        } else if (playerSymbol.equals(player2Symbol)) {
+        } else if (side != GameState.NO_SIDE) {
             player = player2;
         }
         
         if (player != null) {
-            try {
-                player.showMessage(message);
-            } catch (RemoteException e) {
-                System.err.println("Error notifying player: " + e.getMessage());
-            }
-        }
-    }
-
-    private void notifyGameOver() throws RemoteException {
-        try {
-            player1.gameOver(gameState.getWinner());
-            player1.promptForRestart();
-        } catch (RemoteException e) {
-            System.err.println("Error notifying player 1 of game over: " + e.getMessage());
-        }
-        
-        try {
-            player2.gameOver(gameState.getWinner());
-            player2.promptForRestart();
-        } catch (RemoteException e) {
-            System.err.println("Error notifying player 2 of game over: " + e.getMessage());
+            dispatcher.post(player, "showMessage", p -> p.showMessage(message));
         }
     }
 
@@ -205,19 +371,28 @@ public class GameSession {
         return gameState.getBoard();
     }
 
-    public void restartGame() throws RemoteException {
+    public synchronized void restartGame() throws RemoteException {
         resetBoard();
         
-        // Clear game over state on clients and ensure game is active
-        try {
-            player1.setGameSession(player1.getGameSessionId());
-            player2.setGameSession(player2.getGameSessionId());
-        } catch (RemoteException e) {
-            System.err.println("Error resetting game session state: " + e.getMessage());
+        // The update clears the game over state on clients; older v1 clients learn it from setGameSession
+        String sessionId = SessionTable.idOf(handle);
+        for (PlayerCallback player : new PlayerCallback[] {player1, player2}) {
+            if (!(player instanceof PlayerCallbackTurnState)) {
+                dispatcher.post(player, "setGameSession", p -> p.setGameSession(sessionId));
+            }
         }
-        
-        notifyAllPlayers("Game restarted!");
-        notifyCurrentPlayer();
+        announce("Game restarted!");
+        publishState(-1, GameState.NO_SIDE);
+        listener.sessionRestarted(this, gameState.getCurrentSide(), sequence);
+    }
+
+    // Full state for protocol v2 clients that detected a sequence gap; v2 only plays 3x3 boards
+    public synchronized BoardSnapshot snapshot() {
+        byte status = !gameState.isGameOver() ? PlayerCallbackV2.STATUS_PLAYING
+                : gameState.getWinnerSide() != GameState.NO_SIDE ? PlayerCallbackV2.STATUS_WIN
+                : PlayerCallbackV2.STATUS_DRAW;
+        return new BoardSnapshot(handle, sequence, gameState.getMask(GameState.SIDE_X),
+                gameState.getMask(GameState.SIDE_O), gameState.getCurrentSide(), status, gameState.getWinnerSide());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,288 @@
+package server;
+
+import common.GameVariant;
+import java.util.Random;
+
+// The board a GomokuEngine search plays on. Besides the cells it keeps, up to
+// date through play() and undo(): the Zobrist hash of the position, the
+// stones of each side in every window of winLength cells, the evaluation
+// summed over those windows, and how many stones lie near each cell. A move
+// only touches the windows through its cell, so evaluating a position is a
+// field read, and candidate moves are the empty cells near a stone, taken in
+// the box around the stones.
+final class GomokuBoard {
+    // Candidate moves are at most this many cells away from a stone, in any direction
+    private static final int NEAR = 2;
+    private static final int[][] DIRECTIONS = { {0, 1}, {1, 0}, {1, 1}, {1, -1} };
+    // One random key per side and cell, the same for every board so that the transposition table is shared
+    private static final long[][] ZOBRIST = new long[2][GameVariant.MAX_SIZE * GameVariant.MAX_SIZE];
+    // Set in the hash when O is to play
+    private static final long O_TO_PLAY;
+
+    static {
+        Random random = new Random(0x5EED_601L);
+        for (long[] keys : ZOBRIST) {
+            for (int cell = 0; cell < keys.length; cell++) {
+                keys[cell] = random.nextLong();
+            }
+        }
+        O_TO_PLAY = random.nextLong();
+    }
+
+    private final int size;
+    private final int winLength;
+    private final int cellCount;
+    // Value of a window holding n stones of one side and none of the other
+    private final int[] value;
+    // 0 for an empty cell, side + 1 otherwise
+    private final byte[] owner;
+    // windows[side][direction * cellCount + start]: stones of side in the window from start in that direction
+    private final byte[][] windows;
+    // Stones within NEAR cells of each cell
+    private final byte[] near;
+    private long hash;
+    // Sum of the window values, from X's point of view
+    private int score;
+    private int stones;
+    private int minRow;
+    private int maxRow;
+    private int minCol;
+    private int maxCol;
+    // Per stone played: its cell, then the score and box before it, for undo()
+    private final int[] played;
+    private final int[] undoScore;
+    private final int[] undoBox;
+
+    GomokuBoard(GameVariant variant) {
+        this.size = variant.getSize();
+        this.winLength = variant.getWinLength();
+        this.cellCount = variant.getCellCount();
+        this.value = new int[winLength + 1];
+        for (int n = 1; n <= winLength; n++) {
+            // The last four stones of a line are what matters: 1, 8, 64, 512, then 4096 for a complete line
+            value[n] = 1 << (3 * Math.max(0, Math.min(4, n - winLength + 4)));
+        }
+        this.owner = new byte[cellCount];
+        this.windows = new byte[2][4 * cellCount];
+        this.near = new byte[cellCount];
+        this.played = new int[cellCount];
+        this.undoScore = new int[cellCount];
+        this.undoBox = new int[cellCount];
+        this.minRow = size;
+        this.minCol = size;
+        this.maxRow = -1;
+        this.maxCol = -1;
+    }
+
+    GomokuBoard(GameVariant variant, long[] xCells, long[] oCells) {
+        this(variant);
+        for (int side = 0; side < 2; side++) {
+            long[] cells = side == 0 ? xCells : oCells;
+            for (int word = 0; word < cells.length; word++) {
+                for (long bits = cells[word]; bits != 0; bits &= bits - 1) {
+                    play(word * 64 + Long.numberOfTrailingZeros(bits), side);
+                }
+            }
+        }
+    }
+
+    private GomokuBoard(GomokuBoard board) {
+        this.size = board.size;
+        this.winLength = board.winLength;
+        this.cellCount = board.cellCount;
+        this.value = board.value;
+        this.owner = board.owner.clone();
+        this.windows = new byte[][] {board.windows[0].clone(), board.windows[1].clone()};
+        this.near = board.near.clone();
+        this.hash = board.hash;
+        this.score = board.score;
+        this.stones = board.stones;
+        this.minRow = board.minRow;
+        this.maxRow = board.maxRow;
+        this.minCol = board.minCol;
+        this.maxCol = board.maxCol;
+        this.played = board.played.clone();
+        this.undoScore = board.undoScore.clone();
+        this.undoBox = board.undoBox.clone();
+    }
+
+    // A board of its own for another thread
+    GomokuBoard copy() {
+        return new GomokuBoard(this);
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getStones() {
+        return stones;
+    }
+
+    boolean isEmpty(int cell) {
+        return owner[cell] == 0;
+    }
+
+    // Position key for the transposition table, with the side to play
+    long key(int side) {
+        return side == 0 ? hash : hash ^ O_TO_PLAY;
+    }
+
+    // Static evaluation for the side to play
+    int evaluate(int side) {
+        return side == 0 ? score : -score;
+    }
+
+    // Places a stone of side on an empty cell; true when it completes a line
+    boolean play(int cell, int side) {
+        int row = cell / size;
+        int col = cell % size;
+        played[stones] = cell;
+        undoScore[stones] = score;
+        undoBox[stones] = (minRow & 0xFF) << 24 | (maxRow & 0xFF) << 16 | (minCol & 0xFF) << 8 | (maxCol & 0xFF);
+        stones++;
+        owner[cell] = (byte) (side + 1);
+        hash ^= ZOBRIST[side][cell];
+        byte[] own = windows[side];
+        byte[] other = windows[side ^ 1];
+        boolean won = false;
+        int delta = 0;
+        for (int d = 0; d < 4; d++) {
+            int dr = DIRECTIONS[d][0];
+            int dc = DIRECTIONS[d][1];
+            for (int j = 0; j < winLength; j++) {
+                int r = row - j * dr;
+                int c = col - j * dc;
+                if (!inWindowRange(r, c, dr, dc)) continue;
+                int w = d * cellCount + r * size + c;
+                int mine = own[w];
+                int theirs = other[w];
+                if (theirs == 0) {
+                    delta += value[mine + 1] - value[mine];
+                    won |= mine + 1 == winLength;
+                } else if (mine == 0) {
+                    // The window no longer counts for the other side
+                    delta += value[theirs];
+                }
+                own[w] = (byte) (mine + 1);
+            }
+        }
+        score += side == 0 ? delta : -delta;
+        for (int r = Math.max(0, row - NEAR); r <= Math.min(size - 1, row + NEAR); r++) {
+            for (int c = Math.max(0, col - NEAR); c <= Math.min(size - 1, col + NEAR); c++) {
+                near[r * size + c]++;
+            }
+        }
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        minCol = Math.min(minCol, col);
+        maxCol = Math.max(maxCol, col);
+        return won;
+    }
+
+    // Takes back the last stone played
+    void undo() {
+        stones--;
+        int cell = played[stones];
+        int side = owner[cell] - 1;
+        int row = cell / size;
+        int col = cell % size;
+        owner[cell] = 0;
+        hash ^= ZOBRIST[side][cell];
+        byte[] own = windows[side];
+        for (int d = 0; d < 4; d++) {
+            int dr = DIRECTIONS[d][0];
+            int dc = DIRECTIONS[d][1];
+            for (int j = 0; j < winLength; j++) {
+                int r = row - j * dr;
+                int c = col - j * dc;
+                if (inWindowRange(r, c, dr, dc)) {
+                    own[d * cellCount + r * size + c]--;
+                }
+            }
+        }
+        for (int r = Math.max(0, row - NEAR); r <= Math.min(size - 1, row + NEAR); r++) {
+            for (int c = Math.max(0, col - NEAR); c <= Math.min(size - 1, col + NEAR); c++) {
+                near[r * size + c]--;
+            }
+        }
+        score = undoScore[stones];
+        int box = undoBox[stones];
+        minRow = (byte) (box >> 24);
+        maxRow = (byte) (box >> 16);
+        minCol = (byte) (box >> 8);
+        maxCol = (byte) box;
+    }
+
+    // Whether the window from (row, col) in direction (dr, dc) lies on the board
+    private boolean inWindowRange(int row, int col, int dr, int dc) {
+        int lastRow = row + (winLength - 1) * dr;
+        int lastCol = col + (winLength - 1) * dc;
+        return row >= 0 && col >= 0 && col < size && lastRow < size && lastCol >= 0 && lastCol < size;
+    }
+
+    // How urgent a cell is for the side to play: the lines it would extend, counted double, and the
+    // lines of the opponent it would block
+    private int priority(int cell, int side) {
+        int row = cell / size;
+        int col = cell % size;
+        byte[] own = windows[side];
+        byte[] other = windows[side ^ 1];
+        int attack = 0;
+        int block = 0;
+        for (int d = 0; d < 4; d++) {
+            int dr = DIRECTIONS[d][0];
+            int dc = DIRECTIONS[d][1];
+            for (int j = 0; j < winLength; j++) {
+                int r = row - j * dr;
+                int c = col - j * dc;
+                if (!inWindowRange(r, c, dr, dc)) continue;
+                int w = d * cellCount + r * size + c;
+                if (other[w] == 0) {
+                    attack += value[own[w] + 1];
+                } else if (own[w] == 0) {
+                    block += value[other[w] + 1];
+                }
+            }
+        }
+        return 2 * attack + block;
+    }
+
+    // Fills moves with the most urgent empty cells near a stone, at most moves.length, first the
+    // preferred cell if it can be played; returns how many. An empty board gets its center.
+    int candidates(int side, int preferred, int[] moves, int[] priorities) {
+        if (stones == 0) {
+            moves[0] = (size / 2) * size + size / 2;
+            return 1;
+        }
+        int count = 0;
+        int start = 0;
+        if (preferred >= 0 && owner[preferred] == 0) {
+            moves[count++] = preferred;
+            start = 1;
+        }
+        for (int r = Math.max(0, minRow - NEAR); r <= Math.min(size - 1, maxRow + NEAR); r++) {
+            for (int c = Math.max(0, minCol - NEAR); c <= Math.min(size - 1, maxCol + NEAR); c++) {
+                int cell = r * size + c;
+                if (owner[cell] != 0 || near[cell] == 0 || cell == preferred) continue;
+                int priority = priority(cell, side);
+                // Insertion into the list kept sorted by decreasing priority
+                int i = count;
+                if (i == moves.length) {
+                    if (priority <= priorities[i - 1]) continue;
+                    i--;
+                } else {
+                    count++;
+                }
+                while (i > start && priorities[i - 1] < priority) {
+                    moves[i] = moves[i - 1];
+                    priorities[i] = priorities[i - 1];
+                    i--;
+                }
+                moves[i] = cell;
+                priorities[i] = priority;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,394 @@
+package server;
+
+import common.GameVariant;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Move search for the server bot on boards larger than 3x3, where the
+// PositionTable does not reach: alpha-beta over the most urgent cells near
+// the stones, deepened one ply at a time until the time given to the move
+// runs out, the last complete depth giving the move. At each depth the best
+// move so far is searched first, then the other root moves are split across
+// the engine's ForkJoinPool, each on its own copy of the board, and only
+// searched in full when a null window shows they can beat it. All the
+// searches share one TranspositionTable keyed by Zobrist hashes.
+// The pool has its own threads, game.aiThreads of them, so that bot games,
+// however many, never take more cores than that from the human sessions;
+// the time of a move only starts when the pool picks up its search. Each
+// game also has a budget of CPU time, counted across the threads of its
+// searches, that its moves draw from; once it is spent the bot plays at
+// depth one.
+public class GomokuEngine {
+    public static final int MAX_DEPTH = 32;
+    // Scores: a win is WIN less the plies it takes, static evaluations stay within WIN / 2
+    static final int WIN = 1 << 20;
+    private static final int INFINITY = WIN + 1;
+    private static final int WIN_THRESHOLD = WIN - 1024;
+    // Moves searched at the root and at the other nodes
+    private static final int ROOT_BRANCHING = 24;
+    private static final int BRANCHING = 12;
+    // A game's CPU budget is spread over at least this many moves
+    private static final int MOVES_AHEAD = 10;
+    // 2^20 slots of 16 bytes
+    private static final int TABLE_BITS = 20;
+    // The clock is read once every this many nodes, plus one
+    private static final int CHECK_INTERVAL = 1023;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported()
+            && THREADS.isThreadCpuTimeEnabled();
+    private static final Abort ABORT = new Abort();
+
+    private final ForkJoinPool pool;
+    private final TranspositionTable table = new TranspositionTable(TABLE_BITS);
+    private final long moveNanos;
+    private final long gameCpuNanos;
+
+    public GomokuEngine(int threads, long moveMillis, long gameCpuMillis) {
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("ai-search-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.moveNanos = moveMillis * 1_000_000L;
+        this.gameCpuNanos = gameCpuMillis * 1_000_000L;
+    }
+
+    // Runs a bot's turn on the engine's threads
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    // CPU time a game starts with
+    public long getGameCpuNanos() {
+        return gameCpuNanos;
+    }
+
+    // Time for the next move of a game with cpuLeftNanos of its budget left, 0 once it is spent
+    public long moveBudgetNanos(long cpuLeftNanos) {
+        if (cpuLeftNanos <= 0) return 0;
+        // A move keeps every thread busy at worst
+        return Math.min(moveNanos, cpuLeftNanos / ((long) MOVES_AHEAD * pool.getParallelism()));
+    }
+
+    // The move for side, searched at most maxDepth plies deep and for budgetNanos; depth one is always
+    // searched in full, whatever the budget
+    public Result search(GameVariant variant, long[] xCells, long[] oCells, int side, int maxDepth,
+            long budgetNanos) {
+        RootSearch search = new RootSearch(new GomokuBoard(variant, xCells, oCells), side,
+                Math.min(maxDepth, MAX_DEPTH), budgetNanos);
+        // From one of the pool's threads, the search runs there rather than waiting on another
+        return ForkJoinTask.getPool() == pool ? search.invoke() : pool.invoke(search);
+    }
+
+    public long getTableBytes() {
+        return table.getBytes();
+    }
+
+    private static long cpuTime() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    // Win scores count plies from the root; the table keeps them from the position stored
+    private static int toTable(int score, int ply) {
+        return score >= WIN_THRESHOLD ? score + ply : score <= -WIN_THRESHOLD ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        return score >= WIN_THRESHOLD ? score - ply : score <= -WIN_THRESHOLD ? score + ply : score;
+    }
+
+    public static final class Result {
+        private final int cell;
+        private final int score;
+        private final int depth;
+        private final long nodes;
+        private final long elapsedNanos;
+        private final long cpuNanos;
+        private final long[] depthNanos;
+
+        Result(int cell, int score, int depth, long nodes, long elapsedNanos, long cpuNanos, long[] depthNanos) {
+            this.cell = cell;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.elapsedNanos = elapsedNanos;
+            this.cpuNanos = cpuNanos;
+            this.depthNanos = depthNanos;
+        }
+
+        // Cell to play, row * size + col, -1 when the board is full
+        public int getCell() {
+            return cell;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        // Deepest search completed
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        // CPU time of every thread that worked on the search
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        // Time from the start of the search to the end of a depth, 0 if it was not completed
+        public long getDepthNanos(int depth) {
+            return depth < depthNanos.length ? depthNanos[depth] : 0;
+        }
+
+        // Whether the search found a forced win or loss
+        public boolean isDecided() {
+            return Math.abs(score) >= WIN_THRESHOLD;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("cell %d, score %d, depth %d, %d nodes in %.1f ms", cell, score, depth, nodes,
+                    elapsedNanos / 1e6);
+        }
+    }
+
+    // Thrown through a search whose time is up; the depth it was at is dropped
+    private static final class Abort extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Abort() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final class RootSearch extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final GomokuBoard board;
+        private final int side;
+        private final int maxDepth;
+        private final long budgetNanos;
+        private final LongAdder nodes = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private long deadline;
+        private volatile boolean stopped;
+
+        RootSearch(GomokuBoard board, int side, int maxDepth, long budgetNanos) {
+            this.board = board;
+            this.side = side;
+            this.maxDepth = maxDepth;
+            this.budgetNanos = budgetNanos;
+        }
+
+        @Override
+        protected Result compute() {
+            long start = System.nanoTime();
+            deadline = start + budgetNanos;
+            long cpuStart = cpuTime();
+            int[] moves = new int[ROOT_BRANCHING];
+            int count = board.candidates(side, -1, moves, new int[ROOT_BRANCHING]);
+            cpuNanos.add(cpuTime() - cpuStart);
+            long[] depthNanos = new long[maxDepth + 1];
+            if (count == 0) {
+                return new Result(-1, 0, 0, 0, System.nanoTime() - start, cpuNanos.sum(), depthNanos);
+            }
+            Best best = new Best(moves[0], 0);
+            int depth = 0;
+            while (depth < maxDepth) {
+                Best found = searchRoot(moves, count, depth + 1);
+                if (found == null) break;
+                best = found;
+                depth++;
+                depthNanos[depth] = System.nanoTime() - start;
+                // The best move leads the next depth
+                int at = 0;
+                while (moves[at] != best.cell) {
+                    at++;
+                }
+                System.arraycopy(moves, 0, moves, 1, at);
+                moves[0] = best.cell;
+                // A forced result will not change, and a deeper search would not finish in the time left
+                if (Math.abs(best.score) >= WIN_THRESHOLD || System.nanoTime() - start > budgetNanos / 2) break;
+            }
+            return new Result(best.cell, best.score, depth, nodes.sum(), System.nanoTime() - start,
+                    cpuNanos.sum(), depthNanos);
+        }
+
+        // One depth: the first move on this thread for a bound, the others split across the pool;
+        // null when the time ran out first
+        private Best searchRoot(int[] moves, int count, int depth) {
+            // The first depth is always completed, to have a move
+            boolean abortable = depth > 1;
+            long cpuStart = cpuTime();
+            Searcher first = new Searcher(board, abortable);
+            Best best;
+            try {
+                best = new Best(moves[0], first.searchMove(moves[0], depth, -INFINITY, INFINITY));
+            } catch (Abort e) {
+                return null;
+            } finally {
+                nodes.add(first.nodes);
+                cpuNanos.add(cpuTime() - cpuStart);
+            }
+            List<RootMove> others = new ArrayList<>(count - 1);
+            for (int i = 1; i < count; i++) {
+                others.add(new RootMove(moves[i], depth, abortable, best));
+            }
+            ForkJoinTask.invokeAll(others);
+            return stopped ? null : best;
+        }
+
+        // The best root move of a depth, offered by the threads searching it
+        private final class Best {
+            private int cell;
+            private int score;
+
+            Best(int cell, int score) {
+                this.cell = cell;
+                this.score = score;
+            }
+
+            synchronized int score() {
+                return score;
+            }
+
+            synchronized void offer(int candidate, int candidateScore) {
+                if (candidateScore > score) {
+                    cell = candidate;
+                    score = candidateScore;
+                }
+            }
+        }
+
+        private final class RootMove extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int cell;
+            private final int depth;
+            private final boolean abortable;
+            private final Best best;
+
+            RootMove(int cell, int depth, boolean abortable, Best best) {
+                this.cell = cell;
+                this.depth = depth;
+                this.abortable = abortable;
+                this.best = best;
+            }
+
+            @Override
+            protected void compute() {
+                if (stopped) return;
+                long cpuStart = cpuTime();
+                Searcher searcher = new Searcher(board.copy(), abortable);
+                try {
+                    int alpha = best.score();
+                    // Most moves only need to be shown no better than the best one
+                    int score = searcher.searchMove(cell, depth, alpha, alpha + 1);
+                    if (score > alpha) {
+                        score = searcher.searchMove(cell, depth, alpha, INFINITY);
+                    }
+                    best.offer(cell, score);
+                } catch (Abort e) {
+                    stopped = true;
+                } finally {
+                    nodes.add(searcher.nodes);
+                    cpuNanos.add(cpuTime() - cpuStart);
+                }
+            }
+        }
+
+        // Alpha-beta on one board, for one thread
+        private final class Searcher {
+            private final GomokuBoard board;
+            private final boolean abortable;
+            private final int[][] moves = new int[MAX_DEPTH + 1][BRANCHING];
+            private final int[][] priorities = new int[MAX_DEPTH + 1][BRANCHING];
+            long nodes;
+
+            Searcher(GomokuBoard board, boolean abortable) {
+                this.board = board;
+                this.abortable = abortable;
+            }
+
+            // Score of a root move for the side to play
+            int searchMove(int cell, int depth, int alpha, int beta) {
+                int score = board.play(cell, side) ? WIN - 1 : -search(depth - 1, -beta, -alpha, 1, side ^ 1);
+                board.undo();
+                return score;
+            }
+
+            private int search(int depth, int alpha, int beta, int ply, int toPlay) {
+                if ((++nodes & CHECK_INTERVAL) == 0 && abortable
+                        && (stopped || System.nanoTime() - deadline > 0)) {
+                    stopped = true;
+                    throw ABORT;
+                }
+                if (depth == 0) {
+                    return Math.max(-WIN / 2, Math.min(WIN / 2, board.evaluate(toPlay)));
+                }
+                long key = board.key(toPlay);
+                long entry = table.probe(key);
+                int preferred = -1;
+                if (entry != 0) {
+                    preferred = TranspositionTable.moveOf(entry);
+                    if (TranspositionTable.depthOf(entry) >= depth) {
+                        int score = fromTable(TranspositionTable.scoreOf(entry), ply);
+                        int bound = TranspositionTable.boundOf(entry);
+                        if (bound == TranspositionTable.EXACT || bound == TranspositionTable.LOWER && score >= beta
+                                || bound == TranspositionTable.UPPER && score <= alpha) {
+                            return score;
+                        }
+                    }
+                }
+                int[] list = moves[ply];
+                int count = board.candidates(toPlay, preferred, list, priorities[ply]);
+                // A full board is a draw
+                if (count == 0) return 0;
+                int originalAlpha = alpha;
+                int best = -INFINITY;
+                int bestMove = list[0];
+                for (int i = 0; i < count; i++) {
+                    int cell = list[i];
+                    int score = board.play(cell, toPlay) ? WIN - ply - 1
+                            : -search(depth - 1, -beta, -alpha, ply + 1, toPlay ^ 1);
+                    board.undo();
+                    if (score > best) {
+                        best = score;
+                        bestMove = cell;
+                        if (score > alpha) {
+                            alpha = score;
+                            if (alpha >= beta) break;
+                        }
+                    }
+                }
+                int bound = best <= originalAlpha ? TranspositionTable.UPPER
+                        : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+                table.store(key, toTable(best, ply), depth, bound, bestMove);
+                return best;
+            }
+        }
+    }
+}
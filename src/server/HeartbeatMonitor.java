@@ -0,0 +1,148 @@
+package server;
+
+import common.PlayerCallback;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Tracks an inactivity deadline per player in a timing wheel. Healthy clients
+// keep their deadline fresh by sending heartbeats (or simply by playing), which
+// only pushes the deadline back. When a deadline passes the player is probed
+// concurrently with the others, and expired if the probe does not answer in time.
+public class HeartbeatMonitor {
+    private static final int PROBE_THREADS = 32;
+
+    private final Map<PlayerCallback, TimingWheel<PlayerCallback>.Timeout> deadlines = new ConcurrentHashMap<>();
+    // Players with a probe in flight, so a slow peer is never probed twice at once
+    private final Map<PlayerCallback, Probe> probing = new ConcurrentHashMap<>();
+    private final TimingWheel<PlayerCallback> wheel;
+    private final long timeoutMillis;
+    private final long probeTimeoutMillis;
+    private final Consumer<PlayerCallback> expiredHandler;
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService probePool;
+
+    public HeartbeatMonitor(ServerConfig config, Consumer<PlayerCallback> expiredHandler) {
+        this.timeoutMillis = config.getInactivityTimeoutMillis();
+        this.probeTimeoutMillis = config.getProbeTimeoutMillis();
+        this.expiredHandler = expiredHandler;
+        long tick = config.getExpiryTickMillis();
+        this.wheel = new TimingWheel<>(tick, config.getExpiryWheelSize(), System.currentTimeMillis(), this::onDeadline);
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger counter = new AtomicInteger();
+        this.probePool = Executors.newFixedThreadPool(PROBE_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat-probe-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(() -> wheel.advance(System.currentTimeMillis()), tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    // Records activity from a player (join, move, heartbeat, answered probe)
+    public void touch(PlayerCallback player) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        deadlines.compute(player, (key, timeout) ->
+                timeout != null && timeout.extend(deadline) ? timeout : wheel.schedule(key, deadline));
+    }
+
+    public void forget(PlayerCallback player) {
+        TimingWheel<PlayerCallback>.Timeout timeout = deadlines.remove(player);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        Probe probe = probing.remove(player);
+        if (probe != null && probe.future != null) {
+            probe.future.cancel(true);
+        }
+    }
+
+    public int getTrackedCount() {
+        return deadlines.size();
+    }
+
+    public int getProbingCount() {
+        return probing.size();
+    }
+
+    // Runs on the wheel thread for every deadline that passed
+    private void onDeadline(TimingWheel<PlayerCallback>.Timeout timeout) {
+        PlayerCallback player = timeout.getItem();
+        if (deadlines.get(player) != timeout) return; // left, or rescheduled meanwhile
+        Probe probe = new Probe(player);
+        if (probing.putIfAbsent(player, probe) != null) return;
+        probe.future = probePool.submit(probe::run);
+        ticker.schedule(() -> probeDeadline(probe), probeTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void probeDeadline(Probe probe) {
+        if (!probe.resolved.compareAndSet(false, true)) return;
+        probing.remove(probe.player, probe);
+        if (probe.future != null) {
+            probe.future.cancel(true);
+        }
+        if (probe.started.get()) {
+            // The player did not answer within its deadline
+            expire(probe.player);
+        } else {
+            // Still queued behind slow peers: probe again after another timeout
+            touch(probe.player);
+        }
+    }
+
+    private void probeAnswered(Probe probe, boolean alive) {
+        if (!probe.resolved.compareAndSet(false, true)) return;
+        probing.remove(probe.player, probe);
+        if (alive) {
+            touch(probe.player);
+        } else {
+            expire(probe.player);
+        }
+    }
+
+    private void expire(PlayerCallback player) {
+        TimingWheel<PlayerCallback>.Timeout timeout = deadlines.get(player);
+        // Left, or heard from while the probe was running
+        if (timeout == null || timeout.isPending() || !deadlines.remove(player, timeout)) return;
+        System.out.println("Heartbeat: player did not answer its probe, expiring");
+        expiredHandler.accept(player);
+    }
+
+    public void shutdown() {
+        ticker.shutdownNow();
+        probePool.shutdownNow();
+    }
+
+    private final class Probe {
+        final PlayerCallback player;
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicBoolean resolved = new AtomicBoolean();
+        volatile Future<?> future;
+
+        Probe(PlayerCallback player) {
+            this.player = player;
+        }
+
+        void run() {
+            started.set(true);
+            boolean alive;
+            try {
+                alive = player.ping();
+            } catch (RemoteException e) {
+                alive = false;
+            }
+            probeAnswered(this, alive);
+        }
+    }
+}
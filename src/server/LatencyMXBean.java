@@ -0,0 +1,20 @@
+package server;
+
+// One latency histogram, in microseconds
+public interface LatencyMXBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP90Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,45 @@
+package server;
+
+import common.GameInterface;
+import common.LeaderboardInterface;
+import common.PlayerRating;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+
+// Remote access to the RatingTable of a game server
+public class LeaderboardService extends UnicastRemoteObject implements LeaderboardInterface {
+    private static final long serialVersionUID = 1L;
+
+    public static final String SERVICE_NAME = "Leaderboard";
+    private final RatingTable ratings;
+
+    public LeaderboardService(RatingTable ratings) throws RemoteException {
+        super();
+        this.ratings = ratings;
+    }
+
+    // Binds the ratings of the game; returns null for a game served from elsewhere
+    public static LeaderboardService bind(Registry registry, GameInterface game) throws RemoteException {
+        if (!(game instanceof GameImpl)) return null;
+        LeaderboardService service = new LeaderboardService(((GameImpl) game).getRatings());
+        registry.rebind(SERVICE_NAME, service);
+        System.out.println("Service '" + SERVICE_NAME + "' registered (" + service.ratings + ")");
+        return service;
+    }
+
+    @Override
+    public PlayerRating[] getTopPlayers(int count) throws RemoteException {
+        return ratings.getLeaderboard(count).toArray(new PlayerRating[0]);
+    }
+
+    @Override
+    public PlayerRating getRating(String playerName) throws RemoteException {
+        return ratings.getRating(playerName);
+    }
+
+    @Override
+    public int getRatedPlayerCount() throws RemoteException {
+        return ratings.getRatedPlayerCount();
+    }
+}
@@ -0,0 +1,135 @@
+package server;
+
+import common.GameInterface;
+import common.LobbyInterface;
+import common.ShardLoad;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Routes joining players to the least-loaded shard. Loads come from the shards'
+// periodic reports; players routed since a shard's last report are added to it,
+// so a burst of joins is spread instead of all landing on the same shard. A shard
+// that misses three reports in a row is no longer offered.
+public class LobbyImpl extends UnicastRemoteObject implements LobbyInterface {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, ShardEntry> shards = new ConcurrentHashMap<>();
+    private final long shardTimeoutMillis;
+    private final LongAdder routedJoins = new LongAdder();
+    private final LongAdder refusedJoins = new LongAdder();
+    private final ScheduledExecutorService scheduler;
+
+    public LobbyImpl(ServerConfig config) throws RemoteException {
+        super();
+        this.shardTimeoutMillis = 3 * config.getShardReportMillis();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.scheduler.scheduleWithFixedDelay(this::reportShards, config.getReportIntervalSeconds(),
+                config.getReportIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized GameInterface findShard(String playerName) throws RemoteException {
+        long now = System.currentTimeMillis();
+        ShardEntry best = null;
+        double bestLoad = Double.MAX_VALUE;
+        for (ShardEntry entry : shards.values()) {
+            if (now - entry.lastReportMillis > shardTimeoutMillis) continue;
+            int expected = entry.load.getPlayers() + entry.routedSinceReport;
+            int capacity = entry.load.getCapacity();
+            if (expected >= capacity) continue;
+            double load = (double) expected / capacity;
+            if (load < bestLoad) {
+                bestLoad = load;
+                best = entry;
+            }
+        }
+        if (best == null) {
+            refusedJoins.increment();
+            System.out.println("No shard available for " + playerName + " (" + shards.size() + " known)");
+            return null;
+        }
+        best.routedSinceReport++;
+        best.routedTotal.increment();
+        routedJoins.increment();
+        System.out.println("Routed " + playerName + " to " + best.load.getShardName() + " ("
+                + (best.load.getPlayers() + best.routedSinceReport) + "/" + best.load.getCapacity() + ")");
+        return best.stub;
+    }
+
+    @Override
+    public synchronized void reportLoad(GameInterface shard, ShardLoad load) throws RemoteException {
+        ShardEntry entry = shards.get(load.getShardName());
+        if (entry == null || !entry.stub.equals(shard)) {
+            // New shard, or a shard restarted under the same name
+            entry = new ShardEntry(shard, load);
+            shards.put(load.getShardName(), entry);
+            System.out.println("Shard registered: " + load);
+        }
+        entry.load = load;
+        entry.lastReportMillis = System.currentTimeMillis();
+        entry.routedSinceReport = 0;
+    }
+
+    @Override
+    public ShardLoad[] getShardLoads() throws RemoteException {
+        List<ShardLoad> loads = new ArrayList<>();
+        for (ShardEntry entry : shards.values()) {
+            loads.add(entry.load);
+        }
+        return loads.toArray(new ShardLoad[0]);
+    }
+
+    // One line per shard: its last report, players routed to it and whether it is still live
+    public synchronized List<String> describeShards() {
+        long now = System.currentTimeMillis();
+        List<String> lines = new ArrayList<>();
+        for (ShardEntry entry : shards.values()) {
+            long age = now - entry.lastReportMillis;
+            lines.add(entry.load + ", routed " + entry.routedTotal.sum() + ", report " + age + " ms ago"
+                    + (age > shardTimeoutMillis ? " (unreachable)" : ""));
+        }
+        return lines;
+    }
+
+    public long getRoutedJoins() {
+        return routedJoins.sum();
+    }
+
+    public long getRefusedJoins() {
+        return refusedJoins.sum();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    private void reportShards() {
+        if (shards.isEmpty()) return;
+        System.out.println("Lobby: " + routedJoins.sum() + " routed, " + refusedJoins.sum() + " refused");
+        for (String line : describeShards()) {
+            System.out.println("  " + line);
+        }
+    }
+
+    private static final class ShardEntry {
+        private final GameInterface stub;
+        private final LongAdder routedTotal = new LongAdder();
+        private volatile ShardLoad load;
+        private volatile long lastReportMillis;
+        // Guarded by the lobby
+        private int routedSinceReport;
+
+        ShardEntry(GameInterface stub, ShardLoad load) {
+            this.stub = stub;
+            this.load = load;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package server;
+
+// Routing counters of the lobby and the last load reported by each shard
+public interface LobbyMXBean {
+    int getShardCount();
+
+    long getRoutedJoins();
+
+    long getRefusedJoins();
+
+    String[] getShards();
+}
@@ -0,0 +1,28 @@
+package server;
+
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+
+// Lobby of a sharded deployment: creates the registry and binds "Lobby" in it.
+// Game servers are started separately with ShardServer and report to it.
+// Usage: java server.LobbyServer [registryPort]
+public class LobbyServer {
+    private static final String LOBBY_NAME = "Lobby";
+
+    public static void main(String[] args) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : Registry.REGISTRY_PORT;
+            ServerConfig config = ServerConfig.fromSystemProperties();
+            Registry registry = LocateRegistry.createRegistry(port);
+            LobbyImpl lobby = new LobbyImpl(config);
+            registry.rebind(LOBBY_NAME, lobby);
+            ServerMonitoring.register(lobby);
+            System.out.println("Lobby ready on port " + port + ", waiting for shards...");
+            Thread.currentThread().join();
+        } catch (Exception e) {
+            System.err.println("Lobby error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
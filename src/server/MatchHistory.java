@@ -0,0 +1,392 @@
+package server;
+
+import common.MatchRecord;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Stream;
+
+// Every finished match, appended to memory-mapped segment files of 24-byte records:
+//   [long game][int player1][int player2][int previous1][int previous2]
+// game is the MatchRecord packed form, with the end time in its upper 20 bits
+// as seconds after the segment's base time. Players are numbered in the order
+// they first appear in players.dat. previousN is that player's match before
+// this one: a player's history is a chain walked back from the newest match,
+// so a page costs one record read per match whatever the size of the store,
+// and the in-memory index is an int per player. Match ids follow the end
+// time, which maps a time to an id by binary search. Paging with the last id
+// of the previous page resumes from that match; another id, or a time, walks
+// the player's chain back from the newest match.
+// Appends are synchronized; reads take no lock. A reader sees a record once
+// it has read the size, or the chain head, written after it.
+public class MatchHistory implements SessionListener {
+    private static final int RECORD_SIZE = 24;
+    // [long base millis][int match count][int unused]
+    private static final int HEADER_SIZE = 16;
+    private static final long MAX_TIME_OFFSET = (1L << (64 - MatchRecord.GAME_BITS)) - 1;
+    private static final String SEGMENT_PREFIX = "matches-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String PLAYERS_FILE = "players.dat";
+    // Largest page returned by a query
+    public static final int MAX_PAGE = 100;
+
+    private final Path directory;
+    private final int matchesPerSegment;
+    private final Map<String, Integer> playerIds = new ConcurrentHashMap<>();
+    private DataOutputStream playersOut;
+    // Grown under the lock
+    private String[] playerNames = new String[1024];
+    private volatile AtomicIntegerArray lastMatch = new AtomicIntegerArray(1024);
+    private int[] matchCounts = new int[1024];
+    private int playerCount;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private int[] segmentFirstIds = new int[0];
+    private long[] segmentBaseMillis = new long[0];
+    private long lastEndMillis;
+    private boolean failed;
+    private volatile int size;
+
+    public MatchHistory(Path directory, int matchesPerSegment) throws IOException {
+        this.directory = directory;
+        this.matchesPerSegment = matchesPerSegment;
+        Files.createDirectories(directory);
+        loadPlayers();
+        loadSegments();
+        this.playersOut = new DataOutputStream(new FileOutputStream(directory.resolve(PLAYERS_FILE).toFile(), true));
+    }
+
+    private void loadPlayers() throws IOException {
+        Path file = directory.resolve(PLAYERS_FILE);
+        if (!Files.exists(file)) return;
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream names = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+            while (true) {
+                addPlayer(names.readUTF());
+            }
+        } catch (EOFException e) {
+            // End of the file, or a name cut short by a crash
+        }
+    }
+
+    // Maps the segments and rebuilds the per-player chain heads from their records
+    private void loadSegments() throws IOException {
+        for (Map.Entry<Integer, Path> entry : listSegments().entrySet()) {
+            MappedByteBuffer segment = mapSegment(entry.getValue());
+            int firstId = entry.getKey();
+            int count = segment.getInt(8);
+            if (firstId != size || count < 0 || count > matchesPerSegment) {
+                throw new IOException("Match history segment out of sequence: " + entry.getValue());
+            }
+            addSegment(segment, firstId, segment.getLong(0));
+            for (int slot = 0; slot < count; slot++) {
+                int offset = HEADER_SIZE + slot * RECORD_SIZE;
+                int player1 = segment.getInt(offset + 8);
+                int player2 = segment.getInt(offset + 12);
+                if (player1 >= playerCount || player2 >= playerCount) {
+                    // Record written after its player names were lost
+                    count = slot;
+                    break;
+                }
+                linkMatch(firstId + slot, player1, player2);
+                lastEndMillis = segmentBaseMillis[segments.length - 1] + timeOffset(segment.getLong(offset)) * 1000;
+            }
+            size = firstId + count;
+        }
+    }
+
+    @Override
+    public void gameFinished(GameSession session, long game) {
+        record(session.getPlayer1Name(), session.getPlayer2Name(), game);
+    }
+
+    @Override
+    public void sessionEnded(GameSession session) {
+        // A game left before its end is kept as abandoned once a move was played
+        long game = session.currentGame();
+        if (!session.isGameOver() && MatchRecord.moveCount(game) > 0) {
+            record(session.getPlayer1Name(), session.getPlayer2Name(), MatchRecord.finish(game, MatchRecord.ABANDONED));
+        }
+    }
+
+    private void record(String player1Name, String player2Name, long game) {
+        try {
+            append(player1Name, player2Name, game, System.currentTimeMillis());
+        } catch (IOException e) {
+            System.err.println("Match not recorded: " + e.getMessage());
+        }
+    }
+
+    // Stores a match and returns its id
+    public synchronized long append(String player1Name, String player2Name, long game, long endMillis)
+            throws IOException {
+        if (failed) throw new IOException("Match history is disabled after an earlier error");
+        // Ids must follow the end time
+        endMillis = Math.max(endMillis, lastEndMillis);
+        int id = size;
+        int current = segments.length - 1;
+        if (current < 0 || id - segmentFirstIds[current] == matchesPerSegment
+                || (endMillis - segmentBaseMillis[current]) / 1000 > MAX_TIME_OFFSET) {
+            try {
+                roll(id, endMillis);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+            current++;
+        }
+        int player1 = playerId(player1Name);
+        int player2 = playerId(player2Name);
+        MappedByteBuffer segment = segments[current];
+        int offset = HEADER_SIZE + (id - segmentFirstIds[current]) * RECORD_SIZE;
+        long timeOffset = (endMillis - segmentBaseMillis[current]) / 1000;
+        segment.putLong(offset, game & MatchRecord.GAME_MASK | timeOffset << MatchRecord.GAME_BITS);
+        segment.putInt(offset + 8, player1);
+        segment.putInt(offset + 12, player2);
+        segment.putInt(offset + 16, lastMatch.get(player1));
+        segment.putInt(offset + 20, lastMatch.get(player2));
+        // The count goes last: a record is only read back once it is complete
+        segment.putInt(8, id - segmentFirstIds[current] + 1);
+        linkMatch(id, player1, player2);
+        lastEndMillis = endMillis;
+        size = id + 1;
+        return id;
+    }
+
+    private void linkMatch(int id, int player1, int player2) {
+        matchCounts[player1]++;
+        if (player2 != player1) {
+            matchCounts[player2]++;
+            lastMatch.set(player2, id);
+        }
+        lastMatch.set(player1, id);
+    }
+
+    private int playerId(String name) throws IOException {
+        Integer id = playerIds.get(name);
+        if (id != null) return id;
+        // The name reaches the file before any record refers to it
+        playersOut.writeUTF(name);
+        playersOut.flush();
+        return addPlayer(name);
+    }
+
+    private int addPlayer(String name) {
+        if (playerCount == playerNames.length) {
+            playerNames = Arrays.copyOf(playerNames, playerCount * 2);
+            matchCounts = Arrays.copyOf(matchCounts, playerCount * 2);
+            AtomicIntegerArray larger = new AtomicIntegerArray(playerCount * 2);
+            for (int i = 0; i < playerCount; i++) {
+                larger.set(i, lastMatch.get(i));
+            }
+            lastMatch = larger;
+        }
+        int id = playerCount++;
+        playerNames[id] = name;
+        lastMatch.set(id, -1);
+        playerIds.put(name, id);
+        return id;
+    }
+
+    private void roll(int firstId, long baseMillis) throws IOException {
+        if (segments.length > 0) {
+            segments[segments.length - 1].force();
+        }
+        Path file = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, firstId, SEGMENT_SUFFIX));
+        MappedByteBuffer segment = mapSegment(file);
+        segment.putLong(0, baseMillis);
+        segment.putInt(8, 0);
+        addSegment(segment, firstId, baseMillis);
+    }
+
+    private void addSegment(MappedByteBuffer segment, int firstId, long baseMillis) {
+        int count = segments.length;
+        MappedByteBuffer[] moreSegments = Arrays.copyOf(segments, count + 1);
+        int[] moreFirstIds = Arrays.copyOf(segmentFirstIds, count + 1);
+        long[] moreBaseMillis = Arrays.copyOf(segmentBaseMillis, count + 1);
+        moreSegments[count] = segment;
+        moreFirstIds[count] = firstId;
+        moreBaseMillis[count] = baseMillis;
+        segmentFirstIds = moreFirstIds;
+        segmentBaseMillis = moreBaseMillis;
+        segments = moreSegments;
+    }
+
+    private MappedByteBuffer mapSegment(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) matchesPerSegment * RECORD_SIZE);
+        }
+    }
+
+    // Queries
+
+    public long size() {
+        return size;
+    }
+
+    public int getPlayerCount() {
+        return playerIds.size();
+    }
+
+    public MatchRecord get(long matchId) {
+        int stored = size;
+        if (matchId < 0 || matchId >= stored) return null;
+        return read((int) matchId);
+    }
+
+    // Matches of a player, newest first, with an id below beforeMatchId (all of them if it is <= 0)
+    public List<MatchRecord> history(String playerName, long beforeMatchId, int limit) {
+        List<MatchRecord> page = new ArrayList<>();
+        Integer player = playerIds.get(playerName);
+        if (player == null) return page;
+        int id = lastMatch.get(player);
+        if (beforeMatchId > 0 && beforeMatchId < size && playedIn((int) beforeMatchId, player)) {
+            // Next page: the cursor is the last match of the previous one
+            id = previousFor((int) beforeMatchId, player);
+        }
+        while (beforeMatchId > 0 && id >= beforeMatchId) {
+            id = previousFor(id, player);
+        }
+        limit = Math.min(limit, MAX_PAGE);
+        while (id >= 0 && page.size() < limit) {
+            page.add(read(id));
+            id = previousFor(id, player);
+        }
+        return page;
+    }
+
+    // Matches of a player that ended before the given time, newest first
+    public List<MatchRecord> historyBefore(String playerName, long beforeMillis, int limit) {
+        long firstAfter = firstMatchAt(beforeMillis);
+        return firstAfter == 0 ? new ArrayList<>() : history(playerName, firstAfter, limit);
+    }
+
+    public int matchCount(String playerName) {
+        Integer player = playerIds.get(playerName);
+        return player == null ? 0 : matchCounts[player];
+    }
+
+    // Id of the first match that ended at or after the given time, size() if none
+    public long firstMatchAt(long millis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (endMillis(middle) < millis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public interface MatchVisitor {
+        void visit(String player1Name, String player2Name, long game);
+    }
+
+    // Every stored match, oldest first; game is in MatchRecord packed form
+    public void forEach(MatchVisitor visitor) {
+        int stored = size;
+        for (int segmentIndex = 0; segmentIndex < segments.length; segmentIndex++) {
+            MappedByteBuffer segment = segments[segmentIndex];
+            int first = segmentFirstIds[segmentIndex];
+            int last = segmentIndex + 1 < segments.length ? segmentFirstIds[segmentIndex + 1] : stored;
+            for (int id = first; id < Math.min(last, stored); id++) {
+                int offset = HEADER_SIZE + (id - first) * RECORD_SIZE;
+                visitor.visit(playerNames[segment.getInt(offset + 8)], playerNames[segment.getInt(offset + 12)],
+                        segment.getLong(offset) & MatchRecord.GAME_MASK);
+            }
+        }
+    }
+
+    private MatchRecord read(int id) {
+        int segmentIndex = segmentOf(id);
+        MappedByteBuffer segment = segments[segmentIndex];
+        int offset = HEADER_SIZE + (id - segmentFirstIds[segmentIndex]) * RECORD_SIZE;
+        long word = segment.getLong(offset);
+        long endMillis = segmentBaseMillis[segmentIndex] + timeOffset(word) * 1000;
+        return new MatchRecord(id, playerNames[segment.getInt(offset + 8)], playerNames[segment.getInt(offset + 12)],
+                word, endMillis);
+    }
+
+    private int previousFor(int id, int player) {
+        int segmentIndex = segmentOf(id);
+        MappedByteBuffer segment = segments[segmentIndex];
+        int offset = HEADER_SIZE + (id - segmentFirstIds[segmentIndex]) * RECORD_SIZE;
+        return segment.getInt(offset + 8) == player ? segment.getInt(offset + 16) : segment.getInt(offset + 20);
+    }
+
+    private boolean playedIn(int id, int player) {
+        int segmentIndex = segmentOf(id);
+        MappedByteBuffer segment = segments[segmentIndex];
+        int offset = HEADER_SIZE + (id - segmentFirstIds[segmentIndex]) * RECORD_SIZE;
+        return segment.getInt(offset + 8) == player || segment.getInt(offset + 12) == player;
+    }
+
+    private long endMillis(int id) {
+        int segmentIndex = segmentOf(id);
+        int offset = HEADER_SIZE + (id - segmentFirstIds[segmentIndex]) * RECORD_SIZE;
+        return segmentBaseMillis[segmentIndex] + timeOffset(segments[segmentIndex].getLong(offset)) * 1000;
+    }
+
+    private int segmentOf(int id) {
+        int index = Arrays.binarySearch(segmentFirstIds, id);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static long timeOffset(long word) {
+        return word >>> MatchRecord.GAME_BITS;
+    }
+
+    public synchronized void close() {
+        if (segments.length > 0) {
+            segments[segments.length - 1].force();
+        }
+        try {
+            playersOut.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the match history: " + e.getMessage());
+        }
+    }
+
+    private TreeMap<Integer, Path> listSegments() throws IOException {
+        TreeMap<Integer, Path> found = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        found.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())), file);
+                    } catch (NumberFormatException e) {
+                        // Not one of ours
+                    }
+                }
+            });
+        }
+        return found;
+    }
+
+    @Override
+    public String toString() {
+        return size + " matches, " + playerIds.size() + " players, " + segments.length + " segments";
+    }
+}
@@ -0,0 +1,56 @@
+package server;
+
+import common.GameInterface;
+import common.MatchHistoryInterface;
+import common.MatchRecord;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+
+// Remote access to the MatchHistory of a game server
+public class MatchHistoryService extends UnicastRemoteObject implements MatchHistoryInterface {
+    private static final long serialVersionUID = 1L;
+
+    public static final String SERVICE_NAME = "MatchHistory";
+    private final MatchHistory history;
+
+    public MatchHistoryService(MatchHistory history) throws RemoteException {
+        super();
+        this.history = history;
+    }
+
+    // Binds the history of the game, if it keeps one; returns null otherwise
+    public static MatchHistoryService bind(Registry registry, GameInterface game) throws RemoteException {
+        if (!(game instanceof GameImpl) || ((GameImpl) game).getMatchHistory() == null) return null;
+        MatchHistoryService service = new MatchHistoryService(((GameImpl) game).getMatchHistory());
+        registry.rebind(SERVICE_NAME, service);
+        System.out.println("Service '" + SERVICE_NAME + "' registered (" + service.history + ")");
+        return service;
+    }
+
+    @Override
+    public MatchRecord[] getPlayerHistory(String playerName, long beforeMatchId, int limit) throws RemoteException {
+        return history.history(playerName, beforeMatchId, limit).toArray(new MatchRecord[0]);
+    }
+
+    @Override
+    public MatchRecord[] getPlayerHistoryBefore(String playerName, long beforeMillis, int limit)
+            throws RemoteException {
+        return history.historyBefore(playerName, beforeMillis, limit).toArray(new MatchRecord[0]);
+    }
+
+    @Override
+    public int getPlayerMatchCount(String playerName) throws RemoteException {
+        return history.matchCount(playerName);
+    }
+
+    @Override
+    public MatchRecord getMatch(long matchId) throws RemoteException {
+        return history.get(matchId);
+    }
+
+    @Override
+    public long getMatchCount() throws RemoteException {
+        return history.size();
+    }
+}
@@ -0,0 +1,491 @@
+package server;
+
+import common.PlayerCallback;
+import common.PlayerRating;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Pairs waiting players on a dedicated thread. joinGame only appends to a
+// lock-free queue; the matchmaker drains it and looks for an opponent for
+// each new player: the nearest rating either player's window accepts. The
+// rating gap a player accepts starts at the match window and widens with the
+// time it has waited, so a player far from everyone else is still matched
+// eventually. A player left unpaired stays in a rating index, oldest first at
+// each rating, where the players who come after find it; it looks again when
+// its window reaches its nearest neighbour. A lookup only walks the ratings
+// inside the window, whatever the number of waiting players. The chosen pairs
+// are pinged in parallel and each live pair goes to the session starter.
+// Players who leave while waiting are dropped from the waiting map and their
+// entries skipped lazily. Optionally, a player still alone after a set wait
+// is handed to a lone player handler instead (GameImpl gives it a bot).
+public class Matchmaker {
+    // Players paired per round
+    private static final int BATCH_SIZE = 256;
+    private static final int PROBE_THREADS = 16;
+    private static final long PROBE_TIMEOUT_MS = 2000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final Comparator<WaitingPlayer> ARRIVAL_ORDER = Comparator.comparingLong(entry -> entry.order);
+
+    private final Queue<WaitingPlayer> queue = new ConcurrentLinkedQueue<>();
+    // Current queue entry of each waiting player; an entry no longer mapped here is stale
+    private final Map<PlayerCallback, WaitingPlayer> waiting = new ConcurrentHashMap<>();
+    // The rest is only touched by the matchmaker thread.
+    // Drained entries, oldest first; the stale ones are dropped when they reach the head
+    private ArrayDeque<WaitingPlayer> arrivals = new ArrayDeque<>();
+    private long drainedCount;
+    // Unpaired players by rating, oldest first at each rating
+    private final TreeMap<Integer, TreeSet<WaitingPlayer>> byRating = new TreeMap<>();
+    private int indexedEntries;
+    // Players to find an opponent for: new ones, those whose pair fell through and those whose window grew
+    private final ArrayDeque<WaitingPlayer> searches = new ArrayDeque<>();
+    private final PriorityQueue<Widening> widenings = new PriorityQueue<>();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private final BiConsumer<PlayerCallback, PlayerCallback> sessionStarter;
+    private final Consumer<PlayerCallback> unreachableHandler;
+    private final ExecutorService probePool;
+    private final LatencyRecorder timeToMatch = new LatencyRecorder("timeToMatch");
+    // Rating points between the players of each pair (recorded as if they were microseconds)
+    private final LatencyRecorder ratingGap = new LatencyRecorder("ratingGap");
+    private final int matchWindow;
+    private final int matchWindowGrowth;
+    private volatile Consumer<PlayerCallback> loneHandler;
+    private volatile long loneWaitNanos;
+    // When the oldest unpaired player reaches the lone wait
+    private long nextLoneDeadline = Long.MAX_VALUE;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public Matchmaker(BiConsumer<PlayerCallback, PlayerCallback> sessionStarter,
+                      Consumer<PlayerCallback> unreachableHandler) {
+        this(Integer.MAX_VALUE, 0, sessionStarter, unreachableHandler);
+    }
+
+    // matchWindow is the rating gap accepted at once, matchWindowGrowth what it widens by per second of waiting
+    public Matchmaker(int matchWindow, int matchWindowGrowth, BiConsumer<PlayerCallback, PlayerCallback> sessionStarter,
+                      Consumer<PlayerCallback> unreachableHandler) {
+        this.matchWindow = matchWindow;
+        this.matchWindowGrowth = matchWindowGrowth;
+        this.sessionStarter = sessionStarter;
+        this.unreachableHandler = unreachableHandler;
+        AtomicInteger counter = new AtomicInteger();
+        this.probePool = Executors.newFixedThreadPool(PROBE_THREADS, runnable -> {
+            Thread probe = new Thread(runnable, "matchmaker-probe-" + counter.incrementAndGet());
+            probe.setDaemon(true);
+            return probe;
+        });
+        this.thread = new Thread(this::run, "matchmaker");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Adds an unrated player to the waiting queue
+    public boolean enqueue(PlayerCallback player) {
+        return enqueue(player, PlayerRating.INITIAL_RATING);
+    }
+
+    // Adds a player to the waiting queue; returns false if it is already waiting
+    public boolean enqueue(PlayerCallback player, int rating) {
+        WaitingPlayer entry = new WaitingPlayer(player, rating, System.nanoTime());
+        if (waiting.putIfAbsent(player, entry) != null) return false;
+        waitingCount.incrementAndGet();
+        queue.offer(entry);
+        if (!signalled.getAndSet(true)) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    // Withdraws a waiting player (left or timed out); its queue entry is skipped later
+    public boolean remove(PlayerCallback player) {
+        if (waiting.remove(player) != null) {
+            waitingCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    // Takes the given entry out of the waiting map, unless the player left or queued again since
+    private boolean claim(WaitingPlayer entry) {
+        if (waiting.remove(entry.player, entry)) {
+            waitingCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void unclaim(WaitingPlayer entry) {
+        entry.paired = false;
+        if (waiting.putIfAbsent(entry.player, entry) == null) {
+            waitingCount.incrementAndGet();
+        }
+    }
+
+    private boolean isLive(WaitingPlayer entry) {
+        return waiting.get(entry.player) == entry;
+    }
+
+    public boolean isWaiting(PlayerCallback player) {
+        return waiting.containsKey(player);
+    }
+
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    public List<PlayerCallback> getWaitingPlayers() {
+        return new ArrayList<>(waiting.keySet());
+    }
+
+    public LatencyRecorder getTimeToMatch() {
+        return timeToMatch;
+    }
+
+    // Players found no opponent for after the wait go to the handler, already out of the waiting map
+    public void setLonePlayerHandler(long waitMillis, Consumer<PlayerCallback> handler) {
+        this.loneWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, waitMillis));
+        this.loneHandler = handler;
+        LockSupport.unpark(thread);
+    }
+
+    public LatencyRecorder getRatingGap() {
+        return ratingGap;
+    }
+
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+        probePool.shutdownNow();
+    }
+
+    private void run() {
+        while (running) {
+            signalled.set(false);
+            try {
+                if (!matchRound()) {
+                    // Up to the next lone player deadline or widening, if one comes first
+                    long now = System.nanoTime();
+                    long park = Math.min(IDLE_PARK_NANOS, nextLoneDeadline - now);
+                    if (!widenings.isEmpty()) {
+                        park = Math.min(park, widenings.peek().at - now);
+                    }
+                    if (park > 0) {
+                        LockSupport.parkNanos(this, park);
+                    }
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Matchmaker error: " + e.getMessage());
+            }
+        }
+    }
+
+    // Returns true when it made progress and should run again right away
+    private boolean matchRound() {
+        WaitingPlayer next;
+        boolean drained = false;
+        while ((next = queue.poll()) != null) {
+            next.order = drainedCount++;
+            arrivals.addLast(next);
+            searches.addLast(next);
+            drained = true;
+        }
+        long now = System.nanoTime();
+        while (!widenings.isEmpty() && widenings.peek().at - now <= 0) {
+            Widening widening = widenings.poll();
+            if (widening.player.widening && widening.player.widensAt == widening.at) {
+                searches.addLast(widening.player);
+            }
+        }
+
+        // Each player looking takes the nearest opponent either window allows, or waits in the index
+        List<WaitingPlayer> pairs = new ArrayList<>();
+        while (!searches.isEmpty() && pairs.size() < BATCH_SIZE) {
+            WaitingPlayer candidate = searches.pollFirst();
+            if (candidate.paired || !isLive(candidate)) continue;
+            candidate.widening = false;
+            unindex(candidate);
+            WaitingPlayer opponent = findOpponent(candidate, now);
+            if (opponent != null) {
+                unindex(opponent);
+                candidate.paired = true;
+                opponent.paired = true;
+                pairs.add(candidate);
+                pairs.add(opponent);
+            } else {
+                index(candidate);
+                scheduleWidening(candidate);
+            }
+        }
+        dropStaleArrivals();
+        int live = waitingCount.get();
+        if (arrivals.size() > 2 * live + BATCH_SIZE || indexedEntries > 2 * live + BATCH_SIZE) {
+            compact();
+        }
+        boolean handedOff = handOffLonePlayers(now);
+        if (pairs.isEmpty()) return handedOff || !searches.isEmpty() || drained && !queue.isEmpty();
+
+        // Verify every chosen player is still connected, all at once
+        List<Future<Boolean>> probes = new ArrayList<>(pairs.size());
+        for (WaitingPlayer player : pairs) {
+            probes.add(probePool.submit(() -> probe(player.player)));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS);
+        boolean[] alive = new boolean[pairs.size()];
+        for (int i = 0; i < pairs.size(); i++) {
+            alive[i] = awaitProbe(probes.get(i), deadline);
+            if (!alive[i] && claim(pairs.get(i))) {
+                unreachableHandler.accept(pairs.get(i).player);
+            }
+        }
+
+        for (int i = 0; i < pairs.size(); i += 2) {
+            WaitingPlayer first = pairs.get(i);
+            WaitingPlayer second = pairs.get(i + 1);
+            if (!alive[i] || !alive[i + 1]) {
+                // The one still there looks for another opponent next round
+                first.paired = false;
+                second.paired = false;
+                searches.addLast(first);
+                searches.addLast(second);
+                continue;
+            }
+            if (!claim(first)) {
+                second.paired = false;
+                searches.addLast(second);
+                continue;
+            }
+            if (!claim(second)) {
+                // second left meanwhile, first keeps its place
+                unclaim(first);
+                searches.addLast(first);
+                continue;
+            }
+            now = System.nanoTime();
+            timeToMatch.recordNanos(now - first.enqueuedAt);
+            timeToMatch.recordNanos(now - second.enqueuedAt);
+            ratingGap.record(Math.abs(first.rating - second.rating));
+            try {
+                sessionStarter.accept(first.player, second.player);
+            } catch (RuntimeException e) {
+                System.err.println("Error starting session: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    // Gives the players who waited too long to the lone player handler; returns true if it took any
+    private boolean handOffLonePlayers(long now) {
+        Consumer<PlayerCallback> handler = loneHandler;
+        nextLoneDeadline = Long.MAX_VALUE;
+        if (handler == null) return false;
+        boolean handedOff = false;
+        for (WaitingPlayer candidate : arrivals) {
+            if (candidate.paired || !isLive(candidate)) continue;
+            long deadline = candidate.enqueuedAt + loneWaitNanos;
+            if (deadline - now > 0) {
+                // arrivals is oldest first: everyone after this one is due later
+                nextLoneDeadline = deadline;
+                break;
+            }
+            if (!claim(candidate)) continue;
+            unindex(candidate);
+            timeToMatch.recordNanos(now - candidate.enqueuedAt);
+            handedOff = true;
+            try {
+                handler.accept(candidate.player);
+            } catch (RuntimeException e) {
+                System.err.println("Error handling lone player: " + e.getMessage());
+            }
+        }
+        return handedOff;
+    }
+
+    // Rating gap the player accepts after waiting since its entry was queued
+    private long windowOf(WaitingPlayer player, long now) {
+        return matchWindow + (long) matchWindowGrowth * (now - player.enqueuedAt) / 1000000000L;
+    }
+
+    // Walks the indexed ratings outward from the player's, nearest first, up to the widest
+    // window of anyone waiting. At each rating only the oldest entry counts: the ones after
+    // it waited less and accept no more than it does.
+    private WaitingPlayer findOpponent(WaitingPlayer player, long now) {
+        long own = windowOf(player, now);
+        long reach = arrivals.isEmpty() ? own : Math.max(own, windowOf(arrivals.peekFirst(), now));
+        Integer below = byRating.floorKey(player.rating);
+        Integer above = byRating.higherKey(player.rating);
+        while (below != null || above != null) {
+            boolean down = above == null || below != null && player.rating - below <= above - player.rating;
+            int rating = down ? below : above;
+            long gap = Math.abs((long) rating - player.rating);
+            if (gap > reach) return null;
+            WaitingPlayer oldest = oldestAt(rating);
+            if (oldest != null && gap <= Math.max(own, windowOf(oldest, now))) return oldest;
+            if (down) {
+                below = byRating.lowerKey(rating);
+            } else {
+                above = byRating.higherKey(rating);
+            }
+        }
+        return null;
+    }
+
+    // Oldest live entry indexed at a rating; drops the stale ones before it
+    private WaitingPlayer oldestAt(int rating) {
+        TreeSet<WaitingPlayer> entries = byRating.get(rating);
+        while (!entries.isEmpty()) {
+            WaitingPlayer oldest = entries.first();
+            if (isLive(oldest)) return oldest;
+            entries.pollFirst();
+            oldest.indexed = false;
+            indexedEntries--;
+        }
+        byRating.remove(rating);
+        return null;
+    }
+
+    // Nearest live entry from the given rating on, walking down or up
+    private WaitingPlayer nearestFrom(Integer rating, boolean down) {
+        while (rating != null) {
+            WaitingPlayer oldest = oldestAt(rating);
+            if (oldest != null) return oldest;
+            rating = down ? byRating.lowerKey(rating) : byRating.higherKey(rating);
+        }
+        return null;
+    }
+
+    // Without new players coming, two waiting players are paired once either window reaches
+    // the other: the player just indexed looks again when its window reaches its nearest
+    // neighbour, and each neighbour when its own window reaches the player, if sooner
+    private void scheduleWidening(WaitingPlayer player) {
+        if (matchWindowGrowth <= 0) return;
+        WaitingPlayer below = nearestFrom(byRating.lowerKey(player.rating), true);
+        WaitingPlayer above = nearestFrom(byRating.higherKey(player.rating), false);
+        long belowGap = below == null ? Long.MAX_VALUE : player.rating - below.rating;
+        long aboveGap = above == null ? Long.MAX_VALUE : above.rating - player.rating;
+        if (below == null && above == null) return;
+        widenTowards(player, Math.min(belowGap, aboveGap));
+        if (below != null) widenTowards(below, belowGap);
+        if (above != null) widenTowards(above, aboveGap);
+    }
+
+    private void widenTowards(WaitingPlayer player, long gap) {
+        long wait = (Math.max(0, gap - matchWindow) * 1000000000L + matchWindowGrowth - 1) / matchWindowGrowth;
+        long at = player.enqueuedAt + wait;
+        if (player.widening && player.widensAt - at <= 0) return;
+        player.widening = true;
+        player.widensAt = at;
+        widenings.add(new Widening(player, at));
+    }
+
+    private void index(WaitingPlayer entry) {
+        if (entry.indexed) return;
+        byRating.computeIfAbsent(entry.rating, rating -> new TreeSet<>(ARRIVAL_ORDER)).add(entry);
+        entry.indexed = true;
+        indexedEntries++;
+    }
+
+    private void unindex(WaitingPlayer entry) {
+        if (!entry.indexed) return;
+        TreeSet<WaitingPlayer> entries = byRating.get(entry.rating);
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+            byRating.remove(entry.rating);
+        }
+        entry.indexed = false;
+        indexedEntries--;
+    }
+
+    private void dropStaleArrivals() {
+        while (!arrivals.isEmpty() && !isLive(arrivals.peekFirst())) {
+            arrivals.pollFirst();
+        }
+    }
+
+    // Entries of players who left or were paired accumulate behind a player who waits long
+    private void compact() {
+        ArrayDeque<WaitingPlayer> kept = new ArrayDeque<>();
+        for (WaitingPlayer entry : arrivals) {
+            if (isLive(entry)) kept.addLast(entry);
+        }
+        arrivals = kept;
+        byRating.clear();
+        indexedEntries = 0;
+        for (WaitingPlayer entry : kept) {
+            if (entry.indexed) {
+                entry.indexed = false;
+                index(entry);
+            }
+        }
+    }
+
+    private static boolean probe(PlayerCallback player) {
+        try {
+            player.ping();
+            return true;
+        } catch (RemoteException e) {
+            return false;
+        }
+    }
+
+    private static boolean awaitProbe(Future<Boolean> probe, long deadline) {
+        try {
+            return probe.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            probe.cancel(true);
+            return false;
+        }
+    }
+
+    private static final class WaitingPlayer {
+        final PlayerCallback player;
+        final int rating;
+        final long enqueuedAt;
+        // The rest is only touched by the matchmaker thread: drain order, whether it is in the
+        // rating index, chosen for a pair that is being probed, when its window reaches a neighbour
+        long order;
+        boolean indexed;
+        boolean paired;
+        boolean widening;
+        long widensAt;
+
+        WaitingPlayer(PlayerCallback player, int rating, long enqueuedAt) {
+            this.player = player;
+            this.rating = rating;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private static final class Widening implements Comparable<Widening> {
+        final WaitingPlayer player;
+        final long at;
+
+        Widening(WaitingPlayer player, long at) {
+            this.player = player;
+            this.at = at;
+        }
+
+        @Override
+        public int compareTo(Widening other) {
+            return Long.signum(at - other.at);
+        }
+    }
+}
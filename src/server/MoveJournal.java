@@ -0,0 +1,524 @@
+package server;
+
+import common.GameState;
+import common.GameVariant;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only journal of session starts, moves, restarts and ends, so that the
+// games in progress survive a server restart.
+// Records are copied into a memory-mapped segment file under one short lock;
+// nothing on the move path waits for the disk. A sync thread forces the
+// segment every syncMillis (group commit): a killed server loses nothing that
+// reached the mapping, a crashed machine at most the last interval.
+// Snapshots of the live sessions, taken every snapshotIntervalSeconds, record
+// the journal position they start from: recovery loads the last snapshot and
+// replays only the records after it, and older segments are deleted.
+// Record: [int length][int crc32][byte type][long handle][payload], where
+// length and crc32 cover type, handle and payload. A zero length ends a segment.
+// Records and snapshots written before boards other than 3x3 are still read.
+public class MoveJournal implements SessionListener {
+    static final byte RESTARTED = 3;
+    static final byte SESSION_ENDED = 4;
+    // With the board size and win length; a session starts with an empty board
+    static final byte SESSION_STARTED = 5;
+    // The cell takes a short
+    static final byte MOVE = 6;
+    // Earlier forms of SESSION_STARTED (a 3x3 board as its BoardCodec code) and MOVE (a byte cell)
+    static final byte CLASSIC_SESSION_STARTED = 1;
+    static final byte CLASSIC_MOVE = 2;
+
+    private static final int RECORD_HEADER = 8;
+    // Player names are cut to this many bytes in the journal
+    private static final int MAX_NAME_BYTES = 1000;
+    private static final int MAX_RECORD = 2 * (MAX_NAME_BYTES + 2) + 32;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+    private static final int SNAPSHOT_MAGIC = 0x4D4F5252;
+    // Snapshots holding 3x3 boards only, as BoardCodec codes
+    private static final int CLASSIC_SNAPSHOT_MAGIC = 0x4D4F5251;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ByteBuffer record = ByteBuffer.allocate(MAX_RECORD);
+    private final CRC32 checksum = new CRC32();
+    private final Thread syncThread;
+    private final ScheduledExecutorService snapshotScheduler;
+    // Guarded by this
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private MappedByteBuffer retiredSegment;
+    private long appendedRecords;
+    private long appendedBytes;
+    private boolean failed;
+    // Sync thread statistics
+    private long syncedRecords;
+    private volatile long syncCount;
+    private volatile long syncNanos;
+    private volatile long maxSyncNanos;
+    private volatile long snapshotCount;
+    private volatile boolean closed;
+
+    // Starts a new segment after the existing ones; recover() must have read them first
+    public MoveJournal(Path directory, ServerConfig config) throws IOException {
+        this.directory = directory;
+        this.segmentSize = config.getJournalSegmentBytes();
+        Files.createDirectories(directory);
+        TreeMap<Integer, Path> existing = listSegments(directory);
+        this.segmentIndex = existing.isEmpty() ? 1 : existing.lastKey() + 1;
+        this.segment = mapSegment(segmentIndex);
+
+        long syncMillis = config.getJournalSyncMillis();
+        this.syncThread = new Thread(() -> {
+            while (!closed) {
+                try {
+                    Thread.sleep(syncMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                sync();
+            }
+        }, "journal-sync");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+        this.snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Takes a snapshot of the sessions returned by liveSessions every period
+    public void startSnapshots(Supplier<List<SessionImage>> liveSessions, long periodSeconds) {
+        snapshotScheduler.scheduleWithFixedDelay(() -> snapshot(liveSessions), periodSeconds, periodSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    // Session events, appended in the order they happen
+
+    @Override
+    public void sessionStarted(GameSession session) {
+        // Taken before the journal lock: moves lock the session first, then the journal
+        SessionImage image = session.image();
+        synchronized (this) {
+            ByteBuffer body = begin(SESSION_STARTED, session.getHandle());
+            body.put((byte) image.getPlayer1Side()).put((byte) image.getVariant().getSize())
+                    .put((byte) image.getVariant().getWinLength()).put((byte) image.getCurrentSide()).putInt(image.getSequence()).putLong(image.getGame());
+            putName(body, image.getPlayer1Name());
+            putName(body, image.getPlayer2Name());
+            append();
+        }
+    }
+
+    @Override
+    public void moveApplied(GameSession session, int cell, int side, int sequence) {
+        synchronized (this) {
+            begin(MOVE, session.getHandle()).putShort((short) cell).put((byte) side).putInt(sequence);
+            append();
+        }
+    }
+
+    @Override
+    public void sessionRestarted(GameSession session, int startingSide, int sequence) {
+        synchronized (this) {
+            begin(RESTARTED, session.getHandle()).put((byte) startingSide).putInt(sequence);
+            append();
+        }
+    }
+
+    @Override
+    public void sessionEnded(GameSession session) {
+        synchronized (this) {
+            begin(SESSION_ENDED, session.getHandle());
+            append();
+        }
+    }
+
+    private ByteBuffer begin(byte type, long handle) {
+        record.clear();
+        return record.put(type).putLong(handle);
+    }
+
+    private static void putName(ByteBuffer body, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_NAME_BYTES);
+        body.putShort((short) length).put(bytes, 0, length);
+    }
+
+    private void append() {
+        if (failed) return;
+        int length = record.position();
+        checksum.reset();
+        checksum.update(record.array(), 0, length);
+        try {
+            // Keep room for the zero length that ends the segment
+            if (segment.remaining() < RECORD_HEADER + length + 4) {
+                roll();
+            }
+        } catch (IOException e) {
+            // The games go on, they just stop being recoverable
+            failed = true;
+            System.err.println("Journal disabled, cannot start a new segment: " + e.getMessage());
+            return;
+        }
+        segment.putInt(length).putInt((int) checksum.getValue()).put(record.array(), 0, length);
+        appendedRecords++;
+        appendedBytes += RECORD_HEADER + length;
+    }
+
+    private void roll() throws IOException {
+        if (retiredSegment != null) {
+            // Two segments filled within one sync interval
+            retiredSegment.force();
+        }
+        retiredSegment = segment;
+        segment = mapSegment(segmentIndex + 1);
+        segmentIndex++;
+    }
+
+    private MappedByteBuffer mapSegment(int index) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(segmentName(index)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    // Group commit: one force covers every record appended since the previous one
+    public void sync() {
+        MappedByteBuffer current;
+        MappedByteBuffer retired;
+        long appended;
+        synchronized (this) {
+            current = segment;
+            retired = retiredSegment;
+            retiredSegment = null;
+            appended = appendedRecords;
+        }
+        if (appended == syncedRecords && retired == null) return;
+        long start = System.nanoTime();
+        if (retired != null) {
+            retired.force();
+        }
+        current.force();
+        long elapsed = System.nanoTime() - start;
+        syncedRecords = appended;
+        syncCount++;
+        syncNanos += elapsed;
+        maxSyncNanos = Math.max(maxSyncNanos, elapsed);
+    }
+
+    // Writes the live sessions with the journal position they start from, then
+    // deletes the segments the snapshot makes useless
+    public void snapshot(Supplier<List<SessionImage>> liveSessions) {
+        long start = System.nanoTime();
+        int fromSegment;
+        int fromOffset;
+        synchronized (this) {
+            fromSegment = segmentIndex;
+            fromOffset = segment.position();
+        }
+        // Taken after the position: a record before it is already in the images
+        List<SessionImage> images = liveSessions.get();
+        Path target = directory.resolve(SNAPSHOT_FILE);
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(fromSegment);
+                out.writeInt(fromOffset);
+                out.writeInt(images.size());
+                for (SessionImage image : images) {
+                    image.write(out);
+                }
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Journal snapshot failed: " + e.getMessage());
+            return;
+        }
+        snapshotCount++;
+        int deleted = 0;
+        try {
+            for (Map.Entry<Integer, Path> entry : listSegments(directory).entrySet()) {
+                if (entry.getKey() < fromSegment && Files.deleteIfExists(entry.getValue())) {
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            // Tried again after the next snapshot
+            System.err.println("Could not delete old journal segments: " + e.getMessage());
+        }
+        System.out.println("Journal snapshot: " + images.size() + " sessions in "
+                + (System.nanoTime() - start) / 1000000 + " ms, " + deleted + " segments deleted");
+    }
+
+    // Stops the sync and snapshot threads after a last sync
+    public void close() {
+        closed = true;
+        snapshotScheduler.shutdownNow();
+        syncThread.interrupt();
+        try {
+            syncThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+    }
+
+    public synchronized long getAppendedRecords() {
+        return appendedRecords;
+    }
+
+    public synchronized long getAppendedBytes() {
+        return appendedBytes;
+    }
+
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    public long getAverageSyncMicros() {
+        long count = syncCount;
+        return count == 0 ? 0 : syncNanos / count / 1000;
+    }
+
+    public long getMaxSyncMicros() {
+        return maxSyncNanos / 1000;
+    }
+
+    public long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    @Override
+    public String toString() {
+        return getAppendedRecords() + " records, " + getAppendedBytes() / 1024 + " KB, " + syncCount
+                + " syncs (avg " + getAverageSyncMicros() + " us, max " + getMaxSyncMicros() + " us), "
+                + snapshotCount + " snapshots";
+    }
+
+    // Recovery
+
+    // Sessions still open at the end of the journal in the given directory
+    public static Recovery recover(Path directory) throws IOException {
+        long start = System.nanoTime();
+        Recovery recovery = new Recovery();
+        Map<Long, SessionImage> live = new HashMap<>();
+        int fromSegment = 0;
+        int fromOffset = 0;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (InputStream file = Files.newInputStream(snapshot);
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+                int magic = in.readInt();
+                if (magic != SNAPSHOT_MAGIC && magic != CLASSIC_SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a journal snapshot: " + snapshot);
+                }
+                fromSegment = in.readInt();
+                fromOffset = in.readInt();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    SessionImage image = SessionImage.read(in, magic == CLASSIC_SNAPSHOT_MAGIC);
+                    live.put(image.getHandle(), image);
+                }
+                recovery.snapshotSessions = count;
+            }
+        }
+        if (Files.isDirectory(directory)) {
+            for (Map.Entry<Integer, Path> entry : listSegments(directory).entrySet()) {
+                if (entry.getKey() < fromSegment) continue;
+                replaySegment(entry.getValue(), entry.getKey() == fromSegment ? fromOffset : 0, live, recovery);
+                recovery.segments++;
+            }
+        }
+        recovery.sessions = new ArrayList<>(live.values());
+        recovery.millis = (System.nanoTime() - start) / 1000000;
+        return recovery;
+    }
+
+    private static void replaySegment(Path file, int offset, Map<Long, SessionImage> live, Recovery recovery)
+            throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        byte[] body = new byte[MAX_RECORD];
+        ByteBuffer view = ByteBuffer.wrap(body);
+        CRC32 checksum = new CRC32();
+        segment.position(offset);
+        while (segment.remaining() >= RECORD_HEADER) {
+            int length = segment.getInt();
+            if (length == 0) return;
+            int expected = segment.getInt();
+            if (length < 9 || length > MAX_RECORD || length > segment.remaining()) {
+                recovery.damagedRecords++;
+                return;
+            }
+            segment.get(body, 0, length);
+            checksum.reset();
+            checksum.update(body, 0, length);
+            if ((int) checksum.getValue() != expected) {
+                // Torn by a crash: nothing after it in this segment can be trusted
+                recovery.damagedRecords++;
+                return;
+            }
+            view.clear();
+            view.limit(length);
+            replay(view, live);
+            recovery.records++;
+        }
+    }
+
+    private static void replay(ByteBuffer body, Map<Long, SessionImage> live) {
+        byte type = body.get();
+        long handle = body.getLong();
+        SessionImage image = live.get(handle);
+        switch (type) {
+            case SESSION_STARTED:
+            case CLASSIC_SESSION_STARTED:
+                if (image == null) {
+                    int player1Side = body.get();
+                    GameVariant variant = GameVariant.CLASSIC;
+                    if (type == CLASSIC_SESSION_STARTED) {
+                        // Always an empty board
+                        body.getShort();
+                    } else {
+                        int size = body.get();
+                        int winLength = body.get();
+                        try {
+                            variant = GameVariant.of(size, winLength);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Journal: session " + SessionTable.idOf(handle) + " skipped, "
+                                    + e.getMessage());
+                            break;
+                        }
+                    }
+                    int currentSide = body.get();
+                    int sequence = body.getInt();
+                    long game = body.getLong();
+                    String player1Name = getName(body);
+                    String player2Name = getName(body);
+                    int words = (variant.getCellCount() + 63) / 64;
+                    live.put(handle, new SessionImage(handle, player1Name, player2Name, player1Side, variant,
+                            new long[words], new long[words], currentSide, sequence, game));
+                }
+                break;
+            case MOVE:
+            case CLASSIC_MOVE:
+                if (image != null) {
+                    int cell = type == MOVE ? body.getShort() : body.get();
+                    int side = body.get();
+                    if (cell >= 0 && cell < image.getVariant().getCellCount()
+                            && (side == GameState.SIDE_X || side == GameState.SIDE_O)) {
+                        image.applyMove(cell, side, body.getInt());
+                    }
+                }
+                break;
+            case RESTARTED:
+                if (image != null) {
+                    int startingSide = body.get();
+                    image.applyRestart(startingSide, body.getInt());
+                }
+                break;
+            case SESSION_ENDED:
+                live.remove(handle);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static String getName(ByteBuffer body) {
+        int length = body.getShort();
+        String name = new String(body.array(), body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return name;
+    }
+
+    private static String segmentName(int index) {
+        return String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    private static TreeMap<Integer, Path> listSegments(Path directory) throws IOException {
+        TreeMap<Integer, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())), file);
+                    } catch (NumberFormatException e) {
+                        // Not one of ours
+                    }
+                }
+            });
+        }
+        return segments;
+    }
+
+    // Outcome of recover(): the sessions to rebuild and what it took to find them
+    public static final class Recovery {
+        private List<SessionImage> sessions;
+        private int snapshotSessions;
+        private int segments;
+        private long records;
+        private int damagedRecords;
+        private long millis;
+
+        public List<SessionImage> getSessions() {
+            return sessions;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public int getDamagedRecords() {
+            return damagedRecords;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return sessions.size() + " sessions (" + snapshotSessions + " from snapshot, " + records
+                    + " records replayed from " + segments + " segments, " + damagedRecords + " damaged) in "
+                    + millis + " ms";
+        }
+    }
+}
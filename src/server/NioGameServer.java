@@ -0,0 +1,197 @@
+package server;
+
+import common.GameInterface;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Binary TCP transport next to RMI: each player keeps one connection it opened
+// itself, and a few selector threads serve all of them. Requests are handled on
+// the selector thread (they only touch concurrent structures and post callbacks),
+// and callbacks are written back as frames of common.BinaryProtocol. Both
+// transports drive the same GameImpl, so RMI and TCP players can be matched
+// together.
+public class NioGameServer {
+    private final GameImpl game;
+    private final int port;
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private ServerSocketChannel acceptor;
+
+    public NioGameServer(GameImpl game, int port, int loopCount) throws IOException {
+        this.game = game;
+        this.port = port;
+        this.loops = new EventLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    // Starts the transport configured for this game, or returns null when it is disabled
+    public static NioGameServer start(GameInterface game, ServerConfig config) throws IOException {
+        if (config.getNioPort() <= 0 || !(game instanceof GameImpl)) return null;
+        NioGameServer server = new NioGameServer((GameImpl) game, config.getNioPort(), config.getNioLoops());
+        server.start();
+        return server;
+    }
+
+    public void start() throws IOException {
+        acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress(port), 1024);
+        acceptor.configureBlocking(false);
+        // The first loop also accepts, accepted channels are spread over all loops
+        loops[0].execute(() -> loops[0].register(acceptor, SelectionKey.OP_ACCEPT, null));
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        System.out.println("Binary TCP transport listening on port " + getPort() + " (" + loops.length + " loops)");
+    }
+
+    public int getPort() {
+        try {
+            return acceptor != null ? ((InetSocketAddress) acceptor.getLocalAddress()).getPort() : port;
+        } catch (IOException e) {
+            return port;
+        }
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    // Stops the loops and waits for them to close their connections
+    public void shutdown() {
+        for (EventLoop loop : loops) {
+            loop.running = false;
+            loop.selector.wakeup();
+        }
+        try {
+            for (EventLoop loop : loops) {
+                loop.thread.join(5000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            while ((channel = acceptor.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                NioPlayerConnection connection = new NioPlayerConnection(game, channel, loop, this::connectionClosed);
+                connections.incrementAndGet();
+                SocketChannel accepted = channel;
+                loop.execute(() -> loop.register(accepted, SelectionKey.OP_READ, connection));
+            }
+        } catch (IOException e) {
+            System.err.println("Accept failed: " + e.getMessage());
+        }
+    }
+
+    private void connectionClosed(NioPlayerConnection connection) {
+        connections.decrementAndGet();
+    }
+
+    // One selector thread with its task queue; all I/O of its channels happens here
+    final class EventLoop implements Runnable, Executor {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // Shared by the connections of this loop, which are only read and flushed on its thread
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+        final ByteBuffer[] writeBatch = new ByteBuffer[64];
+        private volatile boolean running = true;
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-loop-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        private void register(SelectableChannel channel, int ops, NioPlayerConnection connection) {
+            try {
+                SelectionKey key = channel.register(selector, ops, connection);
+                if (connection != null) {
+                    connection.registered(key);
+                }
+            } catch (IOException e) {
+                System.err.println("Cannot register channel: " + e.getMessage());
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(tasks.isEmpty() ? 1000 : 1);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        NioPlayerConnection connection = (NioPlayerConnection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                } catch (Exception e) {
+                    // A failing connection must not stop the other players of this loop
+                    System.err.println("Error in " + thread.getName() + ": " + e);
+                }
+            }
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() != null) {
+                        ((NioPlayerConnection) key.attachment()).close();
+                    } else {
+                        key.channel().close();
+                    }
+                }
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Error closing selector: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package server;
+
+import common.BinaryProtocol;
+import common.PlayerCallback;
+import common.PlayerCallbackTurnState;
+import common.TurnUpdate;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Server side of one binary TCP connection. To the game it is just another
+// PlayerCallback: callbacks queue a frame and return, and the connection's
+// event loop writes the queued frames out. Incoming frames are decoded and
+// turned into GameImpl calls on the event loop thread. A connection that
+// sends WATCH is a spectator instead: its session's SpectatorFeed queues the
+// shared update frames on the event loop.
+class NioPlayerConnection implements PlayerCallbackTurnState, SpectatorFeed.Spectator {
+    // Outbound bytes a client may leave unread before it is disconnected
+    private static final int MAX_QUEUED_BYTES = 256 * 1024;
+    private static final long PING_TIMEOUT_MS = 5000;
+
+    private final GameImpl game;
+    private final SocketChannel channel;
+    private final NioGameServer.EventLoop loop;
+    private final Consumer<NioPlayerConnection> onClose;
+    private final String source;
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedBytes = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // Bytes of an incomplete frame, kept between reads (event loop only)
+    private ByteBuffer partial = ByteBuffer.allocate(0);
+    private SelectionKey key;
+    private boolean joined;
+    // Set while this connection watches a session (event loop only)
+    private SpectatorFeed.Subscription watching;
+    private volatile String playerSymbol;
+    private volatile String gameSessionId;
+    private CompletableFuture<Boolean> pendingPong;
+
+    NioPlayerConnection(GameImpl game, SocketChannel channel, NioGameServer.EventLoop loop,
+                        Consumer<NioPlayerConnection> onClose) throws IOException {
+        this.game = game;
+        this.channel = channel;
+        this.loop = loop;
+        this.onClose = onClose;
+        this.source = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+    }
+
+    void registered(SelectionKey key) {
+        this.key = key;
+    }
+
+    // Event loop: reads what is available and handles every complete frame
+    void onReadable() {
+        ByteBuffer buffer = loop.readBuffer;
+        buffer.clear();
+        if (partial.hasRemaining()) {
+            buffer.put(partial);
+        }
+        int read;
+        try {
+            read = channel.read(buffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+        buffer.flip();
+        while (buffer.remaining() >= BinaryProtocol.HEADER_SIZE) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 1 || length > BinaryProtocol.MAX_FRAME_SIZE) {
+                System.err.println("Invalid frame length " + length + " from " + source + ", closing");
+                close();
+                return;
+            }
+            if (buffer.remaining() < BinaryProtocol.HEADER_SIZE + length) break;
+            buffer.getInt();
+            int end = buffer.position() + length;
+            byte type = buffer.get();
+            // Frames are read from a heap copy so strings can be decoded in place
+            byte[] payload = new byte[length - 1];
+            buffer.get(payload);
+            buffer.position(end);
+            try {
+                handle(type, ByteBuffer.wrap(payload));
+            } catch (RuntimeException e) {
+                // A payload too short for its type, or a string longer than the frame
+                System.err.println("Malformed frame of type " + type + " from " + source + " (" + e + "), closing");
+                close();
+                return;
+            }
+            if (closed.get()) return;
+        }
+        // Keep the tail of a frame that has not fully arrived yet
+        partial = ByteBuffer.allocate(buffer.remaining());
+        partial.put(buffer).flip();
+    }
+
+    private void handle(byte type, ByteBuffer payload) {
+        try {
+            switch (type) {
+                case BinaryProtocol.JOIN:
+                    joined = watching == null && game.joinGame(this, BinaryProtocol.getString(payload), source);
+                    send(BinaryProtocol.frame(BinaryProtocol.JOIN_RESULT, joined));
+                    break;
+                case BinaryProtocol.WATCH:
+                    if (!joined) {
+                        stopWatching();
+                        watching = game.watch(BinaryProtocol.getString(payload), this);
+                    }
+                    send(BinaryProtocol.frame(BinaryProtocol.WATCH_RESULT, watching != null));
+                    break;
+                case BinaryProtocol.MOVE:
+                    int cell = payload.get();
+                    boolean valid = cell >= 0 && cell < 9
+                            && game.makeMove(cell / 3, cell % 3, playerSymbol, gameSessionId);
+                    send(BinaryProtocol.frame(BinaryProtocol.MOVE_RESULT, valid));
+                    break;
+                case BinaryProtocol.RESTART:
+                    if (gameSessionId != null) {
+                        game.restartGame(gameSessionId);
+                    }
+                    break;
+                case BinaryProtocol.LEAVE:
+                    leave();
+                    break;
+                case BinaryProtocol.HEARTBEAT:
+                    game.heartbeat(this);
+                    break;
+                case BinaryProtocol.PONG:
+                    completePing(true);
+                    break;
+                default:
+                    System.err.println("Unknown frame type " + type + " from " + source);
+            }
+        } catch (RemoteException e) {
+            // The reply could not be queued: the connection is already closed
+            System.err.println("Error handling frame from " + source + ": " + e.getMessage());
+        }
+    }
+
+    private void leave() throws RemoteException {
+        stopWatching();
+        if (joined) {
+            joined = false;
+            game.leaveGame(this);
+        }
+    }
+
+    private void stopWatching() {
+        if (watching != null) {
+            watching.cancel();
+            watching = null;
+        }
+    }
+
+    // Any thread: queues a frame and makes sure the event loop will write it
+    private void send(ByteBuffer frame) throws RemoteException {
+        if (closed.get()) {
+            throw new RemoteException("Connection to " + source + " is closed");
+        }
+        if (queuedBytes.addAndGet(frame.remaining()) > MAX_QUEUED_BYTES) {
+            System.err.println("Client " + source + " is not reading its frames, disconnecting");
+            loop.execute(this::close);
+            throw new RemoteException("Connection to " + source + " is too slow");
+        }
+        outbound.add(frame);
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    // Event loop: writes queued frames, several per system call, until the socket is full
+    void flush() {
+        flushScheduled.set(false);
+        if (closed.get()) return;
+        ByteBuffer[] batch = loop.writeBatch;
+        try {
+            while (!outbound.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer frame : outbound) {
+                    batch[count++] = frame;
+                    if (count == batch.length) break;
+                }
+                channel.write(batch, 0, count);
+                for (int i = 0; i < count; i++) {
+                    if (batch[i].hasRemaining()) {
+                        // Socket buffer full: resume when the client has read some of it
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    queuedBytes.addAndGet(-batch[i].limit());
+                    outbound.poll();
+                    batch[i] = null;
+                }
+            }
+            if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            if (watching != null) {
+                // Drained: the frames held back while the socket was full
+                watching.resume();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // Event loop: releases the socket and makes the player leave the game
+    void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+        outbound.clear();
+        completePing(false);
+        onClose.accept(this);
+        try {
+            leave();
+        } catch (RemoteException e) {
+            System.err.println("Error removing disconnected player: " + e.getMessage());
+        }
+    }
+
+    private synchronized void completePing(boolean alive) {
+        if (pendingPong != null) {
+            pendingPong.complete(alive);
+            pendingPong = null;
+        }
+    }
+
+    @Override
+    public void showMessage(String message) throws RemoteException {
+        send(BinaryProtocol.frame(BinaryProtocol.MESSAGE, message));
+    }
+
+    @Override
+    public void assignSymbol(String symbol) throws RemoteException {
+        this.playerSymbol = symbol;
+        send(BinaryProtocol.frame(BinaryProtocol.ASSIGN_SYMBOL, symbol));
+    }
+
+    @Override
+    public void notifyTurn(String symbol) throws RemoteException {
+        send(BinaryProtocol.frame(BinaryProtocol.NOTIFY_TURN, symbol));
+    }
+
+    @Override
+    public void updateBoard(String[][] board) throws RemoteException {
+        send(BinaryProtocol.boardFrame(board));
+    }
+
+    @Override
+    public void gameOver(String winner) throws RemoteException {
+        send(BinaryProtocol.frame(BinaryProtocol.GAME_OVER, winner));
+    }
+
+    @Override
+    public void promptForRestart() throws RemoteException {
+        send(BinaryProtocol.frame(BinaryProtocol.PROMPT_RESTART));
+    }
+
+    @Override
+    public boolean wantsToPlayAgain() throws RemoteException {
+        // The client answers with a RESTART frame when it wants another game
+        return true;
+    }
+
+    @Override
+    public String getPlayerSymbol() throws RemoteException {
+        return playerSymbol;
+    }
+
+    @Override
+    public void promptForNewOpponent() throws RemoteException {
+        gameSessionId = null;
+        send(BinaryProtocol.frame(BinaryProtocol.NEW_OPPONENT));
+    }
+
+    // Waits for the client's PONG, like the round trip of an RMI ping
+    @Override
+    public boolean ping() throws RemoteException {
+        CompletableFuture<Boolean> pong;
+        synchronized (this) {
+            if (pendingPong == null) {
+                pendingPong = new CompletableFuture<>();
+                send(BinaryProtocol.frame(BinaryProtocol.PING));
+            }
+            pong = pendingPong;
+        }
+        try {
+            if (!pong.get(PING_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new RemoteException("Connection to " + source + " is closed");
+            }
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            throw new RemoteException("No answer to ping from " + source, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while pinging " + source, e);
+        }
+    }
+
+    @Override
+    public void setGameSession(String sessionId) throws RemoteException {
+        this.gameSessionId = sessionId;
+        send(BinaryProtocol.frame(BinaryProtocol.SESSION, sessionId));
+    }
+
+    @Override
+    public void setOpponentInfo(String opponentName) throws RemoteException {
+        send(BinaryProtocol.frame(BinaryProtocol.OPPONENT, opponentName));
+    }
+
+    @Override
+    public String getGameSessionId() throws RemoteException {
+        return gameSessionId;
+    }
+
+    @Override
+    public void updateTurnState(TurnUpdate update) throws RemoteException {
+        send(BinaryProtocol.turnUpdateFrame(update));
+    }
+
+    @Override
+    public Executor executor() {
+        return loop;
+    }
+
+    // Event loop: a spectator gets no new frames while its socket is full
+    @Override
+    public boolean isBacklogged() {
+        return !outbound.isEmpty();
+    }
+
+    // Event loop: the frame's bytes are shared, this connection writes from its own view of them
+    @Override
+    public void deliver(ByteBuffer frame) {
+        if (closed.get()) return;
+        queuedBytes.addAndGet(frame.remaining());
+        outbound.add(frame.duplicate());
+    }
+
+    @Override
+    public void delivered() {
+        flush();
+    }
+
+    @Override
+    public void feedEnded() {
+        watching = null;
+        try {
+            send(BinaryProtocol.frame(BinaryProtocol.WATCH_END));
+        } catch (RemoteException e) {
+            // Closed meanwhile
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "tcp:" + source;
+    }
+}
@@ -0,0 +1,40 @@
+package server;
+
+import common.PlayerCallback;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Index of the connected players: one PlayerRecord per player, reachable in
+// constant time from its callback.
+public class PlayerDirectory {
+    private final Map<PlayerCallback, PlayerRecord> byCallback = new ConcurrentHashMap<>();
+
+    // A callback joining again replaces its previous record
+    public PlayerRecord register(PlayerCallback callback, String name, String source) {
+        PlayerRecord record = new PlayerRecord(callback, name, source);
+        byCallback.put(callback, record);
+        return record;
+    }
+
+    public PlayerRecord get(PlayerCallback callback) {
+        return byCallback.get(callback);
+    }
+
+    public PlayerRecord remove(PlayerCallback callback) {
+        return byCallback.remove(callback);
+    }
+
+    public String nameOf(PlayerCallback callback) {
+        PlayerRecord record = byCallback.get(callback);
+        return record != null ? record.getName() : "Unknown";
+    }
+
+    public int size() {
+        return byCallback.size();
+    }
+
+    public Collection<PlayerRecord> getRecords() {
+        return byCallback.values();
+    }
+}
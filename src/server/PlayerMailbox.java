@@ -0,0 +1,171 @@
+package server;
+
+import common.PlayerCallback;
+import java.rmi.RemoteException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Ordered outbound queue for a single player. Events are delivered one at a
+// time, in posting order, by whichever dispatcher thread currently owns the
+// mailbox; at most one thread drains a given mailbox at any moment. The first
+// failed remote call, or more than maxDepth undelivered events, fails the
+// mailbox: its events are dropped, nothing more is delivered and the player
+// goes to the failure handler, so a dead or stalled client holds a dispatcher
+// thread for one call at most.
+public class PlayerMailbox {
+    // Events delivered before handing the thread back to other mailboxes
+    private static final int DRAIN_BATCH = 32;
+
+    private final PlayerCallback player;
+    private final String playerName;
+    private final Executor executor;
+    private final ServerMetrics metrics;
+    private final int maxDepth;
+    private final Consumer<PlayerCallback> failureHandler;
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed;
+    private volatile long delivered;
+    private volatile long failed;
+    private volatile long lastLatencyNanos;
+    private volatile long maxLatencyNanos;
+
+    // failureHandler runs on the executor, never on the thread posting the event
+    public PlayerMailbox(PlayerCallback player, String playerName, Executor executor, ServerMetrics metrics,
+                         int maxDepth, Consumer<PlayerCallback> failureHandler) {
+        this.player = player;
+        this.playerName = playerName;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.maxDepth = maxDepth;
+        this.failureHandler = failureHandler;
+    }
+
+    public void post(String method, CallbackEvent event) {
+        if (closed) return;
+        if (depth.incrementAndGet() > maxDepth) {
+            depth.decrementAndGet();
+            fail("more than " + maxDepth + " undelivered events");
+            return;
+        }
+        queue.offer(new Pending(method, event, System.nanoTime()));
+        schedule();
+    }
+
+    public void close() {
+        closed = true;
+        queue.clear();
+        depth.set(0);
+    }
+
+    // Stops delivery for good and hands the player over, once
+    private void fail(String reason) {
+        if (!failing.compareAndSet(false, true)) return;
+        close();
+        System.err.println("Callbacks to " + playerName + " stopped: " + reason);
+        executor.execute(() -> failureHandler.accept(player));
+    }
+
+    public boolean isFailed() {
+        return failing.get();
+    }
+
+    private void schedule() {
+        if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < DRAIN_BATCH && !closed; i++) {
+                Pending pending = queue.poll();
+                if (pending == null) break;
+                depth.decrementAndGet();
+                deliver(pending);
+            }
+        } finally {
+            scheduled.set(false);
+            // Events posted while we were draining must not be stranded
+            schedule();
+        }
+    }
+
+    private void deliver(Pending pending) {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            pending.event.deliver(player);
+            delivered++;
+            ok = true;
+        } catch (RemoteException e) {
+            failed++;
+            fail(pending.method + " failed: " + e.getMessage());
+        } catch (RuntimeException e) {
+            failed++;
+            System.err.println("Callback " + pending.method + " to " + playerName + " failed: " + e);
+        }
+        long end = System.nanoTime();
+        metrics.callbackDelivered(pending.method, end - start, !ok);
+        long latency = end - pending.enqueuedAt;
+        lastLatencyNanos = latency;
+        if (latency > maxLatencyNanos) {
+            maxLatencyNanos = latency;
+        }
+    }
+
+    public PlayerCallback getPlayer() {
+        return player;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    // Events posted but not yet delivered
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    // Time between posting and completed delivery of the most recent event
+    public long getLastDrainLatencyMillis() {
+        return lastLatencyNanos / 1_000_000L;
+    }
+
+    public long getMaxDrainLatencyMillis() {
+        return maxLatencyNanos / 1_000_000L;
+    }
+
+    @Override
+    public String toString() {
+        return playerName + (isFailed() ? " (failed)" : "") + " depth=" + getDepth() + " delivered=" + delivered
+                + " failed=" + failed
+                + " lastLatencyMs=" + getLastDrainLatencyMillis() + " maxLatencyMs=" + getMaxDrainLatencyMillis();
+    }
+
+    private static final class Pending {
+        final String method;
+        final CallbackEvent event;
+        final long enqueuedAt;
+
+        Pending(String method, CallbackEvent event, long enqueuedAt) {
+            this.method = method;
+            this.event = event;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package server;
+
+import common.PlayerCallback;
+
+// Everything the server knows about one connected player. Symbol and session
+// change as the player is matched, so they are volatile and read without locking.
+public class PlayerRecord {
+    private final PlayerCallback callback;
+    private final String name;
+    // Client host the player joined from
+    private final String source;
+    private volatile String symbol;
+    private volatile String sessionId;
+    private volatile GameSession session;
+
+    PlayerRecord(PlayerCallback callback, String name, String source) {
+        this.callback = callback;
+        this.name = name;
+        this.source = source;
+    }
+
+    public PlayerCallback getCallback() {
+        return callback;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public GameSession getSession() {
+        return session;
+    }
+
+    public void joinSession(String sessionId, GameSession session) {
+        this.session = session;
+        this.sessionId = sessionId;
+    }
+
+    public void leaveSession() {
+        this.sessionId = null;
+        this.session = null;
+    }
+
+    @Override
+    public String toString() {
+        return name + (sessionId != null ? " in " + sessionId : " waiting");
+    }
+}
@@ -0,0 +1,177 @@
+package server;
+
+import common.BoardCodec;
+import common.GameState;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Perfect play for every reachable 3x3 position, computed once when the class
+// is loaded. A position is seen from the side to play: its own cells and the
+// opponent's, whoever started. The 8 rotations and reflections of a position
+// share one entry, holding the outcome of each of its moves for the side to
+// play: a win or a loss and how soon, or a draw. INDEX maps the BoardCodec
+// code of any reachable position to its entry and to the symmetry that
+// turns it into the entry's position, so choosing a move is one lookup and
+// a pass over the nine cells.
+public final class PositionTable {
+    // Move scores: +n wins with n-1 cells left empty, -n loses likewise, 0 draws
+    private static final int SCORE_BITS = 4;
+    private static final int SCORE_OFFSET = 6;
+    private static final int FULL_BOARD = 0x1FF;
+
+    // CELL_OF[s][cell]: where symmetry s moves a cell; MASK_OF[s][mask]: the same for a set of cells
+    private static final int[][] CELL_OF = new int[8][9];
+    private static final int[][] MASK_OF = new int[8][FULL_BOARD + 1];
+    // entry << 3 | symmetry for reachable positions, -1 for the others
+    private static final int[] INDEX = new int[BoardCodec.BOARD_COUNT];
+    // Per entry: the score of each cell (0 for a taken cell), SCORE_BITS bits each
+    private static final long[] MOVES;
+    // Per entry: the score of the position under perfect play
+    private static final byte[] VALUES;
+    private static int reachable;
+
+    static {
+        for (int s = 0; s < 8; s++) {
+            for (int cell = 0; cell < 9; cell++) {
+                int row = cell / 3;
+                int col = cell % 3;
+                // Rotations by a quarter turn, then the same after a mirror
+                for (int turn = 0; turn < (s & 3); turn++) {
+                    int rotated = col;
+                    col = 2 - row;
+                    row = rotated;
+                }
+                if (s >= 4) col = 2 - col;
+                CELL_OF[s][cell] = row * 3 + col;
+            }
+            for (int mask = 0; mask <= FULL_BOARD; mask++) {
+                int moved = 0;
+                for (int cell = 0; cell < 9; cell++) {
+                    if ((mask & (1 << cell)) != 0) moved |= 1 << CELL_OF[s][cell];
+                }
+                MASK_OF[s][mask] = moved;
+            }
+        }
+        Arrays.fill(INDEX, -1);
+        List<long[]> entries = new ArrayList<>();
+        // Entry of each canonical position, kept apart from INDEX until that position is explored itself
+        int[] entryOf = new int[BoardCodec.BOARD_COUNT];
+        Arrays.fill(entryOf, -1);
+        explore(0, 0, entries, entryOf);
+        MOVES = new long[entries.size()];
+        VALUES = new byte[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            MOVES[i] = entries.get(i)[0];
+            VALUES[i] = (byte) entries.get(i)[1];
+        }
+    }
+
+    private PositionTable() {
+    }
+
+    // Indexes the position and everything reachable from it; returns its score for the side to play
+    private static int explore(int own, int other, List<long[]> entries, int[] entryOf) {
+        int code = BoardCodec.encode(own, other);
+        if (INDEX[code] >= 0) return (int) entries.get(INDEX[code] >>> 3)[1];
+        reachable++;
+        int symmetry = canonicalSymmetry(own, other);
+        int canonical = BoardCodec.encode(MASK_OF[symmetry][own], MASK_OF[symmetry][other]);
+        // Explored even when a symmetric image already has its entry, so that every position it leads to is indexed
+        int empty = ~(own | other) & FULL_BOARD;
+        long moves = 0;
+        int value;
+        if (GameState.isWinningMask(other)) {
+            // The opponent's last move won
+            value = -(1 + Integer.bitCount(empty));
+        } else if (empty == 0) {
+            value = 0;
+        } else {
+            value = Integer.MIN_VALUE;
+            for (int cell = 0; cell < 9; cell++) {
+                if ((empty & (1 << cell)) == 0) continue;
+                // Roles swap: the opponent plays next
+                int score = -explore(other, own | 1 << cell, entries, entryOf);
+                value = Math.max(value, score);
+                moves |= (long) (score + SCORE_OFFSET) << (CELL_OF[symmetry][cell] * SCORE_BITS);
+            }
+        }
+        // A symmetric image may have got the entry first, possibly while exploring the moves
+        if (entryOf[canonical] < 0) {
+            entryOf[canonical] = entries.size();
+            entries.add(new long[] {moves, value});
+        }
+        INDEX[code] = entryOf[canonical] << 3 | symmetry;
+        return value;
+    }
+
+    // The symmetry giving the smallest code, so that all the images of a position agree on it
+    private static int canonicalSymmetry(int own, int other) {
+        int best = 0;
+        int bestCode = Integer.MAX_VALUE;
+        for (int s = 0; s < 8; s++) {
+            int code = BoardCodec.encode(MASK_OF[s][own], MASK_OF[s][other]);
+            if (code < bestCode) {
+                bestCode = code;
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    // Score of playing the cell for the side owning own, Integer.MIN_VALUE if it cannot be played
+    public static int score(int own, int other, int cell) {
+        int entry = INDEX[BoardCodec.encode(own, other)];
+        if (entry < 0 || ((own | other) & (1 << cell)) != 0) return Integer.MIN_VALUE;
+        int bits = (int) (MOVES[entry >>> 3] >>> (CELL_OF[entry & 7][cell] * SCORE_BITS)) & ((1 << SCORE_BITS) - 1);
+        return bits == 0 ? Integer.MIN_VALUE : bits - SCORE_OFFSET;
+    }
+
+    // Score of the position for the side to play, under perfect play from both sides
+    public static int value(int own, int other) {
+        int entry = INDEX[BoardCodec.encode(own, other)];
+        return entry < 0 ? 0 : VALUES[entry >>> 3];
+    }
+
+    // A best move, or with probability mistakeRate one of the worse moves, if there are any;
+    // -1 when the game is over or the position cannot be reached
+    public static int chooseMove(int own, int other, double mistakeRate, Random random) {
+        int entry = INDEX[BoardCodec.encode(own, other)];
+        if (entry < 0) return -1;
+        long moves = MOVES[entry >>> 3];
+        int[] cellOf = CELL_OF[entry & 7];
+        int bestScore = Integer.MIN_VALUE;
+        int best = 0;
+        int worse = 0;
+        for (int cell = 0; cell < 9; cell++) {
+            int bits = (int) (moves >>> (cellOf[cell] * SCORE_BITS)) & ((1 << SCORE_BITS) - 1);
+            if (bits == 0) continue;
+            if (bits > bestScore) {
+                worse |= best;
+                best = 1 << cell;
+                bestScore = bits;
+            } else if (bits == bestScore) {
+                best |= 1 << cell;
+            } else {
+                worse |= 1 << cell;
+            }
+        }
+        if (best == 0) return -1;
+        int choices = worse != 0 && mistakeRate > 0 && random.nextDouble() < mistakeRate ? worse : best;
+        for (int skip = random.nextInt(Integer.bitCount(choices)); skip > 0; skip--) {
+            choices &= choices - 1;
+        }
+        return Integer.numberOfTrailingZeros(choices);
+    }
+
+    // Positions that can occur in a game, from the side to play, whoever started
+    public static int getReachableCount() {
+        return reachable;
+    }
+
+    // Entries left once symmetric positions share one
+    public static int getEntryCount() {
+        return MOVES.length;
+    }
+}
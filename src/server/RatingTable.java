@@ -0,0 +1,201 @@
+package server;
+
+import common.MatchRecord;
+import common.PlayerRating;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Elo rating of every player name, updated as games are won or drawn.
+// Abandoned games and games against a BotPlayer are not rated. A player's PlayerRating is immutable and
+// replaced on each game in the map read by the matchmaker; the two players
+// of a game are updated together under striped locks, so concurrent games
+// never share a lock unless they share a stripe.
+// Only the best players are kept in order: a small sorted set holds the top
+// LEADERS_KEPT, and every player outside it is rated no better than its
+// last member. Most games leave it untouched; it is rebuilt from the map
+// when players leaving it bring it below the leaderboard size. The
+// leaderboard is copied from it at most once per refresh period.
+// Ratings live in memory; with a MatchHistory they are replayed from it at
+// startup.
+public class RatingTable implements SessionListener {
+    // Most points a player can win or lose in one game
+    private static final double K_FACTOR = 32;
+    public static final int LEADERBOARD_SIZE = 100;
+    private static final long LEADERBOARD_REFRESH_MILLIS = 1000;
+    // Leaders beyond the leaderboard, so that a few of them can drop out before a rebuild
+    private static final int LEADERS_KEPT = 2 * LEADERBOARD_SIZE;
+    private static final int LOCK_STRIPES = 64;
+    private static final Comparator<PlayerRating> BEST_FIRST = (a, b) -> {
+        int byRating = Double.compare(b.getRating(), a.getRating());
+        return byRating != 0 ? byRating : a.getPlayerName().compareTo(b.getPlayerName());
+    };
+
+    private final Map<String, PlayerRating> ratings = new ConcurrentHashMap<>();
+    // Best rated players, best first; guarded by itself
+    private final TreeSet<PlayerRating> leaders = new TreeSet<>(BEST_FIRST);
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicLong version = new AtomicLong();
+    private volatile Leaderboard leaderboard = new Leaderboard(-1, 0, Collections.<PlayerRating>emptyList());
+
+    public RatingTable() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void gameFinished(GameSession session, long game) {
+        record(session.getPlayer1Name(), session.getPlayer2Name(), game);
+    }
+
+    // Rates a finished game given in MatchRecord packed form
+    public void record(String player1Name, String player2Name, long game) {
+        int outcome = MatchRecord.outcome(game);
+        if (!isRated(player1Name, player2Name, outcome)) return;
+        double score1 = outcome == MatchRecord.DRAW ? 0.5 : outcome == MatchRecord.player1Side(game) ? 1 : 0;
+        int stripe1 = stripeOf(player1Name);
+        int stripe2 = stripeOf(player2Name);
+        // Always in the same order, so two games cannot wait on each other
+        synchronized (locks[Math.min(stripe1, stripe2)]) {
+            synchronized (locks[Math.max(stripe1, stripe2)]) {
+                rate(player1Name, player2Name, score1, true);
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    private void rate(String player1Name, String player2Name, double score1, boolean rank) {
+        PlayerRating rating1 = getRating(player1Name);
+        PlayerRating rating2 = getRating(player2Name);
+        double expected1 = 1 / (1 + Math.pow(10, (rating2.getRating() - rating1.getRating()) / 400));
+        double delta = K_FACTOR * (score1 - expected1);
+        replace(rating1, rating1.after(score1, rating1.getRating() + delta), rank);
+        replace(rating2, rating2.after(1 - score1, rating2.getRating() - delta), rank);
+    }
+
+    private void replace(PlayerRating old, PlayerRating updated, boolean rank) {
+        ratings.put(updated.getPlayerName(), updated);
+        if (rank) {
+            rank(old, updated);
+        }
+    }
+
+    private void rank(PlayerRating old, PlayerRating updated) {
+        synchronized (leaders) {
+            PlayerRating last = leaders.isEmpty() ? null : leaders.last();
+            boolean everyoneIn = leaders.size() + 1 >= ratings.size();
+            // Neither a leader before nor good enough to become one
+            if (!everyoneIn && last != null && BEST_FIRST.compare(old, last) > 0
+                    && BEST_FIRST.compare(updated, last) > 0) return;
+            leaders.remove(old);
+            last = leaders.isEmpty() ? null : leaders.last();
+            if (leaders.size() + 1 >= ratings.size() || last != null && BEST_FIRST.compare(updated, last) <= 0) {
+                leaders.add(updated);
+                if (leaders.size() > LEADERS_KEPT) {
+                    leaders.pollLast();
+                }
+            }
+            if (leaders.size() < LEADERBOARD_SIZE && leaders.size() < ratings.size()) {
+                rebuildLeaders();
+            }
+        }
+    }
+
+    // Called with the leaders lock held
+    private void rebuildLeaders() {
+        leaders.clear();
+        for (PlayerRating rating : ratings.values()) {
+            if (leaders.size() < LEADERS_KEPT || BEST_FIRST.compare(rating, leaders.last()) < 0) {
+                leaders.add(rating);
+                if (leaders.size() > LEADERS_KEPT) {
+                    leaders.pollLast();
+                }
+            }
+        }
+    }
+
+    private static boolean isRated(String player1Name, String player2Name, int outcome) {
+        return outcome != MatchRecord.ABANDONED && !player1Name.equals(player2Name)
+                && !BotPlayer.isBotName(player1Name) && !BotPlayer.isBotName(player2Name);
+    }
+
+    private static int stripeOf(String playerName) {
+        int hash = playerName.hashCode();
+        return (hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1);
+    }
+
+    // Rates the stored matches, oldest first; call before the server takes players
+    public void replay(MatchHistory history) {
+        long start = System.nanoTime();
+        // The leaders are picked once at the end rather than on every match
+        history.forEach((player1Name, player2Name, game) -> {
+            int outcome = MatchRecord.outcome(game);
+            if (!isRated(player1Name, player2Name, outcome)) return;
+            rate(player1Name, player2Name,
+                    outcome == MatchRecord.DRAW ? 0.5 : outcome == MatchRecord.player1Side(game) ? 1 : 0, false);
+        });
+        synchronized (leaders) {
+            rebuildLeaders();
+        }
+        version.incrementAndGet();
+        System.out.println("Ratings of " + ratings.size() + " players replayed from " + history.size()
+                + " matches in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    public PlayerRating getRating(String playerName) {
+        PlayerRating rating = ratings.get(playerName);
+        return rating != null ? rating : PlayerRating.unrated(playerName);
+    }
+
+    public int ratingOf(String playerName) {
+        PlayerRating rating = ratings.get(playerName);
+        return rating != null ? rating.getDisplayRating() : PlayerRating.INITIAL_RATING;
+    }
+
+    // Best rated players, at most LEADERBOARD_SIZE, as of the last refresh
+    public List<PlayerRating> getLeaderboard(int count) {
+        Leaderboard cached = leaderboard;
+        long now = System.currentTimeMillis();
+        long current = version.get();
+        if (cached.version != current && now - cached.builtMillis >= LEADERBOARD_REFRESH_MILLIS) {
+            List<PlayerRating> top = new ArrayList<>(LEADERBOARD_SIZE);
+            synchronized (leaders) {
+                for (PlayerRating rating : leaders) {
+                    if (top.size() == LEADERBOARD_SIZE) break;
+                    top.add(rating);
+                }
+            }
+            cached = new Leaderboard(current, now, Collections.unmodifiableList(top));
+            leaderboard = cached;
+        }
+        return cached.top.subList(0, Math.max(0, Math.min(count, cached.top.size())));
+    }
+
+    public int getRatedPlayerCount() {
+        return ratings.size();
+    }
+
+    @Override
+    public String toString() {
+        List<PlayerRating> top = getLeaderboard(1);
+        return ratings.size() + " rated players" + (top.isEmpty() ? "" : ", best " + top.get(0));
+    }
+
+    private static final class Leaderboard {
+        final long version;
+        final long builtMillis;
+        final List<PlayerRating> top;
+
+        Leaderboard(long version, long builtMillis, List<PlayerRating> top) {
+            this.version = version;
+            this.builtMillis = builtMillis;
+            this.top = top;
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package server;
+
+import common.GameVariant;
+
+// Server tunables, read from system properties (-Dgame.xxx=...) with the
+// historical values as defaults.
+public class ServerConfig {
+    // Players admitted at once, waiting or playing
+    private int maxPlayers = 10;
+    // Joins handled concurrently; further joins are refused right away
+    private int joinBacklog = 64;
+    // Players admitted from a single client host, 0 for no limit
+    private int maxPlayersPerSource = 0;
+    // A player not heard from for this long is probed, and evicted if the probe fails
+    private long inactivityTimeoutMillis = 60000;
+    private long probeTimeoutMillis = 5000;
+    // Resolution of inactivity deadlines: a player expires at most one tick late
+    private long expiryTickMillis = 100;
+    // Buckets in the expiry timing wheel (rounded up to a power of two)
+    private int expiryWheelSize = 1024;
+    // Period of the lagging-mailbox report
+    private long reportIntervalSeconds = 30;
+    // Period of the load reports a shard sends to the lobby
+    private long shardReportMillis = 2000;
+    // Port of the binary TCP transport served next to RMI, off (0) unless set
+    private int nioPort = 0;
+    // Selector threads of the binary TCP transport
+    private int nioLoops = Runtime.getRuntime().availableProcessors();
+    // Directory of the move journal, null to keep games in memory only
+    private String journalDir;
+    // Interval between two forces of the journal to disk (group commit)
+    private long journalSyncMillis = 10;
+    private int journalSegmentMegabytes = 64;
+    // Period of the snapshots that bound the journal replayed at startup
+    private long snapshotIntervalSeconds = 60;
+    // Time the players of a recovered session have to rejoin it
+    private long rejoinTimeoutSeconds = 120;
+    // Directory of the match history, null to keep no history
+    private String historyDir;
+    private int historySegmentMatches = 1 << 20;
+    // Rating gap the matchmaker accepts at first, and how much it widens per second of waiting
+    private int matchWindow = 200;
+    private int matchWindowGrowth = 100;
+    // Wait after which a lone player gets a server-hosted bot, negative to never offer one
+    private long botWaitMillis = 50;
+    // easy, medium, hard, perfect, or auto to follow the player's rating
+    private String botLevel = "auto";
+    // Board size and marks in a row to win, for every session of this server
+    private GameVariant variant = GameVariant.CLASSIC;
+    // Threads searching the bots' moves on larger boards, time given to a move and CPU time to a game
+    private int aiThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private long aiMoveMillis = 500;
+    private long aiGameCpuSeconds = 30;
+    // Spectators one session accepts
+    private int maxSpectators = 10000;
+    // Undelivered callbacks after which a player is dropped as unreachable
+    private int mailboxMaxDepth = 1024;
+    // Logs each join, rejoin and departure to the console
+    private boolean playerLogging = true;
+    // off, swiss or elimination: players who join enter a tournament instead of being matched
+    private String tournament = "off";
+    // Entrants a tournament starts with, and rounds of a Swiss tournament (0 for as many as a single winner needs)
+    private int tournamentPlayers = 16;
+    private int tournamentRounds = 0;
+
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.maxPlayers = Integer.getInteger("game.maxPlayers", config.maxPlayers);
+        config.setJoinBacklog(Integer.getInteger("game.joinBacklog", config.joinBacklog));
+        config.maxPlayersPerSource = Integer.getInteger("game.maxPlayersPerSource", config.maxPlayersPerSource);
+        config.inactivityTimeoutMillis = Long.getLong("game.inactivityTimeoutMs", config.inactivityTimeoutMillis);
+        config.probeTimeoutMillis = Long.getLong("game.probeTimeoutMs", config.probeTimeoutMillis);
+        config.setExpiryTickMillis(Long.getLong("game.expiryTickMs", config.expiryTickMillis));
+        config.expiryWheelSize = Integer.getInteger("game.expiryWheelSize", config.expiryWheelSize);
+        config.reportIntervalSeconds = Long.getLong("game.reportIntervalS", config.reportIntervalSeconds);
+        config.shardReportMillis = Long.getLong("game.shardReportMs", config.shardReportMillis);
+        config.nioPort = Integer.getInteger("game.nioPort", config.nioPort);
+        config.setNioLoops(Integer.getInteger("game.nioLoops", config.nioLoops));
+        config.journalDir = System.getProperty("game.journalDir", config.journalDir);
+        config.setJournalSyncMillis(Long.getLong("game.journalSyncMs", config.journalSyncMillis));
+        config.setJournalSegmentMegabytes(Integer.getInteger("game.journalSegmentMB", config.journalSegmentMegabytes));
+        config.setSnapshotIntervalSeconds(Long.getLong("game.snapshotIntervalS", config.snapshotIntervalSeconds));
+        config.rejoinTimeoutSeconds = Long.getLong("game.rejoinTimeoutS", config.rejoinTimeoutSeconds);
+        config.historyDir = System.getProperty("game.historyDir", config.historyDir);
+        config.setHistorySegmentMatches(Integer.getInteger("game.historySegmentMatches",
+                config.historySegmentMatches));
+        config.setMatchWindow(Integer.getInteger("game.matchWindow", config.matchWindow));
+        config.setMatchWindowGrowth(Integer.getInteger("game.matchWindowGrowth", config.matchWindowGrowth));
+        config.botWaitMillis = Long.getLong("game.botWaitMs", config.botWaitMillis);
+        config.setBotLevel(System.getProperty("game.botLevel", config.botLevel));
+        // Five in a row unless the board is smaller
+        int boardSize = Integer.getInteger("game.boardSize", config.variant.getSize());
+        config.setVariant(GameVariant.of(boardSize, Integer.getInteger("game.winLength", Math.min(boardSize, 5))));
+        config.setAiThreads(Integer.getInteger("game.aiThreads", config.aiThreads));
+        config.aiMoveMillis = Long.getLong("game.aiMoveMs", config.aiMoveMillis);
+        config.aiGameCpuSeconds = Long.getLong("game.aiGameCpuS", config.aiGameCpuSeconds);
+        config.maxSpectators = Integer.getInteger("game.maxSpectators", config.maxSpectators);
+        config.mailboxMaxDepth = Integer.getInteger("game.mailboxMaxDepth", config.mailboxMaxDepth);
+        config.playerLogging = Boolean.parseBoolean(System.getProperty("game.logPlayers",
+                String.valueOf(config.playerLogging)));
+        config.setTournament(System.getProperty("game.tournament", config.tournament));
+        config.setTournamentPlayers(Integer.getInteger("game.tournamentPlayers", config.tournamentPlayers));
+        config.tournamentRounds = Integer.getInteger("game.tournamentRounds", config.tournamentRounds);
+        return config;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public ServerConfig setMaxPlayers(int maxPlayers) {
+        this.maxPlayers = maxPlayers;
+        return this;
+    }
+
+    public int getJoinBacklog() {
+        return joinBacklog;
+    }
+
+    public ServerConfig setJoinBacklog(int joinBacklog) {
+        this.joinBacklog = Math.max(1, joinBacklog);
+        return this;
+    }
+
+    public int getMaxPlayersPerSource() {
+        return maxPlayersPerSource;
+    }
+
+    public ServerConfig setMaxPlayersPerSource(int maxPlayersPerSource) {
+        this.maxPlayersPerSource = maxPlayersPerSource;
+        return this;
+    }
+
+    public long getInactivityTimeoutMillis() {
+        return inactivityTimeoutMillis;
+    }
+
+    public ServerConfig setInactivityTimeoutMillis(long inactivityTimeoutMillis) {
+        this.inactivityTimeoutMillis = inactivityTimeoutMillis;
+        return this;
+    }
+
+    public long getProbeTimeoutMillis() {
+        return probeTimeoutMillis;
+    }
+
+    public ServerConfig setProbeTimeoutMillis(long probeTimeoutMillis) {
+        this.probeTimeoutMillis = probeTimeoutMillis;
+        return this;
+    }
+
+    public long getExpiryTickMillis() {
+        return expiryTickMillis;
+    }
+
+    public ServerConfig setExpiryTickMillis(long expiryTickMillis) {
+        this.expiryTickMillis = Math.max(1, expiryTickMillis);
+        return this;
+    }
+
+    public int getExpiryWheelSize() {
+        return Integer.highestOneBit(Math.max(1, expiryWheelSize - 1)) << 1;
+    }
+
+    public ServerConfig setExpiryWheelSize(int expiryWheelSize) {
+        this.expiryWheelSize = expiryWheelSize;
+        return this;
+    }
+
+    public long getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    public ServerConfig setReportIntervalSeconds(long reportIntervalSeconds) {
+        this.reportIntervalSeconds = reportIntervalSeconds;
+        return this;
+    }
+
+    public long getShardReportMillis() {
+        return shardReportMillis;
+    }
+
+    public ServerConfig setShardReportMillis(long shardReportMillis) {
+        this.shardReportMillis = Math.max(100, shardReportMillis);
+        return this;
+    }
+
+    public int getNioPort() {
+        return nioPort;
+    }
+
+    public ServerConfig setNioPort(int nioPort) {
+        this.nioPort = nioPort;
+        return this;
+    }
+
+    public int getNioLoops() {
+        return nioLoops;
+    }
+
+    public ServerConfig setNioLoops(int nioLoops) {
+        this.nioLoops = Math.max(1, nioLoops);
+        return this;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public ServerConfig setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+        return this;
+    }
+
+    public long getJournalSyncMillis() {
+        return journalSyncMillis;
+    }
+
+    public ServerConfig setJournalSyncMillis(long journalSyncMillis) {
+        this.journalSyncMillis = Math.max(1, journalSyncMillis);
+        return this;
+    }
+
+    public int getJournalSegmentBytes() {
+        return journalSegmentMegabytes << 20;
+    }
+
+    public ServerConfig setJournalSegmentMegabytes(int journalSegmentMegabytes) {
+        this.journalSegmentMegabytes = Math.max(1, Math.min(1024, journalSegmentMegabytes));
+        return this;
+    }
+
+    public long getSnapshotIntervalSeconds() {
+        return snapshotIntervalSeconds;
+    }
+
+    public ServerConfig setSnapshotIntervalSeconds(long snapshotIntervalSeconds) {
+        this.snapshotIntervalSeconds = Math.max(1, snapshotIntervalSeconds);
+        return this;
+    }
+
+    public long getRejoinTimeoutSeconds() {
+        return rejoinTimeoutSeconds;
+    }
+
+    public ServerConfig setRejoinTimeoutSeconds(long rejoinTimeoutSeconds) {
+        this.rejoinTimeoutSeconds = rejoinTimeoutSeconds;
+        return this;
+    }
+
+    public String getHistoryDir() {
+        return historyDir;
+    }
+
+    public ServerConfig setHistoryDir(String historyDir) {
+        this.historyDir = historyDir;
+        return this;
+    }
+
+    public int getHistorySegmentMatches() {
+        return historySegmentMatches;
+    }
+
+    public ServerConfig setHistorySegmentMatches(int historySegmentMatches) {
+        // A segment is mapped in one piece: at most 2 GB of 24-byte records
+        this.historySegmentMatches = Math.max(1024, Math.min(80000000, historySegmentMatches));
+        return this;
+    }
+
+    public int getMatchWindow() {
+        return matchWindow;
+    }
+
+    public ServerConfig setMatchWindow(int matchWindow) {
+        this.matchWindow = Math.max(0, matchWindow);
+        return this;
+    }
+
+    public int getMatchWindowGrowth() {
+        return matchWindowGrowth;
+    }
+
+    public ServerConfig setMatchWindowGrowth(int matchWindowGrowth) {
+        this.matchWindowGrowth = Math.max(0, matchWindowGrowth);
+        return this;
+    }
+
+    public long getBotWaitMillis() {
+        return botWaitMillis;
+    }
+
+    public ServerConfig setBotWaitMillis(long botWaitMillis) {
+        this.botWaitMillis = botWaitMillis;
+        return this;
+    }
+
+    public String getBotLevel() {
+        return botLevel;
+    }
+
+    // Fixed bot level, null when it follows the player's rating
+    public BotPlayer.Level getFixedBotLevel() {
+        return botLevel.equals("auto") ? null : BotPlayer.Level.valueOf(botLevel.toUpperCase());
+    }
+
+    public ServerConfig setBotLevel(String botLevel) {
+        String level = botLevel.trim().toLowerCase();
+        if (!level.equals("auto")) {
+            // Fails on an unknown level rather than starting with another one
+            BotPlayer.Level.valueOf(level.toUpperCase());
+        }
+        this.botLevel = level;
+        return this;
+    }
+
+    public GameVariant getVariant() {
+        return variant;
+    }
+
+    public ServerConfig setVariant(GameVariant variant) {
+        this.variant = variant;
+        return this;
+    }
+
+    public int getAiThreads() {
+        return aiThreads;
+    }
+
+    public ServerConfig setAiThreads(int aiThreads) {
+        this.aiThreads = Math.max(1, aiThreads);
+        return this;
+    }
+
+    public long getAiMoveMillis() {
+        return aiMoveMillis;
+    }
+
+    public ServerConfig setAiMoveMillis(long aiMoveMillis) {
+        this.aiMoveMillis = aiMoveMillis;
+        return this;
+    }
+
+    public long getAiGameCpuSeconds() {
+        return aiGameCpuSeconds;
+    }
+
+    public ServerConfig setAiGameCpuSeconds(long aiGameCpuSeconds) {
+        this.aiGameCpuSeconds = aiGameCpuSeconds;
+        return this;
+    }
+
+    public int getMaxSpectators() {
+        return maxSpectators;
+    }
+
+    public ServerConfig setMaxSpectators(int maxSpectators) {
+        this.maxSpectators = maxSpectators;
+        return this;
+    }
+
+    public int getMailboxMaxDepth() {
+        return mailboxMaxDepth;
+    }
+
+    public ServerConfig setMailboxMaxDepth(int mailboxMaxDepth) {
+        this.mailboxMaxDepth = mailboxMaxDepth;
+        return this;
+    }
+
+    public boolean isPlayerLogging() {
+        return playerLogging;
+    }
+
+    public ServerConfig setPlayerLogging(boolean playerLogging) {
+        this.playerLogging = playerLogging;
+        return this;
+    }
+
+    public String getTournament() {
+        return tournament;
+    }
+
+    // Format of the tournaments, null when the server matches players instead
+    public Tournament.Format getTournamentFormat() {
+        return tournament.equals("off") ? null : Tournament.Format.valueOf(tournament.toUpperCase());
+    }
+
+    public ServerConfig setTournament(String tournament) {
+        String format = tournament.trim().toLowerCase();
+        if (!format.equals("off")) {
+            // Fails on an unknown format rather than starting without tournaments
+            Tournament.Format.valueOf(format.toUpperCase());
+        }
+        this.tournament = format;
+        return this;
+    }
+
+    public int getTournamentPlayers() {
+        return tournamentPlayers;
+    }
+
+    public ServerConfig setTournamentPlayers(int tournamentPlayers) {
+        this.tournamentPlayers = Math.max(2, tournamentPlayers);
+        return this;
+    }
+
+    public int getTournamentRounds() {
+        return tournamentRounds;
+    }
+
+    public ServerConfig setTournamentRounds(int tournamentRounds) {
+        this.tournamentRounds = tournamentRounds;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "maxPlayers=" + maxPlayers + ", joinBacklog=" + joinBacklog + ", perSource=" + maxPlayersPerSource
+                + ", inactivity=" + inactivityTimeoutMillis + "ms, probe=" + probeTimeoutMillis
+                + "ms, expiry tick=" + expiryTickMillis + "ms x " + getExpiryWheelSize()
+                + ", tcp port=" + (nioPort > 0 ? nioPort + " x " + nioLoops + " loops" : "off")
+                + ", journal=" + (journalDir != null ? journalDir + " (sync " + journalSyncMillis + "ms, snapshot "
+                + snapshotIntervalSeconds + "s)" : "off")
+                + ", history=" + (historyDir != null ? historyDir : "off")
+                + ", match window=" + matchWindow + " +" + matchWindowGrowth + "/s"
+                + ", bots=" + (botWaitMillis >= 0 ? botLevel + " after " + botWaitMillis + "ms" : "off")
+                + ", spectators=" + maxSpectators + "/session"
+                + ", mailbox depth=" + mailboxMaxDepth
+                + ", player logs=" + (playerLogging ? "on" : "off")
+                + ", tournament=" + (getTournamentFormat() != null ? tournament + " of " + tournamentPlayers
+                + " players" : "off")
+                + ", board=" + variant
+                + (variant.isClassic() ? "" : ", ai=" + aiThreads + " threads, " + aiMoveMillis + "ms/move, "
+                + aiGameCpuSeconds + "s/game");
+    }
+}
@@ -10,11 +10,14 @@ public class ServerMain {
 
     private static final int RMI_PORT = 1099;
     private static final String SERVICE_NAME = "GameService";
-    
-    private static final int MAX_PLAYERS = 10;
 
     public static void main(String[] args) {
         try {
+            // Un client mort ne doit pas bloquer indéfiniment un callback ou une sonde de présence
+            if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+                System.setProperty("sun.rmi.transport.tcp.responseTimeout", "10000");
+            }
+
             // Configuration de la sécurité    
 
             System.setProperty("java.security.policy", "security.policy");
@@ -26,10 +29,24 @@ public class ServerMain {
 
             System.setProperty("java.rmi.server.codebase", "http://"+ serverIP + "/classes/");
             
-            GameInterface game = GameFactory.createGame(MAX_PLAYERS);
+            // Capacité : premier argument, sinon -Dgame.maxPlayers (10 par défaut)
+            ServerConfig config = ServerConfig.fromSystemProperties();
+            if (args.length > 0) {
+                config.setMaxPlayers(Integer.parseInt(args[0]));
+            }
+            GameInterface game = GameFactory.createGame(config);
+            // Compteurs et histogrammes consultables avec jconsole
+            ServerMonitoring.register(game);
+
+            // Transport TCP binaire à côté de RMI, seulement avec -Dgame.nioPort
+            NioGameServer.start(game, config);
             
             Registry registry = LocateRegistry.createRegistry(RMI_PORT);
             registry.rebind(SERVICE_NAME, game);
+            // Historique des parties terminées (-Dgame.historyDir)
+            MatchHistoryService.bind(registry, game);
+            // Classement Elo des joueurs
+            LeaderboardService.bind(registry, game);
             System.out.println("Serveur prêt sur : rmi://" + serverIP + ":" + RMI_PORT + "/" + SERVICE_NAME);
             Thread.currentThread().join();
         } catch (Exception e) {
@@ -0,0 +1,95 @@
+package server;
+
+import common.PlayerCallback;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms of the game server. Everything is a
+// LongAdder or a lock-free LatencyRecorder, so recording from the move path
+// costs a few uncontended atomic adds. Exposed over JMX by ServerMonitoring.
+public class ServerMetrics {
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder invalidMoves = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder callbackFailures = new LongAdder();
+    // Callbacks posted to players without a mailbox
+    private final LongAdder droppedCallbacks = new LongAdder();
+    private final LatencyRecorder makeMoveLatency = new LatencyRecorder("makeMove");
+    // Remote call time of each callback, by PlayerCallback method name
+    private final Map<String, LatencyRecorder> callbackLatency = new ConcurrentHashMap<>();
+
+    public ServerMetrics() {
+        // Known up front so every histogram can be registered when the server starts
+        for (Method method : PlayerCallback.class.getMethods()) {
+            callbackLatency.putIfAbsent(method.getName(), new LatencyRecorder(method.getName()));
+        }
+    }
+
+    public void moveApplied(long startNanos) {
+        makeMoveLatency.recordNanos(System.nanoTime() - startNanos);
+        moves.increment();
+    }
+
+    public void moveRefused(long startNanos) {
+        makeMoveLatency.recordNanos(System.nanoTime() - startNanos);
+        invalidMoves.increment();
+    }
+
+    public void playerLeft() {
+        disconnects.increment();
+    }
+
+    public void playerEvicted() {
+        evictions.increment();
+    }
+
+    public void callbackDelivered(String method, long nanos, boolean failed) {
+        LatencyRecorder recorder = callbackLatency.get(method);
+        if (recorder == null) {
+            recorder = callbackLatency.computeIfAbsent(method, LatencyRecorder::new);
+        }
+        recorder.recordNanos(nanos);
+        if (failed) {
+            callbackFailures.increment();
+        }
+    }
+
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    public long getInvalidMoves() {
+        return invalidMoves.sum();
+    }
+
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public void callbackDropped() {
+        droppedCallbacks.increment();
+    }
+
+    public long getDroppedCallbacks() {
+        return droppedCallbacks.sum();
+    }
+
+    public long getCallbackFailures() {
+        return callbackFailures.sum();
+    }
+
+    public LatencyRecorder getMakeMoveLatency() {
+        return makeMoveLatency;
+    }
+
+    public Map<String, LatencyRecorder> getCallbackLatency() {
+        return callbackLatency;
+    }
+}
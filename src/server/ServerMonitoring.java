@@ -0,0 +1,236 @@
+package server;
+
+import common.GameInterface;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Registers the game server's MXBeans with the platform MBean server:
+//   morpion:type=GameServer                         gauges and counters
+//   morpion:type=Latency,name=joinGame|makeMove|timeToMatch
+//   morpion:type=CallbackLatency,name=<PlayerCallback method>
+//   morpion:type=Lobby                              shard loads and routing (lobby process)
+// The beans only read the server's counters when a JMX client asks for them.
+public final class ServerMonitoring {
+    private static final String DOMAIN = "morpion";
+
+    private ServerMonitoring() {
+    }
+
+    public static void register(GameInterface game) {
+        if (!(game instanceof GameImpl)) return;
+        GameImpl impl = (GameImpl) game;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(DOMAIN + ":type=GameServer"), new GameServerStats(impl));
+            registerLatency(server, "Latency", "joinGame", impl.getAdmissionController().getJoinTime());
+            registerLatency(server, "Latency", "makeMove", impl.getMetrics().getMakeMoveLatency());
+            registerLatency(server, "Latency", "timeToMatch", impl.getMatchmaker().getTimeToMatch());
+            for (Map.Entry<String, LatencyRecorder> entry : impl.getMetrics().getCallbackLatency().entrySet()) {
+                registerLatency(server, "CallbackLatency", entry.getKey(), entry.getValue());
+            }
+            System.out.println("JMX MBeans registered under '" + DOMAIN + "'");
+        } catch (JMException e) {
+            System.err.println("Could not register JMX MBeans: " + e.getMessage());
+        }
+    }
+
+    public static void register(LobbyImpl lobby) {
+        try {
+            register(ManagementFactory.getPlatformMBeanServer(), new ObjectName(DOMAIN + ":type=Lobby"),
+                    new LobbyStats(lobby));
+            System.out.println("JMX MBeans registered under '" + DOMAIN + "'");
+        } catch (JMException e) {
+            System.err.println("Could not register JMX MBeans: " + e.getMessage());
+        }
+    }
+
+    private static void registerLatency(MBeanServer server, String type, String name, LatencyRecorder recorder)
+            throws JMException {
+        register(server, new ObjectName(DOMAIN + ":type=" + type + ",name=" + name),
+                new LatencyStats(recorder));
+    }
+
+    private static void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(bean, name);
+    }
+
+    private static final class GameServerStats implements GameServerMXBean {
+        private final GameImpl game;
+
+        GameServerStats(GameImpl game) {
+            this.game = game;
+        }
+
+        @Override
+        public int getCapacity() {
+            return game.getAdmissionController().getCapacity();
+        }
+
+        @Override
+        public int getConnectedCallbacks() {
+            return game.getPlayerDirectory().size();
+        }
+
+        @Override
+        public int getConnectingPlayers() {
+            return game.getAdmissionController().getConnectingCount();
+        }
+
+        @Override
+        public int getWaitingPlayers() {
+            return game.getAdmissionController().getWaitingCount();
+        }
+
+        @Override
+        public int getPlayingPlayers() {
+            return game.getAdmissionController().getPlayingCount();
+        }
+
+        @Override
+        public int getActiveSessions() {
+            return game.getActiveSessionCount();
+        }
+
+        @Override
+        public int getPlayersBeingProbed() {
+            return game.getHeartbeatMonitor().getProbingCount();
+        }
+
+        @Override
+        public long getJoins() {
+            return game.getAdmissionController().getAcceptedCount();
+        }
+
+        @Override
+        public long getRejections() {
+            return game.getAdmissionController().getRejectedCount();
+        }
+
+        @Override
+        public long getRejectionsFull() {
+            return game.getAdmissionController().getRejectedFullCount();
+        }
+
+        @Override
+        public long getRejectionsBacklog() {
+            return game.getAdmissionController().getRejectedBacklogCount();
+        }
+
+        @Override
+        public long getRejectionsPerSource() {
+            return game.getAdmissionController().getRejectedSourceCount();
+        }
+
+        @Override
+        public long getMoves() {
+            return game.getMetrics().getMoves();
+        }
+
+        @Override
+        public long getInvalidMoves() {
+            return game.getMetrics().getInvalidMoves();
+        }
+
+        @Override
+        public long getDisconnects() {
+            return game.getMetrics().getDisconnects();
+        }
+
+        @Override
+        public long getEvictions() {
+            return game.getMetrics().getEvictions();
+        }
+
+        @Override
+        public long getCallbackFailures() {
+            return game.getMetrics().getCallbackFailures();
+        }
+
+        @Override
+        public long getDroppedCallbacks() {
+            return game.getMetrics().getDroppedCallbacks();
+        }
+    }
+
+    private static final class LatencyStats implements LatencyMXBean {
+        private final LatencyRecorder recorder;
+
+        LatencyStats(LatencyRecorder recorder) {
+            this.recorder = recorder;
+        }
+
+        @Override
+        public long getCount() {
+            return recorder.getCount();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return recorder.getMeanMicros();
+        }
+
+        @Override
+        public long getP50Micros() {
+            return recorder.getPercentileMicros(50);
+        }
+
+        @Override
+        public long getP90Micros() {
+            return recorder.getPercentileMicros(90);
+        }
+
+        @Override
+        public long getP99Micros() {
+            return recorder.getPercentileMicros(99);
+        }
+
+        @Override
+        public long getP999Micros() {
+            return recorder.getPercentileMicros(99.9);
+        }
+
+        @Override
+        public long getMaxMicros() {
+            return recorder.getMaxMicros();
+        }
+
+        @Override
+        public void reset() {
+            recorder.reset();
+        }
+    }
+
+    private static final class LobbyStats implements LobbyMXBean {
+        private final LobbyImpl lobby;
+
+        LobbyStats(LobbyImpl lobby) {
+            this.lobby = lobby;
+        }
+
+        @Override
+        public int getShardCount() {
+            return lobby.getShardCount();
+        }
+
+        @Override
+        public long getRoutedJoins() {
+            return lobby.getRoutedJoins();
+        }
+
+        @Override
+        public long getRefusedJoins() {
+            return lobby.getRefusedJoins();
+        }
+
+        @Override
+        public String[] getShards() {
+            return lobby.describeShards().toArray(new String[0]);
+        }
+    }
+}
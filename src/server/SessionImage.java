@@ -0,0 +1,162 @@
+package server;
+
+import common.BoardCodec;
+import common.GameState;
+import common.GameVariant;
+import common.MatchRecord;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// What it takes to rebuild a session after a restart: its handle, the players'
+// names and sides, the board, whose turn it is and the moves of the current
+// game. Written to journal snapshots and brought up to date by replaying the
+// journal records that follow them; records whose sequence is not newer than
+// the image are already in it.
+public class SessionImage {
+    private final long handle;
+    private final String player1Name;
+    private final String player2Name;
+    private final int player1Side;
+    private final GameVariant variant;
+    // Bit row * size + col
+    private final long[] xCells;
+    private final long[] oCells;
+    private int currentSide;
+    private int sequence;
+    // Current game in MatchRecord form, for the match history
+    private long game;
+
+    // A 3x3 session
+    public SessionImage(long handle, String player1Name, String player2Name, int player1Side,
+                        int boardCode, int currentSide, int sequence, long game) {
+        this(handle, player1Name, player2Name, player1Side, GameVariant.CLASSIC,
+                new long[] {BoardCodec.xMask(boardCode)}, new long[] {BoardCodec.oMask(boardCode)}, currentSide,
+                sequence, game);
+    }
+
+    public SessionImage(long handle, String player1Name, String player2Name, int player1Side, GameVariant variant,
+                        long[] xCells, long[] oCells, int currentSide, int sequence, long game) {
+        this.handle = handle;
+        this.player1Name = player1Name;
+        this.player2Name = player2Name;
+        this.player1Side = player1Side;
+        this.variant = variant;
+        this.xCells = xCells;
+        this.oCells = oCells;
+        this.currentSide = currentSide;
+        this.sequence = sequence;
+        this.game = game;
+    }
+
+    void applyMove(int cell, int side, int sequence) {
+        if (sequence <= this.sequence) return;
+        (side == GameState.SIDE_X ? xCells : oCells)[cell >> 6] |= 1L << cell;
+        // After a winning move the turn does not matter any more
+        currentSide = side ^ 1;
+        if (variant.isClassic()) {
+            game = MatchRecord.addMove(game, cell);
+        }
+        this.sequence = sequence;
+    }
+
+    void applyRestart(int startingSide, int sequence) {
+        if (sequence <= this.sequence) return;
+        Arrays.fill(xCells, 0);
+        Arrays.fill(oCells, 0);
+        currentSide = startingSide;
+        game = MatchRecord.start(startingSide, player1Side);
+        this.sequence = sequence;
+    }
+
+    public long getHandle() {
+        return handle;
+    }
+
+    public String getPlayer1Name() {
+        return player1Name;
+    }
+
+    public String getPlayer2Name() {
+        return player2Name;
+    }
+
+    public int getPlayer1Side() {
+        return player1Side;
+    }
+
+    public GameVariant getVariant() {
+        return variant;
+    }
+
+    // Cells held by one side; not a copy
+    public long[] getCells(int side) {
+        return side == GameState.SIDE_X ? xCells : oCells;
+    }
+
+    public int getCurrentSide() {
+        return currentSide;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public long getGame() {
+        return game;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(handle);
+        out.writeUTF(player1Name);
+        out.writeUTF(player2Name);
+        out.writeByte(player1Side);
+        out.writeByte(variant.getSize());
+        out.writeByte(variant.getWinLength());
+        BoardCodec.writeCells(out, xCells, variant.getCellCount());
+        BoardCodec.writeCells(out, oCells, variant.getCellCount());
+        out.writeByte(currentSide);
+        out.writeInt(sequence);
+        out.writeLong(game);
+    }
+
+    // classicOnly: written before boards other than 3x3, with the board as a BoardCodec code
+    static SessionImage read(DataInput in, boolean classicOnly) throws IOException {
+        long handle = in.readLong();
+        String player1Name = in.readUTF();
+        String player2Name = in.readUTF();
+        int player1Side = in.readByte();
+        GameVariant variant = GameVariant.CLASSIC;
+        long[] xCells;
+        long[] oCells;
+        if (classicOnly) {
+            int boardCode = BoardCodec.read(in);
+            xCells = new long[] {BoardCodec.xMask(boardCode)};
+            oCells = new long[] {BoardCodec.oMask(boardCode)};
+        } else {
+            variant = readVariant(in);
+            xCells = BoardCodec.readCells(in, variant.getCellCount());
+            oCells = BoardCodec.readCells(in, variant.getCellCount());
+        }
+        int currentSide = in.readByte();
+        int sequence = in.readInt();
+        return new SessionImage(handle, player1Name, player2Name, player1Side, variant, xCells, oCells, currentSide,
+                sequence, in.readLong());
+    }
+
+    static GameVariant readVariant(DataInput in) throws IOException {
+        int size = in.readUnsignedByte();
+        int winLength = in.readUnsignedByte();
+        try {
+            return GameVariant.of(size, winLength);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return SessionTable.idOf(handle) + " " + player1Name + " vs " + player2Name + " #" + sequence;
+    }
+}
@@ -0,0 +1,26 @@
+package server;
+
+// Lifecycle and move events of the game sessions, delivered on the thread that
+// caused them. Moves and restarts are reported while the session lock is held,
+// in the order they were applied, so a listener must be quick and must not
+// call back into the session.
+public interface SessionListener {
+    SessionListener NONE = new SessionListener() { };
+
+    default void sessionStarted(GameSession session) {
+    }
+
+    // cell is row * size + col; sequence is the one of the TurnUpdate the move produced
+    default void moveApplied(GameSession session, int cell, int side, int sequence) {
+    }
+
+    // A game reached its end; game is the MatchRecord packed form, moves and outcome included
+    default void gameFinished(GameSession session, long game) {
+    }
+
+    default void sessionRestarted(GameSession session, int startingSide, int sequence) {
+    }
+
+    default void sessionEnded(GameSession session) {
+    }
+}
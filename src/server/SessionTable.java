@@ -0,0 +1,187 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Live sessions by 64-bit handle: the low 32 bits are a slot in an array, the
+// high 32 bits a random nonce drawn when the slot is handed out. A lookup is
+// one array read plus a comparison with the session's own handle, so a handle
+// whose nonce does not match (guessed, or left over from an earlier session in
+// the same slot) finds nothing. Lookups take no lock; allocation and removal
+// are rare and synchronized.
+// Protocol v1 carries the same handle as a "game-<16 hex digits>" string.
+public class SessionTable {
+    private static final String ID_PREFIX = "game-";
+    private static final int ID_LENGTH = ID_PREFIX.length() + 16;
+
+    private volatile AtomicReferenceArray<GameSession> slots;
+    // Slots given back by ended sessions, reused before new ones
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int nextUnusedSlot;
+    private volatile int size;
+    // Nonces must not be predictable from the ones a player sees, so they come from a
+    // SecureRandom, drawn NONCE_BATCH at a time to keep it off most allocations
+    private static final int NONCE_BATCH = 256;
+    private final SecureRandom random = new SecureRandom();
+    private final ByteBuffer nonces = ByteBuffer.allocate(NONCE_BATCH * Integer.BYTES);
+
+    public SessionTable(int initialCapacity) {
+        this.slots = new AtomicReferenceArray<>(Math.max(16, initialCapacity));
+        // Empty: the first allocate() draws a batch
+        nonces.position(nonces.limit());
+    }
+
+    // Reserves a slot and returns the handle the new session must carry (never 0)
+    public synchronized long allocate() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = nextUnusedSlot++;
+            if (slot == slots.length()) {
+                grow();
+            }
+        }
+        int nonce;
+        do {
+            nonce = nextNonce();
+        } while (nonce == 0);
+        return (long) nonce << 32 | slot;
+    }
+
+    // Under the table's lock
+    private int nextNonce() {
+        if (!nonces.hasRemaining()) {
+            random.nextBytes(nonces.array());
+            nonces.clear();
+        }
+        return nonces.getInt();
+    }
+
+    // Publishes a session under the handle obtained from allocate()
+    public synchronized void put(GameSession session) {
+        slots.set(slotOf(session.getHandle()), session);
+        size++;
+    }
+
+    // Puts back a session recovered from the journal under its original handle.
+    // Only used at startup, before any allocate(), in increasing slot order.
+    public synchronized void restore(GameSession session) {
+        int slot = slotOf(session.getHandle());
+        if (slot < nextUnusedSlot) {
+            throw new IllegalStateException("Slot " + slot + " restored out of order");
+        }
+        while (nextUnusedSlot <= slot) {
+            if (nextUnusedSlot == slots.length()) {
+                grow();
+            }
+            // The slots skipped over belonged to sessions that had ended
+            if (nextUnusedSlot < slot) {
+                freeSlot(nextUnusedSlot);
+            }
+            nextUnusedSlot++;
+        }
+        slots.set(slot, session);
+        size++;
+    }
+
+    // Gives back a slot from allocate() whose session could not be created
+    public synchronized void release(long handle) {
+        freeSlot(slotOf(handle));
+    }
+
+    public GameSession get(long handle) {
+        AtomicReferenceArray<GameSession> current = slots;
+        int slot = slotOf(handle);
+        if (slot >= current.length()) return null;
+        GameSession session = current.get(slot);
+        return session != null && session.getHandle() == handle ? session : null;
+    }
+
+    public GameSession get(String sessionId) {
+        long handle = handleOf(sessionId);
+        return handle != 0 ? get(handle) : null;
+    }
+
+    // Removes and returns the session, or null if it was already removed
+    public synchronized GameSession remove(long handle) {
+        GameSession session = get(handle);
+        if (session == null) return null;
+        int slot = slotOf(handle);
+        slots.set(slot, null);
+        size--;
+        freeSlot(slot);
+        return session;
+    }
+
+    public GameSession remove(String sessionId) {
+        long handle = handleOf(sessionId);
+        return handle != 0 ? remove(handle) : null;
+    }
+
+    // Visits the live sessions without locking; sessions added or removed meanwhile may be missed
+    public void forEach(Consumer<GameSession> action) {
+        AtomicReferenceArray<GameSession> current = slots;
+        for (int i = 0; i < current.length(); i++) {
+            GameSession session = current.get(i);
+            if (session != null) {
+                action.accept(session);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    // Session id sent to protocol v1 clients
+    public static String idOf(long handle) {
+        StringBuilder id = new StringBuilder(ID_LENGTH).append(ID_PREFIX);
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            id.append(Character.forDigit((int) (handle >>> shift) & 0xF, 16));
+        }
+        return id.toString();
+    }
+
+    // Handle carried by a v1 session id, 0 if it is not one
+    public static long handleOf(String sessionId) {
+        if (sessionId == null || sessionId.length() != ID_LENGTH || !sessionId.startsWith(ID_PREFIX)) return 0;
+        long handle = 0;
+        for (int i = ID_PREFIX.length(); i < ID_LENGTH; i++) {
+            int digit = Character.digit(sessionId.charAt(i), 16);
+            if (digit < 0) return 0;
+            handle = handle << 4 | digit;
+        }
+        return handle;
+    }
+
+    private static int slotOf(long handle) {
+        // Masked so that a forged handle cannot index below 0; its nonce will not match
+        return (int) handle & Integer.MAX_VALUE;
+    }
+
+    private void freeSlot(int slot) {
+        if (freeCount == freeSlots.length) {
+            int[] larger = new int[freeCount * 2];
+            System.arraycopy(freeSlots, 0, larger, 0, freeCount);
+            freeSlots = larger;
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow() {
+        AtomicReferenceArray<GameSession> current = slots;
+        AtomicReferenceArray<GameSession> larger = new AtomicReferenceArray<>(current.length() * 2);
+        for (int i = 0; i < current.length(); i++) {
+            larger.set(i, current.get(i));
+        }
+        slots = larger;
+    }
+}
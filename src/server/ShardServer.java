@@ -0,0 +1,100 @@
+package server;
+
+import common.GameInterface;
+import common.LobbyInterface;
+import common.ShardLoad;
+import factory.GameFactory;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// One game server process of a sharded deployment. It is not bound in any
+// registry: it reports its load to the lobby, which hands its stub to the
+// players it routes here. Several shards can run on the same machine.
+// Usage: java server.ShardServer <shardName> [lobbyHost] [lobbyPort] [maxPlayers]
+public class ShardServer {
+    private static final String LOBBY_NAME = "Lobby";
+
+    private final String shardName;
+    private final GameImpl game;
+    private final String lobbyHost;
+    private final int lobbyPort;
+    private LobbyInterface lobby;
+    private boolean registered;
+    // The lobby being unreachable is logged once, not on every report
+    private boolean warned;
+
+    ShardServer(String shardName, GameImpl game, String lobbyHost, int lobbyPort) {
+        this.shardName = shardName;
+        this.game = game;
+        this.lobbyHost = lobbyHost;
+        this.lobbyPort = lobbyPort;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java server.ShardServer <shardName> [lobbyHost] [lobbyPort] [maxPlayers]");
+            System.exit(1);
+        }
+        try {
+            // Un client mort ne doit pas bloquer indéfiniment un callback ou une sonde de présence
+            if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+                System.setProperty("sun.rmi.transport.tcp.responseTimeout", "10000");
+            }
+            String shardName = args[0];
+            String lobbyHost = args.length > 1 ? args[1] : "localhost";
+            int lobbyPort = args.length > 2 ? Integer.parseInt(args[2]) : Registry.REGISTRY_PORT;
+
+            // Shards on the same machine cannot share a -Dgame.nioPort: give one to a single shard
+            ServerConfig config = ServerConfig.fromSystemProperties();
+            if (args.length > 3) {
+                config.setMaxPlayers(Integer.parseInt(args[3]));
+            }
+            GameInterface game = GameFactory.createGame(config);
+            ServerMonitoring.register(game);
+            NioGameServer.start(game, config);
+            System.out.println("Shard " + shardName + " initialized (" + config + ")");
+
+            ShardServer shard = new ShardServer(shardName, (GameImpl) game, lobbyHost, lobbyPort);
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+            reporter.scheduleWithFixedDelay(shard::reportLoad, 0, config.getShardReportMillis(),
+                    TimeUnit.MILLISECONDS);
+            Thread.currentThread().join();
+        } catch (Exception e) {
+            System.err.println("Shard error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    ShardLoad currentLoad() {
+        AdmissionController admission = game.getAdmissionController();
+        return new ShardLoad(shardName, admission.getCapacity(), admission.getPlayerCount(),
+                admission.getWaitingCount(), admission.getPlayingCount(), game.getActiveSessionCount());
+    }
+
+    // Also registers the shard, again after a lobby restart
+    private void reportLoad() {
+        try {
+            if (lobby == null) {
+                Registry registry = LocateRegistry.getRegistry(lobbyHost, lobbyPort);
+                lobby = (LobbyInterface) registry.lookup(LOBBY_NAME);
+            }
+            lobby.reportLoad(game, currentLoad());
+            warned = false;
+            if (!registered) {
+                registered = true;
+                System.out.println("Shard " + shardName + " registered with the lobby at " + lobbyHost + ":" + lobbyPort);
+            }
+        } catch (Exception e) {
+            if (!warned) {
+                warned = true;
+                System.err.println("Cannot reach the lobby at " + lobbyHost + ":" + lobbyPort + ": " + e.getMessage());
+            }
+            registered = false;
+            lobby = null;
+        }
+    }
+}
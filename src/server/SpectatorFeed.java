@@ -0,0 +1,192 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// The spectators of one GameSession. The session encodes each TurnUpdate once,
+// as a BinaryProtocol frame, and appends it to a ring of the last frames.
+// Spectators are grouped by the thread that writes to them (the event loop of
+// their connection); a frame wakes each group once, so publishing costs the
+// session one encoding and one task per group, however many watch. The
+// group's thread then queues the same frame bytes to each of its spectators.
+// A TURN_UPDATE frame holds the whole board, so the last frame doubles as a
+// snapshot: a spectator that joins late, or that falls more than MAX_DELTAS
+// frames behind, gets the last frame alone and the deltas from there. One
+// whose socket is full gets nothing more until it has drained, so it never
+// holds up the players or the other spectators.
+public final class SpectatorFeed {
+    // Frames kept for spectators catching up
+    private static final int CAPACITY = 16;
+    private static final int MAX_DELTAS = 8;
+
+    private final Frame[] frames = new Frame[CAPACITY];
+    // Index of the next frame; frames are written before it moves
+    private volatile long published;
+    private volatile boolean closed;
+    private final Map<Executor, Group> groups = new ConcurrentHashMap<>();
+    private final AtomicInteger spectatorCount = new AtomicInteger();
+    private final LongAdder snapshotsSent = new LongAdder();
+
+    // Written to by the feed on its own thread
+    public interface Spectator {
+        Executor executor();
+
+        // Whether frames queued earlier are still waiting for the socket
+        boolean isBacklogged();
+
+        // Queues a frame; its bytes are shared with the other spectators and must not be changed
+        void deliver(ByteBuffer frame);
+
+        // After the deliver() calls of one catch-up
+        void delivered();
+
+        // The session is over; no more frames will come
+        void feedEnded();
+    }
+
+    // Called by the session, under its lock, so frames come one at a time
+    void publish(ByteBuffer frame) {
+        long index = published;
+        frames[(int) (index % CAPACITY)] = new Frame(index, frame);
+        published = index + 1;
+        for (Group group : groups.values()) {
+            group.wake();
+        }
+    }
+
+    // Under the session lock, like close(); null once the feed is closed
+    Subscription subscribe(Spectator spectator) {
+        if (closed) return null;
+        Group group = groups.computeIfAbsent(spectator.executor(), Group::new);
+        Subscription subscription = new Subscription(spectator, group);
+        group.subscriptions.add(subscription);
+        spectatorCount.incrementAndGet();
+        // Delivers the snapshot
+        group.wake();
+        return subscription;
+    }
+
+    // Tells every spectator the session is over
+    void close() {
+        closed = true;
+        for (Group group : groups.values()) {
+            for (Subscription subscription : group.subscriptions) {
+                group.executor.execute(() -> {
+                    if (subscription.cancel()) {
+                        subscription.spectator.feedEnded();
+                    }
+                });
+            }
+        }
+    }
+
+    int getSpectatorCount() {
+        return spectatorCount.get();
+    }
+
+    // Catch-ups that skipped frames: late joiners and lagging spectators
+    long getSnapshotsSent() {
+        return snapshotsSent.sum();
+    }
+
+    // On the spectator's thread: queues the frames it has not had yet
+    private void catchUp(Subscription subscription) {
+        Spectator spectator = subscription.spectator;
+        if (subscription.cancelled) return;
+        if (spectator.isBacklogged()) {
+            // resume() comes back here once the socket has drained
+            subscription.waiting = true;
+            return;
+        }
+        subscription.waiting = false;
+        long end = published;
+        long next = subscription.next;
+        if (next == end) return;
+        if (next < 0 || end - next > MAX_DELTAS) {
+            next = end - 1;
+            snapshotsSent.increment();
+        }
+        for (; next < end; next++) {
+            Frame frame = frames[(int) (next % CAPACITY)];
+            if (frame.index != next) {
+                // Overwritten by newer frames while this one was behind: start again from the newest
+                subscription.next = -1;
+                catchUp(subscription);
+                return;
+            }
+            spectator.deliver(frame.bytes);
+        }
+        subscription.next = end;
+        spectator.delivered();
+    }
+
+    private static final class Frame {
+        final long index;
+        final ByteBuffer bytes;
+
+        Frame(long index, ByteBuffer bytes) {
+            this.index = index;
+            this.bytes = bytes;
+        }
+    }
+
+    // The spectators written from one thread
+    private final class Group implements Runnable {
+        final Executor executor;
+        final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Group(Executor executor) {
+            this.executor = executor;
+        }
+
+        void wake() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+            for (Subscription subscription : subscriptions) {
+                catchUp(subscription);
+            }
+        }
+    }
+
+    public final class Subscription {
+        private final Spectator spectator;
+        private final Group group;
+        // Next frame to deliver, -1 for a snapshot; spectator's thread only
+        private long next = -1;
+        private boolean waiting;
+        private volatile boolean cancelled;
+
+        Subscription(Spectator spectator, Group group) {
+            this.spectator = spectator;
+            this.group = group;
+        }
+
+        // On the spectator's thread, once it has written out what it had queued
+        public void resume() {
+            if (waiting) {
+                catchUp(this);
+            }
+        }
+
+        // Stops the frames; false if already stopped
+        public boolean cancel() {
+            if (cancelled || !group.subscriptions.remove(this)) return false;
+            cancelled = true;
+            spectatorCount.decrementAndGet();
+            return true;
+        }
+    }
+}
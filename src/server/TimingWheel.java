@@ -0,0 +1,142 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Hashed timing wheel: each timeout sits in the bucket of the tick at which it
+// is due, so advancing the wheel only looks at the entries of the elapsed
+// ticks, never at every tracked item. Extending a deadline is a single write;
+// the entry is moved lazily when its old bucket comes up. Deadlines beyond
+// one rotation simply wait for another lap. Precision is one tick. New
+// timeouts go through a queue that the ticker drains before each advance, so
+// only the ticker places entries and none lands in a bucket it has already
+// swapped out.
+public class TimingWheel<T> {
+    private static final int ACTIVE = 0;
+    private static final int EXPIRED = 1;
+    private static final int CANCELLED = 2;
+
+    private final long tickMillis;
+    private final int mask;
+    private final AtomicReferenceArray<Queue<Timeout>> buckets;
+    // Scheduled but not yet placed; drained by the thread calling advance()
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final Consumer<Timeout> expiredHandler;
+    private final AtomicInteger size = new AtomicInteger();
+    // Last tick processed; only advanced by the thread calling advance()
+    private volatile long lastTick;
+
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis, Consumer<Timeout> expiredHandler) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+        }
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.buckets = new AtomicReferenceArray<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.set(i, new ConcurrentLinkedQueue<>());
+        }
+        this.expiredHandler = expiredHandler;
+        this.lastTick = startMillis / tickMillis;
+    }
+
+    public Timeout schedule(T item, long deadlineMillis) {
+        Timeout timeout = new Timeout(item, deadlineMillis);
+        size.incrementAndGet();
+        incoming.offer(timeout);
+        return timeout;
+    }
+
+    // Only called by the ticker thread
+    private void place(Timeout timeout) {
+        // Never place into the tick being processed or an earlier one, it would wait a whole lap
+        long tick = Math.max(timeout.deadline / tickMillis, lastTick + 1);
+        buckets.get((int) (tick & mask)).offer(timeout);
+    }
+
+    // Expires every timeout due at or before nowMillis. Called by a single ticker thread.
+    public int advance(long nowMillis) {
+        long target = nowMillis / tickMillis;
+        List<Timeout> expired = new ArrayList<>();
+        Timeout scheduled;
+        while ((scheduled = incoming.poll()) != null) {
+            if (scheduled.state.get() == ACTIVE) {
+                place(scheduled);
+            }
+        }
+        while (lastTick < target) {
+            long tick = lastTick + 1;
+            Queue<Timeout> due = buckets.getAndSet((int) (tick & mask), new ConcurrentLinkedQueue<>());
+            lastTick = tick;
+            Timeout timeout;
+            while ((timeout = due.poll()) != null) {
+                if (timeout.state.get() != ACTIVE) continue;
+                if (timeout.deadline <= nowMillis) {
+                    if (timeout.state.compareAndSet(ACTIVE, EXPIRED)) {
+                        size.decrementAndGet();
+                        expired.add(timeout);
+                    }
+                } else {
+                    place(timeout);
+                }
+            }
+        }
+        for (Timeout timeout : expired) {
+            expiredHandler.accept(timeout);
+        }
+        return expired.size();
+    }
+
+    // Timeouts scheduled and neither expired nor cancelled
+    public int size() {
+        return size.get();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public final class Timeout {
+        private final T item;
+        private final AtomicInteger state = new AtomicInteger(ACTIVE);
+        private volatile long deadline;
+
+        private Timeout(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        // Pushes the deadline later; returns false once the timeout has fired or been cancelled
+        public boolean extend(long newDeadline) {
+            if (newDeadline > deadline) {
+                deadline = newDeadline;
+            }
+            return state.get() == ACTIVE;
+        }
+
+        public boolean isPending() {
+            return state.get() == ACTIVE;
+        }
+
+        public boolean cancel() {
+            if (state.compareAndSet(ACTIVE, CANCELLED)) {
+                size.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,586 @@
+package server;
+
+import common.MatchRecord;
+import common.PlayerCallback;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Tournament mode (game.tournament): players who join are entered in the next
+// tournament instead of being matched, and it starts once
+// game.tournamentPlayers have entered. Each round pairs all the entrants at
+// once, by score for a Swiss tournament or along a seeded bracket for single
+// elimination, and opens a GameSession per pairing: the games of a round are
+// played side by side like any others, each under its own session lock.
+// Results come back as SessionListener events, which only hand them to the
+// tournament's thread; that thread does all the bookkeeping, so neither the
+// sessions nor GameImpl ever wait for it. Standings are updated game by game
+// and the next round is paired as soon as the last game of the current one
+// ends. A player who leaves loses its current game by forfeit and is not
+// paired again.
+public class Tournament implements SessionListener {
+    public enum Format { SWISS, ELIMINATION }
+
+    // A drawn elimination game is replayed up to this many games, then the better seed goes through
+    private static final int MAX_ELIMINATION_GAMES = 3;
+    private static final int WIN = 0;
+    private static final int DRAW = 1;
+    private static final int LOSS = 2;
+    private static final int BYE = 3;
+    private static final int ADVANCE = 4;
+    // Furthest in the bracket first, then points, wins and seed
+    private static final Comparator<Entrant> RANKING = (a, b) -> {
+        if (a.stage != b.stage) return b.stage - a.stage;
+        if (a.halfPoints != b.halfPoints) return b.halfPoints - a.halfPoints;
+        if (a.wins != b.wins) return b.wins - a.wins;
+        return a.seed - b.seed;
+    };
+
+    // What the tournament needs from the server
+    interface Host {
+        // Opens a session between two players; null if one of them has left
+        GameSession startGame(PlayerCallback player1, PlayerCallback player2);
+
+        // Removes a session whose pairing is decided and frees its players
+        void endGame(GameSession session);
+
+        boolean isPresent(PlayerCallback player);
+
+        void tell(PlayerCallback player, String message);
+    }
+
+    private final Format format;
+    private final int playersPerTournament;
+    private final int swissRounds;
+    private final Host host;
+    private final ExecutorService thread;
+    // Entrants of the tournament under way, read by the session threads
+    private final Map<PlayerCallback, Entrant> entrants = new ConcurrentHashMap<>();
+    private final List<Long> roundNanos = new CopyOnWriteArrayList<>();
+    private final List<Long> pairingNanos = new CopyOnWriteArrayList<>();
+    private volatile int edition;
+    private volatile int round;
+    private volatile int roundCount;
+    private volatile boolean running;
+    private volatile int finishedCount;
+    private volatile int registeredCount;
+    private volatile List<Standing> lastStandings = Collections.emptyList();
+
+    // Only touched by the tournament thread
+    private List<Entrant> registered = new ArrayList<>();
+    private List<Entrant> field = new ArrayList<>();
+    private final TreeSet<Entrant> standings = new TreeSet<>(RANKING);
+    // Elimination: entrants still in, in bracket order, null for a bye; and the winners of the round
+    private Entrant[] bracket;
+    private Entrant[] advancing;
+    // Games of the round not decided yet, plus one while the round is being started
+    private int remaining;
+    private long roundStart;
+
+    // swissRounds is 0 for as many rounds as it takes to leave a single unbeaten player
+    Tournament(Format format, int playersPerTournament, int swissRounds, Host host) {
+        this.format = format;
+        this.playersPerTournament = playersPerTournament;
+        this.swissRounds = swissRounds;
+        this.host = host;
+        this.thread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tournament");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Enters a player who has just joined in the next tournament
+    void enter(PlayerCallback player, String name, int rating) {
+        thread.execute(() -> {
+            registered.add(new Entrant(player, name, rating));
+            registeredCount = registered.size();
+            host.tell(player, (running ? "A tournament is under way, you are entered in the next one" : "You are "
+                    + "entered in the next tournament") + " (" + registered.size() + "/" + playersPerTournament
+                    + " players)");
+            if (!running && registered.size() >= playersPerTournament) {
+                startTournament();
+            }
+        });
+    }
+
+    // Called when a player leaves the server
+    void withdraw(PlayerCallback player) {
+        thread.execute(() -> {
+            if (registered.removeIf(entrant -> entrant.player.equals(player))) {
+                registeredCount = registered.size();
+            }
+            Entrant entrant = entrants.get(player);
+            if (entrant != null && !entrant.withdrawn) {
+                forfeit(entrant);
+            }
+        });
+    }
+
+    @Override
+    public void gameFinished(GameSession session, long game) {
+        // Under the session lock: find the pairing and let the tournament thread do the rest
+        Entrant first = entrants.get(session.getPlayer1());
+        Entrant second = entrants.get(session.getPlayer2());
+        if (first == null || second == null) return;
+        Pairing pairing = first.pairing;
+        if (pairing == null || pairing != second.pairing) return;
+        int outcome = MatchRecord.outcome(game);
+        Entrant winner = outcome == MatchRecord.DRAW ? null : outcome == MatchRecord.player1Side(game) ? first : second;
+        thread.execute(() -> gameOver(pairing, session, winner));
+    }
+
+    private void startTournament() {
+        edition++;
+        field = registered;
+        registered = new ArrayList<>();
+        registeredCount = 0;
+        // Best rated first
+        field.sort((a, b) -> b.rating - a.rating);
+        for (int i = 0; i < field.size(); i++) {
+            Entrant entrant = field.get(i);
+            entrant.seed = i;
+            entrants.put(entrant.player, entrant);
+            standings.add(entrant);
+        }
+        int bracketSize = Integer.highestOneBit(field.size() - 1) << 1;
+        roundCount = format == Format.SWISS && swissRounds > 0 ? swissRounds
+                : Integer.numberOfTrailingZeros(bracketSize);
+        if (format == Format.ELIMINATION) {
+            bracket = new Entrant[bracketSize];
+            int[] order = bracketOrder(bracketSize);
+            for (int slot = 0; slot < bracketSize; slot++) {
+                bracket[slot] = order[slot] < field.size() ? field.get(order[slot]) : null;
+            }
+        }
+        round = 0;
+        roundNanos.clear();
+        pairingNanos.clear();
+        running = true;
+        System.out.println("Tournament #" + edition + " starts: " + field.size() + " players, "
+                + format.name().toLowerCase() + ", " + roundCount + " rounds");
+        for (Entrant entrant : field) {
+            host.tell(entrant.player, "Tournament #" + edition + " starts: " + field.size() + " players, "
+                    + roundCount + " rounds, you are seed " + (entrant.seed + 1));
+        }
+        startRound();
+    }
+
+    private void startRound() {
+        round++;
+        roundStart = System.nanoTime();
+        List<Pairing> pairings = format == Format.SWISS ? pairByScore() : pairBracket();
+        remaining = pairings.size() + 1;
+        for (Pairing pairing : pairings) {
+            pairing.first.pairing = pairing;
+            pairing.second.pairing = pairing;
+            pairing.first.opponents.add(pairing.second);
+            pairing.second.opponents.add(pairing.first);
+            host.tell(pairing.first.player, "Round " + round + "/" + roundCount + " against " + pairing.second.name);
+            host.tell(pairing.second.player, "Round " + round + "/" + roundCount + " against " + pairing.first.name);
+            pairing.session = host.startGame(pairing.first.player, pairing.second.player);
+            if (pairing.session == null) {
+                // One of them left in the meantime
+                forfeit(host.isPresent(pairing.first.player) ? pairing.second : pairing.first);
+            }
+        }
+        pairingNanos.add(System.nanoTime() - roundStart);
+        // Every game is started
+        pairingDecided();
+    }
+
+    // Swiss: in standings order, each player meets the next one it has not met yet
+    private List<Pairing> pairByScore() {
+        List<Entrant> order = new ArrayList<>();
+        for (Entrant entrant : standings) {
+            if (!entrant.withdrawn) order.add(entrant);
+        }
+        if (order.size() % 2 == 1) {
+            // The lowest ranked player without a bye yet sits the round out and scores a win
+            int rest = order.size() - 1;
+            while (rest > 0 && order.get(rest).hadBye) rest--;
+            Entrant resting = order.remove(rest);
+            resting.hadBye = true;
+            score(resting, BYE);
+            host.tell(resting.player, "Round " + round + "/" + roundCount + ": you have a bye, it counts as a win");
+        }
+        List<Pairing> pairings = new ArrayList<>();
+        boolean[] paired = new boolean[order.size()];
+        for (int i = 0; i < order.size(); i++) {
+            if (paired[i]) continue;
+            Entrant entrant = order.get(i);
+            int opponent = -1;
+            for (int j = i + 1; j < order.size(); j++) {
+                if (paired[j]) continue;
+                if (opponent < 0) opponent = j;
+                if (!entrant.opponents.contains(order.get(j))) {
+                    opponent = j;
+                    break;
+                }
+            }
+            // Everyone left has met it already: the nearest one again
+            paired[i] = true;
+            paired[opponent] = true;
+            pairings.add(new Pairing(entrant, order.get(opponent), -1));
+        }
+        return pairings;
+    }
+
+    // Elimination: neighbours in the bracket meet, a player without an opponent goes through
+    private List<Pairing> pairBracket() {
+        List<Pairing> pairings = new ArrayList<>();
+        advancing = new Entrant[bracket.length / 2];
+        for (int slot = 0; slot < advancing.length; slot++) {
+            Entrant first = bracket[2 * slot];
+            Entrant second = bracket[2 * slot + 1];
+            if (first != null && first.withdrawn) first = null;
+            if (second != null && second.withdrawn) second = null;
+            if (first != null && second != null) {
+                pairings.add(new Pairing(first, second, slot));
+            } else if (first != null || second != null) {
+                Entrant through = first != null ? first : second;
+                advancing[slot] = through;
+                score(through, ADVANCE);
+                host.tell(through.player, "Round " + round + "/" + roundCount + ": you have a bye");
+            }
+        }
+        return pairings;
+    }
+
+    // Slot of each seed in a bracket of the given size, so that the best seeds meet last
+    private static int[] bracketOrder(int size) {
+        int[] order = {0};
+        while (order.length < size) {
+            int[] next = new int[order.length * 2];
+            for (int i = 0; i < order.length; i++) {
+                next[2 * i] = order[i];
+                next[2 * i + 1] = next.length - 1 - order[i];
+            }
+            order = next;
+        }
+        return order;
+    }
+
+    private void gameOver(Pairing pairing, GameSession session, Entrant winner) {
+        if (pairing.decided || pairing.session != session) return;
+        pairing.games++;
+        if (winner != null) {
+            score(winner, WIN);
+            score(pairing.other(winner), LOSS);
+        } else {
+            score(pairing.first, DRAW);
+            score(pairing.second, DRAW);
+        }
+        if (winner == null && format == Format.ELIMINATION && pairing.games < MAX_ELIMINATION_GAMES) {
+            host.tell(pairing.first.player, "Draw: the game is replayed");
+            host.tell(pairing.second.player, "Draw: the game is replayed");
+            try {
+                session.restartGame();
+            } catch (RemoteException e) {
+                System.err.println("Error replaying a tournament game: " + e.getMessage());
+            }
+            return;
+        }
+        host.endGame(session);
+        if (winner == null && format == Format.ELIMINATION) {
+            winner = pairing.first.seed < pairing.second.seed ? pairing.first : pairing.second;
+            host.tell(winner.player, "Still drawn after " + pairing.games + " games: you go through as the better "
+                    + "seed");
+        }
+        decide(pairing, winner);
+    }
+
+    // The entrant loses its game, if any, and is paired no more
+    private void forfeit(Entrant entrant) {
+        entrant.withdrawn = true;
+        Pairing pairing = entrant.pairing;
+        if (pairing == null || pairing.decided) return;
+        Entrant opponent = pairing.other(entrant);
+        score(opponent, WIN);
+        score(entrant, LOSS);
+        host.tell(opponent.player, entrant.name + " has left the tournament, you win by forfeit");
+        if (pairing.session != null) {
+            host.endGame(pairing.session);
+        }
+        decide(pairing, opponent);
+    }
+
+    // winner is null for a drawn Swiss game
+    private void decide(Pairing pairing, Entrant winner) {
+        pairing.decided = true;
+        pairing.first.pairing = null;
+        pairing.second.pairing = null;
+        if (format == Format.ELIMINATION) {
+            Entrant loser = pairing.other(winner);
+            advancing[pairing.slot] = winner;
+            score(winner, ADVANCE);
+            host.tell(loser.player, "You are out of the tournament after round " + round);
+        } else {
+            for (Entrant entrant : new Entrant[] {pairing.first, pairing.second}) {
+                host.tell(entrant.player, "Round " + round + " over for you: " + formatPoints(entrant.halfPoints)
+                        + " points");
+            }
+        }
+        pairingDecided();
+    }
+
+    private void pairingDecided() {
+        if (--remaining == 0) {
+            finishRound();
+        }
+    }
+
+    private void finishRound() {
+        long nanos = System.nanoTime() - roundStart;
+        roundNanos.add(nanos);
+        Entrant leader = standings.first();
+        System.out.println(String.format("Tournament #%d round %d/%d over in %.1f ms, leader %s with %s points",
+                edition, round, roundCount, nanos / 1e6, leader.name, formatPoints(leader.halfPoints)));
+        int active = 0;
+        if (format == Format.ELIMINATION) {
+            bracket = advancing;
+            for (Entrant entrant : bracket) {
+                if (entrant != null && !entrant.withdrawn) active++;
+            }
+        } else {
+            for (Entrant entrant : field) {
+                if (!entrant.withdrawn) active++;
+            }
+        }
+        if (round >= roundCount || active < 2) {
+            finishTournament();
+        } else {
+            startRound();
+        }
+    }
+
+    private void finishTournament() {
+        List<Standing> table = currentStandings();
+        lastStandings = table;
+        StringBuilder podium = new StringBuilder();
+        for (int i = 0; i < Math.min(3, table.size()); i++) {
+            podium.append(i > 0 ? ", " : "").append(i + 1).append(". ").append(table.get(i));
+        }
+        System.out.println("Tournament #" + edition + " over: " + podium);
+        for (Standing standing : table) {
+            Entrant entrant = entrants.remove(standing.player);
+            if (!entrant.withdrawn) {
+                host.tell(entrant.player, "Tournament #" + edition + " over: you finished " + standing.rank + " of "
+                        + table.size() + " with " + formatPoints(entrant.halfPoints) + " points. Join again to enter "
+                        + "the next one");
+            }
+        }
+        standings.clear();
+        field = new ArrayList<>();
+        bracket = null;
+        advancing = null;
+        running = false;
+        finishedCount++;
+        if (registered.size() >= playersPerTournament) {
+            startTournament();
+        }
+    }
+
+    private void score(Entrant entrant, int result) {
+        // Out of the ordered set while the fields it is ordered by change
+        standings.remove(entrant);
+        switch (result) {
+            case WIN:
+                entrant.wins++;
+                entrant.halfPoints += 2;
+                break;
+            case DRAW:
+                entrant.draws++;
+                entrant.halfPoints++;
+                break;
+            case LOSS:
+                entrant.losses++;
+                break;
+            case BYE:
+                entrant.halfPoints += 2;
+                break;
+            default:
+                entrant.stage++;
+        }
+        standings.add(entrant);
+    }
+
+    private List<Standing> currentStandings() {
+        List<Standing> table = new ArrayList<>(standings.size());
+        for (Entrant entrant : standings) {
+            table.add(new Standing(table.size() + 1, entrant));
+        }
+        return table;
+    }
+
+    private static String formatPoints(int halfPoints) {
+        return halfPoints % 2 == 0 ? String.valueOf(halfPoints / 2) : halfPoints / 2 + ".5";
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    // Number of the tournament under way, or of the last one
+    public int getEdition() {
+        return edition;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public int getRoundCount() {
+        return roundCount;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getFinishedCount() {
+        return finishedCount;
+    }
+
+    // Players entered in the next tournament
+    public int getRegisteredCount() {
+        return registeredCount;
+    }
+
+    // Time from the start of each round to its last game, for the tournament under way or the last one
+    public List<Long> getRoundNanos() {
+        return new ArrayList<>(roundNanos);
+    }
+
+    // Part of it spent pairing the round and opening its sessions
+    public List<Long> getPairingNanos() {
+        return new ArrayList<>(pairingNanos);
+    }
+
+    // Standings of the tournament under way, or final standings of the last one
+    public List<Standing> getStandings() {
+        try {
+            return thread.submit(() -> running ? currentStandings() : lastStandings).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return lastStandings;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public void shutdown() {
+        thread.shutdownNow();
+    }
+
+    public static final class Standing {
+        private final PlayerCallback player;
+        private final int rank;
+        private final String name;
+        private final int halfPoints;
+        private final int wins;
+        private final int draws;
+        private final int losses;
+        private final boolean withdrawn;
+
+        Standing(int rank, Entrant entrant) {
+            this.player = entrant.player;
+            this.rank = rank;
+            this.name = entrant.name;
+            this.halfPoints = entrant.halfPoints;
+            this.wins = entrant.wins;
+            this.draws = entrant.draws;
+            this.losses = entrant.losses;
+            this.withdrawn = entrant.withdrawn;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getPoints() {
+            return halfPoints / 2.0;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getDraws() {
+            return draws;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+
+        public boolean isWithdrawn() {
+            return withdrawn;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + formatPoints(halfPoints) + " (" + wins + "-" + draws + "-" + losses + ")"
+                    + (withdrawn ? " withdrawn" : "");
+        }
+    }
+
+    private static final class Entrant {
+        final PlayerCallback player;
+        final String name;
+        final int rating;
+        int seed;
+        // Score, and rounds won in the bracket
+        int halfPoints;
+        int wins;
+        int draws;
+        int losses;
+        int stage;
+        boolean hadBye;
+        final Set<Entrant> opponents = new HashSet<>();
+        volatile boolean withdrawn;
+        // Read by the session threads to find the pairing of a finished game
+        volatile Pairing pairing;
+
+        Entrant(PlayerCallback player, String name, int rating) {
+            this.player = player;
+            this.name = name;
+            this.rating = rating;
+        }
+    }
+
+    private static final class Pairing {
+        final Entrant first;
+        final Entrant second;
+        // Elimination: where the winner goes in the next round's bracket
+        final int slot;
+        GameSession session;
+        int games;
+        boolean decided;
+
+        Pairing(Entrant first, Entrant second, int slot) {
+            this.first = first;
+            this.second = second;
+            this.slot = slot;
+        }
+
+        Entrant other(Entrant entrant) {
+            return entrant == first ? second : first;
+        }
+    }
+}
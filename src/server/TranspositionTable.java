@@ -0,0 +1,68 @@
+package server;
+
+// Positions already searched by a GomokuEngine, shared by all its searches and
+// all their threads without a lock. Each slot is two longs: the entry, and the
+// Zobrist key xor the entry. A reader checks that the two still give the key:
+// two threads writing the same slot at once, or a read that sees one long of
+// a write and not the other, only fail the check and read as a miss. An entry
+// is a hint for the search, so a lost or stale one costs time, never a wrong
+// move. A slot keeps the deeper search of a position and goes to any other
+// position that hashes to it.
+final class TranspositionTable {
+    static final int EXACT = 0;
+    // The score is at least, or at most, the one stored
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+
+    // Entry: score + SCORE_OFFSET in bits 0-23, depth in 24-31, bound in 32-33,
+    // best move + 1 in 34-46 and a bit that tells an entry from an empty slot
+    private static final int SCORE_OFFSET = 1 << 23;
+    private static final long PRESENT = 1L << 63;
+
+    private final long[] slots;
+    private final int mask;
+
+    TranspositionTable(int bits) {
+        this.slots = new long[2 << bits];
+        this.mask = (1 << bits) - 1;
+    }
+
+    // The entry for the key, 0 when there is none
+    long probe(long key) {
+        int slot = ((int) key & mask) << 1;
+        long entry = slots[slot + 1];
+        return (slots[slot] ^ entry) == key ? entry : 0;
+    }
+
+    void store(long key, int score, int depth, int bound, int move) {
+        int slot = ((int) key & mask) << 1;
+        long old = slots[slot + 1];
+        if ((slots[slot] ^ old) == key && old != 0 && depthOf(old) > depth) return;
+        long entry = PRESENT | (score + SCORE_OFFSET) | (long) depth << 24 | (long) bound << 32
+                | (long) (move + 1) << 34;
+        slots[slot + 1] = entry;
+        slots[slot] = key ^ entry;
+    }
+
+    static int scoreOf(long entry) {
+        return ((int) entry & 0xFFFFFF) - SCORE_OFFSET;
+    }
+
+    static int depthOf(long entry) {
+        return (int) (entry >>> 24) & 0xFF;
+    }
+
+    static int boundOf(long entry) {
+        return (int) (entry >>> 32) & 3;
+    }
+
+    // The best move found, -1 if none
+    static int moveOf(long entry) {
+        return ((int) (entry >>> 34) & 0x1FFF) - 1;
+    }
+
+    // Bytes taken by the table
+    long getBytes() {
+        return slots.length * 8L;
+    }
+}
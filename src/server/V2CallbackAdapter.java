@@ -0,0 +1,119 @@
+package server;
+
+import common.BoardCodec;
+import common.BoardSnapshot;
+import common.GameState;
+import common.PlayerCallback;
+import common.PlayerCallbackTurnState;
+import common.PlayerCallbackV2;
+import common.TurnUpdate;
+import java.rmi.RemoteException;
+
+// Presents a protocol v2 client as a PlayerCallback, so sessions, mailboxes and
+// matchmaking treat both protocol versions alike. An update that follows the
+// previous one by exactly one move goes out as a (cell, side, sequence) delta;
+// anything else (game start, restart) goes out as a snapshot. Per-move status
+// text is not forwarded: v2 clients render it from the state they receive.
+// Calls arrive through the player's mailbox, one at a time and in order.
+public class V2CallbackAdapter implements PlayerCallbackTurnState {
+    private final PlayerCallbackV2 client;
+    private volatile String symbol;
+    private volatile String sessionId;
+    private volatile long sessionHandle;
+    private int lastSequence;
+
+    public V2CallbackAdapter(PlayerCallbackV2 client) {
+        this.client = client;
+    }
+
+    public PlayerCallbackV2 getClient() {
+        return client;
+    }
+
+    @Override
+    public void updateTurnState(TurnUpdate update) throws RemoteException {
+        if (update.getLastCell() >= 0 && update.getSequence() == lastSequence + 1) {
+            client.moveApplied((byte) update.getLastCell(), (byte) update.getLastSide(),
+                    update.getSequence(), statusOf(update));
+        } else {
+            client.boardSnapshot(toSnapshot(update));
+        }
+        lastSequence = update.getSequence();
+    }
+
+    private BoardSnapshot toSnapshot(TurnUpdate update) {
+        int code = update.getBoardCode();
+        return new BoardSnapshot(sessionHandle, update.getSequence(), BoardCodec.xMask(code), BoardCodec.oMask(code),
+                update.getCurrentSide(), statusOf(update), update.getWinnerSide());
+    }
+
+    private static byte statusOf(TurnUpdate update) {
+        if (!update.isGameOver()) return PlayerCallbackV2.STATUS_PLAYING;
+        return update.getWinner() != null ? PlayerCallbackV2.STATUS_WIN : PlayerCallbackV2.STATUS_DRAW;
+    }
+
+    @Override
+    public void showMessage(String message) throws RemoteException {
+        client.showMessage(message);
+    }
+
+    @Override
+    public void assignSymbol(String symbol) throws RemoteException {
+        this.symbol = symbol;
+    }
+
+    @Override
+    public void setGameSession(String sessionId) throws RemoteException {
+        this.sessionId = sessionId;
+        this.sessionHandle = SessionTable.handleOf(sessionId);
+        this.lastSequence = 0;
+    }
+
+    // Sent right after setGameSession when a match starts
+    @Override
+    public void setOpponentInfo(String opponentName) throws RemoteException {
+        client.sessionStarted(sessionHandle, (byte) GameState.sideOf(symbol), opponentName);
+    }
+
+    @Override
+    public void promptForNewOpponent() throws RemoteException {
+        client.opponentLeft();
+    }
+
+    @Override
+    public boolean ping() throws RemoteException {
+        return client.ping();
+    }
+
+    @Override
+    public String getPlayerSymbol() throws RemoteException {
+        return symbol;
+    }
+
+    @Override
+    public String getGameSessionId() throws RemoteException {
+        return sessionId;
+    }
+
+    @Override
+    public boolean wantsToPlayAgain() throws RemoteException {
+        return false;
+    }
+
+    // The remaining v1 calls are covered by updateTurnState
+    @Override
+    public void notifyTurn(String symbol) throws RemoteException {
+    }
+
+    @Override
+    public void updateBoard(String[][] board) throws RemoteException {
+    }
+
+    @Override
+    public void gameOver(String winner) throws RemoteException {
+    }
+
+    @Override
+    public void promptForRestart() throws RemoteException {
+    }
+}